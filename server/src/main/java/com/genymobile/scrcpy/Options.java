@@ -1,15 +1,20 @@
 package com.genymobile.scrcpy;
 
 import com.genymobile.scrcpy.audio.AudioCodec;
+import com.genymobile.scrcpy.audio.AudioConfig;
 import com.genymobile.scrcpy.audio.AudioSource;
 import com.genymobile.scrcpy.device.Device;
 import com.genymobile.scrcpy.device.NewDisplay;
 import com.genymobile.scrcpy.device.Orientation;
 import com.genymobile.scrcpy.device.Size;
+import com.genymobile.scrcpy.opengl.CompositorLayer;
+import com.genymobile.scrcpy.opengl.PipLayout;
 import com.genymobile.scrcpy.util.CodecOption;
 import com.genymobile.scrcpy.util.Ln;
 import com.genymobile.scrcpy.video.CameraAspectRatio;
 import com.genymobile.scrcpy.video.CameraFacing;
+import com.genymobile.scrcpy.video.CompositeClock;
+import com.genymobile.scrcpy.video.LayerSpec;
 import com.genymobile.scrcpy.video.VideoCodec;
 import com.genymobile.scrcpy.video.VideoSource;
 import com.genymobile.scrcpy.wrappers.WindowManager;
@@ -17,6 +22,7 @@ import com.genymobile.scrcpy.wrappers.WindowManager;
 import android.graphics.Rect;
 import android.util.Pair;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 
@@ -34,6 +40,19 @@ public class Options {
     private boolean audioDup;
     private int videoBitRate = 8000000;
     private int audioBitRate = 128000;
+    private int audioReadSize = AudioConfig.DEFAULT_READ_FRAMES; // in frames (samples per channel)
+    private int audioChannels = AudioConfig.CHANNELS;
+    private int audioSampleRate = AudioConfig.SAMPLE_RATE;
+    private int audioSilenceThreshold; // in dBFS, 0 to disable
+    private int audioRawBatch; // latency budget in ms, 0 to disable
+    private int audioRestartTimeout; // in ms, 0 to disable
+    private int audioLevelInterval; // in ms, 0 to disable
+    private float audioGain = 1;
+    private boolean audioMute;
+    private int audioHighPass; // cutoff in Hz, 0 to disable
+    private int audioLimiter; // threshold in dBFS, 0 to disable
+    private float audioPlaybackGain = 1;
+    private float audioMicGain = 1;
     private float maxFps;
     private float angle;
     private boolean tunnelForward;
@@ -46,6 +65,11 @@ public class Options {
     private CameraAspectRatio cameraAspectRatio;
     private int cameraFps;
     private boolean cameraHighSpeed;
+    private int cameraAnalysisSize;
+    private PipLayout pipLayout = PipLayout.DEFAULT;
+    private int pipCameraRotation = 270;
+    private CompositeClock compositeClock = CompositeClock.DISPLAY;
+    private List<LayerSpec> layers;
     private boolean showTouches;
     private boolean stayAwake;
     private int screenOffTimeout = -1;
@@ -58,6 +82,9 @@ public class Options {
     private boolean powerOffScreenOnClose;
     private boolean clipboardAutosync = true;
     private boolean downsizeOnError = true;
+    private boolean snapshots;
+    private int frameSkipThreshold = -1;
+    private boolean overlay;
     private boolean cleanup = true;
     private boolean powerOn = true;
 
@@ -128,6 +155,58 @@ public class Options {
         return audioBitRate;
     }
 
+    public int getAudioReadSize() {
+        return audioReadSize;
+    }
+
+    public int getAudioChannels() {
+        return audioChannels;
+    }
+
+    public int getAudioSampleRate() {
+        return audioSampleRate;
+    }
+
+    public int getAudioSilenceThreshold() {
+        return audioSilenceThreshold;
+    }
+
+    public int getAudioRawBatch() {
+        return audioRawBatch;
+    }
+
+    public int getAudioRestartTimeout() {
+        return audioRestartTimeout;
+    }
+
+    public int getAudioLevelInterval() {
+        return audioLevelInterval;
+    }
+
+    public float getAudioGain() {
+        return audioGain;
+    }
+
+    public boolean getAudioMute() {
+        return audioMute;
+    }
+
+    public int getAudioHighPass() {
+        return audioHighPass;
+    }
+
+    public int getAudioLimiter() {
+        return audioLimiter;
+    }
+
+    public float getAudioPlaybackGain() {
+        return audioPlaybackGain;
+    }
+
+    public float getAudioMicGain() {
+        return audioMicGain;
+    }
+
     public float getMaxFps() {
         return maxFps;
     }
@@ -176,6 +255,73 @@ public class Options {
         return cameraHighSpeed;
     }
 
+    public int getCameraAnalysisSize() {
+        return cameraAnalysisSize;
+    }
+
+    public PipLayout getPipLayout() {
+        return pipLayout;
+    }
+
+    public int getPipCameraRotation() {
+        return pipCameraRotation;
+    }
+
+    public CompositeClock getCompositeClock() {
+        return compositeClock;
+    }
+
+    public List<LayerSpec> getLayers() {
+        return layers;
+    }
+
+    /**
+     * Return the options of the display capture nested in a composite capture.
+     * <p>
+     * The composite runner draws the overlay over the whole output, so it is not drawn again on the display: the nested capture is only
+     * rendered by OpenGL if it needs a transform.
+     *
+     * @return the options of the nested display capture
+     */
+    public Options forCompositeDisplay() {
+        Options options = new Options();
+        options.displayId = displayId;
+        options.maxSize = maxSize;
+        options.crop = crop;
+        options.captureOrientationLock = captureOrientationLock;
+        options.captureOrientation = captureOrientation;
+        options.angle = angle;
+        return options;
+    }
+
+    /**
+     * Return the options to capture a single layer of a multi-source capture.
+     * <p>
+     * The source is selected by the layer; the transforms of the whole capture (crop, angle) are not applied to each layer.
+     *
+     * @param layer the layer
+     * @return the options of the layer source
+     */
+    public Options forLayer(LayerSpec layer) {
+        Options options = new Options();
+        options.maxSize = maxSize;
+        options.displayId = layer.getDisplayId();
+        options.cameraId = layer.getCameraId();
+        options.cameraFacing = layer.getCameraFacing();
+        options.cameraSize = cameraSize;
+        options.cameraAspectRatio = cameraAspectRatio;
+        options.cameraFps = cameraFps;
+        options.cameraHighSpeed = cameraHighSpeed;
+        options.cameraAnalysisSize = cameraAnalysisSize;
+        options.newDisplay = layer.getNewDisplay();
+        options.displayImePolicy = displayImePolicy;
+        options.vdDestroyContent = vdDestroyContent;
+        options.vdSystemDecorations = vdSystemDecorations;
+        options.captureOrientationLock = captureOrientationLock;
+        options.captureOrientation = captureOrientation;
+        return options;
+    }
+
     public boolean getShowTouches() {
         return showTouches;
     }
@@ -220,6 +366,18 @@ public class Options {
         return downsizeOnError;
     }
 
+    public boolean getSnapshots() {
+        return snapshots;
+    }
+
+    public int getFrameSkipThreshold() {
+        return frameSkipThreshold;
+    }
+
+    public boolean getOverlay() {
+        return overlay;
+    }
+
     public boolean getCleanup() {
         return cleanup;
     }
@@ -367,6 +525,74 @@ public class Options {
                 case "audio_bit_rate":
                     options.audioBitRate = Integer.parseInt(value);
                     break;
+                case "audio_read_size":
+                    options.audioReadSize = Integer.parseInt(value);
+                    if (options.audioReadSize <= 0 || options.audioReadSize > 4 * AudioConfig.DEFAULT_READ_FRAMES) {
+                        throw new IllegalArgumentException("Invalid audio read size: " + value);
+                    }
+                    break;
+                case "audio_channels":
+                    options.audioChannels = Integer.parseInt(value);
+                    if (options.audioChannels != 1 && options.audioChannels != 2) {
+                        throw new IllegalArgumentException("Invalid audio channels: " + value + " (must be 1 or 2)");
+                    }
+                    break;
+                case "audio_silence_threshold":
+                    options.audioSilenceThreshold = Integer.parseInt(value);
+                    if (options.audioSilenceThreshold < -96 || options.audioSilenceThreshold > 0) {
+                        throw new IllegalArgumentException("Invalid audio silence threshold: " + value + " (must be in dBFS, between -96 and 0)");
+                    }
+                    break;
+                case "audio_raw_batch":
+                    options.audioRawBatch = Integer.parseInt(value);
+                    if (options.audioRawBatch < 0 || options.audioRawBatch > 1000) {
+                        throw new IllegalArgumentException("Invalid audio raw batch: " + value + " (must be a duration in ms, between 0 and 1000)");
+                    }
+                    break;
+                case "audio_restart_timeout":
+                    options.audioRestartTimeout = Integer.parseInt(value);
+                    if (options.audioRestartTimeout < 0) {
+                        throw new IllegalArgumentException("Invalid audio restart timeout: " + value + " (must be a duration in ms)");
+                    }
+                    break;
+                case "audio_level_interval":
+                    options.audioLevelInterval = Integer.parseInt(value);
+                    if (options.audioLevelInterval != 0 && (options.audioLevelInterval < 100 || options.audioLevelInterval > 60000)) {
+                        throw new IllegalArgumentException("Invalid audio level interval: " + value
+                                + " (must be a duration in ms, between 100 and 60000)");
+                    }
+                    break;
+                case "audio_gain":
+                    options.audioGain = parseGain("audio_gain", value);
+                    break;
+                case "audio_mute":
+                    options.audioMute = Boolean.parseBoolean(value);
+                    break;
+                case "audio_high_pass":
+                    options.audioHighPass = Integer.parseInt(value);
+                    if (options.audioHighPass < 0 || options.audioHighPass > 1000) {
+                        throw new IllegalArgumentException("Invalid audio high-pass cutoff: " + value + " (must be in Hz, between 0 and 1000)");
+                    }
+                    break;
+                case "audio_limiter":
+                    options.audioLimiter = Integer.parseInt(value);
+                    if (options.audioLimiter < -40 || options.audioLimiter > 0) {
+                        throw new IllegalArgumentException("Invalid audio limiter threshold: " + value + " (must be in dBFS, between -40 and 0)");
+                    }
+                    break;
+                case "audio_playback_gain":
+                    options.audioPlaybackGain = parseGain("audio_playback_gain", value);
+                    break;
+                case "audio_mic_gain":
+                    options.audioMicGain = parseGain("audio_mic_gain", value);
+                    break;
+                case "audio_sample_rate":
+                    options.audioSampleRate = Integer.parseInt(value);
+                    if (!AudioConfig.isSupportedOutputSampleRate(options.audioSampleRate)) {
+                        throw new IllegalArgumentException(
+                                "Invalid audio sample rate: " + value + " (must be one of " + AudioConfig.getSupportedOutputSampleRates() + ")");
+                    }
+                    break;
                 case "max_fps":
                     options.maxFps = parseFloat("max_fps", value);
                     break;
@@ -423,6 +649,18 @@ public class Options {
                 case "downsize_on_error":
                     options.downsizeOnError = Boolean.parseBoolean(value);
                     break;
+                case "snapshots":
+                    options.snapshots = Boolean.parseBoolean(value);
+                    break;
+                case "overlay":
+                    options.overlay = Boolean.parseBoolean(value);
+                    break;
+                case "frame_skip_threshold":
+                    options.frameSkipThreshold = Integer.parseInt(value);
+                    if (options.frameSkipThreshold < -1 || options.frameSkipThreshold > 255) {
+                        throw new IllegalArgumentException("Invalid frame skip threshold (expected -1 or [0, 255]): " + value);
+                    }
+                    break;
                 case "cleanup":
                     options.cleanup = Boolean.parseBoolean(value);
                     break;
@@ -474,6 +712,38 @@ public class Options {
                 case "camera_high_speed":
                     options.cameraHighSpeed = Boolean.parseBoolean(value);
                     break;
+                case "camera_analysis_size":
+                    options.cameraAnalysisSize = Integer.parseInt(value);
+                    if (options.cameraAnalysisSize < 0) {
+                        throw new IllegalArgumentException("Invalid camera analysis size: " + value);
+                    }
+                    break;
+                case "pip_rect":
+                    options.pipLayout = parsePipRect(options.pipLayout, value);
+                    break;
+                case "pip_alpha":
+                    options.pipLayout = options.pipLayout.withAlpha(parseFloat("pip_alpha", value));
+                    break;
+                case "pip_swap":
+                    options.pipLayout = options.pipLayout.withSwap(Boolean.parseBoolean(value));
+                    break;
+                case "pip_camera_rotation":
+                    int pipCameraRotation = Integer.parseInt(value);
+                    if (!PipLayout.isValidRotation(pipCameraRotation)) {
+                        throw new IllegalArgumentException("Invalid PiP camera rotation (expected 0, 90, 180 or 270): " + value);
+                    }
+                    options.pipCameraRotation = pipCameraRotation;
+                    break;
+                case "composite_clock":
+                    CompositeClock compositeClock = CompositeClock.findByName(value);
+                    if (compositeClock == null) {
+                        throw new IllegalArgumentException("Composite clock " + value + " not supported");
+                    }
+                    options.compositeClock = compositeClock;
+                    break;
+                case "layers":
+                    options.layers = parseLayers(value);
+                    break;
                 case "new_display":
                     options.newDisplay = parseNewDisplay(value);
                     break;
@@ -523,6 +793,16 @@ public class Options {
             options.displayId = Device.DISPLAY_ID_NONE;
         }
 
+        if (options.videoSource == VideoSource.MULTI && options.layers == null) {
+            throw new IllegalArgumentException("Multi-source capture requires layers");
+        }
+
+        if (options.audioCodec == AudioCodec.RAW
+                && (options.audioChannels != AudioConfig.CHANNELS || options.audioSampleRate != AudioConfig.SAMPLE_RATE)) {
+            // The raw stream does not describe its format, the client always plays it as captured
+            throw new IllegalArgumentException("Raw audio cannot be downmixed or resampled");
+        }
+
         return options;
     }
 
@@ -545,6 +825,73 @@ public class Options {
         return new Rect(x, y, x + width, y + height);
     }
 
+    private static PipLayout parsePipRect(PipLayout layout, String rect) {
+        // input format: "width:height:x:y", as fractions of the output size
+        String[] tokens = rect.split(":");
+        if (tokens.length != 4) {
+            throw new IllegalArgumentException("PiP rect must contains 4 values separated by colons: \"" + rect + "\"");
+        }
+        float width = parseFloat("pip_rect", tokens[0]);
+        float height = parseFloat("pip_rect", tokens[1]);
+        float x = parseFloat("pip_rect", tokens[2]);
+        float y = parseFloat("pip_rect", tokens[3]);
+        return layout.withRect(x, y, width, height);
+    }
+
+    private static List<LayerSpec> parseLayers(String value) {
+        // input format: "<source>@<width>:<height>:<x>:<y>[@<alpha>[@<z>]],...", the rectangle in fractions of the output size
+        // with <source> one of "display[:<id>]", "camera[:<id>|front|back|external]" or "new_display[:<new_display>]"
+        List<LayerSpec> layers = new ArrayList<>();
+        for (String spec : value.split(",")) {
+            String[] tokens = spec.split("@");
+            if (tokens.length < 2 || tokens.length > 4) {
+                throw new IllegalArgumentException("Invalid layer (expected <source>@<w>:<h>:<x>:<y>[@<alpha>[@<z>]]): \"" + spec + "\"");
+            }
+
+            String[] rect = tokens[1].split(":");
+            if (rect.length != 4) {
+                throw new IllegalArgumentException("Layer rect must contains 4 values separated by colons: \"" + tokens[1] + "\"");
+            }
+            float width = parseFloat("layers", rect[0]);
+            float height = parseFloat("layers", rect[1]);
+            float x = parseFloat("layers", rect[2]);
+            float y = parseFloat("layers", rect[3]);
+            float alpha = tokens.length >= 3 ? parseFloat("layers", tokens[2]) : 1;
+            int zOrder = tokens.length == 4 ? Integer.parseInt(tokens[3]) : layers.size();
+            CompositorLayer layer = CompositorLayer.fromRect(x, y, width, height, zOrder, alpha);
+
+            layers.add(parseLayerSource(tokens[0], layer));
+        }
+        return layers;
+    }
+
+    private static LayerSpec parseLayerSource(String source, CompositorLayer layer) {
+        int colonIndex = source.indexOf(':');
+        String type = colonIndex == -1 ? source : source.substring(0, colonIndex);
+        String param = colonIndex == -1 ? "" : source.substring(colonIndex + 1);
+        switch (type) {
+            case "display":
+                int displayId = param.isEmpty() ? 0 : Integer.parseInt(param);
+                if (displayId < 0) {
+                    throw new IllegalArgumentException("Invalid layer display id: " + displayId);
+                }
+                return LayerSpec.display(displayId, layer);
+            case "camera":
+                if (param.isEmpty()) {
+                    return LayerSpec.camera(null, null, layer);
+                }
+                CameraFacing facing = CameraFacing.findByName(param);
+                if (facing != null) {
+                    return LayerSpec.camera(null, facing, layer);
+                }
+                return LayerSpec.camera(param, null, layer);
+            case "new_display":
+                return LayerSpec.newDisplay(parseNewDisplay(param), layer);
+            default:
+                throw new IllegalArgumentException("Invalid layer source: \"" + source + "\"");
+        }
+    }
+
     private static Size parseSize(String size) {
         // input format: "<width>x<height>"
         String[] tokens = size.split("x");
@@ -583,6 +930,14 @@ public class Options {
         }
     }
 
+    private static float parseGain(String key, String value) {
+        float gain = parseFloat(key, value);
+        if (gain < 0 || gain > 8) {
+            throw new IllegalArgumentException("Invalid gain for " + key + ": " + value + " (must be between 0 and 8)");
+        }
+        return gain;
+    }
+
     private static NewDisplay parseNewDisplay(String newDisplay) {
         // Possible inputs:
         //  - "" (empty string)
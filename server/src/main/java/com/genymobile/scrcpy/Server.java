@@ -2,27 +2,42 @@ package com.genymobile.scrcpy;
 
 import com.genymobile.scrcpy.audio.AudioCapture;
 import com.genymobile.scrcpy.audio.AudioCodec;
+import com.genymobile.scrcpy.audio.AudioConfig;
 import com.genymobile.scrcpy.audio.AudioDirectCapture;
 import com.genymobile.scrcpy.audio.AudioEncoder;
+import com.genymobile.scrcpy.audio.AudioLevelMeter;
+import com.genymobile.scrcpy.audio.AudioMixCapture;
 import com.genymobile.scrcpy.audio.AudioPlaybackCapture;
+import com.genymobile.scrcpy.audio.AudioProcessor;
+import com.genymobile.scrcpy.audio.AudioProcessorChain;
 import com.genymobile.scrcpy.audio.AudioRawRecorder;
 import com.genymobile.scrcpy.audio.AudioSource;
+import com.genymobile.scrcpy.audio.AudioTimingMonitor;
+import com.genymobile.scrcpy.audio.RestartableAudioCapture;
 import com.genymobile.scrcpy.control.ControlChannel;
 import com.genymobile.scrcpy.control.Controller;
+import com.genymobile.scrcpy.control.DeviceMessage;
+import com.genymobile.scrcpy.control.DeviceMessageSender;
 import com.genymobile.scrcpy.device.ConfigurationException;
 import com.genymobile.scrcpy.device.DesktopConnection;
 import com.genymobile.scrcpy.device.Device;
 import com.genymobile.scrcpy.device.NewDisplay;
 import com.genymobile.scrcpy.device.Streamer;
 import com.genymobile.scrcpy.opengl.OpenGLRunner;
+import com.genymobile.scrcpy.opengl.OverlayState;
 import com.genymobile.scrcpy.util.Ln;
 import com.genymobile.scrcpy.util.LogUtils;
 import com.genymobile.scrcpy.video.CameraCapture;
+import com.genymobile.scrcpy.video.CameraMotionDetector;
 import com.genymobile.scrcpy.video.CompositeCapture;
+import com.genymobile.scrcpy.video.LayerSpec;
+import com.genymobile.scrcpy.video.MultiSourceCapture;
 import com.genymobile.scrcpy.video.NewDisplayCapture;
 import com.genymobile.scrcpy.video.ScreenCapture;
 import com.genymobile.scrcpy.video.SurfaceCapture;
 import com.genymobile.scrcpy.video.SurfaceEncoder;
+import com.genymobile.scrcpy.video.VideoCodec;
+import com.genymobile.scrcpy.video.VideoRawRecorder;
 import com.genymobile.scrcpy.video.VideoSource;
 
 import android.annotation.SuppressLint;
@@ -79,11 +94,28 @@ public final class Server {
             throw new ConfigurationException("Composite capture is not supported");
         }
 
+        if (Build.VERSION.SDK_INT < AndroidVersions.API_31_ANDROID_12 && options.getVideoSource() == VideoSource.MULTI) {
+            for (LayerSpec layer : options.getLayers()) {
+                if (layer.isCamera()) {
+                    Ln.e("Camera layers are not supported before Android 12");
+                    throw new ConfigurationException("Camera layers are not supported");
+                }
+            }
+        }
+
         if (Build.VERSION.SDK_INT < AndroidVersions.API_29_ANDROID_10) {
             if (options.getNewDisplay() != null) {
                 Ln.e("New virtual display is not supported before Android 10");
                 throw new ConfigurationException("New virtual display is not supported");
             }
+            if (options.getVideoSource() == VideoSource.MULTI) {
+                for (LayerSpec layer : options.getLayers()) {
+                    if (layer.getNewDisplay() != null) {
+                        Ln.e("New virtual display layers are not supported before Android 10");
+                        throw new ConfigurationException("New virtual display layers are not supported");
+                    }
+                }
+            }
             if (options.getDisplayImePolicy() != -1) {
                 Ln.e("Display IME policy is not supported before Android 10");
                 throw new ConfigurationException("Display IME policy is not supported");
@@ -105,6 +137,9 @@ public final class Server {
 
         Workarounds.apply();
 
+        // The overlay may also be toggled at runtime by a control message
+        OverlayState.setEnabled(options.getOverlay());
+
         List<AsyncProcessor> asyncProcessors = new ArrayList<>();
 
         DesktopConnection connection = DesktopConnection.open(scid, tunnelForward, video, audio, control, sendDummyByte);
@@ -124,19 +159,43 @@ public final class Server {
             if (audio) {
                 AudioCodec audioCodec = options.getAudioCodec();
                 AudioSource audioSource = options.getAudioSource();
+                int audioReadSize = AudioConfig.getReadSize(options.getAudioReadSize());
+                AudioTimingMonitor audioTimingMonitor = new AudioTimingMonitor();
                 AudioCapture audioCapture;
-                if (audioSource.isDirect()) {
-                    audioCapture = new AudioDirectCapture(audioSource);
+                if (audioSource == AudioSource.PLAYBACK_MIC) {
+                    AudioCapture mic = new AudioDirectCapture(AudioSource.MIC, audioReadSize, audioTimingMonitor);
+                    // The playback timestamps are only used for the alignment, do not mix their stats with the stream ones
+                    AudioCapture playback = new AudioPlaybackCapture(options.getAudioDup(), audioReadSize, new AudioTimingMonitor("playback"));
+                    audioCapture = new AudioMixCapture(mic, playback, options.getAudioMicGain(), options.getAudioPlaybackGain(), audioReadSize);
+                } else if (audioSource.isDirect()) {
+                    audioCapture = new AudioDirectCapture(audioSource, audioReadSize, audioTimingMonitor);
                 } else {
-                    audioCapture = new AudioPlaybackCapture(options.getAudioDup());
+                    audioCapture = new AudioPlaybackCapture(options.getAudioDup(), audioReadSize, audioTimingMonitor);
+                }
+                if (options.getAudioRestartTimeout() > 0) {
+                    audioCapture = new RestartableAudioCapture(audioCapture, options.getAudioRestartTimeout(), audioReadSize);
+                }
+
+                AudioLevelMeter audioLevelMeter = null;
+                if (options.getAudioLevelInterval() > 0) {
+                    if (controller != null) {
+                        // Report the levels to the client over the control socket
+                        DeviceMessageSender sender = controller.getSender();
+                        audioLevelMeter = new AudioLevelMeter(options.getAudioLevelInterval(),
+                                (ptsUs, peak, rms) -> sender.send(DeviceMessage.createAudioLevel(ptsUs, peak, rms)));
+                    } else {
+                        Ln.w("Audio levels are not reported without control");
+                    }
                 }
 
+                AudioProcessor audioProcessor = AudioProcessorChain.create(options, audioLevelMeter);
+
                 Streamer audioStreamer = new Streamer(connection.getAudioFd(), audioCodec, options.getSendCodecMeta(), options.getSendFrameMeta());
                 AsyncProcessor audioRecorder;
                 if (audioCodec == AudioCodec.RAW) {
-                    audioRecorder = new AudioRawRecorder(audioCapture, audioStreamer);
+                    audioRecorder = new AudioRawRecorder(audioCapture, audioStreamer, options, audioProcessor);
                 } else {
-                    audioRecorder = new AudioEncoder(audioCapture, audioStreamer, options);
+                    audioRecorder = new AudioEncoder(audioCapture, audioStreamer, options, audioTimingMonitor, audioProcessor);
                 }
                 asyncProcessors.add(audioRecorder);
             }
@@ -144,6 +203,19 @@ public final class Server {
             if (video) {
                 Streamer videoStreamer = new Streamer(connection.getVideoFd(), options.getVideoCodec(), options.getSendCodecMeta(),
                         options.getSendFrameMeta());
+                CameraMotionDetector motionDetector = null;
+                VideoSource videoSource = options.getVideoSource();
+                if (options.getCameraAnalysisSize() > 0 && (videoSource == VideoSource.CAMERA || videoSource == VideoSource.COMPOSITE)) {
+                    if (controller != null) {
+                        // Report the camera motion to the client over the control socket
+                        DeviceMessageSender sender = controller.getSender();
+                        motionDetector = new CameraMotionDetector(
+                                (ptsUs, moving, level) -> sender.send(DeviceMessage.createCameraMotion(ptsUs, moving, level)));
+                    } else {
+                        Ln.w("Camera motion is not reported without control");
+                    }
+                }
+
                 SurfaceCapture surfaceCapture;
                 if (options.getVideoSource() == VideoSource.DISPLAY) {
                     NewDisplay newDisplay = options.getNewDisplay();
@@ -154,13 +226,24 @@ public final class Server {
                         surfaceCapture = new ScreenCapture(controller, options);
                     }
                 } else if (options.getVideoSource() == VideoSource.CAMERA) {
-                    surfaceCapture = new CameraCapture(options);
+                    CameraCapture cameraCapture = new CameraCapture(options);
+                    cameraCapture.setAnalysisListener(motionDetector);
+                    surfaceCapture = cameraCapture;
+                } else if (options.getVideoSource() == VideoSource.MULTI) {
+                    surfaceCapture = new MultiSourceCapture(options);
                 } else {
                     // VideoSource.COMPOSITE
-                    surfaceCapture = new CompositeCapture(options);
+                    CompositeCapture compositeCapture = new CompositeCapture(options);
+                    compositeCapture.setAnalysisListener(motionDetector);
+                    surfaceCapture = compositeCapture;
+                }
+                AsyncProcessor videoRecorder;
+                if (options.getVideoCodec() == VideoCodec.RAW) {
+                    videoRecorder = new VideoRawRecorder(surfaceCapture, videoStreamer);
+                } else {
+                    videoRecorder = new SurfaceEncoder(surfaceCapture, videoStreamer, options);
                 }
-                SurfaceEncoder surfaceEncoder = new SurfaceEncoder(surfaceCapture, videoStreamer, options);
-                asyncProcessors.add(surfaceEncoder);
+                asyncProcessors.add(videoRecorder);
 
                 if (controller != null) {
                     controller.setSurfaceCapture(surfaceCapture);
@@ -10,7 +10,7 @@ public interface AudioCapture {
     void stop();
 
     /**
-     * Read a chunk of {@link AudioConfig#MAX_READ_SIZE} samples.
+     * Read a chunk of at most the read size given to the capture (see {@link AudioConfig#getReadSize(int)}).
      *
      * @param outDirectBuffer The target buffer
      * @param outBufferInfo The info to provide to MediaCodec
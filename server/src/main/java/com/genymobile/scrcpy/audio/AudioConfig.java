@@ -2,6 +2,8 @@ package com.genymobile.scrcpy.audio;
 
 import android.media.AudioFormat;
 
+import java.util.Arrays;
+
 public final class AudioConfig {
     public static final int SAMPLE_RATE = 48000;
     public static final int CHANNEL_CONFIG = AudioFormat.CHANNEL_IN_STEREO;
@@ -10,15 +12,53 @@ public final class AudioConfig {
     public static final int ENCODING = AudioFormat.ENCODING_PCM_16BIT;
     public static final int BYTES_PER_SAMPLE = 2;
 
-    // Never read more than 1024 samples, even if the buffer is bigger (that would increase latency).
-    // A lower value is useless, since the system captures audio samples by blocks of 1024 (so for example if we read by blocks of 256 samples, we
-    // receive 4 successive blocks without waiting, then we wait for the 4 next ones).
-    public static final int MAX_READ_SIZE = 1024 * CHANNELS * BYTES_PER_SAMPLE;
+    // By default, never read more than 1024 samples, even if the buffer is bigger (that would increase latency).
+    // A lower value is usually useless, since the system captures audio samples by blocks of 1024 (so for example if we read by blocks of 256
+    // samples, we receive 4 successive blocks without waiting, then we wait for the 4 next ones). It only reduces the latency on devices whose
+    // audio HAL captures smaller blocks, so it is configurable (audio_read_size).
+    public static final int DEFAULT_READ_FRAMES = 1024;
+
+    // The sample rates the captured audio may be resampled to: the divisors of SAMPLE_RATE supported by all the encoders (OPUS only supports
+    // these ones)
+    private static final int[] OUTPUT_SAMPLE_RATES = {8000, 12000, 16000, 24000, 48000};
 
     private AudioConfig() {
         // Not instantiable
     }
 
+    /**
+     * Return the size of a read, in bytes.
+     *
+     * @param frames the number of frames (samples per channel) per read
+     * @return the number of bytes
+     */
+    public static int getReadSize(int frames) {
+        return frames * CHANNELS * BYTES_PER_SAMPLE;
+    }
+
+    /**
+     * Return the duration of a number of frames.
+     *
+     * @param frames the number of frames (samples per channel)
+     * @return the duration, in microseconds
+     */
+    public static long getDurationUs(int frames) {
+        return frames * 1000000L / SAMPLE_RATE;
+    }
+
+    public static boolean isSupportedOutputSampleRate(int sampleRate) {
+        for (int rate : OUTPUT_SAMPLE_RATES) {
+            if (rate == sampleRate) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static String getSupportedOutputSampleRates() {
+        return Arrays.toString(OUTPUT_SAMPLE_RATES);
+    }
+
     public static AudioFormat createAudioFormat() {
         AudioFormat.Builder builder = new AudioFormat.Builder();
         builder.setEncoding(ENCODING);
@@ -0,0 +1,152 @@
+package com.genymobile.scrcpy.audio;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Convert the captured PCM (48 kHz, stereo, 16-bit) to a lower channel count and/or sample rate, in place.
+ * <p>
+ * The output sample rate must divide the capture sample rate (the rates supported by Opus: 8, 12, 16, 24 or 48 kHz), so that resampling is a
+ * decimation by an integer factor. Each output frame is the average of the input frames it replaces (a box filter, which attenuates the
+ * frequencies above the new Nyquist frequency enough for voice). The frames which do not complete an output frame are kept for the next call,
+ * so the conversion is continuous across buffers.
+ * <p>
+ * The samples are processed in a {@code short[]} work array in tight loops (which the JIT may vectorize), without allocation per buffer.
+ */
+public final class AudioConverter {
+
+    private final int outChannels;
+    private final int factor;
+
+    // Pending input frames (accumulated sums per output channel)
+    private final int[] pendingSums;
+    private int pendingFrames;
+
+    private short[] work = new short[0];
+
+    /**
+     * @param outChannels   the output channel count (1 or 2)
+     * @param outSampleRate the output sample rate (a divisor of {@link AudioConfig#SAMPLE_RATE})
+     */
+    public AudioConverter(int outChannels, int outSampleRate) {
+        if (outChannels != 1 && outChannels != 2) {
+            throw new IllegalArgumentException("Unsupported channel count: " + outChannels);
+        }
+        if (outSampleRate <= 0 || AudioConfig.SAMPLE_RATE % outSampleRate != 0) {
+            throw new IllegalArgumentException("Unsupported sample rate: " + outSampleRate);
+        }
+        this.outChannels = outChannels;
+        this.factor = AudioConfig.SAMPLE_RATE / outSampleRate;
+        pendingSums = new int[outChannels];
+    }
+
+    /**
+     * Indicate whether the conversion changes anything.
+     *
+     * @return {@code true} if the output format is the capture format
+     */
+    public boolean isIdentity() {
+        return outChannels == AudioConfig.CHANNELS && factor == 1;
+    }
+
+    /**
+     * Return the number of pending input frames, carried over to the next call.
+     * <p>
+     * The first output frame of the next call starts this number of frames before its first input frame (to adjust its PTS).
+     *
+     * @return the number of frames
+     */
+    public int getPendingFrames() {
+        return pendingFrames;
+    }
+
+    /**
+     * Convert the PCM data of a buffer, in place.
+     *
+     * @param buffer the buffer (its position and limit are not used)
+     * @param offset the offset of the data in the buffer
+     * @param size   the size of the input data, in bytes (interleaved stereo 16-bit frames)
+     * @return the size of the output data, in bytes, written at {@code offset}
+     */
+    public int convert(ByteBuffer buffer, int offset, int size) {
+        int inSamples = size / AudioConfig.BYTES_PER_SAMPLE;
+        if (work.length < inSamples) {
+            // Only reallocated if the read size increases
+            work = new short[inSamples];
+        }
+
+        // PCM samples are in native order; use absolute accesses so that no view buffer is allocated
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.nativeOrder());
+        for (int i = 0; i < inSamples; ++i) {
+            work[i] = buffer.getShort(offset + 2 * i);
+        }
+
+        int outSamples = convert(work, inSamples / AudioConfig.CHANNELS);
+
+        for (int i = 0; i < outSamples; ++i) {
+            buffer.putShort(offset + 2 * i, work[i]);
+        }
+        buffer.order(order);
+        return outSamples * AudioConfig.BYTES_PER_SAMPLE;
+    }
+
+    /**
+     * Convert interleaved stereo frames, in place.
+     *
+     * @param samples the samples
+     * @param frames  the number of input frames
+     * @return the number of output samples (frames × output channels)
+     */
+    int convert(short[] samples, int frames) {
+        if (factor == 1) {
+            if (outChannels == 2) {
+                return frames * 2;
+            }
+            // Downmix only
+            for (int i = 0; i < frames; ++i) {
+                samples[i] = (short) ((samples[2 * i] + samples[2 * i + 1]) >> 1);
+            }
+            return frames;
+        }
+
+        int out = 0;
+        int in = 0;
+        if (outChannels == 1) {
+            int sum = pendingSums[0];
+            int count = pendingFrames;
+            while (in < frames) {
+                sum += samples[2 * in] + samples[2 * in + 1];
+                ++in;
+                if (++count == factor) {
+                    samples[out++] = (short) (sum / (2 * factor));
+                    sum = 0;
+                    count = 0;
+                }
+            }
+            pendingSums[0] = sum;
+            pendingFrames = count;
+        } else {
+            int sumL = pendingSums[0];
+            int sumR = pendingSums[1];
+            int count = pendingFrames;
+            while (in < frames) {
+                sumL += samples[2 * in];
+                sumR += samples[2 * in + 1];
+                ++in;
+                if (++count == factor) {
+                    samples[out++] = (short) (sumL / factor);
+                    samples[out++] = (short) (sumR / factor);
+                    sumL = 0;
+                    sumR = 0;
+                    count = 0;
+                }
+            }
+            pendingSums[0] = sumL;
+            pendingSums[1] = sumR;
+            pendingFrames = count;
+        }
+
+        return out;
+    }
+}
@@ -26,12 +26,16 @@ public class AudioDirectCapture implements AudioCapture {
     private static final int ENCODING = AudioConfig.ENCODING;
 
     private final int audioSource;
+    private final int readSize;
+    private final AudioTimingMonitor timingMonitor;
 
     private AudioRecord recorder;
     private AudioRecordReader reader;
 
-    public AudioDirectCapture(AudioSource audioSource) {
+    public AudioDirectCapture(AudioSource audioSource, int readSize, AudioTimingMonitor timingMonitor) {
         this.audioSource = audioSource.getDirectAudioSource();
+        this.readSize = readSize;
+        this.timingMonitor = timingMonitor;
     }
 
     @TargetApi(AndroidVersions.API_23_ANDROID_6_0)
@@ -101,7 +105,7 @@ public class AudioDirectCapture implements AudioCapture {
             recorder = Workarounds.createAudioRecord(audioSource, SAMPLE_RATE, CHANNEL_CONFIG, CHANNELS, CHANNEL_MASK, ENCODING);
         }
         recorder.startRecording();
-        reader = new AudioRecordReader(recorder);
+        reader = new AudioRecordReader(recorder, readSize, timingMonitor);
     }
 
     @Override
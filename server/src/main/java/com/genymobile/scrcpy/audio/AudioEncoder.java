@@ -23,45 +23,33 @@ import android.os.Looper;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 
 public final class AudioEncoder implements AsyncProcessor {
 
-    private static class InputTask {
-        private final int index;
-
-        InputTask(int index) {
-            this.index = index;
-        }
-    }
-
-    private static class OutputTask {
-        private final int index;
-        private final MediaCodec.BufferInfo bufferInfo;
-
-        OutputTask(int index, MediaCodec.BufferInfo bufferInfo) {
-            this.index = index;
-            this.bufferInfo = bufferInfo;
-        }
-    }
-
-    private static final int SAMPLE_RATE = AudioConfig.SAMPLE_RATE;
-    private static final int CHANNELS = AudioConfig.CHANNELS;
+    // 20 ms, the default frame duration of Opus encoders
+    private static final int OPUS_DEFAULT_FRAMES = AudioConfig.SAMPLE_RATE / 50;
 
     private final AudioCapture capture;
     private final Streamer streamer;
     private final int bitRate;
+    private final int readFrames;
+    private final int channels;
+    private final int sampleRate;
+    private final AudioConverter converter;
+    private final SilenceDetector silenceDetector;
     private final List<CodecOption> codecOptions;
     private final String encoderName;
+    private final AudioTimingMonitor timingMonitor;
+    private final AudioProcessor processor;
 
     private boolean recreatePts;
     private long previousPts;
 
     // Capacity of 64 is in practice "infinite" (it is limited by the number of available MediaCodec buffers, typically 4).
     // So many pending tasks would lead to an unacceptable delay anyway.
-    private final BlockingQueue<InputTask> inputTasks = new ArrayBlockingQueue<>(64);
-    private final BlockingQueue<OutputTask> outputTasks = new ArrayBlockingQueue<>(64);
+    // The queues store the buffer indexes and infos in primitive arrays, so that the audio path does not allocate per buffer.
+    private final CodecBufferQueue inputTasks = new CodecBufferQueue(64);
+    private final CodecBufferQueue outputTasks = new CodecBufferQueue(64);
 
     private Thread thread;
     private HandlerThread mediaCodecThread;
@@ -71,20 +59,38 @@ public final class AudioEncoder implements AsyncProcessor {
 
     private boolean ended;
 
-    public AudioEncoder(AudioCapture capture, Streamer streamer, Options options) {
+    /**
+     * @param capture       the audio capture
+     * @param streamer      the streamer to write the packets to
+     * @param options       the options
+     * @param timingMonitor the monitor of the capture timestamps
+     * @param processor     the processor of the captured samples ({@code null} to disable)
+     */
+    public AudioEncoder(AudioCapture capture, Streamer streamer, Options options, AudioTimingMonitor timingMonitor, AudioProcessor processor) {
         this.capture = capture;
         this.streamer = streamer;
+        this.timingMonitor = timingMonitor;
+        this.processor = processor;
         this.bitRate = options.getAudioBitRate();
+        this.readFrames = options.getAudioReadSize();
+        this.channels = options.getAudioChannels();
+        this.sampleRate = options.getAudioSampleRate();
+        this.converter = new AudioConverter(channels, sampleRate);
+        int silenceThreshold = options.getAudioSilenceThreshold();
+        this.silenceDetector = silenceThreshold != 0 ? new SilenceDetector(silenceThreshold) : null;
         this.codecOptions = options.getAudioCodecOptions();
         this.encoderName = options.getAudioEncoder();
     }
 
-    private static MediaFormat createFormat(String mimeType, int bitRate, List<CodecOption> codecOptions) {
+    private static MediaFormat createFormat(String mimeType, int bitRate, int channels, int sampleRate, int readFrames,
+            List<CodecOption> codecOptions) {
         MediaFormat format = new MediaFormat();
         format.setString(MediaFormat.KEY_MIME, mimeType);
         format.setInteger(MediaFormat.KEY_BIT_RATE, bitRate);
-        format.setInteger(MediaFormat.KEY_CHANNEL_COUNT, CHANNELS);
-        format.setInteger(MediaFormat.KEY_SAMPLE_RATE, SAMPLE_RATE);
+        format.setInteger(MediaFormat.KEY_CHANNEL_COUNT, channels);
+        format.setInteger(MediaFormat.KEY_SAMPLE_RATE, sampleRate);
+        // The input buffers must be able to hold a whole read
+        format.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, AudioConfig.getReadSize(readFrames));
 
         if (codecOptions != null) {
             for (CodecOption option : codecOptions) {
@@ -103,30 +109,52 @@ public final class AudioEncoder implements AsyncProcessor {
         final MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
 
         while (!Thread.currentThread().isInterrupted()) {
-            InputTask task = inputTasks.take();
-            ByteBuffer buffer = mediaCodec.getInputBuffer(task.index);
-            int r = capture.read(buffer, bufferInfo);
-            if (r <= 0) {
-                throw new IOException("Could not read audio: " + r);
-            }
+            int index = inputTasks.take();
+            ByteBuffer buffer = mediaCodec.getInputBuffer(index);
+            boolean suppressed;
+            do {
+                int r = capture.read(buffer, bufferInfo);
+                if (r <= 0) {
+                    throw new IOException("Could not read audio: " + r);
+                }
+                long durationUs = AudioConfig.getDurationUs(r / AudioConfig.getReadSize(1));
+
+                if (processor != null) {
+                    // Process the captured samples (including the ones suppressed on silence), before any format conversion
+                    processor.process(buffer, bufferInfo.offset, r, bufferInfo.presentationTimeUs);
+                }
+
+                if (!converter.isIdentity()) {
+                    // The first output frame includes the input frames pending from the previous buffer
+                    long pts = bufferInfo.presentationTimeUs - AudioConfig.getDurationUs(converter.getPendingFrames());
+                    int size = converter.convert(buffer, bufferInfo.offset, bufferInfo.size);
+                    bufferInfo.set(bufferInfo.offset, size, pts, bufferInfo.flags);
+                }
 
-            mediaCodec.queueInputBuffer(task.index, bufferInfo.offset, bufferInfo.size, bufferInfo.presentationTimeUs, bufferInfo.flags);
+                // While silent, read again into the same input buffer, so that nothing is encoded
+                suppressed = silenceDetector != null && silenceDetector.process(buffer, bufferInfo.offset, bufferInfo.size, durationUs);
+            } while (suppressed && !Thread.currentThread().isInterrupted());
+
+            mediaCodec.queueInputBuffer(index, bufferInfo.offset, bufferInfo.size, bufferInfo.presentationTimeUs, bufferInfo.flags);
         }
     }
 
     private void outputThread(MediaCodec mediaCodec) throws IOException, InterruptedException {
         streamer.writeAudioHeader();
 
+        final MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+
         while (!Thread.currentThread().isInterrupted()) {
-            OutputTask task = outputTasks.take();
-            ByteBuffer buffer = mediaCodec.getOutputBuffer(task.index);
+            int index = outputTasks.take();
+            bufferInfo.set(outputTasks.getOffset(), outputTasks.getSize(), outputTasks.getPtsUs(), outputTasks.getFlags());
+            ByteBuffer buffer = mediaCodec.getOutputBuffer(index);
             try {
                 if (recreatePts) {
-                    fixTimestamp(task.bufferInfo);
+                    fixTimestamp(bufferInfo);
                 }
-                streamer.writePacket(buffer, task.bufferInfo);
+                streamer.writePacket(buffer, bufferInfo);
             } finally {
-                mediaCodec.releaseOutputBuffer(task.index, false);
+                mediaCodec.releaseOutputBuffer(index, false);
             }
         }
     }
@@ -145,6 +173,7 @@ public final class AudioEncoder implements AsyncProcessor {
             // This specific encoder produces PTS matching the exact number of samples
             long duration = pts - previousPts;
             bufferInfo.presentationTimeUs = now - duration;
+            timingMonitor.onPtsRewritten(pts, bufferInfo.presentationTimeUs);
         }
 
         previousPts = pts;
@@ -228,7 +257,17 @@ public final class AudioEncoder implements AsyncProcessor {
             mediaCodecThread = new HandlerThread("media-codec");
             mediaCodecThread.start();
 
-            MediaFormat format = createFormat(codec.getMimeType(), bitRate, codecOptions);
+            if (codec == AudioCodec.OPUS && readFrames < OPUS_DEFAULT_FRAMES) {
+                // MediaFormat exposes no Opus frame duration: the encoder may still buffer the input up to its own frame duration
+                Ln.i("Audio read size: " + readFrames + " frames (" + AudioConfig.getDurationUs(readFrames) / 1000f + " ms), the Opus encoder may "
+                        + "still produce 20 ms packets");
+            }
+
+            if (!converter.isIdentity()) {
+                Ln.i("Audio converted to " + channels + " channel(s) at " + sampleRate + " Hz");
+            }
+
+            MediaFormat format = createFormat(codec.getMimeType(), bitRate, channels, sampleRate, readFrames, codecOptions);
             mediaCodec.setCallback(new EncoderCallback(), new Handler(mediaCodecThread.getLooper()));
             mediaCodec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
 
@@ -313,6 +352,9 @@ public final class AudioEncoder implements AsyncProcessor {
             if (capture != null) {
                 capture.stop();
             }
+            if (silenceDetector != null) {
+                Ln.d("Audio buffers suppressed on silence: " + silenceDetector.getSuppressedCount());
+            }
         }
     }
 
@@ -351,7 +393,7 @@ public final class AudioEncoder implements AsyncProcessor {
         @Override
         public void onInputBufferAvailable(MediaCodec codec, int index) {
             try {
-                inputTasks.put(new InputTask(index));
+                inputTasks.put(index);
             } catch (InterruptedException e) {
                 end();
             }
@@ -360,7 +402,7 @@ public final class AudioEncoder implements AsyncProcessor {
         @Override
         public void onOutputBufferAvailable(MediaCodec codec, int index, MediaCodec.BufferInfo bufferInfo) {
             try {
-                outputTasks.put(new OutputTask(index, bufferInfo));
+                outputTasks.put(index, bufferInfo.offset, bufferInfo.size, bufferInfo.presentationTimeUs, bufferInfo.flags);
             } catch (InterruptedException e) {
                 end();
             }
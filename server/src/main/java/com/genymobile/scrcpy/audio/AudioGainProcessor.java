@@ -0,0 +1,24 @@
+package com.genymobile.scrcpy.audio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Apply a constant gain (the result is clipped).
+ */
+public final class AudioGainProcessor implements AudioProcessor {
+
+    private final float gain;
+
+    public AudioGainProcessor(float gain) {
+        this.gain = gain;
+    }
+
+    @Override
+    public void process(ByteBuffer buffer, int offset, int size, long ptsUs) {
+        int end = offset + size;
+        for (int i = offset; i < end; i += AudioConfig.BYTES_PER_SAMPLE) {
+            int value = Math.round(buffer.getShort(i) * gain);
+            buffer.putShort(i, (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value)));
+        }
+    }
+}
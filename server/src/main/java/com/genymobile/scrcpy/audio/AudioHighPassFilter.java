@@ -0,0 +1,42 @@
+package com.genymobile.scrcpy.audio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * First-order high-pass filter, to remove the DC offset and the low-frequency rumble (typically from a microphone).
+ * <p>
+ * The filter state is kept per channel across buffers.
+ */
+public final class AudioHighPassFilter implements AudioProcessor {
+
+    private final float alpha;
+
+    private final float[] previousInput = new float[AudioConfig.CHANNELS];
+    private final float[] previousOutput = new float[AudioConfig.CHANNELS];
+
+    /**
+     * @param cutoffHz the cutoff frequency, in Hz
+     */
+    public AudioHighPassFilter(int cutoffHz) {
+        double rc = 1 / (2 * Math.PI * cutoffHz);
+        double dt = 1.0 / AudioConfig.SAMPLE_RATE;
+        alpha = (float) (rc / (rc + dt));
+    }
+
+    @Override
+    public void process(ByteBuffer buffer, int offset, int size, long ptsUs) {
+        int samples = size / AudioConfig.BYTES_PER_SAMPLE;
+        for (int i = 0; i < samples; ++i) {
+            int channel = i % AudioConfig.CHANNELS;
+            int index = offset + AudioConfig.BYTES_PER_SAMPLE * i;
+
+            float input = buffer.getShort(index);
+            float output = alpha * (previousOutput[channel] + input - previousInput[channel]);
+            previousInput[channel] = input;
+            previousOutput[channel] = output;
+
+            int value = Math.round(output);
+            buffer.putShort(index, (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value)));
+        }
+    }
+}
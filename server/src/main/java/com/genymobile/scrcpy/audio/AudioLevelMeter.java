@@ -0,0 +1,100 @@
+package com.genymobile.scrcpy.audio;
+
+import android.os.SystemClock;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Measure the peak and RMS levels of the captured PCM samples over windows, and report them periodically.
+ * <p>
+ * A window is reported once it covers the interval of captured audio and the interval has elapsed since the previous report. Otherwise (for
+ * example on a burst of buffers after a capture stall), the window is extended, so that the reports are rate limited.
+ */
+public final class AudioLevelMeter implements AudioProcessor {
+
+    public interface Listener {
+        /**
+         * Called on each window.
+         *
+         * @param ptsUs the PTS of the first buffer of the window
+         * @param peak  the peak absolute sample value (between 0 and 32768)
+         * @param rms   the RMS sample value (between 0 and 32768)
+         */
+        void onAudioLevel(long ptsUs, int peak, int rms);
+    }
+
+    private final long intervalMs;
+    private final Listener listener;
+
+    private long windowPtsUs;
+    private long windowDurationUs;
+    private int peak;
+    private long sumSquares;
+    private long sampleCount;
+
+    private long lastReportTimeMs = Long.MIN_VALUE / 2;
+
+    /**
+     * @param intervalMs the interval between reports
+     * @param listener   the listener to report the levels to
+     */
+    public AudioLevelMeter(long intervalMs, Listener listener) {
+        this.intervalMs = intervalMs;
+        this.listener = listener;
+    }
+
+    /**
+     * Process a buffer of captured 16-bit PCM samples.
+     *
+     * @param buffer the buffer (its position and limit are not used)
+     * @param offset the offset of the data in the buffer
+     * @param size   the size of the data, in bytes
+     * @param ptsUs  the PTS of the buffer
+     */
+    @Override
+    public void process(ByteBuffer buffer, int offset, int size, long ptsUs) {
+        process(buffer, offset, size, ptsUs, SystemClock.uptimeMillis());
+    }
+
+    void process(ByteBuffer buffer, int offset, int size, long ptsUs, long nowMs) {
+        int samples = size / AudioConfig.BYTES_PER_SAMPLE;
+        if (samples == 0) {
+            return;
+        }
+
+        if (sampleCount == 0) {
+            windowPtsUs = ptsUs;
+        }
+
+        int max = peak;
+        long sum = 0;
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.nativeOrder());
+        for (int i = 0; i < samples; ++i) {
+            int sample = buffer.getShort(offset + 2 * i);
+            int abs = sample < 0 ? -sample : sample;
+            if (abs > max) {
+                max = abs;
+            }
+            sum += sample * sample;
+        }
+        buffer.order(order);
+
+        peak = max;
+        sumSquares += sum;
+        sampleCount += samples;
+        windowDurationUs += AudioConfig.getDurationUs(samples / AudioConfig.CHANNELS);
+
+        if (windowDurationUs >= intervalMs * 1000 && nowMs - lastReportTimeMs >= intervalMs) {
+            int rms = (int) Math.round(Math.sqrt((double) sumSquares / sampleCount));
+            listener.onAudioLevel(windowPtsUs, peak, rms);
+            lastReportTimeMs = nowMs;
+
+            peak = 0;
+            sumSquares = 0;
+            sampleCount = 0;
+            windowDurationUs = 0;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.genymobile.scrcpy.audio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Peak limiter, to keep the level below a threshold without clipping.
+ * <p>
+ * The gain is reduced immediately when a frame would exceed the threshold (so the output never exceeds it), then recovers progressively over
+ * the release time. The same gain is applied to all the channels of a frame, to preserve the stereo image.
+ */
+public final class AudioLimiter implements AudioProcessor {
+
+    private static final double RELEASE_TIME_S = 0.05;
+
+    private final float threshold;
+    private final float releaseCoef;
+
+    private float gain = 1;
+
+    /**
+     * @param thresholdDb the threshold, in dBFS (negative or 0)
+     */
+    public AudioLimiter(int thresholdDb) {
+        threshold = (float) (Math.pow(10, thresholdDb / 20.0) * Short.MAX_VALUE);
+        releaseCoef = (float) (1 - Math.exp(-1 / (RELEASE_TIME_S * AudioConfig.SAMPLE_RATE)));
+    }
+
+    @Override
+    public void process(ByteBuffer buffer, int offset, int size, long ptsUs) {
+        int frameSize = AudioConfig.BYTES_PER_SAMPLE * AudioConfig.CHANNELS;
+        int end = offset + size / frameSize * frameSize;
+        for (int frame = offset; frame < end; frame += frameSize) {
+            int peak = 0;
+            for (int i = frame; i < frame + frameSize; i += AudioConfig.BYTES_PER_SAMPLE) {
+                peak = Math.max(peak, Math.abs(buffer.getShort(i)));
+            }
+
+            // Release towards unity gain, but never above the gain keeping this frame below the threshold
+            float targetGain = peak > threshold ? threshold / peak : 1;
+            gain = Math.min(targetGain, gain + (1 - gain) * releaseCoef);
+
+            if (gain < 1) {
+                for (int i = frame; i < frame + frameSize; i += AudioConfig.BYTES_PER_SAMPLE) {
+                    // Truncate towards 0, so that the rounding never exceeds the threshold
+                    buffer.putShort(i, (short) (buffer.getShort(i) * gain));
+                }
+            }
+        }
+    }
+
+    float getGain() {
+        return gain;
+    }
+}
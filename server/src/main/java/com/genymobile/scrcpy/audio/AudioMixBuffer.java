@@ -0,0 +1,193 @@
+package com.genymobile.scrcpy.audio;
+
+/**
+ * Timestamped FIFO of stereo PCM frames, mixed into the frames of another source aligned by timestamp.
+ * <p>
+ * The producer writes the frames of a source with their PTS; gaps in the timestamps are filled with silence, so that the frames in the buffer
+ * are contiguous in time. The consumer mixes the frames matching the timestamps of its own chunks: older frames are dropped, and frames
+ * starting later than a chunk are mixed at the corresponding offset.
+ * <p>
+ * If the buffer is full (the consumer is stalled), the oldest frames are dropped.
+ */
+final class AudioMixBuffer {
+
+    // Timestamp differences below this tolerance are not corrected (to absorb the jitter of the two sources)
+    private static final long ALIGN_TOLERANCE_US = 5000;
+
+    private final short[] samples; // interleaved stereo ring buffer
+    private final int capacity; // in frames
+
+    private int head; // in frames
+    private int count; // in frames
+
+    // The PTS of the head is basePtsUs + the duration of baseFrames (computed from a frame count to avoid accumulating rounding errors)
+    private long basePtsUs;
+    private long baseFrames;
+
+    private long droppedFrames;
+
+    /**
+     * @param capacity the capacity, in frames
+     */
+    AudioMixBuffer(int capacity) {
+        this.capacity = capacity;
+        samples = new short[capacity * AudioConfig.CHANNELS];
+    }
+
+    private static long framesToUs(long frames) {
+        return frames * 1000000 / AudioConfig.SAMPLE_RATE;
+    }
+
+    private static int usToFrames(long us) {
+        return (int) (us * AudioConfig.SAMPLE_RATE / 1000000);
+    }
+
+    private long getHeadPtsUs() {
+        return basePtsUs + framesToUs(baseFrames);
+    }
+
+    private void reset(long ptsUs) {
+        head = 0;
+        count = 0;
+        basePtsUs = ptsUs;
+        baseFrames = 0;
+    }
+
+    private void consume(int frames) {
+        head = (head + frames) % capacity;
+        count -= frames;
+        baseFrames += frames;
+    }
+
+    private void append(short[] src, int frames, boolean silence) {
+        if (frames > capacity) {
+            // Only the most recent frames fit
+            if (!silence) {
+                int skip = frames - capacity;
+                System.arraycopy(src, skip * AudioConfig.CHANNELS, src, 0, capacity * AudioConfig.CHANNELS);
+            }
+            droppedFrames += frames - capacity;
+            consume(count);
+            baseFrames += frames - capacity;
+            frames = capacity;
+        }
+
+        int overflow = count + frames - capacity;
+        if (overflow > 0) {
+            // Drop the oldest frames
+            consume(overflow);
+            droppedFrames += overflow;
+        }
+
+        int tail = (head + count) % capacity;
+        for (int i = 0; i < frames; ++i) {
+            int index = ((tail + i) % capacity) * AudioConfig.CHANNELS;
+            samples[index] = silence ? 0 : src[i * AudioConfig.CHANNELS];
+            samples[index + 1] = silence ? 0 : src[i * AudioConfig.CHANNELS + 1];
+        }
+        count += frames;
+    }
+
+    /**
+     * Write frames of the source.
+     *
+     * @param src    the interleaved stereo samples (may be modified)
+     * @param frames the number of frames
+     * @param ptsUs  the PTS of the first frame
+     */
+    synchronized void write(short[] src, int frames, long ptsUs) {
+        if (count == 0) {
+            reset(ptsUs);
+        } else {
+            long gapUs = ptsUs - (getHeadPtsUs() + framesToUs(count));
+            if (gapUs > ALIGN_TOLERANCE_US) {
+                int gapFrames = usToFrames(gapUs);
+                if (gapFrames >= capacity) {
+                    // Nothing to keep
+                    reset(ptsUs);
+                } else {
+                    // The source produced nothing during the gap (it was silent)
+                    append(null, gapFrames, true);
+                }
+            }
+            // A small overlap is ignored: the frames are appended contiguously
+        }
+
+        append(src, frames, false);
+    }
+
+    /**
+     * Mix the buffered frames matching a chunk of the other source into it.
+     *
+     * @param dst    the interleaved stereo samples of the chunk
+     * @param frames the number of frames of the chunk
+     * @param ptsUs  the PTS of the first frame of the chunk
+     * @param gain   the gain to apply to the buffered frames
+     * @return the number of frames mixed
+     */
+    synchronized int mixInto(short[] dst, int frames, long ptsUs, float gain) {
+        if (count == 0) {
+            return 0;
+        }
+
+        long lateUs = ptsUs - getHeadPtsUs();
+        if (lateUs > ALIGN_TOLERANCE_US) {
+            // Drop the frames older than the chunk
+            consume(Math.min(count, usToFrames(lateUs)));
+            if (count == 0) {
+                return 0;
+            }
+        }
+
+        int offset = 0;
+        long earlyUs = getHeadPtsUs() - ptsUs;
+        if (earlyUs > ALIGN_TOLERANCE_US) {
+            // The buffered frames start during the chunk
+            offset = usToFrames(earlyUs);
+            if (offset >= frames) {
+                return 0;
+            }
+        }
+
+        int n = Math.min(count, frames - offset);
+        for (int i = 0; i < n; ++i) {
+            int index = ((head + i) % capacity) * AudioConfig.CHANNELS;
+            int d = (offset + i) * AudioConfig.CHANNELS;
+            dst[d] = clip(dst[d] + Math.round(samples[index] * gain));
+            dst[d + 1] = clip(dst[d + 1] + Math.round(samples[index + 1] * gain));
+        }
+        consume(n);
+        return n;
+    }
+
+    synchronized int getCount() {
+        return count;
+    }
+
+    synchronized long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    private static short clip(int value) {
+        if (value > Short.MAX_VALUE) {
+            return Short.MAX_VALUE;
+        }
+        if (value < Short.MIN_VALUE) {
+            return Short.MIN_VALUE;
+        }
+        return (short) value;
+    }
+
+    /**
+     * Apply a gain to samples, in place.
+     *
+     * @param samples the samples
+     * @param count   the number of samples
+     * @param gain    the gain
+     */
+    static void applyGain(short[] samples, int count, float gain) {
+        for (int i = 0; i < count; ++i) {
+            samples[i] = clip(Math.round(samples[i] * gain));
+        }
+    }
+}
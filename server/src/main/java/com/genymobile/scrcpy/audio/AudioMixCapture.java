@@ -0,0 +1,156 @@
+package com.genymobile.scrcpy.audio;
+
+import com.genymobile.scrcpy.AndroidVersions;
+import com.genymobile.scrcpy.util.Ln;
+
+import android.annotation.TargetApi;
+import android.media.MediaCodec;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Capture the microphone and the audio playback concurrently, and mix them into a single stream.
+ * <p>
+ * The microphone drives the stream: it is read from the caller thread, since it produces samples continuously, while the playback produces
+ * nothing on silence. The playback is read from its own thread into an {@link AudioMixBuffer}, and mixed into each microphone chunk according
+ * to the timestamps (both sources are timestamped on the monotonic clock).
+ */
+public final class AudioMixCapture implements AudioCapture {
+
+    // 500 ms
+    private static final int PLAYBACK_BUFFER_FRAMES = AudioConfig.SAMPLE_RATE / 2;
+
+    private final AudioCapture mic;
+    private final AudioCapture playback;
+    private final float micGain;
+    private final float playbackGain;
+    private final int readSize;
+
+    private final AudioMixBuffer playbackBuffer = new AudioMixBuffer(PLAYBACK_BUFFER_FRAMES);
+    private short[] micSamples;
+
+    private Thread playbackThread;
+    // Set if the playback could not be read, so that the mixed capture fails (and may be restarted) rather than silently losing it
+    private volatile boolean playbackFailed;
+
+    /**
+     * @param mic          the microphone capture
+     * @param playback     the playback capture
+     * @param micGain      the gain applied to the microphone
+     * @param playbackGain the gain applied to the playback
+     * @param readSize     the read size of both captures, in bytes
+     */
+    public AudioMixCapture(AudioCapture mic, AudioCapture playback, float micGain, float playbackGain, int readSize) {
+        this.mic = mic;
+        this.playback = playback;
+        this.micGain = micGain;
+        this.playbackGain = playbackGain;
+        this.readSize = readSize;
+    }
+
+    @Override
+    public void checkCompatibility() throws AudioCaptureException {
+        mic.checkCompatibility();
+        playback.checkCompatibility();
+    }
+
+    @Override
+    public void start() throws AudioCaptureException {
+        micSamples = new short[readSize / AudioConfig.BYTES_PER_SAMPLE];
+        playbackFailed = false;
+
+        mic.start();
+        try {
+            playback.start();
+        } catch (AudioCaptureException e) {
+            mic.stop();
+            throw e;
+        }
+
+        playbackThread = new Thread(this::readPlayback, "audio-playback");
+        playbackThread.start();
+    }
+
+    @TargetApi(AndroidVersions.API_24_ANDROID_7_0)
+    private void readPlayback() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(readSize).order(ByteOrder.nativeOrder());
+        short[] samples = new short[readSize / AudioConfig.BYTES_PER_SAMPLE];
+        MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+
+        while (!Thread.currentThread().isInterrupted()) {
+            int r = playback.read(buffer, bufferInfo);
+            if (r <= 0) {
+                // The recorder is released on stop
+                if (!Thread.currentThread().isInterrupted()) {
+                    Ln.w("Could not read audio playback: " + r);
+                    playbackFailed = true;
+                }
+                break;
+            }
+
+            int sampleCount = r / AudioConfig.BYTES_PER_SAMPLE;
+            for (int i = 0; i < sampleCount; ++i) {
+                samples[i] = buffer.getShort(2 * i);
+            }
+            playbackBuffer.write(samples, sampleCount / AudioConfig.CHANNELS, bufferInfo.presentationTimeUs);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (playbackThread != null) {
+            playbackThread.interrupt();
+        }
+        // Unblock the playback thread
+        playback.stop();
+        if (playbackThread != null) {
+            try {
+                playbackThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            playbackThread = null;
+        }
+        mic.stop();
+
+        long dropped = playbackBuffer.getDroppedFrames();
+        if (dropped > 0) {
+            Ln.d("Audio playback frames dropped by the mixer: " + dropped);
+        }
+    }
+
+    @Override
+    @TargetApi(AndroidVersions.API_24_ANDROID_7_0)
+    public int read(ByteBuffer outDirectBuffer, MediaCodec.BufferInfo outBufferInfo) {
+        if (playbackFailed) {
+            return -1;
+        }
+
+        int r = mic.read(outDirectBuffer, outBufferInfo);
+        if (r <= 0) {
+            return r;
+        }
+
+        int offset = outBufferInfo.offset;
+        int sampleCount = r / AudioConfig.BYTES_PER_SAMPLE;
+
+        ByteOrder order = outDirectBuffer.order();
+        outDirectBuffer.order(ByteOrder.nativeOrder());
+        for (int i = 0; i < sampleCount; ++i) {
+            micSamples[i] = outDirectBuffer.getShort(offset + 2 * i);
+        }
+
+        if (micGain != 1) {
+            AudioMixBuffer.applyGain(micSamples, sampleCount, micGain);
+        }
+        playbackBuffer.mixInto(micSamples, sampleCount / AudioConfig.CHANNELS, outBufferInfo.presentationTimeUs, playbackGain);
+
+        for (int i = 0; i < sampleCount; ++i) {
+            outDirectBuffer.putShort(offset + 2 * i, micSamples[i]);
+        }
+        outDirectBuffer.order(order);
+
+        return r;
+    }
+}
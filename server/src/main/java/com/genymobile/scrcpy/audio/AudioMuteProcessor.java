@@ -0,0 +1,37 @@
+package com.genymobile.scrcpy.audio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Replace the samples by silence while muted.
+ * <p>
+ * The stream keeps its packets (and its timeline); the mute state may be changed from any thread.
+ */
+public final class AudioMuteProcessor implements AudioProcessor {
+
+    private volatile boolean muted;
+
+    public AudioMuteProcessor(boolean muted) {
+        this.muted = muted;
+    }
+
+    public void setMuted(boolean muted) {
+        this.muted = muted;
+    }
+
+    public boolean isMuted() {
+        return muted;
+    }
+
+    @Override
+    public void process(ByteBuffer buffer, int offset, int size, long ptsUs) {
+        if (!muted) {
+            return;
+        }
+
+        int end = offset + size;
+        for (int i = offset; i < end; ++i) {
+            buffer.put(i, (byte) 0);
+        }
+    }
+}
@@ -20,12 +20,16 @@ import java.nio.ByteBuffer;
 public final class AudioPlaybackCapture implements AudioCapture {
 
     private final boolean keepPlayingOnDevice;
+    private final int readSize;
+    private final AudioTimingMonitor timingMonitor;
 
     private AudioRecord recorder;
     private AudioRecordReader reader;
 
-    public AudioPlaybackCapture(boolean keepPlayingOnDevice) {
+    public AudioPlaybackCapture(boolean keepPlayingOnDevice, int readSize, AudioTimingMonitor timingMonitor) {
         this.keepPlayingOnDevice = keepPlayingOnDevice;
+        this.readSize = readSize;
+        this.timingMonitor = timingMonitor;
     }
 
     @SuppressLint("PrivateApi")
@@ -119,7 +123,7 @@ public final class AudioPlaybackCapture implements AudioCapture {
     public void start() throws AudioCaptureException {
         recorder = createAudioRecord();
         recorder.startRecording();
-        reader = new AudioRecordReader(recorder);
+        reader = new AudioRecordReader(recorder, readSize, timingMonitor);
     }
 
     @Override
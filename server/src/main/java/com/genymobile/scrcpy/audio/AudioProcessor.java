@@ -0,0 +1,20 @@
+package com.genymobile.scrcpy.audio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Process captured PCM samples in place, between the capture and its consumer (the encoder or the raw recorder).
+ * <p>
+ * The samples are 16-bit interleaved stereo at {@link AudioConfig#SAMPLE_RATE}, as captured. Implementations must not allocate per buffer.
+ */
+public interface AudioProcessor {
+    /**
+     * Process a buffer of samples in place.
+     *
+     * @param buffer the buffer, in native byte order (its position and limit are not used)
+     * @param offset the offset of the data in the buffer
+     * @param size   the size of the data, in bytes
+     * @param ptsUs  the PTS of the buffer
+     */
+    void process(ByteBuffer buffer, int offset, int size, long ptsUs);
+}
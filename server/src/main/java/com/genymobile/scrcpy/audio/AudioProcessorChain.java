@@ -0,0 +1,63 @@
+package com.genymobile.scrcpy.audio;
+
+import com.genymobile.scrcpy.Options;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Apply a sequence of processors to each captured buffer.
+ */
+public final class AudioProcessorChain implements AudioProcessor {
+
+    private final AudioProcessor[] processors;
+
+    public AudioProcessorChain(List<AudioProcessor> processors) {
+        this.processors = processors.toArray(new AudioProcessor[0]);
+    }
+
+    /**
+     * Create the processors configured by the options.
+     *
+     * @param options    the options
+     * @param levelMeter the meter of the processed levels ({@code null} to disable)
+     * @return the processor chain, or {@code null} if there is nothing to process
+     */
+    public static AudioProcessorChain create(Options options, AudioLevelMeter levelMeter) {
+        List<AudioProcessor> processors = new ArrayList<>();
+
+        int highPass = options.getAudioHighPass();
+        if (highPass != 0) {
+            processors.add(new AudioHighPassFilter(highPass));
+        }
+        float gain = options.getAudioGain();
+        if (gain != 1) {
+            processors.add(new AudioGainProcessor(gain));
+        }
+        int limiter = options.getAudioLimiter();
+        if (limiter != 0) {
+            processors.add(new AudioLimiter(limiter));
+        }
+        if (options.getAudioMute()) {
+            processors.add(new AudioMuteProcessor(true));
+        }
+        if (levelMeter != null) {
+            // Measure the levels actually streamed
+            processors.add(levelMeter);
+        }
+
+        return processors.isEmpty() ? null : new AudioProcessorChain(processors);
+    }
+
+    @Override
+    public void process(ByteBuffer buffer, int offset, int size, long ptsUs) {
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.nativeOrder());
+        for (AudioProcessor processor : processors) {
+            processor.process(buffer, offset, size, ptsUs);
+        }
+        buffer.order(order);
+    }
+}
@@ -2,6 +2,7 @@ package com.genymobile.scrcpy.audio;
 
 import com.genymobile.scrcpy.AndroidVersions;
 import com.genymobile.scrcpy.AsyncProcessor;
+import com.genymobile.scrcpy.Options;
 import com.genymobile.scrcpy.device.Streamer;
 import com.genymobile.scrcpy.util.IO;
 import com.genymobile.scrcpy.util.Ln;
@@ -16,12 +17,36 @@ public final class AudioRawRecorder implements AsyncProcessor {
 
     private final AudioCapture capture;
     private final Streamer streamer;
+    private final int readSize;
+    private final SilenceDetector silenceDetector;
+    private final int batchReads;
+    private final AudioProcessor processor;
 
     private Thread thread;
 
-    public AudioRawRecorder(AudioCapture capture, Streamer streamer) {
+    // Current batch
+    private int batchCount;
+    private int batchSize;
+    private long batchPts;
+    private long batchDurationUs;
+
+    /**
+     * @param capture   the audio capture
+     * @param streamer  the streamer to write the packets to
+     * @param options   the options
+     * @param processor the processor of the captured samples ({@code null} to disable)
+     */
+    public AudioRawRecorder(AudioCapture capture, Streamer streamer, Options options, AudioProcessor processor) {
         this.capture = capture;
         this.streamer = streamer;
+        this.processor = processor;
+        this.readSize = AudioConfig.getReadSize(options.getAudioReadSize());
+        int silenceThreshold = options.getAudioSilenceThreshold();
+        this.silenceDetector = silenceThreshold != 0 ? new SilenceDetector(silenceThreshold) : null;
+
+        // Batch as many reads as the latency budget allows (at least 1)
+        long readDurationUs = AudioConfig.getDurationUs(options.getAudioReadSize());
+        this.batchReads = (int) Math.max(1, options.getAudioRawBatch() * 1000L / readDurationUs);
     }
 
     private void record() throws IOException, AudioCaptureException {
@@ -31,9 +56,22 @@ public final class AudioRawRecorder implements AsyncProcessor {
             return;
         }
 
-        final ByteBuffer buffer = ByteBuffer.allocateDirect(AudioConfig.MAX_READ_SIZE);
+        // The reads of a batch are written contiguously into a single buffer, through a slice per read (AudioRecord writes at the start of the
+        // buffer it is given)
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(readSize * batchReads);
+        final ByteBuffer[] slices = new ByteBuffer[batchReads];
+        for (int i = 0; i < batchReads; ++i) {
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(i * readSize);
+            slice.limit((i + 1) * readSize);
+            slices[i] = slice.slice();
+        }
         final MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
 
+        if (batchReads > 1) {
+            Ln.i("Raw audio: " + batchReads + " reads per packet");
+        }
+
         try {
             try {
                 capture.start();
@@ -45,14 +83,45 @@ public final class AudioRawRecorder implements AsyncProcessor {
 
             streamer.writeAudioHeader();
             while (!Thread.currentThread().isInterrupted()) {
-                buffer.position(0);
-                int r = capture.read(buffer, bufferInfo);
+                ByteBuffer slice = slices[batchCount];
+                slice.clear();
+                int r = capture.read(slice, bufferInfo);
                 if (r < 0) {
                     throw new IOException("Could not read audio: " + r);
                 }
-                buffer.limit(r);
+                long pts = bufferInfo.presentationTimeUs;
+                long durationUs = AudioConfig.getDurationUs(r / AudioConfig.getReadSize(1));
+
+                if (processor != null) {
+                    processor.process(slice, 0, r, pts);
+                }
+
+                if (silenceDetector != null && silenceDetector.process(slice, 0, r, durationUs)) {
+                    // Do not send silent packets, the next packet keeps its capture timestamp
+                    flushBatch(buffer, bufferInfo);
+                    continue;
+                }
+
+                if (batchCount > 0 && Math.abs(pts - (batchPts + batchDurationUs)) > durationUs / 2) {
+                    // Timestamp discontinuity: the PTS of the batch would be wrong for this read, so it starts a new batch
+                    flushBatch(buffer, bufferInfo);
+                    slice.limit(r);
+                    slices[0].clear();
+                    slices[0].put(slice);
+                }
 
-                streamer.writePacket(buffer, bufferInfo);
+                if (batchCount == 0) {
+                    batchPts = pts;
+                    batchDurationUs = 0;
+                }
+                ++batchCount;
+                batchSize += r;
+                batchDurationUs += durationUs;
+
+                // A short read would leave a gap in the buffer
+                if (batchCount == batchReads || r < readSize) {
+                    flushBatch(buffer, bufferInfo);
+                }
             }
         } catch (IOException e) {
             // Broken pipe is expected on close, because the socket is closed by the client
@@ -61,7 +130,24 @@ public final class AudioRawRecorder implements AsyncProcessor {
             }
         } finally {
             capture.stop();
+            if (silenceDetector != null) {
+                Ln.d("Audio packets suppressed on silence: " + silenceDetector.getSuppressedCount());
+            }
+        }
+    }
+
+    private void flushBatch(ByteBuffer buffer, MediaCodec.BufferInfo bufferInfo) throws IOException {
+        if (batchCount == 0) {
+            return;
         }
+
+        buffer.position(0);
+        buffer.limit(batchSize);
+        bufferInfo.set(0, batchSize, batchPts, 0);
+        streamer.writePacket(buffer, bufferInfo);
+
+        batchCount = 0;
+        batchSize = 0;
     }
 
     @Override
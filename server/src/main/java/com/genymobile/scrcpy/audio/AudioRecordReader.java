@@ -16,29 +16,41 @@ public class AudioRecordReader {
             (1000000 + AudioConfig.SAMPLE_RATE - 1) / AudioConfig.SAMPLE_RATE; // 1 sample in microseconds (used for fixing PTS)
 
     private final AudioRecord recorder;
+    private final int readSize;
+    private final AudioTimingMonitor timingMonitor;
 
     private final AudioTimestamp timestamp = new AudioTimestamp();
     private long previousRecorderTimestamp = -1;
     private long previousPts = 0;
     private long nextPts = 0;
 
-    public AudioRecordReader(AudioRecord recorder) {
+    /**
+     * @param recorder      the recorder
+     * @param readSize      the maximum number of bytes per read
+     * @param timingMonitor the monitor to notify of the timestamps
+     */
+    public AudioRecordReader(AudioRecord recorder, int readSize, AudioTimingMonitor timingMonitor) {
         this.recorder = recorder;
+        this.readSize = readSize;
+        this.timingMonitor = timingMonitor;
     }
 
     @TargetApi(AndroidVersions.API_24_ANDROID_7_0)
     public int read(ByteBuffer outDirectBuffer, MediaCodec.BufferInfo outBufferInfo) {
-        int r = recorder.read(outDirectBuffer, AudioConfig.MAX_READ_SIZE);
+        int r = recorder.read(outDirectBuffer, readSize);
         if (r <= 0) {
             return r;
         }
 
         long pts;
+        boolean estimated;
+        boolean clamped = false;
 
         int ret = recorder.getTimestamp(timestamp, AudioTimestamp.TIMEBASE_MONOTONIC);
         if (ret == AudioRecord.SUCCESS && timestamp.nanoTime != previousRecorderTimestamp) {
             pts = timestamp.nanoTime / 1000;
             previousRecorderTimestamp = timestamp.nanoTime;
+            estimated = false;
         } else {
             if (nextPts == 0) {
                 Ln.w("Could not get initial audio timestamp");
@@ -46,6 +58,7 @@ public class AudioRecordReader {
             }
             // compute from previous timestamp and packet size
             pts = nextPts;
+            estimated = true;
         }
 
         long durationUs = r * 1000000L / (AudioConfig.CHANNELS * AudioConfig.BYTES_PER_SAMPLE * AudioConfig.SAMPLE_RATE);
@@ -58,9 +71,12 @@ public class AudioRecordReader {
             //
             // Therefore, the property that PTS are monotonically increasing is no guaranteed in corner cases, so enforce it.
             pts = previousPts + ONE_SAMPLE_US;
+            clamped = true;
         }
         previousPts = pts;
 
+        timingMonitor.onPacket(pts, durationUs, estimated, clamped, System.nanoTime() / 1000);
+
         outBufferInfo.set(0, r, pts, 0);
         return r;
     }
@@ -0,0 +1,92 @@
+package com.genymobile.scrcpy.audio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Generate silent buffers continuing the timeline of a capture, while the capture is interrupted.
+ * <p>
+ * The silent buffers are timestamped contiguously after the last captured buffer, and are due in real time (a buffer is available once its
+ * end is reached, like a captured one). When the capture resumes, its timestamps are kept monotonic with the inserted silence.
+ */
+final class AudioSilenceFiller {
+
+    private final int readSize;
+    private final long readDurationUs;
+
+    private long nextPtsUs; // 0 if unknown
+    private boolean filling;
+    private long filledCount;
+
+    /**
+     * @param readSize the size of the silent buffers, in bytes
+     */
+    AudioSilenceFiller(int readSize) {
+        this.readSize = readSize;
+        this.readDurationUs = AudioConfig.getDurationUs(readSize / AudioConfig.getReadSize(1));
+    }
+
+    /**
+     * Notify a captured buffer.
+     *
+     * @param ptsUs the PTS of the buffer
+     * @param size  the size of the buffer, in bytes
+     * @return the PTS to use for the buffer
+     */
+    long onPacket(long ptsUs, int size) {
+        if (filling && ptsUs < nextPtsUs) {
+            // The silence inserted up to now overlaps the first buffers of the restarted capture
+            ptsUs = nextPtsUs;
+        }
+        filling = false;
+        nextPtsUs = ptsUs + AudioConfig.getDurationUs(size / AudioConfig.getReadSize(1));
+        return ptsUs;
+    }
+
+    /**
+     * Start filling the timeline with silence (the capture is interrupted).
+     *
+     * @param nowUs the current monotonic time
+     */
+    void startFilling(long nowUs) {
+        if (nextPtsUs == 0) {
+            // Nothing captured yet
+            nextPtsUs = nowUs;
+        }
+        filling = true;
+    }
+
+    /**
+     * Return the delay before the next silent buffer is due.
+     *
+     * @param nowUs the current monotonic time
+     * @return the delay, in microseconds (0 if it is already due)
+     */
+    long getDelayUs(long nowUs) {
+        return Math.max(0, nextPtsUs + readDurationUs - nowUs);
+    }
+
+    /**
+     * Write the next silent buffer of {@link #getReadSize()} bytes, at offset 0.
+     *
+     * @param outDirectBuffer the target buffer
+     * @return the PTS of the silent buffer
+     */
+    long fill(ByteBuffer outDirectBuffer) {
+        assert filling;
+        for (int i = 0; i < readSize; ++i) {
+            outDirectBuffer.put(i, (byte) 0);
+        }
+        long ptsUs = nextPtsUs;
+        nextPtsUs += readDurationUs;
+        ++filledCount;
+        return ptsUs;
+    }
+
+    int getReadSize() {
+        return readSize;
+    }
+
+    long getFilledCount() {
+        return filledCount;
+    }
+}
@@ -8,6 +8,7 @@ public enum AudioSource {
     OUTPUT("output", MediaRecorder.AudioSource.REMOTE_SUBMIX),
     MIC("mic", MediaRecorder.AudioSource.MIC),
     PLAYBACK("playback", -1),
+    PLAYBACK_MIC("playback-mic", -1), // mix of the playback and the microphone
     MIC_UNPROCESSED("mic-unprocessed", MediaRecorder.AudioSource.UNPROCESSED),
     MIC_CAMCORDER("mic-camcorder", MediaRecorder.AudioSource.CAMCORDER),
     MIC_VOICE_RECOGNITION("mic-voice-recognition", MediaRecorder.AudioSource.VOICE_RECOGNITION),
@@ -26,7 +27,7 @@ public enum AudioSource {
     }
 
     public boolean isDirect() {
-        return this != PLAYBACK;
+        return this != PLAYBACK && this != PLAYBACK_MIC;
     }
 
     public int getDirectAudioSource() {
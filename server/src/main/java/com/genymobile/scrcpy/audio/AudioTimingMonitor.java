@@ -0,0 +1,191 @@
+package com.genymobile.scrcpy.audio;
+
+import com.genymobile.scrcpy.util.Ln;
+
+/**
+ * Statistics about the audio timestamps, to diagnose A/V desynchronization.
+ * <p>
+ * It tracks:
+ * <ul>
+ *     <li>the timestamp source of each packet: the recorder ({@code AudioRecord.getTimestamp()}) or an estimation from the previous packet;</li>
+ *     <li>the timestamps clamped to keep them monotonic;</li>
+ *     <li>the jitter: the difference between the PTS delta of successive packets and the duration of the previous packet;</li>
+ *     <li>the drift of the audio clock: the difference between the elapsed PTS and the elapsed {@code System.nanoTime()} since the first
+ *     packet;</li>
+ *     <li>the timestamps rewritten by the encoder (see {@code AudioEncoder.fixTimestamp()}).</li>
+ * </ul>
+ * The stats are logged periodically (at info level if some timestamps were estimated or clamped during the interval, at debug level
+ * otherwise).
+ * <p>
+ * The methods may be called from any thread.
+ */
+public final class AudioTimingMonitor {
+
+    private static final long LOG_INTERVAL_US = 10_000_000;
+
+    private final String label;
+
+    // Since the first packet
+    private long firstPtsUs = -1;
+    private long firstNowUs;
+    private long driftUs;
+    private long totalPackets;
+    private long totalEstimated;
+    private long totalClamped;
+
+    // Since the start of the current interval
+    private long intervalStartUs;
+    private int packets;
+    private int estimated;
+    private int clamped;
+    private int jitterSamples;
+    private long jitterSumUs;
+    private long maxJitterUs;
+    private int rewritten;
+    private long rewriteSumUs;
+
+    private long previousPtsUs;
+    private long previousDurationUs;
+
+    public AudioTimingMonitor() {
+        this(null);
+    }
+
+    /**
+     * @param label the label of the logged stats, to distinguish a secondary capture from the stream (may be {@code null})
+     */
+    public AudioTimingMonitor(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Account a packet read from the recorder.
+     *
+     * @param ptsUs      the final PTS of the packet
+     * @param durationUs the duration of the packet
+     * @param estimated  {@code true} if the PTS was estimated from the previous packet, {@code false} if it was provided by the recorder
+     * @param clamped    {@code true} if the PTS was increased to keep the timestamps monotonic
+     * @param nowUs      the current time ({@code System.nanoTime() / 1000})
+     */
+    public void onPacket(long ptsUs, long durationUs, boolean estimated, boolean clamped, long nowUs) {
+        String stats = null;
+        boolean anomalies = false;
+
+        synchronized (this) {
+            if (firstPtsUs == -1) {
+                firstPtsUs = ptsUs;
+                firstNowUs = nowUs;
+                intervalStartUs = nowUs;
+            } else {
+                long jitterUs = Math.abs(ptsUs - previousPtsUs - previousDurationUs);
+                ++jitterSamples;
+                jitterSumUs += jitterUs;
+                maxJitterUs = Math.max(maxJitterUs, jitterUs);
+            }
+
+            driftUs = (ptsUs - firstPtsUs) - (nowUs - firstNowUs);
+            previousPtsUs = ptsUs;
+            previousDurationUs = durationUs;
+
+            ++packets;
+            ++totalPackets;
+            if (estimated) {
+                ++this.estimated;
+                ++totalEstimated;
+            }
+            if (clamped) {
+                ++this.clamped;
+                ++totalClamped;
+            }
+
+            if (nowUs - intervalStartUs >= LOG_INTERVAL_US) {
+                anomalies = this.estimated > 0 || this.clamped > 0;
+                stats = buildIntervalStats(nowUs);
+                resetInterval(nowUs);
+            }
+        }
+
+        if (stats != null) {
+            if (anomalies) {
+                Ln.i(stats);
+            } else {
+                Ln.d(stats);
+            }
+        }
+    }
+
+    /**
+     * Account a PTS rewritten by the encoder.
+     *
+     * @param originalPtsUs  the PTS produced by the encoder
+     * @param rewrittenPtsUs the PTS actually sent
+     */
+    public synchronized void onPtsRewritten(long originalPtsUs, long rewrittenPtsUs) {
+        ++rewritten;
+        rewriteSumUs += rewrittenPtsUs - originalPtsUs;
+    }
+
+    synchronized String buildIntervalStats(long nowUs) {
+        long elapsedUs = nowUs - firstNowUs;
+        StringBuilder builder = new StringBuilder("Audio timing");
+        if (label != null) {
+            builder.append(" (").append(label).append(')');
+        }
+        builder.append(": ");
+        builder.append(packets).append(" packets");
+        builder.append(", estimated PTS: ").append(estimated);
+        builder.append(", clamped PTS: ").append(clamped);
+        long avgJitterUs = jitterSamples > 0 ? jitterSumUs / jitterSamples : 0;
+        builder.append(", jitter avg/max: ").append(avgJitterUs).append('/').append(maxJitterUs).append(" us");
+        builder.append(", drift: ").append(driftUs).append(" us");
+        if (elapsedUs > 0) {
+            builder.append(" (").append(driftUs * 1_000_000 / elapsedUs).append(" ppm)");
+        }
+        if (rewritten > 0) {
+            builder.append(", rewritten PTS: ").append(rewritten).append(" (avg correction ").append(rewriteSumUs / rewritten).append(" us)");
+        }
+        return builder.toString();
+    }
+
+    private void resetInterval(long nowUs) {
+        intervalStartUs = nowUs;
+        packets = 0;
+        estimated = 0;
+        clamped = 0;
+        jitterSamples = 0;
+        jitterSumUs = 0;
+        maxJitterUs = 0;
+        rewritten = 0;
+        rewriteSumUs = 0;
+    }
+
+    public synchronized long getPacketCount() {
+        return totalPackets;
+    }
+
+    public synchronized long getEstimatedCount() {
+        return totalEstimated;
+    }
+
+    public synchronized long getClampedCount() {
+        return totalClamped;
+    }
+
+    /**
+     * Return the drift of the audio clock relative to the system monotonic clock since the first packet.
+     *
+     * @return the drift, in microseconds (positive if the audio timestamps advance faster than the system clock)
+     */
+    public synchronized long getDriftUs() {
+        return driftUs;
+    }
+
+    /**
+     * Return the maximum jitter during the current interval.
+     *
+     * @return the jitter, in microseconds
+     */
+    public synchronized long getMaxJitterUs() {
+        return maxJitterUs;
+    }
+}
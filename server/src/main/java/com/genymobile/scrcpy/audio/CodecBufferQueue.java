@@ -0,0 +1,112 @@
+package com.genymobile.scrcpy.audio;
+
+/**
+ * Blocking FIFO queue of MediaCodec buffers (index and buffer info), without allocation per buffer.
+ * <p>
+ * The entries are stored in parallel primitive arrays used as a ring buffer. {@link #put(int, int, int, long, int)} blocks while the queue is
+ * full, {@link #take()} blocks while it is empty.
+ * <p>
+ * There may be several producers, but a single consumer: the buffer info of the last taken entry is only accessible from the consumer thread.
+ */
+final class CodecBufferQueue {
+
+    private final int[] indexes;
+    private final int[] offsets;
+    private final int[] sizes;
+    private final long[] ptsUs;
+    private final int[] flags;
+
+    private int head; // position of the next entry to take
+    private int count;
+
+    // Buffer info of the last taken entry (accessed by the consumer thread only)
+    private int takenOffset;
+    private int takenSize;
+    private long takenPtsUs;
+    private int takenFlags;
+
+    CodecBufferQueue(int capacity) {
+        indexes = new int[capacity];
+        offsets = new int[capacity];
+        sizes = new int[capacity];
+        ptsUs = new long[capacity];
+        flags = new int[capacity];
+    }
+
+    /**
+     * Add a buffer without buffer info (an input buffer).
+     *
+     * @param index the buffer index
+     */
+    void put(int index) throws InterruptedException {
+        put(index, 0, 0, 0, 0);
+    }
+
+    /**
+     * Add a buffer, waiting for space to become available if the queue is full.
+     *
+     * @param index  the buffer index
+     * @param offset the offset of the data in the buffer
+     * @param size   the size of the data
+     * @param ptsUs  the presentation timestamp, in microseconds
+     * @param flags  the buffer flags
+     */
+    synchronized void put(int index, int offset, int size, long ptsUs, int flags) throws InterruptedException {
+        while (count == indexes.length) {
+            wait();
+        }
+
+        int tail = (head + count) % indexes.length;
+        indexes[tail] = index;
+        offsets[tail] = offset;
+        sizes[tail] = size;
+        this.ptsUs[tail] = ptsUs;
+        this.flags[tail] = flags;
+        ++count;
+        notifyAll();
+    }
+
+    /**
+     * Remove the oldest buffer, waiting for one to become available if the queue is empty.
+     * <p>
+     * Its buffer info is then available from {@link #getOffset()}, {@link #getSize()}, {@link #getPtsUs()} and {@link #getFlags()}, until the
+     * next call.
+     *
+     * @return the buffer index
+     */
+    synchronized int take() throws InterruptedException {
+        while (count == 0) {
+            wait();
+        }
+
+        int index = indexes[head];
+        takenOffset = offsets[head];
+        takenSize = sizes[head];
+        takenPtsUs = ptsUs[head];
+        takenFlags = flags[head];
+        head = (head + 1) % indexes.length;
+        --count;
+        notifyAll();
+        return index;
+    }
+
+    synchronized int size() {
+        return count;
+    }
+
+    int getOffset() {
+        return takenOffset;
+    }
+
+    int getSize() {
+        return takenSize;
+    }
+
+    long getPtsUs() {
+        return takenPtsUs;
+    }
+
+    int getFlags() {
+        return takenFlags;
+    }
+}
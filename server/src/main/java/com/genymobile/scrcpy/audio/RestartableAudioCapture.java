@@ -0,0 +1,130 @@
+package com.genymobile.scrcpy.audio;
+
+import com.genymobile.scrcpy.util.Ln;
+
+import android.media.MediaCodec;
+import android.os.SystemClock;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Wrap a capture to restart it when it is interrupted (for example on an audio route change), without interrupting the stream.
+ * <p>
+ * While the capture is down, silent buffers are produced in real time, so that the consumer (typically the encoder, which stays configured)
+ * keeps a continuous timeline. If the capture could not be restarted within the timeout, the read fails as if the capture was not wrapped.
+ */
+public final class RestartableAudioCapture implements AudioCapture {
+
+    private static final long RETRY_INTERVAL_MS = 500;
+
+    private final AudioCapture capture;
+    private final long timeoutMs;
+    private final AudioSilenceFiller silenceFiller;
+
+    private boolean started;
+    private long failureTimeMs;
+    private long nextAttemptTimeMs;
+    private int restartCount;
+
+    /**
+     * @param capture   the capture to restart on error
+     * @param timeoutMs the maximum duration of the restart attempts after an interruption
+     * @param readSize  the read size of the capture, in bytes
+     */
+    public RestartableAudioCapture(AudioCapture capture, long timeoutMs, int readSize) {
+        this.capture = capture;
+        this.timeoutMs = timeoutMs;
+        this.silenceFiller = new AudioSilenceFiller(readSize);
+    }
+
+    @Override
+    public void checkCompatibility() throws AudioCaptureException {
+        capture.checkCompatibility();
+    }
+
+    @Override
+    public void start() throws AudioCaptureException {
+        capture.start();
+        started = true;
+    }
+
+    @Override
+    public void stop() {
+        if (started) {
+            capture.stop();
+            started = false;
+        }
+        if (restartCount > 0 || silenceFiller.getFilledCount() > 0) {
+            Ln.d("Audio capture restarts: " + restartCount + ", silent buffers inserted: " + silenceFiller.getFilledCount());
+        }
+    }
+
+    private static long nowUs() {
+        return System.nanoTime() / 1000;
+    }
+
+    private boolean tryRestart() {
+        try {
+            capture.start();
+            started = true;
+            ++restartCount;
+            Ln.i("Audio capture restarted");
+            return true;
+        } catch (AudioCaptureException | RuntimeException e) {
+            Ln.d("Could not restart audio capture: " + e);
+            // Release anything partially initialized
+            capture.stop();
+            return false;
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer outDirectBuffer, MediaCodec.BufferInfo outBufferInfo) {
+        while (true) {
+            if (started) {
+                int r = capture.read(outDirectBuffer, outBufferInfo);
+                if (r > 0) {
+                    outBufferInfo.presentationTimeUs = silenceFiller.onPacket(outBufferInfo.presentationTimeUs, r);
+                    return r;
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    // The stream is stopping, do not restart
+                    return r;
+                }
+
+                Ln.w("Audio capture interrupted (error " + r + "), restarting");
+                capture.stop();
+                started = false;
+                failureTimeMs = SystemClock.uptimeMillis();
+                nextAttemptTimeMs = failureTimeMs;
+                silenceFiller.startFilling(nowUs());
+            }
+
+            long now = SystemClock.uptimeMillis();
+            if (now >= nextAttemptTimeMs) {
+                if (tryRestart()) {
+                    continue;
+                }
+                if (now - failureTimeMs >= timeoutMs) {
+                    Ln.e("Could not restart audio capture within " + timeoutMs + " ms");
+                    return -1;
+                }
+                nextAttemptTimeMs = now + RETRY_INTERVAL_MS;
+            }
+
+            long delayUs = silenceFiller.getDelayUs(nowUs());
+            if (delayUs > 0 && !Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(delayUs / 1000, (int) (delayUs % 1000) * 1000);
+                } catch (InterruptedException e) {
+                    // Let the consumer terminate on its next iteration
+                    Thread.currentThread().interrupt();
+                }
+            }
+            long ptsUs = silenceFiller.fill(outDirectBuffer);
+            int size = silenceFiller.getReadSize();
+            outBufferInfo.set(0, size, ptsUs, 0);
+            return size;
+        }
+    }
+}
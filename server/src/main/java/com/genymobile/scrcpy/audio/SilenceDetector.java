@@ -0,0 +1,83 @@
+package com.genymobile.scrcpy.audio;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Detect silent PCM buffers, so that they are not transmitted (discontinuous transmission).
+ * <p>
+ * A buffer is silent if its RMS level is below the threshold. To avoid cutting the end of sounds (and flapping on short pauses), buffers are
+ * only suppressed once the silence has lasted for the hangover duration.
+ * <p>
+ * The PTS of the packets are not rewritten: the packets following a silence have the timestamp of their capture, so the client plays them at
+ * the right time (it already handles streams without packets during silences).
+ */
+public final class SilenceDetector {
+
+    private static final long HANGOVER_US = 500_000;
+
+    // Threshold on the mean of the squared samples (compared without computing the square root)
+    private final double thresholdMeanSquare;
+
+    private long silenceUs;
+    private boolean suppressing;
+    private long suppressedCount;
+
+    /**
+     * @param thresholdDb the RMS threshold, in dBFS (negative)
+     */
+    public SilenceDetector(int thresholdDb) {
+        double threshold = Math.pow(10, thresholdDb / 20.0) * Short.MAX_VALUE;
+        thresholdMeanSquare = threshold * threshold;
+    }
+
+    /**
+     * Process a buffer of 16-bit PCM samples.
+     *
+     * @param buffer     the buffer (its position and limit are not used)
+     * @param offset     the offset of the data in the buffer
+     * @param size       the size of the data, in bytes
+     * @param durationUs the duration of the buffer
+     * @return {@code true} if the buffer must be suppressed
+     */
+    public boolean process(ByteBuffer buffer, int offset, int size, long durationUs) {
+        int samples = size / AudioConfig.BYTES_PER_SAMPLE;
+        long sumSquares = 0;
+
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.nativeOrder());
+        for (int i = 0; i < samples; ++i) {
+            int sample = buffer.getShort(offset + 2 * i);
+            sumSquares += sample * sample;
+        }
+        buffer.order(order);
+
+        return update(samples > 0 && sumSquares < thresholdMeanSquare * samples, durationUs);
+    }
+
+    boolean update(boolean silent, long durationUs) {
+        if (!silent) {
+            silenceUs = 0;
+            suppressing = false;
+            return false;
+        }
+
+        // Transmit the beginning of the silence (the hangover)
+        silenceUs += durationUs;
+        if (silenceUs <= HANGOVER_US) {
+            return false;
+        }
+
+        suppressing = true;
+        ++suppressedCount;
+        return true;
+    }
+
+    public boolean isSuppressing() {
+        return suppressing;
+    }
+
+    public long getSuppressedCount() {
+        return suppressedCount;
+    }
+}
@@ -1,6 +1,7 @@
 package com.genymobile.scrcpy.control;
 
 import com.genymobile.scrcpy.device.Position;
+import com.genymobile.scrcpy.opengl.PipLayout;
 
 /**
  * Union of all supported event types, identified by their {@code type}.
@@ -25,6 +26,9 @@ public final class ControlMessage {
     public static final int TYPE_OPEN_HARD_KEYBOARD_SETTINGS = 15;
     public static final int TYPE_START_APP = 16;
     public static final int TYPE_RESET_VIDEO = 17;
+    public static final int TYPE_SET_PIP_LAYOUT = 18;
+    public static final int TYPE_REQUEST_SNAPSHOT = 19;
+    public static final int TYPE_SET_OVERLAY = 20;
 
     public static final long SEQUENCE_INVALID = 0;
 
@@ -32,6 +36,10 @@ public final class ControlMessage {
     public static final int COPY_KEY_COPY = 1;
     public static final int COPY_KEY_CUT = 2;
 
+    public static final int SNAPSHOT_FORMAT_RGBA = 0;
+    public static final int SNAPSHOT_FORMAT_PNG = 1;
+    public static final int SNAPSHOT_FORMAT_JPEG = 2;
+
     private int type;
     private String text;
     private int metaState; // KeyEvent.META_*
@@ -53,6 +61,10 @@ public final class ControlMessage {
     private boolean on;
     private int vendorId;
     private int productId;
+    private PipLayout pipLayout;
+    private int snapshotFormat; // SNAPSHOT_FORMAT_*
+    private int maxSize;
+    private int quality;
 
     private ControlMessage() {
     }
@@ -127,6 +139,13 @@ public final class ControlMessage {
         return msg;
     }
 
+    public static ControlMessage createSetOverlay(boolean on) {
+        ControlMessage msg = new ControlMessage();
+        msg.type = TYPE_SET_OVERLAY;
+        msg.on = on;
+        return msg;
+    }
+
     public static ControlMessage createEmpty(int type) {
         ControlMessage msg = new ControlMessage();
         msg.type = type;
@@ -166,6 +185,23 @@ public final class ControlMessage {
         return msg;
     }
 
+    public static ControlMessage createSetPipLayout(PipLayout pipLayout) {
+        ControlMessage msg = new ControlMessage();
+        msg.type = TYPE_SET_PIP_LAYOUT;
+        msg.pipLayout = pipLayout;
+        return msg;
+    }
+
+    public static ControlMessage createRequestSnapshot(long sequence, int snapshotFormat, int maxSize, int quality) {
+        ControlMessage msg = new ControlMessage();
+        msg.type = TYPE_REQUEST_SNAPSHOT;
+        msg.sequence = sequence;
+        msg.snapshotFormat = snapshotFormat;
+        msg.maxSize = maxSize;
+        msg.quality = quality;
+        return msg;
+    }
+
     public int getType() {
         return type;
     }
@@ -249,4 +285,20 @@ public final class ControlMessage {
     public int getProductId() {
         return productId;
     }
+
+    public PipLayout getPipLayout() {
+        return pipLayout;
+    }
+
+    public int getSnapshotFormat() {
+        return snapshotFormat;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getQuality() {
+        return quality;
+    }
 }
@@ -1,6 +1,7 @@
 package com.genymobile.scrcpy.control;
 
 import com.genymobile.scrcpy.device.Position;
+import com.genymobile.scrcpy.opengl.PipLayout;
 import com.genymobile.scrcpy.util.Binary;
 
 import java.io.BufferedInputStream;
@@ -56,6 +57,12 @@ public class ControlMessageReader {
                 return parseUhidDestroy();
             case ControlMessage.TYPE_START_APP:
                 return parseStartApp();
+            case ControlMessage.TYPE_SET_PIP_LAYOUT:
+                return parseSetPipLayout();
+            case ControlMessage.TYPE_REQUEST_SNAPSHOT:
+                return parseRequestSnapshot();
+            case ControlMessage.TYPE_SET_OVERLAY:
+                return parseSetOverlay();
             default:
                 throw new ControlProtocolException("Unknown event type: " + type);
         }
@@ -141,6 +148,11 @@ public class ControlMessageReader {
         return ControlMessage.createSetDisplayPower(on);
     }
 
+    private ControlMessage parseSetOverlay() throws IOException {
+        boolean on = dis.readBoolean();
+        return ControlMessage.createSetOverlay(on);
+    }
+
     private ControlMessage parseUhidCreate() throws IOException {
         int id = dis.readUnsignedShort();
         int vendorId = dis.readUnsignedShort();
@@ -166,6 +178,31 @@ public class ControlMessageReader {
         return ControlMessage.createStartApp(name);
     }
 
+    private ControlMessage parseSetPipLayout() throws IOException {
+        float x = Binary.u16FixedPointToFloat(dis.readShort());
+        float y = Binary.u16FixedPointToFloat(dis.readShort());
+        float width = Binary.u16FixedPointToFloat(dis.readShort());
+        float height = Binary.u16FixedPointToFloat(dis.readShort());
+        float alpha = Binary.u16FixedPointToFloat(dis.readShort());
+        boolean swap = dis.readBoolean();
+        try {
+            return ControlMessage.createSetPipLayout(new PipLayout(x, y, width, height, alpha, swap));
+        } catch (IllegalArgumentException e) {
+            throw new ControlProtocolException(e.getMessage());
+        }
+    }
+
+    private ControlMessage parseRequestSnapshot() throws IOException {
+        long sequence = dis.readLong();
+        int format = dis.readUnsignedByte();
+        if (format > ControlMessage.SNAPSHOT_FORMAT_JPEG) {
+            throw new ControlProtocolException("Unknown snapshot format: " + format);
+        }
+        int maxSize = dis.readUnsignedShort();
+        int quality = dis.readUnsignedByte();
+        return ControlMessage.createRequestSnapshot(sequence, format, maxSize, quality);
+    }
+
     private Position parsePosition() throws IOException {
         int x = dis.readInt();
         int y = dis.readInt();
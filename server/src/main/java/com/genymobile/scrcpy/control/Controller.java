@@ -10,8 +10,11 @@ import com.genymobile.scrcpy.device.DisplayInfo;
 import com.genymobile.scrcpy.device.Point;
 import com.genymobile.scrcpy.device.Position;
 import com.genymobile.scrcpy.device.Size;
+import com.genymobile.scrcpy.opengl.OverlayState;
+import com.genymobile.scrcpy.opengl.PipLayout;
 import com.genymobile.scrcpy.util.Ln;
 import com.genymobile.scrcpy.util.LogUtils;
+import com.genymobile.scrcpy.video.CompositeCapture;
 import com.genymobile.scrcpy.video.SurfaceCapture;
 import com.genymobile.scrcpy.video.VirtualDisplayListener;
 import com.genymobile.scrcpy.wrappers.ClipboardManager;
@@ -70,6 +73,7 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
 
     private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor();
     private ExecutorService startAppExecutor;
+    private ExecutorService snapshotExecutor;
 
     private Thread thread;
 
@@ -239,6 +243,10 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
         sender.start();
     }
 
+    public DeviceMessageSender getSender() {
+        return sender;
+    }
+
     @Override
     public void stop() {
         if (thread != null) {
@@ -331,6 +339,15 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
             case ControlMessage.TYPE_RESET_VIDEO:
                 resetVideo();
                 break;
+            case ControlMessage.TYPE_SET_PIP_LAYOUT:
+                setPipLayout(msg.getPipLayout());
+                break;
+            case ControlMessage.TYPE_SET_OVERLAY:
+                setOverlay(msg.getOn());
+                break;
+            case ControlMessage.TYPE_REQUEST_SNAPSHOT:
+                requestSnapshot(msg.getSequence(), msg.getSnapshotFormat(), msg.getMaxSize(), msg.getQuality());
+                break;
             default:
                 // do nothing
         }
@@ -425,6 +442,10 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
         pointer.setPoint(point);
         pointer.setPressure(pressure);
 
+        if (OverlayState.isEnabled()) {
+            updateOverlayTouch(action, pointerId, position);
+        }
+
         int source;
         boolean activeSecondaryButtons = ((actionButton | buttons) & ~MotionEvent.BUTTON_PRIMARY) != 0;
         if (pointerId == POINTER_ID_MOUSE && (action == MotionEvent.ACTION_HOVER_MOVE || activeSecondaryButtons)) {
@@ -516,6 +537,18 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
         return Device.injectEvent(event, targetDisplayId, Device.INJECT_MODE_ASYNC);
     }
 
+    private static void updateOverlayTouch(int action, long pointerId, Position position) {
+        if (action == MotionEvent.ACTION_DOWN || action == MotionEvent.ACTION_MOVE) {
+            // The position is relative to the video frame
+            Size videoSize = position.getScreenSize();
+            float x = (float) position.getPoint().getX() / videoSize.getWidth();
+            float y = (float) position.getPoint().getY() / videoSize.getHeight();
+            OverlayState.setTouch(pointerId, x, y);
+        } else if (action != MotionEvent.ACTION_HOVER_MOVE) {
+            OverlayState.removeTouch(pointerId);
+        }
+    }
+
     private boolean injectScroll(Position position, float hScroll, float vScroll, int buttons) {
         long now = SystemClock.uptimeMillis();
 
@@ -754,4 +787,56 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
             surfaceCapture.requestInvalidate();
         }
     }
+
+    private void setPipLayout(PipLayout layout) {
+        if (surfaceCapture instanceof CompositeCapture) {
+            Ln.i("PiP layout: " + layout);
+            ((CompositeCapture) surfaceCapture).setPipLayout(layout);
+        } else {
+            Ln.w("PiP layout is only supported in composite capture");
+        }
+    }
+
+    private void setOverlay(boolean on) {
+        Ln.i("Overlay " + (on ? "enabled" : "disabled"));
+        OverlayState.setEnabled(on);
+        if (on && !OverlayState.hasRenderer()) {
+            Ln.w("The overlay is only drawn if the video is rendered by OpenGL (use the overlay option to force it)");
+        }
+        if (!on) {
+            OverlayState.clearTouches();
+        }
+    }
+
+    private void requestSnapshot(long sequence, int format, int maxSize, int quality) {
+        if (snapshotExecutor == null) {
+            snapshotExecutor = Executors.newSingleThreadExecutor();
+        }
+
+        SurfaceCapture capture = surfaceCapture;
+        boolean requested = capture != null && capture.requestSnapshot(maxSize, (size, rgba) -> {
+            // Called on the OpenGL thread, do not compress the image there
+            snapshotExecutor.submit(() -> sendSnapshot(sequence, format, quality, size, rgba));
+        });
+        if (!requested) {
+            Ln.w("Snapshot is not available for the current capture");
+            sendSnapshot(sequence, format, quality, null, null);
+        }
+    }
+
+    private void sendSnapshot(long sequence, int format, int quality, Size size, byte[] rgba) {
+        DeviceMessage msg;
+        if (size == null) {
+            msg = DeviceMessage.createSnapshot(sequence, format, 0, 0, new byte[0]);
+        } else {
+            byte[] data = SnapshotEncoder.encode(format, quality, size.getWidth(), size.getHeight(), rgba);
+            if (data.length > DeviceMessageWriter.SNAPSHOT_DATA_MAX_LENGTH) {
+                Ln.w("Snapshot too large (" + data.length + " bytes), request a smaller max size or a compressed format");
+                msg = DeviceMessage.createSnapshot(sequence, format, 0, 0, new byte[0]);
+            } else {
+                msg = DeviceMessage.createSnapshot(sequence, format, size.getWidth(), size.getHeight(), data);
+            }
+        }
+        sender.sendReply(msg);
+    }
 }
@@ -5,12 +5,23 @@ public final class DeviceMessage {
     public static final int TYPE_CLIPBOARD = 0;
     public static final int TYPE_ACK_CLIPBOARD = 1;
     public static final int TYPE_UHID_OUTPUT = 2;
+    public static final int TYPE_SNAPSHOT = 3;
+    public static final int TYPE_AUDIO_LEVEL = 4;
+    public static final int TYPE_CAMERA_MOTION = 5;
 
     private int type;
     private String text;
     private long sequence;
     private int id;
     private byte[] data;
+    private int snapshotFormat;
+    private int width;
+    private int height;
+    private long pts;
+    private int peak;
+    private int rms;
+    private boolean moving;
+    private int level;
 
     private DeviceMessage() {
     }
@@ -37,6 +48,50 @@ public final class DeviceMessage {
         return event;
     }
 
+    /**
+     * Create a snapshot message.
+     * <p>
+     * On failure, the size is 0x0 and the data is empty.
+     */
+    public static DeviceMessage createSnapshot(long sequence, int snapshotFormat, int width, int height, byte[] data) {
+        DeviceMessage event = new DeviceMessage();
+        event.type = TYPE_SNAPSHOT;
+        event.sequence = sequence;
+        event.snapshotFormat = snapshotFormat;
+        event.width = width;
+        event.height = height;
+        event.data = data;
+        return event;
+    }
+
+    /**
+     * Create an audio level message.
+     * <p>
+     * The levels are 16-bit sample values (between 0 and 32768).
+     */
+    public static DeviceMessage createAudioLevel(long pts, int peak, int rms) {
+        DeviceMessage event = new DeviceMessage();
+        event.type = TYPE_AUDIO_LEVEL;
+        event.pts = pts;
+        event.peak = peak;
+        event.rms = rms;
+        return event;
+    }
+
+    /**
+     * Create a camera motion message, sent when the motion state changes.
+     * <p>
+     * The level is the mean absolute luma difference between consecutive analysis frames (between 0 and 255).
+     */
+    public static DeviceMessage createCameraMotion(long pts, boolean moving, int level) {
+        DeviceMessage event = new DeviceMessage();
+        event.type = TYPE_CAMERA_MOTION;
+        event.pts = pts;
+        event.moving = moving;
+        event.level = level;
+        return event;
+    }
+
     public int getType() {
         return type;
     }
@@ -56,4 +111,36 @@ public final class DeviceMessage {
     public byte[] getData() {
         return data;
     }
+
+    public int getSnapshotFormat() {
+        return snapshotFormat;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long getPts() {
+        return pts;
+    }
+
+    public int getPeak() {
+        return peak;
+    }
+
+    public int getRms() {
+        return rms;
+    }
+
+    public boolean isMoving() {
+        return moving;
+    }
+
+    public int getLevel() {
+        return level;
+    }
 }
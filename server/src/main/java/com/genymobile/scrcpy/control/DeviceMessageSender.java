@@ -3,24 +3,39 @@ package com.genymobile.scrcpy.control;
 import com.genymobile.scrcpy.util.Ln;
 
 import java.io.IOException;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 public final class DeviceMessageSender {
 
     private final ControlChannel controlChannel;
 
+    // Beyond, the messages sent by send() are dropped
+    private static final int MAX_PENDING_MESSAGES = 16;
+
     private Thread thread;
-    private final BlockingQueue<DeviceMessage> queue = new ArrayBlockingQueue<>(16);
+    private final BlockingQueue<DeviceMessage> queue = new LinkedBlockingQueue<>();
 
     public DeviceMessageSender(ControlChannel controlChannel) {
         this.controlChannel = controlChannel;
     }
 
     public void send(DeviceMessage msg) {
-        if (!queue.offer(msg)) {
+        // Only called from a few threads, the bound does not need to be exact
+        if (queue.size() >= MAX_PENDING_MESSAGES) {
             Ln.w("Device message dropped: " + msg.getType());
+            return;
         }
+        queue.offer(msg);
+    }
+
+    /**
+     * Send the reply to an explicit client request.
+     * <p>
+     * Unlike {@link #send(DeviceMessage)}, the message is never dropped, even if many messages are pending, since the client waits for it.
+     */
+    public void sendReply(DeviceMessage msg) {
+        queue.offer(msg);
     }
 
     private void loop() throws IOException, InterruptedException {
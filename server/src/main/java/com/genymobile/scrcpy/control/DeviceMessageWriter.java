@@ -12,6 +12,8 @@ public class DeviceMessageWriter {
 
     private static final int MESSAGE_MAX_SIZE = 1 << 18; // 256k
     public static final int CLIPBOARD_TEXT_MAX_LENGTH = MESSAGE_MAX_SIZE - 5; // type: 1 byte; length: 4 bytes
+    // type: 1 byte; sequence: 8 bytes; format: 1 byte; width: 2 bytes; height: 2 bytes; length: 4 bytes
+    public static final int SNAPSHOT_DATA_MAX_LENGTH = MESSAGE_MAX_SIZE - 18;
 
     private final DataOutputStream dos;
 
@@ -39,6 +41,32 @@ public class DeviceMessageWriter {
                 dos.writeShort(data.length);
                 dos.write(data);
                 break;
+            case DeviceMessage.TYPE_SNAPSHOT:
+                dos.writeLong(msg.getSequence());
+                dos.writeByte(msg.getSnapshotFormat());
+                byte[] snapshot = msg.getData();
+                if (snapshot.length > SNAPSHOT_DATA_MAX_LENGTH) {
+                    // The client could not receive it, reply with an empty snapshot (as on failure)
+                    dos.writeShort(0);
+                    dos.writeShort(0);
+                    dos.writeInt(0);
+                } else {
+                    dos.writeShort(msg.getWidth());
+                    dos.writeShort(msg.getHeight());
+                    dos.writeInt(snapshot.length);
+                    dos.write(snapshot);
+                }
+                break;
+            case DeviceMessage.TYPE_AUDIO_LEVEL:
+                dos.writeLong(msg.getPts());
+                dos.writeShort(msg.getPeak());
+                dos.writeShort(msg.getRms());
+                break;
+            case DeviceMessage.TYPE_CAMERA_MOTION:
+                dos.writeLong(msg.getPts());
+                dos.writeBoolean(msg.isMoving());
+                dos.writeByte(msg.getLevel());
+                break;
             default:
                 throw new ControlProtocolException("Unknown event type: " + type);
         }
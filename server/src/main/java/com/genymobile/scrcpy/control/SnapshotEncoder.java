@@ -0,0 +1,48 @@
+package com.genymobile.scrcpy.control;
+
+import android.graphics.Bitmap;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+public final class SnapshotEncoder {
+
+    private static final int DEFAULT_JPEG_QUALITY = 90;
+
+    private SnapshotEncoder() {
+        // not instantiable
+    }
+
+    /**
+     * Encode RGBA pixels to the requested format.
+     *
+     * @param format  the snapshot format (one of {@code ControlMessage.SNAPSHOT_FORMAT_*})
+     * @param quality the JPEG quality in [1, 100] (0 for the default)
+     * @param width   the image width
+     * @param height  the image height
+     * @param rgba    the RGBA pixels, top row first
+     * @return the encoded image
+     */
+    public static byte[] encode(int format, int quality, int width, int height, byte[] rgba) {
+        if (format == ControlMessage.SNAPSHOT_FORMAT_RGBA) {
+            return rgba;
+        }
+
+        // ARGB_8888 bitmaps store their pixels in RGBA byte order
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        try {
+            bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(rgba));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (format == ControlMessage.SNAPSHOT_FORMAT_PNG) {
+                bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+            } else {
+                int q = quality > 0 ? Math.min(quality, 100) : DEFAULT_JPEG_QUALITY;
+                bitmap.compress(Bitmap.CompressFormat.JPEG, q, out);
+            }
+            return out.toByteArray();
+        } finally {
+            bitmap.recycle();
+        }
+    }
+}
@@ -24,6 +24,11 @@ public final class Streamer {
 
     private final ByteBuffer headerBuffer = ByteBuffer.allocate(12);
 
+    // Reused for writing the frame meta and the packet with a single system call
+    private final Object[] iovBuffers = new Object[2];
+    private final int[] iovOffsets = new int[2];
+    private final int[] iovCounts = new int[2];
+
     public Streamer(FileDescriptor fd, Codec codec, boolean sendCodecMeta, boolean sendFrameMeta) {
         this.fd = fd;
         this.codec = codec;
@@ -75,6 +80,12 @@ public final class Streamer {
             }
         }
 
+        if (sendFrameMeta && buffer.isDirect()) {
+            fillFrameMeta(buffer.remaining(), pts, config, keyFrame);
+            writeFrameMetaAndPacket(buffer);
+            return;
+        }
+
         if (sendFrameMeta) {
             writeFrameMeta(fd, buffer.remaining(), pts, config, keyFrame);
         }
@@ -82,6 +93,20 @@ public final class Streamer {
         IO.writeFully(fd, buffer);
     }
 
+    private void writeFrameMetaAndPacket(ByteBuffer buffer) throws IOException {
+        iovBuffers[0] = headerBuffer.array();
+        iovOffsets[0] = 0;
+        iovCounts[0] = headerBuffer.remaining();
+        iovBuffers[1] = buffer;
+        iovOffsets[1] = buffer.position();
+        iovCounts[1] = buffer.remaining();
+        IO.writevFully(fd, iovBuffers, iovOffsets, iovCounts);
+
+        // Consume the packet, like IO.writeFully()
+        buffer.position(buffer.limit());
+        iovBuffers[1] = null;
+    }
+
     public void writePacket(ByteBuffer codecBuffer, MediaCodec.BufferInfo bufferInfo) throws IOException {
         long pts = bufferInfo.presentationTimeUs;
         boolean config = (bufferInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0;
@@ -90,6 +115,11 @@ public final class Streamer {
     }
 
     private void writeFrameMeta(FileDescriptor fd, int packetSize, long pts, boolean config, boolean keyFrame) throws IOException {
+        fillFrameMeta(packetSize, pts, config, keyFrame);
+        IO.writeFully(fd, headerBuffer);
+    }
+
+    private void fillFrameMeta(int packetSize, long pts, boolean config, boolean keyFrame) {
         headerBuffer.clear();
 
         long ptsAndFlags;
@@ -105,7 +135,6 @@ public final class Streamer {
         headerBuffer.putLong(ptsAndFlags);
         headerBuffer.putInt(packetSize);
         headerBuffer.flip();
-        IO.writeFully(fd, headerBuffer);
     }
 
     private static void fixOpusConfigPacket(ByteBuffer buffer) throws IOException {
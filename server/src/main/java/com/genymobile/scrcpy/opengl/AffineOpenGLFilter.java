@@ -5,13 +5,10 @@ import com.genymobile.scrcpy.util.AffineMatrix;
 import android.opengl.GLES11Ext;
 import android.opengl.GLES20;
 
-import java.nio.FloatBuffer;
-
 public class AffineOpenGLFilter implements OpenGLFilter {
 
     private int program;
-    private FloatBuffer vertexBuffer;
-    private FloatBuffer texCoordsBuffer;
+    private QuadBuffer quad;
     private final float[] userMatrix;
 
     private int vertexPosLoc;
@@ -54,7 +51,7 @@ public class AffineOpenGLFilter implements OpenGLFilter {
                 + "    }\n"
                 + "}";
 
-        program = GLUtils.createProgram(vertexShaderCode, fragmentShaderCode);
+        program = ProgramCache.acquire(vertexShaderCode, fragmentShaderCode);
         if (program == 0) {
             throw new OpenGLException("Cannot create OpenGL program");
         }
@@ -74,8 +71,7 @@ public class AffineOpenGLFilter implements OpenGLFilter {
         };
 
         // OpenGL will fill the 3rd and 4th coordinates of the vec4 automatically with 0.0 and 1.0 respectively
-        vertexBuffer = GLUtils.createFloatBuffer(vertices);
-        texCoordsBuffer = GLUtils.createFloatBuffer(texCoords);
+        quad = QuadBuffer.create(vertices, texCoords);
 
         vertexPosLoc = GLES20.glGetAttribLocation(program, "vertex_pos");
         assert vertexPosLoc != -1;
@@ -91,6 +87,12 @@ public class AffineOpenGLFilter implements OpenGLFilter {
 
         userMatrixLoc = GLES20.glGetUniformLocation(program, "user_matrix");
         assert userMatrixLoc != -1;
+
+        // These uniforms never change, set them once
+        GLES20.glUseProgram(program);
+        GLES20.glUniform1i(texLoc, 0);
+        GLES20.glUniformMatrix4fv(userMatrixLoc, 1, false, userMatrix, 0);
+        GLUtils.checkGlError();
     }
 
     @Override
@@ -103,33 +105,29 @@ public class AffineOpenGLFilter implements OpenGLFilter {
         GLES20.glEnableVertexAttribArray(texCoordsInLoc);
         GLUtils.checkGlError();
 
-        GLES20.glVertexAttribPointer(vertexPosLoc, 2, GLES20.GL_FLOAT, false, 0, vertexBuffer);
-        GLUtils.checkGlError();
-        GLES20.glVertexAttribPointer(texCoordsInLoc, 2, GLES20.GL_FLOAT, false, 0, texCoordsBuffer);
+        quad.bind(vertexPosLoc, texCoordsInLoc);
         GLUtils.checkGlError();
 
         GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
         GLUtils.checkGlError();
         GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
         GLUtils.checkGlError();
-        GLES20.glUniform1i(texLoc, 0);
-        GLUtils.checkGlError();
 
         GLES20.glUniformMatrix4fv(texMatrixLoc, 1, false, texMatrix, 0);
         GLUtils.checkGlError();
 
-        GLES20.glUniformMatrix4fv(userMatrixLoc, 1, false, userMatrix, 0);
-        GLUtils.checkGlError();
-
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
         GLUtils.checkGlError();
         GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
         GLUtils.checkGlError();
+
+        QuadBuffer.unbind();
     }
 
     @Override
     public void release() {
-        GLES20.glDeleteProgram(program);
+        quad.release();
+        ProgramCache.release(program);
         GLUtils.checkGlError();
     }
 }
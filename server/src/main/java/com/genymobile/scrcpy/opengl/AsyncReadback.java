@@ -0,0 +1,179 @@
+package com.genymobile.scrcpy.opengl;
+
+import com.genymobile.scrcpy.device.Size;
+import com.genymobile.scrcpy.util.ByteBufferPool;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Asynchronous readback of rendered frames through a ring of pixel buffer objects (requires OpenGL ES 3).
+ * <p>
+ * A synchronous {@code glReadPixels()} into client memory waits for the GPU to finish rendering, and stalls the rendering thread. Instead, each
+ * frame is read into a pixel buffer object (the copy is queued on the GPU), protected by a fence. The buffer is mapped on a later frame, only
+ * once its fence is signaled: the listener receives frame N-1 or N-2 while frame N is rendered.
+ * <p>
+ * If the GPU has not finished a readback when its pixel buffer object is needed again, the frame is dropped rather than waiting. The mapped
+ * pixels are copied into a pooled buffer owned by the listener, so that any further processing can be handed off to another thread.
+ */
+public final class AsyncReadback {
+
+    public interface Listener {
+        /**
+         * Called on the OpenGL thread for each frame read back (it must not block).
+         *
+         * @param rgba  the RGBA pixels, top row first, to be released to the buffer pool once consumed (possibly from another thread)
+         * @param size  the frame size
+         * @param ptsUs the timestamp of the frame, in microseconds
+         */
+        void onFrame(ByteBuffer rgba, Size size, long ptsUs);
+    }
+
+    private static final int BUFFER_COUNT = 3;
+
+    private final Size size;
+    private final int frameSize;
+    private final ByteBufferPool pool;
+    private final Listener listener;
+
+    private final int[] pbos = new int[BUFFER_COUNT];
+    private final long[] fences = new long[BUFFER_COUNT]; // 0 if the buffer is not pending
+    private final long[] ptsUs = new long[BUFFER_COUNT];
+    private int next;
+
+    private long droppedCount;
+
+    /**
+     * @param size     the size of the frames to read (the size of the bound framebuffer)
+     * @param pool     the pool of the buffers passed to the listener (their capacity must be the frame size)
+     * @param listener the listener
+     */
+    public AsyncReadback(Size size, ByteBufferPool pool, Listener listener) {
+        this.size = size;
+        this.frameSize = getFrameSize(size);
+        if (pool.getCapacity() != frameSize) {
+            throw new IllegalArgumentException("Invalid buffer capacity " + pool.getCapacity() + " for frames of " + size);
+        }
+        this.pool = pool;
+        this.listener = listener;
+    }
+
+    public static int getFrameSize(Size size) {
+        return size.getWidth() * size.getHeight() * 4;
+    }
+
+    public void init() throws OpenGLException {
+        if (EglContextManager.getGlesVersion() < 3) {
+            throw new OpenGLException("Asynchronous readback requires OpenGL ES 3");
+        }
+
+        GLES30.glGenBuffers(BUFFER_COUNT, pbos, 0);
+        for (int pbo : pbos) {
+            GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, pbo);
+            GLES30.glBufferData(GLES30.GL_PIXEL_PACK_BUFFER, frameSize, null, GLES30.GL_STREAM_READ);
+        }
+        GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+        GLUtils.checkGlError();
+    }
+
+    /**
+     * Queue the readback of the currently bound framebuffer, and deliver the previous frames which are ready.
+     *
+     * @param ptsUs the timestamp of the frame, in microseconds
+     */
+    public void read(long ptsUs) {
+        int index = next;
+        next = (next + 1) % BUFFER_COUNT;
+
+        if (fences[index] != 0) {
+            // The oldest frame is still not ready, drop it rather than waiting
+            GLES30.glDeleteSync(fences[index]);
+            fences[index] = 0;
+            ++droppedCount;
+        }
+
+        GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, pbos[index]);
+        // With a pixel pack buffer bound, the last argument is an offset in the buffer
+        GLES30.glReadPixels(0, 0, size.getWidth(), size.getHeight(), GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, 0);
+        GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+        fences[index] = GLES30.glFenceSync(GLES30.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        this.ptsUs[index] = ptsUs;
+        GLUtils.checkGlError();
+
+        // Deliver the pending frames in order, starting from the oldest, until one is not ready
+        for (int i = 0; i < BUFFER_COUNT - 1; ++i) {
+            int pending = (next + i) % BUFFER_COUNT;
+            if (fences[pending] == 0) {
+                continue;
+            }
+            if (!isSignaled(fences[pending])) {
+                break;
+            }
+            deliver(pending);
+        }
+    }
+
+    private static boolean isSignaled(long fence) {
+        // A timeout of 0 never blocks
+        int result = GLES30.glClientWaitSync(fence, GLES30.GL_SYNC_FLUSH_COMMANDS_BIT, 0);
+        return result == GLES30.GL_ALREADY_SIGNALED || result == GLES30.GL_CONDITION_SATISFIED;
+    }
+
+    private void deliver(int index) {
+        GLES30.glDeleteSync(fences[index]);
+        fences[index] = 0;
+
+        GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, pbos[index]);
+        ByteBuffer mapped = (ByteBuffer) GLES30.glMapBufferRange(GLES30.GL_PIXEL_PACK_BUFFER, 0, frameSize, GLES30.GL_MAP_READ_BIT);
+        ByteBuffer rgba = null;
+        if (mapped != null) {
+            // Release the mapping before the listener is called
+            rgba = pool.acquire();
+            copyFlipped(mapped, rgba, size.getWidth() * 4, size.getHeight());
+            GLES30.glUnmapBuffer(GLES30.GL_PIXEL_PACK_BUFFER);
+        }
+        GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+        GLUtils.checkGlError();
+
+        if (rgba != null) {
+            listener.onFrame(rgba, size, ptsUs[index]);
+        }
+    }
+
+    /**
+     * Copy the rows of an image in reverse order ({@code glReadPixels()} returns the bottom row first).
+     * <p>
+     * The source position is left unchanged, the destination is flipped (ready to be read).
+     */
+    static void copyFlipped(ByteBuffer src, ByteBuffer dst, int stride, int height) {
+        ByteBuffer row = src.duplicate();
+        dst.clear();
+        for (int y = height - 1; y >= 0; --y) {
+            int start = src.position() + y * stride;
+            row.limit(start + stride).position(start);
+            dst.put(row);
+        }
+        dst.flip();
+    }
+
+    /**
+     * Return the number of frames dropped because the GPU had not finished reading them.
+     *
+     * @return the dropped frame count
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public void release() {
+        for (int i = 0; i < BUFFER_COUNT; ++i) {
+            if (fences[i] != 0) {
+                GLES30.glDeleteSync(fences[i]);
+                fences[i] = 0;
+            }
+        }
+        GLES30.glDeleteBuffers(BUFFER_COUNT, pbos, 0);
+    }
+}
@@ -0,0 +1,106 @@
+package com.genymobile.scrcpy.opengl;
+
+/**
+ * Presentation timestamps of the composite video, derived from the capture timestamps of its sources.
+ * <p>
+ * A frame is rendered whenever any source produces a new frame, so the output PTS is the timestamp of the latest frame of the master source,
+ * advanced by the time elapsed since that frame has been received. This keeps the video on the capture clock (the same monotonic clock as the
+ * audio timestamps), even if the rendering thread lags.
+ * <p>
+ * All timestamps are in nanoseconds on the {@link System#nanoTime()} clock. This class is not thread-safe.
+ */
+public final class CompositeTimestamps {
+
+    // Beyond this difference with the current time, a source timestamp is considered to be on another clock
+    private static final long MAX_CLOCK_SKEW_NS = 1_000_000_000L;
+    // The PTS are transmitted in microseconds, so consecutive frames must differ by at least 1µs
+    private static final long MIN_PTS_STEP_NS = 1000;
+
+    private static final class Source {
+        private long timestampNs = -1;
+        private long arrivalNs;
+        private boolean fresh;
+        private long latencyNs = -1;
+
+        private boolean onFrame(long timestampNs, long nowNs) {
+            boolean valid = timestampNs > 0 && Math.abs(nowNs - timestampNs) <= MAX_CLOCK_SKEW_NS;
+            this.timestampNs = valid ? timestampNs : nowNs;
+            arrivalNs = nowNs;
+            fresh = true;
+            return valid;
+        }
+
+        private void onRender(long nowNs) {
+            if (fresh) {
+                latencyNs = nowNs - timestampNs;
+                fresh = false;
+            }
+        }
+    }
+
+    private final Source[] sources;
+    private final int masterIndex;
+    private long lastPtsNs = -1;
+
+    /**
+     * @param sourceCount the number of sources
+     * @param masterIndex the index of the source used as the master clock
+     */
+    public CompositeTimestamps(int sourceCount, int masterIndex) {
+        if (masterIndex < 0 || masterIndex >= sourceCount) {
+            throw new IllegalArgumentException("Invalid master source " + masterIndex + " for " + sourceCount + " sources");
+        }
+        sources = new Source[sourceCount];
+        for (int i = 0; i < sourceCount; ++i) {
+            sources[i] = new Source();
+        }
+        this.masterIndex = masterIndex;
+    }
+
+    /**
+     * Register a new frame.
+     *
+     * @param index       the index of the source
+     * @param timestampNs the capture timestamp of the frame
+     * @param nowNs       the current time
+     * @return {@code false} if the timestamp is not on the expected clock (the reception time is used instead)
+     */
+    public boolean onFrame(int index, long timestampNs, long nowNs) {
+        return sources[index].onFrame(timestampNs, nowNs);
+    }
+
+    /**
+     * Compute the presentation timestamp of a frame rendered now.
+     *
+     * @param nowNs the current time
+     * @return the presentation timestamp, strictly increasing
+     */
+    public long computePts(long nowNs) {
+        for (Source source : sources) {
+            source.onRender(nowNs);
+        }
+
+        Source master = sources[masterIndex];
+        for (int i = 0; master.timestampNs == -1 && i < sources.length; ++i) {
+            // The master source has not produced any frame yet, use the first one which has
+            master = sources[i];
+        }
+
+        long pts = master.timestampNs == -1 ? nowNs : master.timestampNs + (nowNs - master.arrivalNs);
+        if (lastPtsNs != -1 && pts < lastPtsNs + MIN_PTS_STEP_NS) {
+            pts = lastPtsNs + MIN_PTS_STEP_NS;
+        }
+        lastPtsNs = pts;
+        return pts;
+    }
+
+    /**
+     * Return the capture-to-render latency of the last rendered frame of a source.
+     *
+     * @param index the index of the source
+     * @return the latency, or -1 if no frame of this source has been rendered
+     */
+    public long getLatencyNs(int index) {
+        return sources[index].latencyNs;
+    }
+}
@@ -0,0 +1,159 @@
+package com.genymobile.scrcpy.opengl;
+
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * OpenGL filter drawing N external OES textures (one per source) in a single pass, each according to its {@link CompositorLayer}.
+ * <p>
+ * Layers are drawn by increasing z-order (the order of the sources for equal z-orders), blended with their alpha. The geometry of each layer
+ * is stored in a vertex buffer object, uploaded once on init.
+ */
+public class CompositorFilter {
+
+    private final List<CompositorLayer> layers;
+    // Indexes of the layers, sorted by z-order
+    private final int[] drawOrder;
+
+    private int program;
+    private int vertexPosLoc;
+    private int texCoordsInLoc;
+    private int texLoc;
+    private int texMatrixLoc;
+    private int globalAlphaLoc;
+
+    private final QuadBuffer[] quads;
+
+    public CompositorFilter(List<CompositorLayer> layers) {
+        this.layers = layers;
+        this.drawOrder = computeDrawOrder(layers);
+        this.quads = new QuadBuffer[layers.size()];
+    }
+
+    static int[] computeDrawOrder(List<CompositorLayer> layers) {
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < layers.size(); ++i) {
+            indexes.add(i);
+        }
+        // Collections.sort() is stable, so layers with the same z-order keep their relative order
+        Collections.sort(indexes, (i, j) -> Integer.compare(layers.get(i).getZOrder(), layers.get(j).getZOrder()));
+
+        int[] order = new int[indexes.size()];
+        for (int i = 0; i < order.length; ++i) {
+            order[i] = indexes.get(i);
+        }
+        return order;
+    }
+
+    public void init() throws OpenGLException {
+        String vertexShaderCode = "#version 100\n"
+                + "attribute vec4 vertex_pos;\n"
+                + "attribute vec4 tex_coords_in;\n"
+                + "uniform mat4 tex_matrix;\n"
+                + "varying vec2 tex_coords;\n"
+                + "void main() {\n"
+                + "    gl_Position = vertex_pos;\n"
+                + "    tex_coords = (tex_matrix * tex_coords_in).xy;\n"
+                + "}";
+
+        String fragmentShaderCode = "#version 100\n"
+                + "#extension GL_OES_EGL_image_external : require\n"
+                + "precision mediump float;\n"
+                + "uniform samplerExternalOES tex;\n"
+                + "uniform float global_alpha;\n"
+                + "varying vec2 tex_coords;\n"
+                + "void main() {\n"
+                + "    vec4 color = texture2D(tex, tex_coords);\n"
+                + "    gl_FragColor = vec4(color.rgb, global_alpha);\n"
+                + "}";
+
+        program = ProgramCache.acquire(vertexShaderCode, fragmentShaderCode);
+        if (program == 0) {
+            throw new OpenGLException("Cannot create OpenGL program");
+        }
+
+        vertexPosLoc = GLES20.glGetAttribLocation(program, "vertex_pos");
+        assert vertexPosLoc != -1;
+
+        texCoordsInLoc = GLES20.glGetAttribLocation(program, "tex_coords_in");
+        assert texCoordsInLoc != -1;
+
+        texLoc = GLES20.glGetUniformLocation(program, "tex");
+        assert texLoc != -1;
+
+        texMatrixLoc = GLES20.glGetUniformLocation(program, "tex_matrix");
+        assert texMatrixLoc != -1;
+
+        globalAlphaLoc = GLES20.glGetUniformLocation(program, "global_alpha");
+        assert globalAlphaLoc != -1;
+
+        // The texture unit never changes, set it once
+        GLES20.glUseProgram(program);
+        GLES20.glUniform1i(texLoc, 0);
+        GLUtils.checkGlError();
+
+        float[] texCoords = CompositorLayer.computeTexCoords();
+        for (int i = 0; i < quads.length; ++i) {
+            quads[i] = QuadBuffer.create(layers.get(i).computeVertices(), texCoords);
+        }
+    }
+
+    /**
+     * Draw all the layers whose source has produced at least one frame.
+     *
+     * @param textureIds  the external texture of each source
+     * @param texMatrices the texture matrix of each source
+     * @param hasFrame    whether each source has produced a frame
+     */
+    public void draw(int[] textureIds, float[][] texMatrices, boolean[] hasFrame) {
+        GLES20.glDisable(GLES20.GL_BLEND);
+        GLES20.glClearColor(0f, 0f, 0f, 1f);
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+
+        GLES20.glUseProgram(program);
+        GLUtils.checkGlError();
+
+        GLES20.glEnableVertexAttribArray(vertexPosLoc);
+        GLES20.glEnableVertexAttribArray(texCoordsInLoc);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+
+        for (int index : drawOrder) {
+            if (!hasFrame[index]) {
+                continue;
+            }
+
+            float alpha = layers.get(index).getAlpha();
+            if (alpha < 1) {
+                GLES20.glEnable(GLES20.GL_BLEND);
+                GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+            } else {
+                GLES20.glDisable(GLES20.GL_BLEND);
+            }
+
+            quads[index].bind(vertexPosLoc, texCoordsInLoc);
+            GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureIds[index]);
+            GLES20.glUniformMatrix4fv(texMatrixLoc, 1, false, texMatrices[index], 0);
+            GLES20.glUniform1f(globalAlphaLoc, alpha);
+            GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+        }
+        GLUtils.checkGlError();
+
+        QuadBuffer.unbind();
+        GLES20.glDisableVertexAttribArray(vertexPosLoc);
+        GLES20.glDisableVertexAttribArray(texCoordsInLoc);
+        GLES20.glDisable(GLES20.GL_BLEND);
+    }
+
+    public void release() {
+        for (QuadBuffer quad : quads) {
+            if (quad != null) {
+                quad.release();
+            }
+        }
+        ProgramCache.release(program);
+    }
+}
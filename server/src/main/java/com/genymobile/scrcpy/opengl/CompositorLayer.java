@@ -0,0 +1,83 @@
+package com.genymobile.scrcpy.opengl;
+
+import com.genymobile.scrcpy.util.AffineMatrix;
+
+/**
+ * Placement of a source in the output of a {@link MultiSourceOpenGLRunner}.
+ * <p>
+ * The transform maps the source (as a unit square, from its top-left corner) to the output (as a unit square, from its top-left corner). Layers
+ * are drawn by increasing z-order, and blended with their alpha.
+ */
+public final class CompositorLayer {
+
+    // Unit quad, in the vertex order of a triangle strip: bottom-left, bottom-right, top-left, top-right (y increasing downwards)
+    private static final float[] UNIT_QUAD = {0, 1, 1, 1, 0, 0, 1, 0};
+
+    // Convert from the output unit square (y increasing downwards) to NDC (y increasing upwards)
+    private static final AffineMatrix NDC_FROM_UNIT = AffineMatrix.translate(-1, 1).multiply(AffineMatrix.scale(2, -2));
+
+    private final AffineMatrix transform;
+    private final int zOrder;
+    private final float alpha;
+
+    public CompositorLayer(AffineMatrix transform, int zOrder, float alpha) {
+        if (!(alpha >= 0 && alpha <= 1)) {
+            throw new IllegalArgumentException("Invalid layer alpha: " + alpha);
+        }
+        this.transform = transform;
+        this.zOrder = zOrder;
+        this.alpha = alpha;
+    }
+
+    /**
+     * Create a layer displaying its source in a rectangle.
+     *
+     * @param x      the left position, as a fraction of the output width
+     * @param y      the top position, as a fraction of the output height
+     * @param width  the width, as a fraction of the output width
+     * @param height the height, as a fraction of the output height
+     * @param zOrder the z-order (layers with a greater z-order are drawn above)
+     * @param alpha  the opacity
+     * @return the layer
+     */
+    public static CompositorLayer fromRect(float x, float y, float width, float height, int zOrder, float alpha) {
+        if (!(width > 0 && height > 0)) {
+            throw new IllegalArgumentException("Invalid layer size: " + width + "x" + height);
+        }
+        AffineMatrix transform = AffineMatrix.translate(x, y).multiply(AffineMatrix.scale(width, height));
+        return new CompositorLayer(transform, zOrder, alpha);
+    }
+
+    public AffineMatrix getTransform() {
+        return transform;
+    }
+
+    public int getZOrder() {
+        return zOrder;
+    }
+
+    public float getAlpha() {
+        return alpha;
+    }
+
+    /**
+     * Return the vertices of the layer.
+     *
+     * @return 4 vertices in Normalized Device Coordinates (triangle strip order)
+     */
+    public float[] computeVertices() {
+        float[] points = UNIT_QUAD.clone();
+        NDC_FROM_UNIT.multiply(transform).apply(points);
+        return points;
+    }
+
+    /**
+     * Return the texture coordinates of the layer, to be transformed by the texture matrix of the source.
+     *
+     * @return 4 texture coordinates (triangle strip order)
+     */
+    public static float[] computeTexCoords() {
+        // The texture matrix of a SurfaceTexture expects v = 0 at the bottom
+        return new float[] {0, 0, 1, 0, 0, 1, 1, 1};
+    }
+}
@@ -0,0 +1,161 @@
+package com.genymobile.scrcpy.opengl;
+
+import com.genymobile.scrcpy.device.Size;
+
+import android.opengl.GLES20;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Multi-pass downscaling, inserted after a filter when the output is much smaller than the input.
+ * <p>
+ * A single bilinear pass only samples 2x2 texels per output pixel, so it aliases when the scale factor exceeds 2. Instead, the filter renders
+ * into an intermediate target whose size is the output size multiplied by a power of 2 (so that the filter itself scales by at most 2), which
+ * is then halved until the output size. Sampling at the center of each 2x2 block with linear filtering averages exactly these 4 texels, so each
+ * halving pass is a box filter.
+ */
+public final class DownscaleChain {
+
+    private final List<Size> sizes;
+    private final Size outputSize;
+    private final List<RenderTarget> targets = new ArrayList<>();
+
+    private int program;
+    private QuadBuffer quad;
+    private int vertexPosLoc;
+    private int texCoordsInLoc;
+
+    /**
+     * @param sizes      the intermediate sizes, as returned by {@link #computeSizes(Size, Size)} (must not be empty)
+     * @param outputSize the output size
+     */
+    public DownscaleChain(List<Size> sizes, Size outputSize) {
+        assert !sizes.isEmpty();
+        this.sizes = sizes;
+        this.outputSize = outputSize;
+    }
+
+    /**
+     * Compute the sizes of the intermediate targets, largest first.
+     *
+     * @param inputSize  the size of the input of the filter
+     * @param outputSize the output size
+     * @return the intermediate sizes (empty if the scale factor does not exceed 2)
+     */
+    public static List<Size> computeSizes(Size inputSize, Size outputSize) {
+        // Compare the areas, so that the factor does not depend on a rotation applied by the filter
+        double inputArea = (double) inputSize.getWidth() * inputSize.getHeight();
+        double outputArea = (double) outputSize.getWidth() * outputSize.getHeight();
+        double factor = Math.sqrt(inputArea / outputArea);
+
+        int passes = 0;
+        while (factor > 2) {
+            factor /= 2;
+            ++passes;
+        }
+
+        List<Size> sizes = new ArrayList<>();
+        for (int i = passes; i > 0; --i) {
+            sizes.add(new Size(outputSize.getWidth() << i, outputSize.getHeight() << i));
+        }
+        return sizes;
+    }
+
+    public void init() throws OpenGLException {
+        // @formatter:off
+        String vertexShaderCode = "#version 100\n"
+                + "attribute vec4 vertex_pos;\n"
+                + "attribute vec2 tex_coords_in;\n"
+                + "varying vec2 tex_coords;\n"
+                + "void main() {\n"
+                + "    gl_Position = vertex_pos;\n"
+                + "    tex_coords = tex_coords_in;\n"
+                + "}";
+
+        // @formatter:off
+        String fragmentShaderCode = "#version 100\n"
+                + "precision mediump float;\n"
+                + "uniform sampler2D tex;\n"
+                + "varying vec2 tex_coords;\n"
+                + "void main() {\n"
+                + "    gl_FragColor = texture2D(tex, tex_coords);\n"
+                + "}";
+
+        program = ProgramCache.acquire(vertexShaderCode, fragmentShaderCode);
+        if (program == 0) {
+            throw new OpenGLException("Cannot create OpenGL program");
+        }
+
+        vertexPosLoc = GLES20.glGetAttribLocation(program, "vertex_pos");
+        assert vertexPosLoc != -1;
+
+        texCoordsInLoc = GLES20.glGetAttribLocation(program, "tex_coords_in");
+        assert texCoordsInLoc != -1;
+
+        int texLoc = GLES20.glGetUniformLocation(program, "tex");
+        assert texLoc != -1;
+
+        // The texture unit never changes, set it once
+        GLES20.glUseProgram(program);
+        GLES20.glUniform1i(texLoc, 0);
+        GLUtils.checkGlError();
+
+        quad = QuadBuffer.create(new float[] {-1, -1, 1, -1, -1, 1, 1, 1}, new float[] {0, 0, 1, 0, 0, 1, 1, 1});
+
+        RenderTargetPool pool = EglContextManager.getRenderTargetPool();
+        for (Size size : sizes) {
+            targets.add(pool.acquire(size));
+        }
+    }
+
+    /**
+     * Redirect the rendering of the filter to the first intermediate target.
+     */
+    public void bindInput() {
+        targets.get(0).bind();
+    }
+
+    /**
+     * Downscale the intermediate target rendered by the filter to the output.
+     *
+     * @param output the output render target, or {@code null} for the window surface
+     */
+    public void draw(RenderTarget output) {
+        GLES20.glUseProgram(program);
+        GLES20.glDisable(GLES20.GL_BLEND);
+        GLES20.glEnableVertexAttribArray(vertexPosLoc);
+        GLES20.glEnableVertexAttribArray(texCoordsInLoc);
+        quad.bind(vertexPosLoc, texCoordsInLoc);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+
+        for (int i = 0; i < targets.size(); ++i) {
+            if (i + 1 < targets.size()) {
+                targets.get(i + 1).bind();
+            } else if (output != null) {
+                output.bind();
+            } else {
+                RenderTarget.unbind();
+                GLES20.glViewport(0, 0, outputSize.getWidth(), outputSize.getHeight());
+            }
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, targets.get(i).getTextureId());
+            GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+        }
+        GLUtils.checkGlError();
+
+        QuadBuffer.unbind();
+        GLES20.glDisableVertexAttribArray(vertexPosLoc);
+        GLES20.glDisableVertexAttribArray(texCoordsInLoc);
+        RenderTarget.unbind();
+    }
+
+    public void release() {
+        RenderTargetPool pool = EglContextManager.getRenderTargetPool();
+        for (RenderTarget target : targets) {
+            pool.recycle(target);
+        }
+        targets.clear();
+        quad.release();
+        ProgramCache.release(program);
+    }
+}
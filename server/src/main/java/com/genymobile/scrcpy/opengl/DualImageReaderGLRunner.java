@@ -1,20 +1,23 @@
 package com.genymobile.scrcpy.opengl;
 
 import com.genymobile.scrcpy.device.Size;
+import com.genymobile.scrcpy.util.AffineMatrix;
 import com.genymobile.scrcpy.util.Ln;
 
 import android.graphics.ImageFormat;
 import android.graphics.PixelFormat;
+import android.graphics.SurfaceTexture;
 import android.media.Image;
 import android.media.ImageReader;
 import android.opengl.EGL14;
-import android.opengl.EGLConfig;
-import android.opengl.EGLContext;
 import android.opengl.EGLDisplay;
 import android.opengl.EGLExt;
 import android.opengl.EGLSurface;
+import android.opengl.GLES11Ext;
 import android.opengl.GLES20;
+import android.opengl.Matrix;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.view.Surface;
 
 import java.nio.ByteBuffer;
@@ -24,11 +27,21 @@ import java.util.concurrent.atomic.AtomicBoolean;
 /**
  * OpenGL runner using two ImageReaders (display RGBA + camera YUV)
  * to avoid SurfaceTexture OES texture limitations.
+ * <p>
+ * If {@link ExternalTextureProbe} reports that external textures are sampled correctly, the sources are instead imported without copy through
+ * SurfaceTextures (the gralloc buffers are bound as EGLImages), which avoids the CPU readback and upload of every frame. The camera is only
+ * imported this way if the YUV buffers are also verified, otherwise it stays on the ImageReader path.
  */
 public final class DualImageReaderGLRunner {
 
+    private static final float[] VFLIP_MATRIX = AffineMatrix.vflip().to4x4();
+    private static final float[] IDENTITY_MATRIX = AffineMatrix.IDENTITY.to4x4();
+
+    // Source indexes for timestamps
+    private static final int DISPLAY = 0;
+    private static final int CAMERA = 1;
+
     private EGLDisplay eglDisplay;
-    private EGLContext eglContext;
     private EGLSurface eglSurface;
 
     private ImageReader displayImageReader;
@@ -39,6 +52,15 @@ public final class DualImageReaderGLRunner {
     private int displayTexId;
     private int yTexId, uTexId, vTexId;
 
+    // Zero-copy path (decided per source)
+    private boolean displayExternal;
+    private boolean cameraExternal;
+    private SurfaceTexture displaySurfaceTexture;
+    private SurfaceTexture cameraSurfaceTexture;
+    private int cameraTexId;
+    private final float[] surfaceTexMatrix = new float[16]; // preallocated, the matrices are computed on every frame
+    private final float[] displayTexMatrix = new float[16];
+
     private final Handler handler;
     private boolean stopped;
 
@@ -49,9 +71,33 @@ public final class DualImageReaderGLRunner {
     private long cameraFrameCount = 0;
 
     private RgbaYuvPipFilter filter;
-
-    public DualImageReaderGLRunner(Handler handler) {
+    private Size outputSize;
+    private boolean rendered; // false until the first frame is rendered
+    private final SnapshotQueue snapshots = new SnapshotQueue();
+    private OverlayRenderer overlay;
+    private final PipLayout initialLayout;
+    private final int cameraRotation;
+
+    private final CompositeTimestamps timestamps;
+    private final boolean cameraTimestampRealtime;
+    private boolean clockWarningLogged;
+    private volatile long displayLatencyNs = -1;
+    private volatile long cameraLatencyNs = -1;
+
+    /**
+     * @param handler                 the handler of the OpenGL thread
+     * @param layout                  the initial PiP layout
+     * @param cameraRotation          the rotation of the camera frames, in degrees
+     * @param cameraMasterClock       {@code true} to derive the output timestamps from the camera frames, {@code false} from the display frames
+     * @param cameraTimestampRealtime {@code true} if the camera timestamps are on the {@link SystemClock#elapsedRealtimeNanos()} clock
+     */
+    public DualImageReaderGLRunner(Handler handler, PipLayout layout, int cameraRotation, boolean cameraMasterClock,
+            boolean cameraTimestampRealtime) {
         this.handler = handler;
+        this.initialLayout = layout;
+        this.cameraRotation = cameraRotation;
+        this.timestamps = new CompositeTimestamps(2, cameraMasterClock ? CAMERA : DISPLAY);
+        this.cameraTimestampRealtime = cameraTimestampRealtime;
     }
 
     public static class InputSurfaces {
@@ -99,90 +145,94 @@ public final class DualImageReaderGLRunner {
     private InputSurfaces run(Size displaySize, Size cameraSize, Size outputSize, Surface outputSurface) throws OpenGLException {
         Ln.i("DualImageReaderGL init: display=" + displaySize + ", camera=" + cameraSize + ", output=" + outputSize);
         
-        // Init EGL
-        eglDisplay = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
-        if (eglDisplay == EGL14.EGL_NO_DISPLAY) {
-            throw new OpenGLException("Unable to get EGL14 display");
-        }
-
-        int[] version = new int[2];
-        if (!EGL14.eglInitialize(eglDisplay, version, 0, version, 1)) {
-            throw new OpenGLException("Unable to initialize EGL14");
-        }
-
-        int[] attribList = {
-                EGL14.EGL_RED_SIZE, 8,
-                EGL14.EGL_GREEN_SIZE, 8,
-                EGL14.EGL_BLUE_SIZE, 8,
-                EGL14.EGL_ALPHA_SIZE, 8,
-                EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
-                EGL14.EGL_NONE
-        };
-
-        EGLConfig[] configs = new EGLConfig[1];
-        int[] numConfigs = new int[1];
-        EGL14.eglChooseConfig(eglDisplay, attribList, 0, configs, 0, configs.length, numConfigs, 0);
-        if (numConfigs[0] <= 0) {
-            EGL14.eglTerminate(eglDisplay);
-            throw new OpenGLException("Unable to find ES2 EGL config");
-        }
-        EGLConfig eglConfig = configs[0];
-
-        int[] contextAttribList = {
-                EGL14.EGL_CONTEXT_CLIENT_VERSION, 2,
-                EGL14.EGL_NONE
-        };
-        eglContext = EGL14.eglCreateContext(eglDisplay, eglConfig, EGL14.EGL_NO_CONTEXT, contextAttribList, 0);
-        if (eglContext == null) {
-            EGL14.eglTerminate(eglDisplay);
-            throw new OpenGLException("Failed to create EGL context");
+        // The EGL display and the context of this thread are kept across captures, only the window surface is created for each capture
+        eglSurface = EglContextManager.createWindowSurface(outputSurface);
+        eglDisplay = EglContextManager.getDisplay();
+        this.outputSize = outputSize;
+
+        displayExternal = ExternalTextureProbe.isSupported();
+        // The display probe only covers RGBA buffers, the camera produces YUV buffers
+        cameraExternal = displayExternal && ExternalTextureProbe.isYuvSupported();
+        Ln.i("DualImageReaderGL: display " + (displayExternal ? "zero-copy" : "ImageReader upload") + ", camera "
+                + (cameraExternal ? "zero-copy" : "ImageReader upload"));
+
+        initFilter(displayExternal || cameraExternal, cameraSize, outputSize);
+        overlay = new OverlayRenderer();
+
+        if (displayExternal) {
+            startExternalDisplay(displaySize, cameraSize, outputSize);
+        } else {
+            startDisplayImageReader(displaySize, cameraSize, outputSize);
         }
-
-        int[] surfaceAttribList = {
-                EGL14.EGL_NONE
-        };
-        eglSurface = EGL14.eglCreateWindowSurface(eglDisplay, eglConfig, outputSurface, surfaceAttribList, 0);
-        if (eglSurface == null) {
-            EGL14.eglDestroyContext(eglDisplay, eglContext);
-            EGL14.eglTerminate(eglDisplay);
-            throw new OpenGLException("Failed to create EGL window surface");
+        if (cameraExternal) {
+            startExternalCamera(displaySize, cameraSize, outputSize);
+        } else {
+            startCameraImageReader(displaySize, cameraSize, outputSize);
         }
 
-        if (!EGL14.eglMakeCurrent(eglDisplay, eglSurface, eglSurface, eglContext)) {
-            EGL14.eglDestroySurface(eglDisplay, eglSurface);
-            EGL14.eglDestroyContext(eglDisplay, eglContext);
-            EGL14.eglTerminate(eglDisplay);
-            throw new OpenGLException("Failed to make EGL context current");
-        }
+        Ln.i("DualImageReaderGL: sources created, waiting for frames...");
+        return new InputSurfaces(displayInputSurface, cameraInputSurface);
+    }
 
-        // Create textures: 1 RGBA for display, 3 luminance for YUV camera
-        int[] textures = new int[4];
-        GLES20.glGenTextures(4, textures, 0);
-        GLUtils.checkGlError();
-        displayTexId = textures[0];
-        yTexId = textures[1];
-        uTexId = textures[2];
-        vTexId = textures[3];
-
-        // Configure RGBA texture for display
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, displayTexId);
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+    private static int createExternalTexture() {
+        int[] textures = new int[1];
+        GLES20.glGenTextures(1, textures, 0);
         GLUtils.checkGlError();
+        int texId = textures[0];
 
-        // Configure YUV textures for camera
-        for (int i = 1; i < 4; i++) {
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[i]);
-            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
-            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
-            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
-        }
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, texId);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
         GLUtils.checkGlError();
+        return texId;
+    }
+
+    private void startExternalDisplay(Size displaySize, Size cameraSize, Size outputSize) {
+        displayTexId = createExternalTexture();
+        displaySurfaceTexture = new SurfaceTexture(displayTexId);
+        displaySurfaceTexture.setDefaultBufferSize(displaySize.getWidth(), displaySize.getHeight());
+        displayInputSurface = new Surface(displaySurfaceTexture);
+
+        // Latch each frame as soon as it is available (like the CPU path uploads it), so that the producers never stall
+        displaySurfaceTexture.setOnFrameAvailableListener(surfaceTexture -> {
+            if (stopped) return;
+            surfaceTexture.updateTexImage();
+            onDisplayFrame(surfaceTexture.getTimestamp());
+            displayFrameAvailable.set(true);
+            displayFrameCount++;
+            if ((displayFrameCount % 30) == 0) {
+                Ln.i("DualImageReaderGL display frames=" + displayFrameCount);
+            }
+            tryRender(outputSize, displaySize, cameraSize);
+        }, handler);
+    }
+
+    private void startExternalCamera(Size displaySize, Size cameraSize, Size outputSize) {
+        cameraTexId = createExternalTexture();
+        cameraSurfaceTexture = new SurfaceTexture(cameraTexId);
+        cameraSurfaceTexture.setDefaultBufferSize(cameraSize.getWidth(), cameraSize.getHeight());
+        cameraInputSurface = new Surface(cameraSurfaceTexture);
+
+        cameraSurfaceTexture.setOnFrameAvailableListener(surfaceTexture -> {
+            if (stopped) return;
+            surfaceTexture.updateTexImage();
+            onCameraFrame(surfaceTexture.getTimestamp());
+            cameraFrameAvailable.set(true);
+            cameraFrameCount++;
+            if ((cameraFrameCount % 30) == 0) {
+                Ln.i("DualImageReaderGL camera frames=" + cameraFrameCount);
+            }
+            tryRender(outputSize, displaySize, cameraSize);
+        }, handler);
+    }
+
+    private void startDisplayImageReader(Size displaySize, Size cameraSize, Size outputSize) throws OpenGLException {
+        // Texture allocated once at its final size (from the pool, so that it is reused across captures)
+        TexturePool texturePool = EglContextManager.getTexturePool();
+        displayTexId = texturePool.acquire(displaySize.getWidth(), displaySize.getHeight(), GLES20.GL_RGBA);
 
-        // Create ImageReaders
         displayImageReader = ImageReader.newInstance(
             displaySize.getWidth(), 
             displaySize.getHeight(), 
@@ -191,33 +241,21 @@ public final class DualImageReaderGLRunner {
         );
         displayInputSurface = displayImageReader.getSurface();
 
-        cameraImageReader = ImageReader.newInstance(
-            cameraSize.getWidth(), 
-            cameraSize.getHeight(), 
-            ImageFormat.YUV_420_888, 
-            3
-        );
-        cameraInputSurface = cameraImageReader.getSurface();
-
-        // Init filter
-        filter = new RgbaYuvPipFilter();
-        filter.init();
-        filter.configureCamera(
-                cameraSize.getWidth(),
-                cameraSize.getHeight(),
-                outputSize.getWidth(),
-                outputSize.getHeight(),
-                RgbaYuvPipFilter.Rotation.ROT_270);
-
-        // Set up frame listeners
         displayImageReader.setOnImageAvailableListener(reader -> {
             if (stopped) return;
             Image image = reader.acquireLatestImage();
             if (image == null) return;
             
             Image.Plane[] planes = image.getPlanes();
+            long timestamp = image.getTimestamp();
             handler.post(() -> {
+                if (stopped) {
+                    // The reader has been closed and the textures recycled (possibly reused by another runner) since the image was acquired
+                    image.close();
+                    return;
+                }
                 uploadRgbaPlane(planes[0], displayTexId, displaySize.getWidth(), displaySize.getHeight());
+                onDisplayFrame(timestamp);
                 displayFrameAvailable.set(true);
                 displayFrameCount++;
                 if ((displayFrameCount % 30) == 0) {
@@ -227,6 +265,22 @@ public final class DualImageReaderGLRunner {
                 tryRender(outputSize, displaySize, cameraSize);
             });
         }, handler);
+    }
+
+    private void startCameraImageReader(Size displaySize, Size cameraSize, Size outputSize) throws OpenGLException {
+        // Textures allocated once at their final size (from the pool, so that they are reused across captures): 3 luminance for YUV
+        TexturePool texturePool = EglContextManager.getTexturePool();
+        yTexId = texturePool.acquire(cameraSize.getWidth(), cameraSize.getHeight(), GLES20.GL_LUMINANCE);
+        uTexId = texturePool.acquire(cameraSize.getWidth() / 2, cameraSize.getHeight() / 2, GLES20.GL_LUMINANCE);
+        vTexId = texturePool.acquire(cameraSize.getWidth() / 2, cameraSize.getHeight() / 2, GLES20.GL_LUMINANCE);
+
+        cameraImageReader = ImageReader.newInstance(
+            cameraSize.getWidth(), 
+            cameraSize.getHeight(), 
+            ImageFormat.YUV_420_888, 
+            3
+        );
+        cameraInputSurface = cameraImageReader.getSurface();
 
         cameraImageReader.setOnImageAvailableListener(reader -> {
             if (stopped) return;
@@ -234,10 +288,16 @@ public final class DualImageReaderGLRunner {
             if (image == null) return;
 
             Image.Plane[] planes = image.getPlanes();
+            long timestamp = image.getTimestamp();
             handler.post(() -> {
+                if (stopped) {
+                    image.close();
+                    return;
+                }
                 uploadPlane(planes[0], yTexId, cameraSize.getWidth(), cameraSize.getHeight());
                 uploadPlane(planes[1], uTexId, cameraSize.getWidth() / 2, cameraSize.getHeight() / 2);
                 uploadPlane(planes[2], vTexId, cameraSize.getWidth() / 2, cameraSize.getHeight() / 2);
+                onCameraFrame(timestamp);
                 
                 cameraFrameAvailable.set(true);
                 cameraFrameCount++;
@@ -248,9 +308,44 @@ public final class DualImageReaderGLRunner {
                 tryRender(outputSize, displaySize, cameraSize);
             });
         }, handler);
+    }
 
-        Ln.i("DualImageReaderGL: ImageReaders created, waiting for frames...");
-        return new InputSurfaces(displayInputSurface, cameraInputSurface);
+    private void initFilter(boolean externalTextures, Size cameraSize, Size outputSize) throws OpenGLException {
+        filter = new RgbaYuvPipFilter(externalTextures, initialLayout);
+        filter.init();
+        filter.configure(cameraSize, outputSize, cameraRotation);
+    }
+
+    /**
+     * Change the PiP layout (applied from the next rendered frame).
+     *
+     * @param layout the new layout
+     */
+    public void setLayout(PipLayout layout) {
+        handler.post(() -> {
+            if (!stopped && filter != null) {
+                filter.setLayout(layout);
+            }
+        });
+    }
+
+    /**
+     * Request a snapshot of the composited frame (the listener is called on the OpenGL thread).
+     *
+     * @param maxSize  the maximum snapshot size (0 for the output size)
+     * @param listener the listener
+     */
+    public void requestSnapshot(int maxSize, OpenGLRunner.SnapshotListener listener) {
+        handler.post(() -> {
+            if (stopped) {
+                listener.onSnapshot(null, null);
+            } else if (!rendered) {
+                snapshots.add(maxSize, listener);
+            } else {
+                // The textures still contain the last composited frame
+                snapshots.take(outputSize, maxSize, listener, filter::draw);
+            }
+        });
     }
 
     private static void uploadRgbaPlane(Image.Plane plane, int texId, int width, int height) {
@@ -263,8 +358,7 @@ public final class DualImageReaderGLRunner {
             // Direct upload
             buf.position(0);
             GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texId);
-            GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0,
-                               GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, buf);
+            GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, buf);
         } else {
             // Pack with stride
             ByteBuffer packed = ByteBuffer.allocateDirect(width * height * 4);
@@ -279,8 +373,7 @@ public final class DualImageReaderGLRunner {
             }
             packed.position(0);
             GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texId);
-            GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0,
-                               GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, packed);
+            GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, packed);
         }
     }
 
@@ -300,8 +393,50 @@ public final class DualImageReaderGLRunner {
         packed.position(0);
         
         GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texId);
-        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_LUMINANCE, width, height, 0, 
-                           GLES20.GL_LUMINANCE, GLES20.GL_UNSIGNED_BYTE, packed);
+        // Luminance rows are not necessarily 4-byte aligned
+        GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
+        GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, width, height, GLES20.GL_LUMINANCE, GLES20.GL_UNSIGNED_BYTE, packed);
+    }
+
+    private void onDisplayFrame(long timestampNs) {
+        if (!timestamps.onFrame(DISPLAY, timestampNs, System.nanoTime())) {
+            warnInvalidTimestamp("display", timestampNs);
+        }
+    }
+
+    private void onCameraFrame(long timestampNs) {
+        if (cameraTimestampRealtime) {
+            // Convert to the System.nanoTime() clock
+            timestampNs -= SystemClock.elapsedRealtimeNanos() - System.nanoTime();
+        }
+        if (!timestamps.onFrame(CAMERA, timestampNs, System.nanoTime())) {
+            warnInvalidTimestamp("camera", timestampNs);
+        }
+    }
+
+    private void warnInvalidTimestamp(String source, long timestampNs) {
+        if (!clockWarningLogged) {
+            Ln.w("DualImageReaderGL: unexpected " + source + " frame timestamp " + timestampNs + ", using the reception time");
+            clockWarningLogged = true;
+        }
+    }
+
+    /**
+     * Return the capture-to-render latency of the last rendered display frame.
+     *
+     * @return the latency in nanoseconds, or -1 if unknown
+     */
+    public long getDisplayLatencyNs() {
+        return displayLatencyNs;
+    }
+
+    /**
+     * Return the capture-to-render latency of the last rendered camera frame.
+     *
+     * @return the latency in nanoseconds, or -1 if unknown
+     */
+    public long getCameraLatencyNs() {
+        return cameraLatencyNs;
     }
 
     private void tryRender(Size outputSize, Size displaySize, Size cameraSize) {
@@ -311,7 +446,8 @@ public final class DualImageReaderGLRunner {
         }
 
         if ((displayFrameCount + cameraFrameCount) % 60 == 0) {
-            Ln.i("DualImageReaderGL tick d=" + displayFrameCount + " c=" + cameraFrameCount);
+            Ln.i("DualImageReaderGL tick d=" + displayFrameCount + " c=" + cameraFrameCount + " latency d=" + displayLatencyNs / 1000
+                    + "µs c=" + cameraLatencyNs / 1000 + "µs");
         }
 
         render(outputSize, displaySize, cameraSize);
@@ -325,12 +461,36 @@ public final class DualImageReaderGLRunner {
         boolean hasCamera = cameraFrameAvailable.getAndSet(false);
 
         // Set textures for filter
-        filter.setDisplayTexture(displayTexId, displaySize.getWidth(), displaySize.getHeight());
-        filter.setYuvTextures(yTexId, uTexId, vTexId, cameraSize.getWidth(), cameraSize.getHeight());
+        if (displayExternal) {
+            // Flip the SurfaceTexture matrix (which keeps any buffer crop) so that v = 0 is the first row, like the uploaded textures
+            displaySurfaceTexture.getTransformMatrix(surfaceTexMatrix);
+            Matrix.multiplyMM(displayTexMatrix, 0, surfaceTexMatrix, 0, VFLIP_MATRIX, 0);
+            filter.setExternalDisplayTexture(displayTexId, displayTexMatrix, displaySize.getWidth(), displaySize.getHeight());
+        } else {
+            filter.setDisplayTexture(displayTexId, displaySize.getWidth(), displaySize.getHeight());
+        }
+        if (cameraExternal) {
+            // The matrix returned for camera buffers is unreliable (see CameraCapture), so the camera texture is sampled as is
+            filter.setExternalCameraTexture(cameraTexId, IDENTITY_MATRIX, cameraSize.getWidth(), cameraSize.getHeight());
+        } else {
+            filter.setYuvTextures(yTexId, uTexId, vTexId, cameraSize.getWidth(), cameraSize.getHeight());
+        }
         filter.draw();
 
-        long timestamp = System.nanoTime();
-        EGLExt.eglPresentationTimeANDROID(eglDisplay, eglSurface, timestamp);
+        if (OverlayState.isEnabled()) {
+            overlay.draw(outputSize);
+        }
+
+        rendered = true;
+        // Last, the snapshot render targets change the viewport
+        snapshots.serve(outputSize, filter::draw);
+
+        // Present the frame at the capture time of the master source rather than at the render time
+        long now = System.nanoTime();
+        long pts = timestamps.computePts(now);
+        displayLatencyNs = timestamps.getLatencyNs(DISPLAY);
+        cameraLatencyNs = timestamps.getLatencyNs(CAMERA);
+        EGLExt.eglPresentationTimeANDROID(eglDisplay, eglSurface, pts);
         EGL14.eglSwapBuffers(eglDisplay, eglSurface);
     }
 
@@ -339,6 +499,7 @@ public final class DualImageReaderGLRunner {
 
         handler.post(() -> {
             stopped = true;
+            snapshots.cancel();
 
             if (displayImageReader != null) {
                 displayImageReader.close();
@@ -346,20 +507,38 @@ public final class DualImageReaderGLRunner {
             if (cameraImageReader != null) {
                 cameraImageReader.close();
             }
+            if (displaySurfaceTexture != null) {
+                displaySurfaceTexture.setOnFrameAvailableListener(null, handler);
+            }
+            if (cameraSurfaceTexture != null) {
+                cameraSurfaceTexture.setOnFrameAvailableListener(null, handler);
+            }
 
             if (filter != null) {
                 filter.release();
             }
+            if (overlay != null) {
+                overlay.release();
+                overlay = null;
+            }
 
-            int[] textures = {displayTexId, yTexId, uTexId, vTexId};
-            GLES20.glDeleteTextures(4, textures, 0);
+            TexturePool texturePool = EglContextManager.getTexturePool();
+            if (displayExternal) {
+                GLES20.glDeleteTextures(1, new int[] {displayTexId}, 0);
+            } else {
+                texturePool.recycle(displayTexId);
+            }
+            if (cameraExternal) {
+                GLES20.glDeleteTextures(1, new int[] {cameraTexId}, 0);
+            } else {
+                for (int texId : new int[] {yTexId, uTexId, vTexId}) {
+                    texturePool.recycle(texId);
+                }
+            }
             GLUtils.checkGlError();
 
-            EGL14.eglDestroySurface(eglDisplay, eglSurface);
-            EGL14.eglDestroyContext(eglDisplay, eglContext);
-            EGL14.eglTerminate(eglDisplay);
+            EglContextManager.releaseSurface(eglSurface);
             eglDisplay = EGL14.EGL_NO_DISPLAY;
-            eglContext = EGL14.EGL_NO_CONTEXT;
             eglSurface = EGL14.EGL_NO_SURFACE;
 
             if (displayInputSurface != null) {
@@ -368,6 +547,12 @@ public final class DualImageReaderGLRunner {
             if (cameraInputSurface != null) {
                 cameraInputSurface.release();
             }
+            if (displaySurfaceTexture != null) {
+                displaySurfaceTexture.release();
+            }
+            if (cameraSurfaceTexture != null) {
+                cameraSurfaceTexture.release();
+            }
 
             sem.release();
         });
@@ -0,0 +1,262 @@
+package com.genymobile.scrcpy.opengl;
+
+import com.genymobile.scrcpy.util.Ln;
+
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLExt;
+import android.opengl.EGLSurface;
+import android.view.Surface;
+
+/**
+ * Process-wide EGL state shared by all the OpenGL runners.
+ * <p>
+ * The EGL display is initialized and a root context is created once, on first use. Each rendering thread gets its own context (an EGL context
+ * may only be current on one thread at a time), created on first use and kept until {@link #releaseCurrentThread()}. All these contexts share
+ * their objects with the root context, so that textures from the {@link TexturePool} may be used on any of them.
+ * <p>
+ * As a consequence, a capture restart (for example on rotation) only replaces the window surface, instead of terminating and reinitializing EGL.
+ */
+public final class EglContextManager {
+
+    private static EGLDisplay eglDisplay = EGL14.EGL_NO_DISPLAY;
+    private static EGLConfig eglConfig;
+    private static EGLContext rootContext = EGL14.EGL_NO_CONTEXT;
+    private static int glesVersion;
+    private static TexturePool texturePool;
+
+    private static final ThreadLocal<ThreadState> THREAD_STATE = new ThreadLocal<>();
+
+    private static final class ThreadState {
+        private final EGLContext context;
+        private final RenderTargetPool renderTargetPool = new RenderTargetPool();
+
+        private ThreadState(EGLContext context) {
+            this.context = context;
+        }
+    }
+
+    private EglContextManager() {
+        // not instantiable
+    }
+
+    private static synchronized void initOnce() throws OpenGLException {
+        if (eglDisplay != EGL14.EGL_NO_DISPLAY) {
+            return;
+        }
+
+        EGLDisplay display = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+        if (display == EGL14.EGL_NO_DISPLAY) {
+            throw new OpenGLException("Unable to get EGL14 display");
+        }
+
+        int[] version = new int[2];
+        if (!EGL14.eglInitialize(display, version, 0, version, 1)) {
+            throw new OpenGLException("Unable to initialize EGL14");
+        }
+
+        // Prefer an OpenGL ES 3 context (required for asynchronous readback), but fall back to OpenGL ES 2
+        int contextVersion = 3;
+        EGLConfig config = chooseConfig(display, EGLExt.EGL_OPENGL_ES3_BIT_KHR);
+        EGLContext context = config != null ? createContext(display, config, EGL14.EGL_NO_CONTEXT, contextVersion) : null;
+        if (context == null) {
+            contextVersion = 2;
+            config = chooseConfig(display, EGL14.EGL_OPENGL_ES2_BIT);
+            if (config == null) {
+                EGL14.eglTerminate(display);
+                throw new OpenGLException("Unable to find ES2 EGL config");
+            }
+            context = createContext(display, config, EGL14.EGL_NO_CONTEXT, contextVersion);
+            if (context == null) {
+                EGL14.eglTerminate(display);
+                throw new OpenGLException("Failed to create EGL context");
+            }
+        }
+
+        Ln.d("EGL " + version[0] + "." + version[1] + " initialized (OpenGL ES " + contextVersion + ")");
+        eglDisplay = display;
+        eglConfig = config;
+        rootContext = context;
+        glesVersion = contextVersion;
+        texturePool = new TexturePool();
+    }
+
+    private static EGLConfig chooseConfig(EGLDisplay display, int renderableType) {
+        // @formatter:off
+        int[] attribList = {
+                EGL14.EGL_RED_SIZE, 8,
+                EGL14.EGL_GREEN_SIZE, 8,
+                EGL14.EGL_BLUE_SIZE, 8,
+                EGL14.EGL_ALPHA_SIZE, 8,
+                EGL14.EGL_RENDERABLE_TYPE, renderableType,
+                EGL14.EGL_SURFACE_TYPE, EGL14.EGL_WINDOW_BIT | EGL14.EGL_PBUFFER_BIT,
+                EGL14.EGL_NONE
+        };
+
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] numConfigs = new int[1];
+        EGL14.eglChooseConfig(display, attribList, 0, configs, 0, configs.length, numConfigs, 0);
+        return numConfigs[0] > 0 ? configs[0] : null;
+    }
+
+    private static EGLContext createContext(EGLDisplay display, EGLConfig config, EGLContext shareContext, int version) {
+        // @formatter:off
+        int[] contextAttribList = {
+                EGL14.EGL_CONTEXT_CLIENT_VERSION, version,
+                EGL14.EGL_NONE
+        };
+        EGLContext context = EGL14.eglCreateContext(display, config, shareContext, contextAttribList, 0);
+        return context == EGL14.EGL_NO_CONTEXT ? null : context;
+    }
+
+    private static ThreadState getThreadState() throws OpenGLException {
+        initOnce();
+
+        ThreadState state = THREAD_STATE.get();
+        if (state == null) {
+            EGLContext context = createContext(eglDisplay, eglConfig, rootContext, glesVersion);
+            if (context == null) {
+                throw new OpenGLException("Failed to create EGL context");
+            }
+            state = new ThreadState(context);
+            THREAD_STATE.set(state);
+        }
+        return state;
+    }
+
+    public static EGLDisplay getDisplay() {
+        return eglDisplay;
+    }
+
+    /**
+     * Return the OpenGL ES version of the contexts (2 or 3).
+     * <p>
+     * Must be called after a surface has been created.
+     *
+     * @return the OpenGL ES major version
+     */
+    public static int getGlesVersion() {
+        assert glesVersion != 0;
+        return glesVersion;
+    }
+
+    /**
+     * Create a window surface and make it current with the context of the calling thread.
+     *
+     * @param surface the output surface
+     * @return the EGL surface, to be released by {@link #releaseSurface(EGLSurface)}
+     */
+    public static EGLSurface createWindowSurface(Surface surface) throws OpenGLException {
+        ThreadState state = getThreadState();
+
+        int[] surfaceAttribList = {
+                EGL14.EGL_NONE
+        };
+        EGLSurface eglSurface = EGL14.eglCreateWindowSurface(eglDisplay, eglConfig, surface, surfaceAttribList, 0);
+        if (eglSurface == null || eglSurface == EGL14.EGL_NO_SURFACE) {
+            throw new OpenGLException("Failed to create EGL window surface");
+        }
+
+        if (!EGL14.eglMakeCurrent(eglDisplay, eglSurface, eglSurface, state.context)) {
+            EGL14.eglDestroySurface(eglDisplay, eglSurface);
+            throw new OpenGLException("Failed to make EGL context current");
+        }
+
+        return eglSurface;
+    }
+
+    /**
+     * Create a 1x1 pbuffer surface and make it current with the context of the calling thread, to render offscreen (into framebuffer objects).
+     *
+     * @return the EGL surface, to be released by {@link #releaseSurface(EGLSurface)}
+     */
+    public static EGLSurface createOffscreenSurface() throws OpenGLException {
+        ThreadState state = getThreadState();
+
+        EGLSurface eglSurface = createPbufferSurface();
+        if (eglSurface == null) {
+            throw new OpenGLException("Failed to create EGL pbuffer surface");
+        }
+
+        if (!EGL14.eglMakeCurrent(eglDisplay, eglSurface, eglSurface, state.context)) {
+            EGL14.eglDestroySurface(eglDisplay, eglSurface);
+            throw new OpenGLException("Failed to make EGL context current");
+        }
+
+        return eglSurface;
+    }
+
+    private static EGLSurface createPbufferSurface() {
+        int[] pbufferAttribList = {
+                EGL14.EGL_WIDTH, 1,
+                EGL14.EGL_HEIGHT, 1,
+                EGL14.EGL_NONE
+        };
+        EGLSurface pbuffer = EGL14.eglCreatePbufferSurface(eglDisplay, eglConfig, pbufferAttribList, 0);
+        return pbuffer == EGL14.EGL_NO_SURFACE ? null : pbuffer;
+    }
+
+    /**
+     * Detach the surface from the context of the calling thread and destroy it.
+     * <p>
+     * The context is kept for the next window surface.
+     *
+     * @param eglSurface the EGL surface (window or offscreen)
+     */
+    public static void releaseSurface(EGLSurface eglSurface) {
+        EGL14.eglMakeCurrent(eglDisplay, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+        EGL14.eglDestroySurface(eglDisplay, eglSurface);
+    }
+
+    /**
+     * Return the pool of textures, shared by all the contexts.
+     * <p>
+     * Must be called on a thread with a current context.
+     *
+     * @return the texture pool
+     */
+    public static TexturePool getTexturePool() {
+        assert texturePool != null;
+        return texturePool;
+    }
+
+    /**
+     * Return the pool of render targets of the context of the calling thread (framebuffer objects are not shared between contexts).
+     * <p>
+     * Must be called on a thread with a current context.
+     *
+     * @return the render target pool
+     */
+    public static RenderTargetPool getRenderTargetPool() {
+        ThreadState state = THREAD_STATE.get();
+        assert state != null;
+        return state.renderTargetPool;
+    }
+
+    /**
+     * Destroy the context of the calling thread, if any.
+     * <p>
+     * Must be called on a rendering thread before it terminates.
+     */
+    public static void releaseCurrentThread() {
+        ThreadState state = THREAD_STATE.get();
+        if (state == null) {
+            return;
+        }
+
+        // Resources must be deleted with a current context: use a small pbuffer surface, since a surfaceless context is an extension
+        EGLSurface pbuffer = createPbufferSurface();
+        if (pbuffer != null) {
+            if (EGL14.eglMakeCurrent(eglDisplay, pbuffer, pbuffer, state.context)) {
+                state.renderTargetPool.release();
+            }
+            EGL14.eglMakeCurrent(eglDisplay, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+            EGL14.eglDestroySurface(eglDisplay, pbuffer);
+        }
+
+        EGL14.eglDestroyContext(eglDisplay, state.context);
+        THREAD_STATE.remove();
+    }
+}
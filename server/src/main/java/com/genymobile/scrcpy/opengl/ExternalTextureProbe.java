@@ -0,0 +1,255 @@
+package com.genymobile.scrcpy.opengl;
+
+import com.genymobile.scrcpy.AndroidVersions;
+import com.genymobile.scrcpy.util.Ln;
+
+import android.annotation.TargetApi;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ImageFormat;
+import android.graphics.SurfaceTexture;
+import android.media.Image;
+import android.media.ImageWriter;
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+import android.os.Build;
+import android.view.Surface;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Capability probe for the zero-copy import path.
+ * <p>
+ * A {@link SurfaceTexture} imports each producer buffer (the gralloc buffer behind {@code Image.getHardwareBuffer()}) as an EGLImage bound to a
+ * {@code GL_TEXTURE_EXTERNAL_OES} texture, without any CPU copy. Some drivers sample such textures incorrectly, so the probe renders a known
+ * color through this path and reads it back before enabling it.
+ * <p>
+ * RGBA buffers (like the display frames) and YUV buffers (like the camera frames, converted to RGB by the sampler) are probed separately: the
+ * YUV conversion is where some drivers fail.
+ */
+public final class ExternalTextureProbe {
+
+    private static final int PROBE_SIZE = 4;
+    private static final int PROBE_COLOR = Color.rgb(0x20, 0x80, 0xe0);
+    private static final int TOLERANCE = 8;
+
+    // Arbitrary YUV color, with a non-neutral chroma so that a wrong conversion (for example swapped U and V) is detected
+    private static final int PROBE_Y = 120;
+    private static final int PROBE_U = 90;
+    private static final int PROBE_V = 170;
+
+    private static Boolean supported;
+    private static Boolean yuvSupported;
+
+    private ExternalTextureProbe() {
+        // not instantiable
+    }
+
+    /**
+     * Indicate whether producer buffers can be sampled directly as external textures.
+     * <p>
+     * Must be called on a thread with a current EGL context. The result is computed once per process.
+     *
+     * @return {@code true} if the zero-copy path may be used
+     */
+    public static synchronized boolean isSupported() {
+        if (supported == null) {
+            supported = probe(false);
+            Ln.i("Zero-copy external textures " + (supported ? "supported" : "not supported"));
+        }
+        return supported;
+    }
+
+    /**
+     * Indicate whether YUV producer buffers (like the camera frames) can be sampled directly as external textures.
+     * <p>
+     * Must be called on a thread with a current EGL context. The result is computed once per process. YUV buffers can only be produced for
+     * the probe from Android 10, so this always returns {@code false} on older versions.
+     *
+     * @return {@code true} if the zero-copy path may be used for YUV sources
+     */
+    public static synchronized boolean isYuvSupported() {
+        if (yuvSupported == null) {
+            yuvSupported = Build.VERSION.SDK_INT >= AndroidVersions.API_29_ANDROID_10 && isSupported() && probe(true);
+            Ln.i("Zero-copy external YUV textures " + (yuvSupported ? "supported" : "not supported"));
+        }
+        return yuvSupported;
+    }
+
+    private static boolean probe(boolean yuv) {
+        String extensions = GLES20.glGetString(GLES20.GL_EXTENSIONS);
+        if (extensions == null || !extensions.contains("GL_OES_EGL_image_external")) {
+            return false;
+        }
+
+        int[] textures = new int[2];
+        int[] framebuffers = new int[1];
+        int program = 0;
+        SurfaceTexture surfaceTexture = null;
+        Surface surface = null;
+        AutoCloseable producer = null;
+        try {
+            GLES20.glGenTextures(2, textures, 0);
+            int externalTexId = textures[0];
+            int targetTexId = textures[1];
+
+            GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, externalTexId);
+            GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+            GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+
+            surfaceTexture = new SurfaceTexture(externalTexId);
+            surfaceTexture.setDefaultBufferSize(PROBE_SIZE, PROBE_SIZE);
+            surface = new Surface(surfaceTexture);
+
+            if (yuv) {
+                // The writer must stay connected until the buffer is latched (disconnecting the producer drops its queued buffers)
+                producer = queueYuvBuffer(surface);
+            } else {
+                // A software canvas queues the buffer synchronously on unlockCanvasAndPost(), so it can be latched immediately
+                Canvas canvas = surface.lockCanvas(null);
+                canvas.drawColor(PROBE_COLOR);
+                surface.unlockCanvasAndPost(canvas);
+            }
+            surfaceTexture.updateTexImage();
+
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, targetTexId);
+            GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, PROBE_SIZE, PROBE_SIZE, 0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+            GLES20.glGenFramebuffers(1, framebuffers, 0);
+            GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffers[0]);
+            GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D, targetTexId, 0);
+            if (GLES20.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER) != GLES20.GL_FRAMEBUFFER_COMPLETE) {
+                return false;
+            }
+
+            // @formatter:off
+            String vertexShaderCode = "#version 100\n"
+                    + "attribute vec4 vertex_pos;\n"
+                    + "varying vec2 tex_coords;\n"
+                    + "void main() {\n"
+                    + "    gl_Position = vertex_pos;\n"
+                    + "    tex_coords = vertex_pos.xy * 0.5 + 0.5;\n"
+                    + "}";
+
+            // @formatter:off
+            String fragmentShaderCode = "#version 100\n"
+                    + "#extension GL_OES_EGL_image_external : require\n"
+                    + "precision mediump float;\n"
+                    + "uniform samplerExternalOES tex;\n"
+                    + "varying vec2 tex_coords;\n"
+                    + "void main() {\n"
+                    + "    gl_FragColor = texture2D(tex, tex_coords);\n"
+                    + "}";
+
+            program = GLUtils.createProgram(vertexShaderCode, fragmentShaderCode);
+            if (program == 0) {
+                return false;
+            }
+
+            FloatBuffer vertexBuffer = GLUtils.createFloatBuffer(new float[] {-1, -1, 1, -1, -1, 1, 1, 1});
+            int vertexPosLoc = GLES20.glGetAttribLocation(program, "vertex_pos");
+            int texLoc = GLES20.glGetUniformLocation(program, "tex");
+
+            GLES20.glViewport(0, 0, PROBE_SIZE, PROBE_SIZE);
+            GLES20.glDisable(GLES20.GL_BLEND);
+            GLES20.glUseProgram(program);
+            GLES20.glEnableVertexAttribArray(vertexPosLoc);
+            GLES20.glVertexAttribPointer(vertexPosLoc, 2, GLES20.GL_FLOAT, false, 0, vertexBuffer);
+            GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+            GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, externalTexId);
+            GLES20.glUniform1i(texLoc, 0);
+            GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+            GLES20.glDisableVertexAttribArray(vertexPosLoc);
+
+            ByteBuffer pixel = ByteBuffer.allocateDirect(4).order(ByteOrder.nativeOrder());
+            GLES20.glReadPixels(PROBE_SIZE / 2, PROBE_SIZE / 2, 1, 1, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, pixel);
+
+            if (GLES20.glGetError() != GLES20.GL_NO_ERROR) {
+                return false;
+            }
+
+            int r = pixel.get(0) & 0xff;
+            int g = pixel.get(1) & 0xff;
+            int b = pixel.get(2) & 0xff;
+            if (yuv) {
+                // The conversion matrix depends on the driver (BT.601 or BT.709, limited or full range), accept any of them
+                return matchesYuv(r, g, b, 0.299, 0.114, false) || matchesYuv(r, g, b, 0.299, 0.114, true)
+                        || matchesYuv(r, g, b, 0.2126, 0.0722, false) || matchesYuv(r, g, b, 0.2126, 0.0722, true);
+            }
+            return matches(r, Color.red(PROBE_COLOR)) && matches(g, Color.green(PROBE_COLOR)) && matches(b, Color.blue(PROBE_COLOR));
+        } catch (RuntimeException e) {
+            Ln.w("External texture probe failed", e);
+            return false;
+        } finally {
+            if (producer != null) {
+                try {
+                    producer.close();
+                } catch (Exception e) {
+                    // ignore
+                }
+            }
+            GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+            if (framebuffers[0] != 0) {
+                GLES20.glDeleteFramebuffers(1, framebuffers, 0);
+            }
+            if (program != 0) {
+                GLES20.glDeleteProgram(program);
+            }
+            GLES20.glDeleteTextures(2, textures, 0);
+            if (surface != null) {
+                surface.release();
+            }
+            if (surfaceTexture != null) {
+                surfaceTexture.release();
+            }
+        }
+    }
+
+    @TargetApi(AndroidVersions.API_29_ANDROID_10)
+    private static ImageWriter queueYuvBuffer(Surface surface) {
+        // Like the camera, produce a YUV gralloc buffer (only the ImageWriter with an explicit format allows a software producer to do so)
+        ImageWriter writer = ImageWriter.newInstance(surface, 1, ImageFormat.YUV_420_888);
+        try {
+            Image image = writer.dequeueInputImage();
+            Image.Plane[] planes = image.getPlanes();
+            fillPlane(planes[0], PROBE_SIZE, PROBE_SIZE, PROBE_Y);
+            fillPlane(planes[1], PROBE_SIZE / 2, PROBE_SIZE / 2, PROBE_U);
+            fillPlane(planes[2], PROBE_SIZE / 2, PROBE_SIZE / 2, PROBE_V);
+            writer.queueInputImage(image);
+            return writer;
+        } catch (RuntimeException e) {
+            writer.close();
+            throw e;
+        }
+    }
+
+    private static void fillPlane(Image.Plane plane, int width, int height, int value) {
+        ByteBuffer buffer = plane.getBuffer();
+        int rowStride = plane.getRowStride();
+        int pixelStride = plane.getPixelStride();
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                buffer.put(y * rowStride + x * pixelStride, (byte) value);
+            }
+        }
+    }
+
+    private static boolean matchesYuv(int r, int g, int b, double kr, double kb, boolean fullRange) {
+        double y = fullRange ? PROBE_Y / 255.0 : (PROBE_Y - 16) / 219.0;
+        double u = (PROBE_U - 128) / (fullRange ? 255.0 : 224.0);
+        double v = (PROBE_V - 128) / (fullRange ? 255.0 : 224.0);
+        double expectedR = y + 2 * (1 - kr) * v;
+        double expectedB = y + 2 * (1 - kb) * u;
+        double expectedG = (y - kr * expectedR - kb * expectedB) / (1 - kr - kb);
+        return matches(r, toByte(expectedR)) && matches(g, toByte(expectedG)) && matches(b, toByte(expectedB));
+    }
+
+    private static int toByte(double value) {
+        return (int) Math.round(Math.max(0, Math.min(1, value)) * 255);
+    }
+
+    private static boolean matches(int actual, int expected) {
+        return Math.abs(actual - expected) <= TOLERANCE;
+    }
+}
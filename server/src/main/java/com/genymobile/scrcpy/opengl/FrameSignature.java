@@ -0,0 +1,187 @@
+package com.genymobile.scrcpy.opengl;
+
+import com.genymobile.scrcpy.device.Size;
+
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Detect frames which are (almost) identical to the last submitted frame, so that they are not encoded.
+ * <p>
+ * The signature of a frame is its luminance, averaged over a grid of {@code GRID_SIZE x GRID_SIZE} cells (16 samples per cell), rendered on
+ * the GPU into a tiny render target and read back. A frame is considered unchanged if no cell differs from the reference signature (the last
+ * frame considered changed) by more than the threshold, so that small variations never accumulate.
+ */
+public final class FrameSignature {
+
+    public static final int GRID_SIZE = 32;
+
+    private final int threshold;
+
+    private RenderTarget target;
+    private int program;
+    private QuadBuffer quad;
+    private int vertexPosLoc;
+    private int texMatrixLoc;
+
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(GRID_SIZE * GRID_SIZE * 4);
+    private byte[] signature = new byte[GRID_SIZE * GRID_SIZE];
+    private byte[] reference; // null until the first frame
+
+    private long frameCount;
+    private long skippedCount;
+    private int lastDifference;
+
+    /**
+     * @param threshold the maximum luminance difference of a cell (in [0, 255]) for a frame to be considered unchanged
+     */
+    public FrameSignature(int threshold) {
+        this.threshold = threshold;
+    }
+
+    public void init() throws OpenGLException {
+        // @formatter:off
+        String vertexShaderCode = "#version 100\n"
+                + "attribute vec4 vertex_pos;\n"
+                + "void main() {\n"
+                + "    gl_Position = vertex_pos;\n"
+                + "}";
+
+        // @formatter:off
+        String fragmentShaderCode = "#version 100\n"
+                + "#extension GL_OES_EGL_image_external : require\n"
+                + "precision mediump float;\n"
+                + "uniform samplerExternalOES tex;\n"
+                + "uniform mat4 tex_matrix;\n"
+                + "const float GRID_SIZE = " + GRID_SIZE + ".0;\n"
+                + "void main() {\n"
+                + "    vec2 cell = floor(gl_FragCoord.xy);\n"
+                + "    float sum = 0.0;\n"
+                + "    for (int i = 0; i < 4; ++i) {\n"
+                + "        for (int j = 0; j < 4; ++j) {\n"
+                + "            vec2 uv = (cell + (vec2(float(i), float(j)) + 0.5) / 4.0) / GRID_SIZE;\n"
+                + "            vec3 c = texture2D(tex, (tex_matrix * vec4(uv, 0.0, 1.0)).xy).rgb;\n"
+                + "            sum += dot(c, vec3(0.299, 0.587, 0.114));\n"
+                + "        }\n"
+                + "    }\n"
+                + "    gl_FragColor = vec4(sum / 16.0, 0.0, 0.0, 1.0);\n"
+                + "}";
+
+        program = ProgramCache.acquire(vertexShaderCode, fragmentShaderCode);
+        if (program == 0) {
+            throw new OpenGLException("Cannot create OpenGL program");
+        }
+
+        vertexPosLoc = GLES20.glGetAttribLocation(program, "vertex_pos");
+        assert vertexPosLoc != -1;
+
+        int texLoc = GLES20.glGetUniformLocation(program, "tex");
+        assert texLoc != -1;
+
+        texMatrixLoc = GLES20.glGetUniformLocation(program, "tex_matrix");
+        assert texMatrixLoc != -1;
+
+        // The texture unit never changes, set it once
+        GLES20.glUseProgram(program);
+        GLES20.glUniform1i(texLoc, 0);
+        GLUtils.checkGlError();
+
+        quad = QuadBuffer.create(new float[] {-1, -1, 1, -1, -1, 1, 1, 1}, null);
+        target = EglContextManager.getRenderTargetPool().acquire(new Size(GRID_SIZE, GRID_SIZE));
+    }
+
+    /**
+     * Compute the signature of a new frame and compare it to the reference.
+     * <p>
+     * The framebuffer and the viewport are not restored.
+     *
+     * @param textureId the external texture of the frame
+     * @param texMatrix the texture transform matrix
+     * @return {@code true} if the frame changed (it becomes the new reference), {@code false} if it may be skipped
+     */
+    public boolean update(int textureId, float[] texMatrix) {
+        target.bind();
+
+        GLES20.glUseProgram(program);
+        GLES20.glDisable(GLES20.GL_BLEND);
+        GLES20.glEnableVertexAttribArray(vertexPosLoc);
+        quad.bind(vertexPosLoc, -1);
+        GLES20.glUniformMatrix4fv(texMatrixLoc, 1, false, texMatrix, 0);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+        QuadBuffer.unbind();
+        GLES20.glDisableVertexAttribArray(vertexPosLoc);
+
+        readBuffer.clear();
+        GLES20.glReadPixels(0, 0, GRID_SIZE, GRID_SIZE, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, readBuffer);
+        GLUtils.checkGlError();
+        RenderTarget.unbind();
+
+        // Keep the luminance (red channel) only
+        for (int i = 0; i < signature.length; ++i) {
+            signature[i] = readBuffer.get(i * 4);
+        }
+
+        ++frameCount;
+        if (reference == null) {
+            reference = new byte[signature.length];
+        } else {
+            lastDifference = computeDifference(reference, signature);
+            if (lastDifference <= threshold) {
+                ++skippedCount;
+                return false;
+            }
+        }
+
+        // The current signature becomes the reference
+        byte[] tmp = reference;
+        reference = signature;
+        signature = tmp;
+        return true;
+    }
+
+    /**
+     * Compute the difference between two signatures.
+     *
+     * @param a the first signature
+     * @param b the second signature
+     * @return the maximum difference of a cell, in [0, 255]
+     */
+    static int computeDifference(byte[] a, byte[] b) {
+        assert a.length == b.length;
+        int max = 0;
+        for (int i = 0; i < a.length; ++i) {
+            int diff = Math.abs((a[i] & 0xff) - (b[i] & 0xff));
+            if (diff > max) {
+                max = diff;
+            }
+        }
+        return max;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+
+    /**
+     * Return the difference between the last frame and the reference.
+     *
+     * @return the difference, in [0, 255]
+     */
+    public int getLastDifference() {
+        return lastDifference;
+    }
+
+    public void release() {
+        EglContextManager.getRenderTargetPool().recycle(target);
+        quad.release();
+        ProgramCache.release(program);
+    }
+}
@@ -0,0 +1,92 @@
+package com.genymobile.scrcpy.opengl;
+
+import com.genymobile.scrcpy.device.Size;
+import com.genymobile.scrcpy.util.ByteBufferPool;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Keep the last frame read back asynchronously, so that a snapshot never stalls the OpenGL thread.
+ * <p>
+ * The frame is received on the OpenGL thread, and copied on the thread requesting it.
+ */
+final class LatestFrame implements AsyncReadback.Listener {
+
+    private final ByteBufferPool pool;
+
+    private ByteBuffer frame; // null if no frame is available (or while it is being copied)
+    private Size size;
+    private boolean released;
+
+    LatestFrame(ByteBufferPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public void onFrame(ByteBuffer rgba, Size size, long ptsUs) {
+        ByteBuffer previous;
+        synchronized (this) {
+            if (released) {
+                previous = rgba;
+            } else {
+                previous = frame;
+                frame = rgba;
+                this.size = size;
+            }
+        }
+        if (previous != null) {
+            pool.release(previous);
+        }
+    }
+
+    /**
+     * Copy the last frame.
+     *
+     * @return the RGBA pixels, top row first, or {@code null} if no frame is available
+     */
+    byte[] copy() {
+        ByteBuffer buffer;
+        synchronized (this) {
+            // Take the frame, so that the copy does not hold the lock
+            buffer = frame;
+            frame = null;
+        }
+        if (buffer == null) {
+            return null;
+        }
+
+        byte[] rgba = new byte[buffer.remaining()];
+        buffer.duplicate().get(rgba);
+
+        synchronized (this) {
+            if (frame == null && !released) {
+                // No new frame has been received in the meantime, keep this one
+                frame = buffer;
+                buffer = null;
+            }
+        }
+        if (buffer != null) {
+            pool.release(buffer);
+        }
+        return rgba;
+    }
+
+    synchronized Size getSize() {
+        return size;
+    }
+
+    /**
+     * Release the last frame (further frames are released immediately).
+     */
+    void release() {
+        ByteBuffer buffer;
+        synchronized (this) {
+            released = true;
+            buffer = frame;
+            frame = null;
+        }
+        if (buffer != null) {
+            pool.release(buffer);
+        }
+    }
+}
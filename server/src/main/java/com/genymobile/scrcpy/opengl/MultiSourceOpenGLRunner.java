@@ -0,0 +1,286 @@
+package com.genymobile.scrcpy.opengl;
+
+import com.genymobile.scrcpy.device.Size;
+import com.genymobile.scrcpy.util.Ln;
+
+import android.graphics.SurfaceTexture;
+import android.opengl.EGL14;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLExt;
+import android.opengl.EGLSurface;
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+import android.os.Handler;
+import android.view.Surface;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+/**
+ * OpenGL runner compositing N sources into a single output surface.
+ * <p>
+ * Each source writes to its own input surface, backed by a SurfaceTexture (its buffers are imported without copy as an external texture). On
+ * every new frame from any source, all the layers are drawn in a single pass by a {@link CompositorFilter}. The presentation timestamps are
+ * derived from the capture timestamps of the first source.
+ */
+public final class MultiSourceOpenGLRunner {
+
+    /**
+     * An input source of the compositor.
+     */
+    public static final class Input {
+        private final Size size;
+        private final CompositorLayer layer;
+        private final float[] overrideTransformMatrix;
+
+        /**
+         * @param size                    the size of the source frames
+         * @param layer                   the placement of the source in the output
+         * @param overrideTransformMatrix the texture matrix to use instead of the one provided by the SurfaceTexture, or {@code null}
+         */
+        public Input(Size size, CompositorLayer layer, float[] overrideTransformMatrix) {
+            this.size = size;
+            this.layer = layer;
+            this.overrideTransformMatrix = overrideTransformMatrix;
+        }
+    }
+
+    private EGLDisplay eglDisplay;
+    private EGLSurface eglSurface;
+
+    private final Handler handler;
+    private boolean stopped;
+
+    private CompositorFilter filter;
+
+    private int[] textureIds;
+    private SurfaceTexture[] surfaceTextures;
+    private Surface[] inputSurfaces;
+    private float[][] texMatrices;
+    private boolean[] hasFrame;
+    private long frameCount;
+    private Size outputSize;
+    private final SnapshotQueue snapshots = new SnapshotQueue();
+    private OverlayRenderer overlay;
+
+    private CompositeTimestamps timestamps;
+    private boolean clockWarningLogged;
+
+    public MultiSourceOpenGLRunner(Handler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Start the compositor.
+     *
+     * @param inputs        the sources
+     * @param outputSize    the output size
+     * @param outputSurface the output surface
+     * @return the input surface of each source, in the order of {@code inputs}
+     */
+    public List<Surface> start(List<Input> inputs, Size outputSize, Surface outputSurface) throws OpenGLException {
+        final Semaphore sem = new Semaphore(0);
+        Throwable[] throwableRef = new Throwable[1];
+        List<Surface> result = new ArrayList<>();
+
+        handler.post(() -> {
+            try {
+                run(inputs, outputSize, outputSurface);
+                for (Surface surface : inputSurfaces) {
+                    result.add(surface);
+                }
+            } catch (Throwable throwable) {
+                throwableRef[0] = throwable;
+            } finally {
+                sem.release();
+            }
+        });
+
+        try {
+            sem.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        Throwable throwable = throwableRef[0];
+        if (throwable != null) {
+            if (throwable instanceof OpenGLException) {
+                throw (OpenGLException) throwable;
+            }
+            throw new OpenGLException("Asynchronous OpenGL runner init failed", throwable);
+        }
+
+        return result;
+    }
+
+    private void run(List<Input> inputs, Size outputSize, Surface outputSurface) throws OpenGLException {
+        Ln.i("MultiSourceGL init: " + inputs.size() + " sources, output=" + outputSize);
+
+        // The EGL display and the context of this thread are kept across captures, only the window surface is created for each capture
+        eglSurface = EglContextManager.createWindowSurface(outputSurface);
+        eglDisplay = EglContextManager.getDisplay();
+        this.outputSize = outputSize;
+
+        int count = inputs.size();
+        textureIds = new int[count];
+        surfaceTextures = new SurfaceTexture[count];
+        inputSurfaces = new Surface[count];
+        texMatrices = new float[count][16];
+        hasFrame = new boolean[count];
+        timestamps = new CompositeTimestamps(count, 0);
+
+        GLES20.glGenTextures(count, textureIds, 0);
+        GLUtils.checkGlError();
+
+        List<CompositorLayer> layers = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            Input input = inputs.get(i);
+            layers.add(input.layer);
+
+            GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureIds[i]);
+            GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+            GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+            GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+            GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+            GLUtils.checkGlError();
+
+            SurfaceTexture surfaceTexture = new SurfaceTexture(textureIds[i]);
+            surfaceTexture.setDefaultBufferSize(input.size.getWidth(), input.size.getHeight());
+            surfaceTextures[i] = surfaceTexture;
+            inputSurfaces[i] = new Surface(surfaceTexture);
+
+            int index = i;
+            float[] overrideTransformMatrix = input.overrideTransformMatrix;
+            // Latch each frame as soon as it is available, so that the producers never stall
+            surfaceTexture.setOnFrameAvailableListener(st -> {
+                if (stopped) {
+                    return;
+                }
+                st.updateTexImage();
+                if (overrideTransformMatrix != null) {
+                    System.arraycopy(overrideTransformMatrix, 0, texMatrices[index], 0, 16);
+                } else {
+                    st.getTransformMatrix(texMatrices[index]);
+                }
+                onFrame(index, st.getTimestamp());
+                render(outputSize);
+            }, handler);
+        }
+
+        filter = new CompositorFilter(layers);
+        filter.init();
+        overlay = new OverlayRenderer();
+    }
+
+    /**
+     * Request a snapshot of the composited frame (the listener is called on the OpenGL thread).
+     *
+     * @param maxSize  the maximum snapshot size (0 for the output size)
+     * @param listener the listener
+     */
+    public void requestSnapshot(int maxSize, OpenGLRunner.SnapshotListener listener) {
+        handler.post(() -> {
+            if (stopped) {
+                listener.onSnapshot(null, null);
+            } else if (frameCount == 0) {
+                snapshots.add(maxSize, listener);
+            } else {
+                // The textures still contain the last frame of each source
+                snapshots.take(outputSize, maxSize, listener, this::drawLayers);
+            }
+        });
+    }
+
+    private void onFrame(int index, long timestampNs) {
+        if (!timestamps.onFrame(index, timestampNs, System.nanoTime()) && !clockWarningLogged) {
+            Ln.w("MultiSourceGL: unexpected frame timestamp " + timestampNs + " for source " + index + ", using the reception time");
+            clockWarningLogged = true;
+        }
+        hasFrame[index] = true;
+        ++frameCount;
+        if (frameCount % 300 == 0) {
+            Ln.d("MultiSourceGL frames=" + frameCount + " latency[0]=" + timestamps.getLatencyNs(0) / 1000 + "µs");
+        }
+    }
+
+    private void render(Size outputSize) {
+        GLES20.glViewport(0, 0, outputSize.getWidth(), outputSize.getHeight());
+        GLUtils.checkGlError();
+
+        drawLayers();
+
+        if (OverlayState.isEnabled()) {
+            overlay.draw(outputSize);
+        }
+
+        // Last, the snapshot render targets change the viewport
+        snapshots.serve(outputSize, this::drawLayers);
+
+        // Present the frame at the capture time of the master source rather than at the render time
+        long pts = timestamps.computePts(System.nanoTime());
+        EGLExt.eglPresentationTimeANDROID(eglDisplay, eglSurface, pts);
+        EGL14.eglSwapBuffers(eglDisplay, eglSurface);
+    }
+
+    private void drawLayers() {
+        filter.draw(textureIds, texMatrices, hasFrame);
+    }
+
+    public void stopAndRelease() {
+        final Semaphore sem = new Semaphore(0);
+
+        handler.post(() -> {
+            stopped = true;
+            snapshots.cancel();
+
+            if (surfaceTextures != null) {
+                for (SurfaceTexture surfaceTexture : surfaceTextures) {
+                    if (surfaceTexture != null) {
+                        surfaceTexture.setOnFrameAvailableListener(null, handler);
+                    }
+                }
+            }
+
+            if (filter != null) {
+                filter.release();
+            }
+            if (overlay != null) {
+                overlay.release();
+                overlay = null;
+            }
+
+            if (textureIds != null) {
+                GLES20.glDeleteTextures(textureIds.length, textureIds, 0);
+                GLUtils.checkGlError();
+            }
+
+            EglContextManager.releaseSurface(eglSurface);
+            eglDisplay = EGL14.EGL_NO_DISPLAY;
+            eglSurface = EGL14.EGL_NO_SURFACE;
+
+            if (inputSurfaces != null) {
+                for (Surface surface : inputSurfaces) {
+                    if (surface != null) {
+                        surface.release();
+                    }
+                }
+            }
+            if (surfaceTextures != null) {
+                for (SurfaceTexture surfaceTexture : surfaceTextures) {
+                    if (surfaceTexture != null) {
+                        surfaceTexture.release();
+                    }
+                }
+            }
+
+            sem.release();
+        });
+
+        try {
+            sem.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.genymobile.scrcpy.opengl;
+
+import com.genymobile.scrcpy.device.Size;
+import com.genymobile.scrcpy.util.ByteBufferPool;
+
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Convert an RGBA texture to NV12 on the GPU, and read it back.
+ * <p>
+ * The NV12 image is rendered into an RGBA render target of {@code width / 4} x {@code height * 3 / 2} pixels, each pixel packing 4 bytes: the
+ * first {@code height} rows contain 4 luma samples per pixel, the next {@code height / 2} rows contain 2 interleaved (U, V) chroma pairs per
+ * pixel (each averaged over a 2x2 block). {@code glReadPixels()} then returns exactly the NV12 layout (rows are read from the bottom, so the
+ * first image row is rendered to the bottom row).
+ * <p>
+ * The colors are converted to BT.601 limited range, as expected by video encoders.
+ */
+public final class Nv12Converter {
+
+    private final Size size;
+    private final ByteBufferPool bufferPool;
+
+    private RenderTarget target;
+    private int program;
+    private QuadBuffer quad;
+    private int vertexPosLoc;
+
+    /**
+     * @param size       the image size (the width must be a multiple of 4, the height a multiple of 2)
+     * @param bufferPool the pool of output buffers, of capacity {@code width * height * 3 / 2}
+     */
+    public Nv12Converter(Size size, ByteBufferPool bufferPool) {
+        if (size.getWidth() % 4 != 0 || size.getHeight() % 2 != 0) {
+            throw new IllegalArgumentException("Invalid NV12 size: " + size);
+        }
+        if (bufferPool.getCapacity() != getFrameSize(size)) {
+            throw new IllegalArgumentException("Invalid NV12 buffer capacity: " + bufferPool.getCapacity());
+        }
+        this.size = size;
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Return the size in bytes of a NV12 frame.
+     *
+     * @param size the image size
+     * @return the frame size
+     */
+    public static int getFrameSize(Size size) {
+        return size.getWidth() * size.getHeight() * 3 / 2;
+    }
+
+    public void init() throws OpenGLException {
+        // @formatter:off
+        String vertexShaderCode = "#version 100\n"
+                + "attribute vec4 vertex_pos;\n"
+                + "void main() {\n"
+                + "    gl_Position = vertex_pos;\n"
+                + "}";
+
+        // @formatter:off
+        String fragmentShaderCode = "#version 100\n"
+                + "precision highp float;\n"
+                + "uniform sampler2D tex;\n"
+                + "uniform vec2 size;\n" // image size, in pixels
+                + "float luma(vec2 pos) {\n"
+                + "    vec3 c = texture2D(tex, pos).rgb;\n"
+                + "    return dot(c, vec3(0.257, 0.504, 0.098)) + 0.0625;\n"
+                + "}\n"
+                + "vec2 chroma(vec2 pos) {\n"
+                + "    vec3 c = texture2D(tex, pos).rgb;\n"
+                + "    return vec2(dot(c, vec3(-0.148, -0.291, 0.439)), dot(c, vec3(0.439, -0.368, -0.071))) + 0.5;\n"
+                + "}\n"
+                + "void main() {\n"
+                + "    float row = floor(gl_FragCoord.y);\n"
+                + "    float x = floor(gl_FragCoord.x) * 4.0;\n"
+                + "    if (row < size.y) {\n"
+                       // 4 luma samples, the first image row (v = 1 in the texture) at the bottom of the target
+                + "        float v = 1.0 - (row + 0.5) / size.y;\n"
+                + "        gl_FragColor = vec4(luma(vec2((x + 0.5) / size.x, v)),\n"
+                + "                            luma(vec2((x + 1.5) / size.x, v)),\n"
+                + "                            luma(vec2((x + 2.5) / size.x, v)),\n"
+                + "                            luma(vec2((x + 3.5) / size.x, v)));\n"
+                + "    } else {\n"
+                       // 2 (U, V) pairs, each sampled at the center of a 2x2 block (linear filtering averages the 4 pixels)
+                + "        float v = 1.0 - (2.0 * (row - size.y) + 1.0) / size.y;\n"
+                + "        gl_FragColor = vec4(chroma(vec2((x + 1.0) / size.x, v)), chroma(vec2((x + 3.0) / size.x, v)));\n"
+                + "    }\n"
+                + "}";
+
+        program = ProgramCache.acquire(vertexShaderCode, fragmentShaderCode);
+        if (program == 0) {
+            throw new OpenGLException("Cannot create OpenGL program");
+        }
+
+        vertexPosLoc = GLES20.glGetAttribLocation(program, "vertex_pos");
+        assert vertexPosLoc != -1;
+
+        int texLoc = GLES20.glGetUniformLocation(program, "tex");
+        assert texLoc != -1;
+
+        int sizeLoc = GLES20.glGetUniformLocation(program, "size");
+        assert sizeLoc != -1;
+
+        // These uniforms never change, set them once
+        GLES20.glUseProgram(program);
+        GLES20.glUniform1i(texLoc, 0);
+        GLES20.glUniform2f(sizeLoc, size.getWidth(), size.getHeight());
+        GLUtils.checkGlError();
+
+        quad = QuadBuffer.create(new float[] {-1, -1, 1, -1, -1, 1, 1, 1}, null);
+        target = EglContextManager.getRenderTargetPool().acquire(new Size(size.getWidth() / 4, size.getHeight() * 3 / 2));
+    }
+
+    /**
+     * Convert a frame.
+     *
+     * @param textureId the RGBA texture, of the image size
+     * @return a buffer from the pool, containing the NV12 frame (the caller must release it to the pool)
+     */
+    public ByteBuffer convert(int textureId) {
+        target.bind();
+
+        GLES20.glUseProgram(program);
+        GLES20.glDisable(GLES20.GL_BLEND);
+        GLES20.glEnableVertexAttribArray(vertexPosLoc);
+        quad.bind(vertexPosLoc, -1);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+        QuadBuffer.unbind();
+        GLES20.glDisableVertexAttribArray(vertexPosLoc);
+
+        ByteBuffer buffer = bufferPool.acquire();
+        Size targetSize = target.getSize();
+        GLES20.glReadPixels(0, 0, targetSize.getWidth(), targetSize.getHeight(), GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, buffer);
+        GLUtils.checkGlError();
+
+        RenderTarget.unbind();
+        buffer.limit(getFrameSize(size));
+        return buffer;
+    }
+
+    public void release() {
+        EglContextManager.getRenderTargetPool().recycle(target);
+        quad.release();
+        ProgramCache.release(program);
+    }
+}
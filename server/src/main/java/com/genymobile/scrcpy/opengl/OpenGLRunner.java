@@ -1,11 +1,11 @@
 package com.genymobile.scrcpy.opengl;
 
 import com.genymobile.scrcpy.device.Size;
+import com.genymobile.scrcpy.util.ByteBufferPool;
+import com.genymobile.scrcpy.util.Ln;
 
 import android.graphics.SurfaceTexture;
 import android.opengl.EGL14;
-import android.opengl.EGLConfig;
-import android.opengl.EGLContext;
 import android.opengl.EGLDisplay;
 import android.opengl.EGLExt;
 import android.opengl.EGLSurface;
@@ -15,16 +15,37 @@ import android.os.Handler;
 import android.os.HandlerThread;
 import android.view.Surface;
 
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.concurrent.Semaphore;
 
 public final class OpenGLRunner {
 
+    public interface Nv12FrameListener {
+        /**
+         * Called on the OpenGL thread for each frame.
+         *
+         * @param frame the NV12 frame, to be released to the buffer pool once consumed (possibly from another thread)
+         * @param ptsUs the capture timestamp, in microseconds
+         */
+        void onFrame(ByteBuffer frame, long ptsUs);
+    }
+
+    public interface SnapshotListener {
+        /**
+         * Called once the snapshot has been read back, on the OpenGL thread (or on the requesting thread for an asynchronous snapshot).
+         *
+         * @param size the snapshot size, or {@code null} if no snapshot could be taken
+         * @param rgba the RGBA pixels, top row first, or {@code null} if no snapshot could be taken
+         */
+        void onSnapshot(Size size, byte[] rgba);
+    }
+
     private static HandlerThread handlerThread;
     private static Handler handler;
     private static boolean quit;
 
     private EGLDisplay eglDisplay;
-    private EGLContext eglContext;
     private EGLSurface eglSurface;
 
     private final OpenGLFilter filter;
@@ -34,6 +55,26 @@ public final class OpenGLRunner {
     private Surface inputSurface;
     private int textureId;
 
+    private DownscaleChain downscaleChain;
+
+    // Offscreen NV12 output (instead of the window surface)
+    private RenderTarget frameTarget;
+    private Nv12Converter nv12Converter;
+    private Nv12FrameListener nv12Listener;
+
+    private int frameSkipThreshold = -1; // disabled
+    private FrameSignature frameSignature;
+
+    private OverlayRenderer overlay;
+
+    private boolean asyncSnapshots;
+    private AsyncReadback readback;
+    private volatile LatestFrame latestFrame; // read by the snapshot requesters
+
+    private Size outputSize;
+    private float[] lastMatrix; // null until the first frame is rendered
+    private final SnapshotQueue snapshots = new SnapshotQueue();
+
     private boolean stopped;
 
     public OpenGLRunner(OpenGLFilter filter, float[] overrideTransformMatrix) {
@@ -45,6 +86,29 @@ public final class OpenGLRunner {
         this(filter, null);
     }
 
+    /**
+     * Skip the frames which are almost identical to the last submitted frame (see {@link FrameSignature}).
+     * <p>
+     * Must be called before {@code start()}.
+     *
+     * @param threshold the maximum luminance difference (in [0, 255]) for a frame to be skipped, or -1 to disable
+     */
+    public void setFrameSkipThreshold(int threshold) {
+        this.frameSkipThreshold = threshold;
+    }
+
+    /**
+     * Read back every rendered frame asynchronously (through pixel buffer objects), so that full-size snapshots are served from the last frame
+     * read, without stalling the rendering.
+     * <p>
+     * Must be called before {@code start()}. Ignored if OpenGL ES 3 is not available.
+     *
+     * @param asyncSnapshots {@code true} to enable the asynchronous readback
+     */
+    public void setAsyncSnapshots(boolean asyncSnapshots) {
+        this.asyncSnapshots = asyncSnapshots;
+    }
+
     public static synchronized void initOnce() {
         if (handlerThread == null) {
             if (quit) {
@@ -58,11 +122,15 @@ public final class OpenGLRunner {
 
     public static void quit() {
         HandlerThread thread;
+        Handler threadHandler;
         synchronized (OpenGLRunner.class) {
             thread = handlerThread;
+            threadHandler = handler;
             quit = true;
         }
         if (thread != null) {
+            // Destroy the EGL context of the thread (executed before quitting, after any pending message)
+            threadHandler.post(EglContextManager::releaseCurrentThread);
             thread.quitSafely();
         }
     }
@@ -78,6 +146,24 @@ public final class OpenGLRunner {
     }
 
     public Surface start(Size inputSize, Size outputSize, Surface outputSurface) throws OpenGLException {
+        return start(inputSize, outputSize, outputSurface, null, null);
+    }
+
+    /**
+     * Start the runner without output surface: each rendered frame is converted to NV12 on the GPU, read back and passed to the listener.
+     *
+     * @param inputSize  the input size
+     * @param outputSize the output size (the width must be a multiple of 4, the height a multiple of 2)
+     * @param bufferPool the pool of NV12 buffers (of capacity {@link Nv12Converter#getFrameSize(Size)})
+     * @param listener   the frame listener
+     * @return the input surface
+     */
+    public Surface startNv12(Size inputSize, Size outputSize, ByteBufferPool bufferPool, Nv12FrameListener listener) throws OpenGLException {
+        return start(inputSize, outputSize, null, bufferPool, listener);
+    }
+
+    private Surface start(Size inputSize, Size outputSize, Surface outputSurface, ByteBufferPool bufferPool, Nv12FrameListener listener)
+            throws OpenGLException {
         initOnce();
 
         // Simulate CompletableFuture, but working for all Android versions
@@ -88,7 +174,7 @@ public final class OpenGLRunner {
         // See <https://github.com/Genymobile/scrcpy/issues/5444>
         handler.post(() -> {
             try {
-                run(inputSize, outputSize, outputSurface);
+                run(inputSize, outputSize, outputSurface, bufferPool, listener);
             } catch (Throwable throwable) {
                 throwableRef[0] = throwable;
             } finally {
@@ -115,63 +201,12 @@ public final class OpenGLRunner {
         return inputSurface;
     }
 
-    private void run(Size inputSize, Size outputSize, Surface outputSurface) throws OpenGLException {
-        eglDisplay = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
-        if (eglDisplay == EGL14.EGL_NO_DISPLAY) {
-            throw new OpenGLException("Unable to get EGL14 display");
-        }
-
-        int[] version = new int[2];
-        if (!EGL14.eglInitialize(eglDisplay, version, 0, version, 1)) {
-            throw new OpenGLException("Unable to initialize EGL14");
-        }
-
-        // @formatter:off
-        int[] attribList = {
-                EGL14.EGL_RED_SIZE, 8,
-                EGL14.EGL_GREEN_SIZE, 8,
-                EGL14.EGL_BLUE_SIZE, 8,
-                EGL14.EGL_ALPHA_SIZE, 8,
-                EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
-                EGL14.EGL_NONE
-        };
-
-        EGLConfig[] configs = new EGLConfig[1];
-        int[] numConfigs = new int[1];
-        EGL14.eglChooseConfig(eglDisplay, attribList, 0, configs, 0, configs.length, numConfigs, 0);
-        if (numConfigs[0] <= 0) {
-            EGL14.eglTerminate(eglDisplay);
-            throw new OpenGLException("Unable to find ES2 EGL config");
-        }
-        EGLConfig eglConfig = configs[0];
-
-        // @formatter:off
-        int[] contextAttribList = {
-                EGL14.EGL_CONTEXT_CLIENT_VERSION, 2,
-                EGL14.EGL_NONE
-        };
-        eglContext = EGL14.eglCreateContext(eglDisplay, eglConfig, EGL14.EGL_NO_CONTEXT, contextAttribList, 0);
-        if (eglContext == null) {
-            EGL14.eglTerminate(eglDisplay);
-            throw new OpenGLException("Failed to create EGL context");
-        }
-
-        int[] surfaceAttribList = {
-                EGL14.EGL_NONE
-        };
-        eglSurface = EGL14.eglCreateWindowSurface(eglDisplay, eglConfig, outputSurface, surfaceAttribList, 0);
-        if (eglSurface == null) {
-            EGL14.eglDestroyContext(eglDisplay, eglContext);
-            EGL14.eglTerminate(eglDisplay);
-            throw new OpenGLException("Failed to create EGL window surface");
-        }
-
-        if (!EGL14.eglMakeCurrent(eglDisplay, eglSurface, eglSurface, eglContext)) {
-            EGL14.eglDestroySurface(eglDisplay, eglSurface);
-            EGL14.eglDestroyContext(eglDisplay, eglContext);
-            EGL14.eglTerminate(eglDisplay);
-            throw new OpenGLException("Failed to make EGL context current");
-        }
+    private void run(Size inputSize, Size outputSize, Surface outputSurface, ByteBufferPool bufferPool, Nv12FrameListener listener)
+            throws OpenGLException {
+        // The EGL display and the context of this thread are kept across runners, only the window surface is created for each capture
+        eglSurface = outputSurface != null ? EglContextManager.createWindowSurface(outputSurface) : EglContextManager.createOffscreenSurface();
+        eglDisplay = EglContextManager.getDisplay();
+        this.outputSize = outputSize;
 
         int[] textures = new int[1];
         GLES20.glGenTextures(1, textures, 0);
@@ -193,6 +228,40 @@ public final class OpenGLRunner {
 
         filter.init();
 
+        List<Size> downscaleSizes = DownscaleChain.computeSizes(inputSize, outputSize);
+        if (!downscaleSizes.isEmpty()) {
+            Ln.i("OpenGL downscale " + inputSize + " -> " + outputSize + " in " + (downscaleSizes.size() + 1) + " passes");
+            downscaleChain = new DownscaleChain(downscaleSizes, outputSize);
+            downscaleChain.init();
+        }
+
+        if (listener != null) {
+            frameTarget = EglContextManager.getRenderTargetPool().acquire(outputSize);
+            nv12Converter = new Nv12Converter(outputSize, bufferPool);
+            nv12Converter.init();
+            nv12Listener = listener;
+        }
+
+        overlay = new OverlayRenderer();
+
+        if (frameSkipThreshold >= 0) {
+            frameSignature = new FrameSignature(frameSkipThreshold);
+            frameSignature.init();
+        }
+
+        if (asyncSnapshots) {
+            if (EglContextManager.getGlesVersion() >= 3) {
+                // One buffer for the last frame, one for the frame being delivered
+                ByteBufferPool readbackPool = new ByteBufferPool(AsyncReadback.getFrameSize(outputSize), 2);
+                LatestFrame frame = new LatestFrame(readbackPool);
+                readback = new AsyncReadback(outputSize, readbackPool, frame);
+                readback.init();
+                latestFrame = frame;
+            } else {
+                Ln.w("Asynchronous readback requires OpenGL ES 3, snapshots are read synchronously");
+            }
+        }
+
         surfaceTexture.setOnFrameAvailableListener(surfaceTexture -> {
             if (stopped) {
                 // Make sure to never render after resources have been released
@@ -204,9 +273,6 @@ public final class OpenGLRunner {
     }
 
     private void render(Size outputSize) {
-        GLES20.glViewport(0, 0, outputSize.getWidth(), outputSize.getHeight());
-        GLUtils.checkGlError();
-
         surfaceTexture.updateTexImage();
 
         float[] matrix;
@@ -217,30 +283,144 @@ public final class OpenGLRunner {
             surfaceTexture.getTransformMatrix(matrix);
         }
 
-        filter.draw(textureId, matrix);
+        if (frameSignature != null) {
+            boolean changed = frameSignature.update(textureId, matrix);
+            if (frameSignature.getFrameCount() % 300 == 0) {
+                Ln.d("OpenGL frame signature: frames=" + frameSignature.getFrameCount() + " skipped=" + frameSignature.getSkippedCount()
+                        + " diff=" + frameSignature.getLastDifference());
+            }
+            if (!changed) {
+                // Do not submit an unchanged frame to the encoder, but keep it for snapshots
+                lastMatrix = matrix;
+                servePendingSnapshots();
+                return;
+            }
+        }
+
+        GLES20.glViewport(0, 0, outputSize.getWidth(), outputSize.getHeight());
+        GLUtils.checkGlError();
+
+        if (downscaleChain != null) {
+            downscaleChain.bindInput();
+            filter.draw(textureId, matrix);
+            downscaleChain.draw(frameTarget);
+        } else {
+            if (frameTarget != null) {
+                frameTarget.bind();
+            }
+            filter.draw(textureId, matrix);
+        }
+
+        if (OverlayState.isEnabled()) {
+            if (frameTarget != null) {
+                frameTarget.bind();
+            }
+            overlay.draw(outputSize);
+        }
+
+        lastMatrix = matrix;
+        servePendingSnapshots();
+
+        if (readback != null) {
+            // Read the output frame: the render target if any, otherwise the window surface (before it is swapped)
+            if (frameTarget != null) {
+                frameTarget.bind();
+            }
+            readback.read(surfaceTexture.getTimestamp() / 1000);
+            RenderTarget.unbind();
+        }
+
+        if (nv12Converter != null) {
+            ByteBuffer frame = nv12Converter.convert(frameTarget.getTextureId());
+            nv12Listener.onFrame(frame, surfaceTexture.getTimestamp() / 1000);
+            return;
+        }
 
         EGLExt.eglPresentationTimeANDROID(eglDisplay, eglSurface, surfaceTexture.getTimestamp());
         EGL14.eglSwapBuffers(eglDisplay, eglSurface);
     }
 
+    /**
+     * Request a snapshot of the current frame, read back from the GPU.
+     * <p>
+     * If asynchronous snapshots are enabled, a full-size snapshot is copied from the last frame read back, on the caller thread. Otherwise, the
+     * last rendered frame is drawn again into an offscreen render target on the OpenGL thread, so the snapshot does not wait for the content to
+     * change (only for the first frame if none has been rendered yet).
+     *
+     * @param maxSize  the maximum snapshot size (0 for the output size)
+     * @param listener the listener
+     */
+    public void requestSnapshot(int maxSize, SnapshotListener listener) {
+        LatestFrame frame = latestFrame;
+        if (frame != null && outputSize.limit(maxSize & ~7).equals(outputSize)) {
+            byte[] rgba = frame.copy();
+            if (rgba != null) {
+                listener.onSnapshot(frame.getSize(), rgba);
+                return;
+            }
+            // No frame read back yet
+        }
+
+        handler.post(() -> {
+            if (stopped) {
+                listener.onSnapshot(null, null);
+            } else if (lastMatrix == null) {
+                snapshots.add(maxSize, listener);
+            } else {
+                snapshots.take(outputSize, maxSize, listener, this::drawLastFrame);
+            }
+        });
+    }
+
+    private void servePendingSnapshots() {
+        snapshots.serve(outputSize, this::drawLastFrame);
+    }
+
+    private void drawLastFrame() {
+        filter.draw(textureId, lastMatrix);
+    }
+
     public void stopAndRelease() {
         final Semaphore sem = new Semaphore(0);
 
         handler.post(() -> {
             stopped = true;
+            snapshots.cancel();
             surfaceTexture.setOnFrameAvailableListener(null, handler);
 
             filter.release();
+            if (downscaleChain != null) {
+                downscaleChain.release();
+            }
+            if (nv12Converter != null) {
+                nv12Converter.release();
+                EglContextManager.getRenderTargetPool().recycle(frameTarget);
+            }
+            if (overlay != null) {
+                overlay.release();
+                overlay = null;
+            }
+            if (frameSignature != null) {
+                Ln.d("OpenGL frame signature: " + frameSignature.getSkippedCount() + "/" + frameSignature.getFrameCount() + " frames skipped");
+                frameSignature.release();
+                frameSignature = null;
+            }
+            if (readback != null) {
+                if (readback.getDroppedCount() > 0) {
+                    Ln.d("OpenGL readback: " + readback.getDroppedCount() + " frames dropped");
+                }
+                readback.release();
+                readback = null;
+                latestFrame.release();
+                latestFrame = null;
+            }
 
             int[] textures = {textureId};
             GLES20.glDeleteTextures(1, textures, 0);
             GLUtils.checkGlError();
 
-            EGL14.eglDestroySurface(eglDisplay, eglSurface);
-            EGL14.eglDestroyContext(eglDisplay, eglContext);
-            EGL14.eglTerminate(eglDisplay);
+            EglContextManager.releaseSurface(eglSurface);
             eglDisplay = EGL14.EGL_NO_DISPLAY;
-            eglContext = EGL14.EGL_NO_CONTEXT;
             eglSurface = EGL14.EGL_NO_SURFACE;
             surfaceTexture.release();
             inputSurface.release();
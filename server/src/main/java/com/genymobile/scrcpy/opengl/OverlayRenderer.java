@@ -0,0 +1,358 @@
+package com.genymobile.scrcpy.opengl;
+
+import com.genymobile.scrcpy.control.PointersState;
+import com.genymobile.scrcpy.device.Size;
+import com.genymobile.scrcpy.util.Ln;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.TimeZone;
+
+/**
+ * Diagnostic overlay drawn over the filtered frame: the touch points, the frame counter, the wall clock time, the rendering fps and the
+ * encoder bitrate (see {@link OverlayState}).
+ * <p>
+ * The text is rendered from a glyph atlas texture (built once per process, and shared by all the contexts). All the quads are drawn in a
+ * single draw call from a vertex buffer object, streamed once per frame, so the overlay only costs a few dozen quads per frame.
+ * <p>
+ * The OpenGL resources are created on first draw, since the overlay may be enabled at any time.
+ */
+public final class OverlayRenderer {
+
+    // The atlas contains the printable ASCII characters, then a disc (for touch points) and a solid cell (for backgrounds)
+    private static final int FIRST_CHAR = 32;
+    private static final int LAST_CHAR = 126;
+    private static final int DISC_CELL = LAST_CHAR - FIRST_CHAR + 1;
+    private static final int SOLID_CELL = DISC_CELL + 1;
+    private static final int ATLAS_COLUMNS = 16;
+    private static final int ATLAS_ROWS = 7;
+    private static final int CELL_WIDTH = 16;
+    private static final int CELL_HEIGHT = 32;
+
+    private static final int MAX_QUADS = 256;
+    private static final int FLOATS_PER_VERTEX = 8; // x, y, u, v, r, g, b, a
+    private static final int FLOATS_PER_QUAD = 6 * FLOATS_PER_VERTEX;
+
+    private static int atlasTextureId;
+
+    private boolean initialized;
+    private boolean failed;
+
+    private int program;
+    private int vertexPosLoc;
+    private int texCoordsInLoc;
+    private int colorInLoc;
+
+    private int vertexBufferId;
+    private final FloatBuffer vertices = ByteBuffer.allocateDirect(MAX_QUADS * FLOATS_PER_QUAD * 4)
+            .order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+    private int quadCount;
+
+    private final float[] touches = new float[PointersState.MAX_POINTERS * 2];
+    private final StringBuilder text = new StringBuilder();
+
+    private long frameCount;
+    private long fpsWindowStartMs;
+    private int fpsWindowFrames;
+    private long fpsWindowEncodedBytes;
+    private float fps;
+    private long bitRateKbps;
+
+    public OverlayRenderer() {
+        OverlayState.addRenderer();
+    }
+
+    private void init() throws OpenGLException {
+        // @formatter:off
+        String vertexShaderCode = "#version 100\n"
+                + "attribute vec4 vertex_pos;\n"
+                + "attribute vec2 tex_coords_in;\n"
+                + "attribute vec4 color_in;\n"
+                + "varying vec2 tex_coords;\n"
+                + "varying vec4 color;\n"
+                + "void main() {\n"
+                + "    gl_Position = vertex_pos;\n"
+                + "    tex_coords = tex_coords_in;\n"
+                + "    color = color_in;\n"
+                + "}";
+
+        // @formatter:off
+        String fragmentShaderCode = "#version 100\n"
+                + "precision mediump float;\n"
+                + "uniform sampler2D atlas;\n"
+                + "varying vec2 tex_coords;\n"
+                + "varying vec4 color;\n"
+                + "void main() {\n"
+                   // The atlas and the color are premultiplied
+                + "    gl_FragColor = texture2D(atlas, tex_coords).a * color;\n"
+                + "}";
+
+        program = ProgramCache.acquire(vertexShaderCode, fragmentShaderCode);
+        if (program == 0) {
+            throw new OpenGLException("Cannot create OpenGL program");
+        }
+
+        vertexPosLoc = GLES20.glGetAttribLocation(program, "vertex_pos");
+        assert vertexPosLoc != -1;
+
+        texCoordsInLoc = GLES20.glGetAttribLocation(program, "tex_coords_in");
+        assert texCoordsInLoc != -1;
+
+        colorInLoc = GLES20.glGetAttribLocation(program, "color_in");
+        assert colorInLoc != -1;
+
+        int atlasLoc = GLES20.glGetUniformLocation(program, "atlas");
+        assert atlasLoc != -1;
+
+        // The texture unit never changes, set it once
+        GLES20.glUseProgram(program);
+        GLES20.glUniform1i(atlasLoc, 0);
+        GLUtils.checkGlError();
+
+        int[] buffers = new int[1];
+        GLES20.glGenBuffers(1, buffers, 0);
+        GLUtils.checkGlError();
+        if (buffers[0] == 0) {
+            throw new OpenGLException("Cannot create vertex buffer");
+        }
+        vertexBufferId = buffers[0];
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBufferId);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vertices.capacity() * 4, null, GLES20.GL_STREAM_DRAW);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        GLUtils.checkGlError();
+
+        initAtlasOnce();
+    }
+
+    private static synchronized void initAtlasOnce() {
+        if (atlasTextureId != 0) {
+            return;
+        }
+
+        Bitmap bitmap = Bitmap.createBitmap(ATLAS_COLUMNS * CELL_WIDTH, ATLAS_ROWS * CELL_HEIGHT, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setColor(0xffffffff);
+        paint.setTypeface(Typeface.MONOSPACE);
+        paint.setTextSize(CELL_HEIGHT * 0.8f);
+        paint.setTextAlign(Paint.Align.CENTER);
+
+        char[] c = new char[1];
+        for (int ch = FIRST_CHAR; ch <= LAST_CHAR; ++ch) {
+            int cell = ch - FIRST_CHAR;
+            float x = (cell % ATLAS_COLUMNS) * CELL_WIDTH + CELL_WIDTH / 2f;
+            float y = (cell / ATLAS_COLUMNS) * CELL_HEIGHT + CELL_HEIGHT * 0.75f;
+            c[0] = (char) ch;
+            canvas.drawText(c, 0, 1, x, y, paint);
+        }
+
+        float discX = (DISC_CELL % ATLAS_COLUMNS) * CELL_WIDTH + CELL_WIDTH / 2f;
+        float discY = (DISC_CELL / ATLAS_COLUMNS) * CELL_HEIGHT + CELL_HEIGHT / 2f;
+        canvas.drawCircle(discX, discY, CELL_WIDTH / 2f - 1, paint);
+
+        int solidX = (SOLID_CELL % ATLAS_COLUMNS) * CELL_WIDTH;
+        int solidY = (SOLID_CELL / ATLAS_COLUMNS) * CELL_HEIGHT;
+        canvas.drawRect(solidX, solidY, solidX + CELL_WIDTH, solidY + CELL_HEIGHT, paint);
+
+        int[] textures = new int[1];
+        GLES20.glGenTextures(1, textures, 0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        android.opengl.GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
+        GLUtils.checkGlError();
+        bitmap.recycle();
+
+        atlasTextureId = textures[0];
+    }
+
+    /**
+     * Draw the overlay into the bound framebuffer (the viewport must cover the output).
+     *
+     * @param outputSize the output size
+     */
+    public void draw(Size outputSize) {
+        if (!initialized) {
+            if (failed) {
+                return;
+            }
+            try {
+                init();
+                initialized = true;
+            } catch (OpenGLException e) {
+                Ln.e("Could not initialize the overlay", e);
+                failed = true;
+                return;
+            }
+        }
+
+        long nowMs = System.currentTimeMillis();
+        updateStats(nowMs);
+
+        int width = outputSize.getWidth();
+        int height = outputSize.getHeight();
+
+        // Glyph size in output pixels, proportional to the output
+        float glyphHeight = Math.max(16, Math.min(width, height) / 24f);
+        float glyphWidth = glyphHeight * CELL_WIDTH / CELL_HEIGHT;
+
+        quadCount = 0;
+        vertices.clear();
+
+        int touchCount = OverlayState.getTouches(touches);
+        float discSize = glyphHeight * 1.5f;
+        for (int i = 0; i < touchCount; ++i) {
+            float x = touches[i * 2] * width - discSize / 2;
+            float y = touches[i * 2 + 1] * height - discSize / 2;
+            addQuad(DISC_CELL, x, y, discSize, discSize, width, height, 0.4f, 0.8f, 0.2f, 0.6f);
+        }
+
+        text.setLength(0);
+        text.append('#').append(frameCount).append(' ');
+        appendTime(text, nowMs);
+        addTextLine(text, 0, glyphWidth, glyphHeight, width, height);
+
+        text.setLength(0);
+        text.append((int) fps).append('.').append((int) (fps * 10) % 10).append(" fps ").append(bitRateKbps).append(" kbps");
+        addTextLine(text, 1, glyphWidth, glyphHeight, width, height);
+
+        vertices.flip();
+
+        GLES20.glUseProgram(program);
+        GLES20.glEnable(GLES20.GL_BLEND);
+        GLES20.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, atlasTextureId);
+
+        // Only upload the quads of this frame
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBufferId);
+        GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, vertices.remaining() * 4, vertices);
+
+        int stride = FLOATS_PER_VERTEX * 4;
+        GLES20.glEnableVertexAttribArray(vertexPosLoc);
+        GLES20.glEnableVertexAttribArray(texCoordsInLoc);
+        GLES20.glEnableVertexAttribArray(colorInLoc);
+        // With a vertex buffer bound, the last argument is an offset in the buffer
+        GLES20.glVertexAttribPointer(vertexPosLoc, 2, GLES20.GL_FLOAT, false, stride, 0);
+        GLES20.glVertexAttribPointer(texCoordsInLoc, 2, GLES20.GL_FLOAT, false, stride, 2 * 4);
+        GLES20.glVertexAttribPointer(colorInLoc, 4, GLES20.GL_FLOAT, false, stride, 4 * 4);
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, quadCount * 6);
+        GLES20.glDisableVertexAttribArray(vertexPosLoc);
+        GLES20.glDisableVertexAttribArray(texCoordsInLoc);
+        GLES20.glDisableVertexAttribArray(colorInLoc);
+        QuadBuffer.unbind();
+        GLES20.glDisable(GLES20.GL_BLEND);
+        GLUtils.checkGlError();
+    }
+
+    private void updateStats(long nowMs) {
+        ++frameCount;
+        ++fpsWindowFrames;
+        long elapsedMs = nowMs - fpsWindowStartMs;
+        if (elapsedMs >= 1000) {
+            long encodedBytes = OverlayState.getEncodedBytes();
+            if (fpsWindowStartMs != 0) {
+                fps = fpsWindowFrames * 1000f / elapsedMs;
+                bitRateKbps = (encodedBytes - fpsWindowEncodedBytes) * 8 / elapsedMs;
+            }
+            fpsWindowStartMs = nowMs;
+            fpsWindowFrames = 0;
+            fpsWindowEncodedBytes = encodedBytes;
+        }
+    }
+
+    private static void appendTime(StringBuilder builder, long nowMs) {
+        // Avoid a date formatter on every frame
+        long localMs = nowMs + TimeZone.getDefault().getOffset(nowMs);
+        int ms = (int) (localMs % 1000);
+        int seconds = (int) (localMs / 1000 % 60);
+        int minutes = (int) (localMs / 60000 % 60);
+        int hours = (int) (localMs / 3600000 % 24);
+        appendPadded(builder, hours, 2).append(':');
+        appendPadded(builder, minutes, 2).append(':');
+        appendPadded(builder, seconds, 2).append('.');
+        appendPadded(builder, ms, 3);
+    }
+
+    private static StringBuilder appendPadded(StringBuilder builder, int value, int digits) {
+        for (int limit = 10; digits > 1; limit *= 10, --digits) {
+            if (value < limit) {
+                builder.append('0');
+            }
+        }
+        return builder.append(value);
+    }
+
+    private void addTextLine(CharSequence line, int row, float glyphWidth, float glyphHeight, int width, int height) {
+        float margin = glyphHeight / 4;
+        float y = margin + row * glyphHeight;
+
+        // Dark background for readability
+        addQuad(SOLID_CELL, 0, y, line.length() * glyphWidth + 2 * margin, glyphHeight, width, height, 0, 0, 0, 0.6f);
+
+        for (int i = 0; i < line.length(); ++i) {
+            char c = line.charAt(i);
+            if (c > FIRST_CHAR && c <= LAST_CHAR) {
+                addQuad(c - FIRST_CHAR, margin + i * glyphWidth, y, glyphWidth, glyphHeight, width, height, 1, 1, 1, 1);
+            }
+        }
+    }
+
+    /**
+     * Add a quad, in output pixels from the top-left corner.
+     */
+    private void addQuad(int cell, float x, float y, float w, float h, int width, int height, float r, float g, float b, float a) {
+        if (quadCount == MAX_QUADS) {
+            return;
+        }
+        ++quadCount;
+
+        // Convert to normalized device coordinates (y pointing up)
+        float x0 = x * 2 / width - 1;
+        float x1 = (x + w) * 2 / width - 1;
+        float y0 = 1 - y * 2 / height;
+        float y1 = 1 - (y + h) * 2 / height;
+
+        // The bitmap rows are uploaded top row first, so v = 0 is the top of the atlas
+        float u0 = (float) (cell % ATLAS_COLUMNS) / ATLAS_COLUMNS;
+        float u1 = u0 + 1f / ATLAS_COLUMNS;
+        float v0 = (float) (cell / ATLAS_COLUMNS) / ATLAS_ROWS;
+        float v1 = v0 + 1f / ATLAS_ROWS;
+
+        // Premultiplied color
+        float pr = r * a;
+        float pg = g * a;
+        float pb = b * a;
+
+        putVertex(x0, y0, u0, v0, pr, pg, pb, a);
+        putVertex(x1, y0, u1, v0, pr, pg, pb, a);
+        putVertex(x0, y1, u0, v1, pr, pg, pb, a);
+        putVertex(x1, y0, u1, v0, pr, pg, pb, a);
+        putVertex(x1, y1, u1, v1, pr, pg, pb, a);
+        putVertex(x0, y1, u0, v1, pr, pg, pb, a);
+    }
+
+    private void putVertex(float x, float y, float u, float v, float r, float g, float b, float a) {
+        vertices.put(x).put(y).put(u).put(v).put(r).put(g).put(b).put(a);
+    }
+
+    public void release() {
+        OverlayState.removeRenderer();
+        if (initialized) {
+            // The atlas texture is kept for the next runners
+            GLES20.glDeleteBuffers(1, new int[] {vertexBufferId}, 0);
+            ProgramCache.release(program);
+            initialized = false;
+        }
+    }
+}
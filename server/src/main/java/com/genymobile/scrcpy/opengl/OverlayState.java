@@ -0,0 +1,123 @@
+package com.genymobile.scrcpy.opengl;
+
+import com.genymobile.scrcpy.control.PointersState;
+
+/**
+ * State of the diagnostic overlay, shared between the controller, the encoder and the OpenGL runners (see {@link OverlayRenderer}).
+ * <p>
+ * All the methods may be called from any thread.
+ */
+public final class OverlayState {
+
+    private static volatile boolean enabled;
+    private static int rendererCount;
+
+    private static final long[] TOUCH_IDS = new long[PointersState.MAX_POINTERS];
+    private static final float[] TOUCH_POSITIONS = new float[PointersState.MAX_POINTERS * 2];
+    private static int touchCount;
+
+    private static long encodedBytes;
+    private static long encodedFrames;
+
+    private OverlayState() {
+        // not instantiable
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        OverlayState.enabled = enabled;
+    }
+
+    static synchronized void addRenderer() {
+        ++rendererCount;
+    }
+
+    static synchronized void removeRenderer() {
+        --rendererCount;
+    }
+
+    /**
+     * Indicate if the overlay can be drawn, i.e. if the video is currently rendered by OpenGL.
+     *
+     * @return {@code true} if at least one OpenGL runner draws the overlay
+     */
+    public static synchronized boolean hasRenderer() {
+        return rendererCount > 0;
+    }
+
+    /**
+     * Set the position of a touch pointer.
+     *
+     * @param pointerId the pointer id
+     * @param x         the horizontal position, relative to the video width (in [0, 1])
+     * @param y         the vertical position, relative to the video height (in [0, 1], from the top)
+     */
+    public static synchronized void setTouch(long pointerId, float x, float y) {
+        int index = findTouch(pointerId);
+        if (index == -1) {
+            if (touchCount == TOUCH_IDS.length) {
+                return;
+            }
+            index = touchCount++;
+            TOUCH_IDS[index] = pointerId;
+        }
+        TOUCH_POSITIONS[index * 2] = x;
+        TOUCH_POSITIONS[index * 2 + 1] = y;
+    }
+
+    public static synchronized void removeTouch(long pointerId) {
+        int index = findTouch(pointerId);
+        if (index != -1) {
+            // Move the last touch into the free slot
+            --touchCount;
+            TOUCH_IDS[index] = TOUCH_IDS[touchCount];
+            TOUCH_POSITIONS[index * 2] = TOUCH_POSITIONS[touchCount * 2];
+            TOUCH_POSITIONS[index * 2 + 1] = TOUCH_POSITIONS[touchCount * 2 + 1];
+        }
+    }
+
+    public static synchronized void clearTouches() {
+        touchCount = 0;
+    }
+
+    private static int findTouch(long pointerId) {
+        for (int i = 0; i < touchCount; ++i) {
+            if (TOUCH_IDS[i] == pointerId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Copy the current touch positions.
+     *
+     * @param positions the array to fill with (x, y) pairs, of length at least {@code 2 * PointersState.MAX_POINTERS}
+     * @return the number of touches
+     */
+    public static synchronized int getTouches(float[] positions) {
+        System.arraycopy(TOUCH_POSITIONS, 0, positions, 0, touchCount * 2);
+        return touchCount;
+    }
+
+    /**
+     * Account an encoded video frame.
+     *
+     * @param size the size of the packet, in bytes
+     */
+    public static synchronized void onEncodedFrame(int size) {
+        encodedBytes += size;
+        ++encodedFrames;
+    }
+
+    public static synchronized long getEncodedBytes() {
+        return encodedBytes;
+    }
+
+    public static synchronized long getEncodedFrames() {
+        return encodedFrames;
+    }
+}
@@ -3,10 +3,6 @@ package com.genymobile.scrcpy.opengl;
 import android.opengl.GLES11Ext;
 import android.opengl.GLES20;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
-
 /**
  * OpenGL filter that composites two video streams into picture-in-picture layout.
  * The display stream is rendered as the background, and the camera stream is rendered
@@ -26,11 +22,9 @@ public class PictureInPictureFilter implements OpenGLFilter {
 
     private int program;
     private int colorProgram;
-    private FloatBuffer bgVertexBuffer;
-    private FloatBuffer bgTexCoordsBuffer;
-    private FloatBuffer pipVertexBuffer;
-    private FloatBuffer pipTexCoordsBuffer;
-    private FloatBuffer pipBorderBuffer;
+    private QuadBuffer bgQuad;
+    private QuadBuffer pipQuad;
+    private QuadBuffer pipBorderQuad;
 
     private int vertexPosLoc;
     private int texCoordsInLoc;
@@ -92,7 +86,7 @@ public class PictureInPictureFilter implements OpenGLFilter {
                 + "    gl_FragColor = vec4(c.rgb, 1.0);\n" // force opaque
                 + "}";
 
-        program = GLUtils.createProgram(vertexShaderCode, fragmentShaderCode);
+        program = ProgramCache.acquire(vertexShaderCode, fragmentShaderCode);
         if (program == 0) {
             throw new OpenGLException("Failed to create program");
         }
@@ -106,6 +100,11 @@ public class PictureInPictureFilter implements OpenGLFilter {
         texMatrixLoc = GLES20.glGetUniformLocation(program, "tex_matrix");
         GLUtils.checkGlError();
 
+        // Both streams are sampled from texture unit 0
+        GLES20.glUseProgram(program);
+        GLES20.glUniform1i(texLoc, 0);
+        GLUtils.checkGlError();
+
         // Simple color shader for debug background/border
         String colorVs = "#version 100\n"
                 + "attribute vec4 vertex_pos;\n"
@@ -118,7 +117,7 @@ public class PictureInPictureFilter implements OpenGLFilter {
                 + "void main() {\n"
                 + "  gl_FragColor = uColor;\n"
                 + "}";
-        colorProgram = GLUtils.createProgram(colorVs, colorFs);
+        colorProgram = ProgramCache.acquire(colorVs, colorFs);
         if (colorProgram == 0) {
             throw new OpenGLException("Failed to create color program");
         }
@@ -134,7 +133,6 @@ public class PictureInPictureFilter implements OpenGLFilter {
                 -1.0f,  1.0f,  // top-left
                 1.0f,  1.0f   // top-right
         };
-        bgVertexBuffer = createFloatBuffer(bgVertices);
 
         float[] bgTexCoords = {
                 0.0f, 0.0f,  // bottom-left
@@ -142,7 +140,7 @@ public class PictureInPictureFilter implements OpenGLFilter {
                 0.0f, 1.0f,  // top-left
                 1.0f, 1.0f   // top-right
         };
-        bgTexCoordsBuffer = createFloatBuffer(bgTexCoords);
+        bgQuad = QuadBuffer.create(bgVertices, bgTexCoords);
 
         // Calculate pip position
         float pipWidth = pipWidthRatio * 2.0f;  // Convert to OpenGL coordinates (-1 to 1)
@@ -176,7 +174,6 @@ public class PictureInPictureFilter implements OpenGLFilter {
                 pipLeft, pipBottom + pipHeight,        // top-left
                 pipLeft + pipWidth, pipBottom + pipHeight  // top-right
         };
-        pipVertexBuffer = createFloatBuffer(pipVertices);
 
         // Border uses a rectangle order to avoid hourglass shape
         float[] pipBorder = {
@@ -185,7 +182,7 @@ public class PictureInPictureFilter implements OpenGLFilter {
                 pipLeft + pipWidth, pipBottom + pipHeight, // TR
                 pipLeft, pipBottom + pipHeight         // TL
         };
-        pipBorderBuffer = createFloatBuffer(pipBorder);
+        pipBorderQuad = QuadBuffer.create(pipBorder, null);
 
         float[] pipTexCoords = {
                 0.0f, 0.0f,  // bottom-left
@@ -193,16 +190,7 @@ public class PictureInPictureFilter implements OpenGLFilter {
                 0.0f, 1.0f,  // top-left
                 1.0f, 1.0f   // top-right
         };
-        pipTexCoordsBuffer = createFloatBuffer(pipTexCoords);
-    }
-
-    private FloatBuffer createFloatBuffer(float[] data) {
-        ByteBuffer bb = ByteBuffer.allocateDirect(data.length * 4);
-        bb.order(ByteOrder.nativeOrder());
-        FloatBuffer buffer = bb.asFloatBuffer();
-        buffer.put(data);
-        buffer.position(0);
-        return buffer;
+        pipQuad = QuadBuffer.create(pipVertices, pipTexCoords);
     }
 
     /**
@@ -231,17 +219,13 @@ public class PictureInPictureFilter implements OpenGLFilter {
         GLUtils.checkGlError();
 
         // Draw background (display stream)
-        GLES20.glVertexAttribPointer(vertexPosLoc, 2, GLES20.GL_FLOAT, false, 0, bgVertexBuffer);
-        GLUtils.checkGlError();
-        GLES20.glVertexAttribPointer(texCoordsInLoc, 2, GLES20.GL_FLOAT, false, 0, bgTexCoordsBuffer);
+        bgQuad.bind(vertexPosLoc, texCoordsInLoc);
         GLUtils.checkGlError();
 
         GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
         GLUtils.checkGlError();
         GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, displayTextureId);
         GLUtils.checkGlError();
-        GLES20.glUniform1i(texLoc, 0);
-        GLUtils.checkGlError();
 
         GLES20.glUniformMatrix4fv(texMatrixLoc, 1, false, displayTexMatrix, 0);
         GLUtils.checkGlError();
@@ -256,7 +240,7 @@ public class PictureInPictureFilter implements OpenGLFilter {
             GLUtils.checkGlError();
             GLES20.glEnableVertexAttribArray(colorVertexPosLoc);
             GLUtils.checkGlError();
-            GLES20.glVertexAttribPointer(colorVertexPosLoc, 2, GLES20.GL_FLOAT, false, 0, pipVertexBuffer);
+            pipQuad.bind(colorVertexPosLoc, -1);
             GLUtils.checkGlError();
             // background (dark with alpha)
             GLES20.glEnable(GLES20.GL_BLEND);
@@ -272,7 +256,7 @@ public class PictureInPictureFilter implements OpenGLFilter {
             GLUtils.checkGlError();
             GLES20.glLineWidth(4f);
             GLUtils.checkGlError();
-            GLES20.glVertexAttribPointer(colorVertexPosLoc, 2, GLES20.GL_FLOAT, false, 0, pipBorderBuffer);
+            pipBorderQuad.bind(colorVertexPosLoc, -1);
             GLUtils.checkGlError();
             GLES20.glDrawArrays(GLES20.GL_LINE_LOOP, 0, 4);
             GLUtils.checkGlError();
@@ -284,17 +268,13 @@ public class PictureInPictureFilter implements OpenGLFilter {
             GLUtils.checkGlError();
             // Draw the camera texture opaque (avoid alpha from external texture)
 
-            GLES20.glVertexAttribPointer(vertexPosLoc, 2, GLES20.GL_FLOAT, false, 0, pipVertexBuffer);
-            GLUtils.checkGlError();
-            GLES20.glVertexAttribPointer(texCoordsInLoc, 2, GLES20.GL_FLOAT, false, 0, pipTexCoordsBuffer);
+            pipQuad.bind(vertexPosLoc, texCoordsInLoc);
             GLUtils.checkGlError();
 
             GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
             GLUtils.checkGlError();
             GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, cameraTextureId);
             GLUtils.checkGlError();
-            GLES20.glUniform1i(texLoc, 0);
-            GLUtils.checkGlError();
 
             GLES20.glUniformMatrix4fv(texMatrixLoc, 1, false, cameraTexMatrix, 0);
             GLUtils.checkGlError();
@@ -309,14 +289,19 @@ public class PictureInPictureFilter implements OpenGLFilter {
         GLUtils.checkGlError();
         GLES20.glDisableVertexAttribArray(texCoordsInLoc);
         GLUtils.checkGlError();
+
+        QuadBuffer.unbind();
     }
 
     @Override
     public void release() {
-        GLES20.glDeleteProgram(program);
+        bgQuad.release();
+        pipQuad.release();
+        pipBorderQuad.release();
+        ProgramCache.release(program);
         GLUtils.checkGlError();
         if (colorProgram != 0) {
-            GLES20.glDeleteProgram(colorProgram);
+            ProgramCache.release(colorProgram);
             GLUtils.checkGlError();
         }
     }
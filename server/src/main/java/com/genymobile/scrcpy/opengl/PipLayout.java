@@ -0,0 +1,209 @@
+package com.genymobile.scrcpy.opengl;
+
+import com.genymobile.scrcpy.device.Size;
+import com.genymobile.scrcpy.util.AffineMatrix;
+
+import java.util.Objects;
+
+/**
+ * Picture-in-picture layout of the composite capture.
+ * <p>
+ * The overlay rectangle is expressed in fractions of the output size, from the top-left corner. By default, the camera is the background and
+ * the display is the overlay; {@code swap} exchanges them. The overlay is blended with {@code alpha}, the background is always opaque.
+ * <p>
+ * This class only computes geometry (vertices in Normalized Device Coordinates, texture coordinates with {@code v = 0} as the first image row),
+ * so that the filter only uploads the resulting buffers when the layout changes.
+ */
+public final class PipLayout {
+
+    public static final PipLayout DEFAULT = new PipLayout(0.2f, 0.1f, 0.6f, 0.8f, 0.6f, false);
+
+    // Unit quad, in the vertex order of a triangle strip: bottom-left, bottom-right, top-left, top-right (y increasing downwards)
+    private static final float[] UNIT_QUAD = {0, 1, 1, 1, 0, 0, 1, 0};
+
+    // Tolerance for rectangles touching the right or bottom edge (the values are typically fixed-point or decimal fractions)
+    private static final float EPSILON = 1e-4f;
+
+    private final float x;
+    private final float y;
+    private final float width;
+    private final float height;
+    private final float alpha;
+    private final boolean swap;
+
+    public PipLayout(float x, float y, float width, float height, float alpha, boolean swap) {
+        if (!(width > 0 && height > 0 && width <= 1 && height <= 1)) {
+            throw new IllegalArgumentException("Invalid PiP size: " + width + "x" + height);
+        }
+        if (!(x >= 0 && y >= 0 && x + width <= 1 + EPSILON && y + height <= 1 + EPSILON)) {
+            throw new IllegalArgumentException("Invalid PiP position: " + x + ":" + y);
+        }
+        if (!(alpha >= 0 && alpha <= 1)) {
+            throw new IllegalArgumentException("Invalid PiP alpha: " + alpha);
+        }
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.alpha = alpha;
+        this.swap = swap;
+    }
+
+    public PipLayout withRect(float x, float y, float width, float height) {
+        return new PipLayout(x, y, width, height, alpha, swap);
+    }
+
+    public PipLayout withAlpha(float alpha) {
+        return new PipLayout(x, y, width, height, alpha, swap);
+    }
+
+    public PipLayout withSwap(boolean swap) {
+        return new PipLayout(x, y, width, height, alpha, swap);
+    }
+
+    public float getX() {
+        return x;
+    }
+
+    public float getY() {
+        return y;
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    public float getHeight() {
+        return height;
+    }
+
+    public float getAlpha() {
+        return alpha;
+    }
+
+    public boolean isSwap() {
+        return swap;
+    }
+
+    /**
+     * Return the vertices of the overlay rectangle.
+     *
+     * @return 4 vertices in Normalized Device Coordinates (triangle strip order)
+     */
+    public float[] computeOverlayVertices() {
+        // Map the rectangle to NDC, where y increases upwards
+        AffineMatrix matrix = AffineMatrix.multiplyAll(AffineMatrix.translate(-1, 1), AffineMatrix.scale(2, -2), AffineMatrix.translate(x, y),
+                AffineMatrix.scale(width, height));
+        return transformUnitQuad(matrix);
+    }
+
+    /**
+     * Return the vertices covering the whole output.
+     *
+     * @return 4 vertices in Normalized Device Coordinates (triangle strip order)
+     */
+    public static float[] computeFullVertices() {
+        return new float[] {-1, -1, 1, -1, -1, 1, 1, 1};
+    }
+
+    public float[] computeCameraVertices() {
+        return swap ? computeOverlayVertices() : computeFullVertices();
+    }
+
+    public float[] computeDisplayVertices() {
+        return swap ? computeFullVertices() : computeOverlayVertices();
+    }
+
+    /**
+     * Return the texture coordinates of the display (stretched to its area).
+     *
+     * @return 4 texture coordinates (triangle strip order)
+     */
+    public float[] computeDisplayTexCoords() {
+        return UNIT_QUAD.clone();
+    }
+
+    /**
+     * Return the texture coordinates of the camera, rotated then cropped to fill its area (horizontally centered, aligned to the bottom).
+     *
+     * @param cameraSize the camera frame size
+     * @param outputSize the output size
+     * @param rotation   the rotation of the camera frames, in degrees (0, 90, 180 or 270)
+     * @return 4 texture coordinates (triangle strip order)
+     */
+    public float[] computeCameraTexCoords(Size cameraSize, Size outputSize, int rotation) {
+        float targetAspect = (float) outputSize.getWidth() / outputSize.getHeight();
+        if (swap) {
+            targetAspect *= width / height;
+        }
+        return computeCoverTexCoords(cameraSize, targetAspect, rotation);
+    }
+
+    static float[] computeCoverTexCoords(Size sourceSize, float targetAspect, int rotation) {
+        boolean transpose = rotation == 90 || rotation == 270;
+        float rotatedWidth = transpose ? sourceSize.getHeight() : sourceSize.getWidth();
+        float rotatedHeight = transpose ? sourceSize.getWidth() : sourceSize.getHeight();
+        float sourceAspect = rotatedWidth / rotatedHeight;
+
+        float visibleWidth;
+        float visibleHeight;
+        if (sourceAspect >= targetAspect) {
+            visibleWidth = targetAspect / sourceAspect;
+            visibleHeight = 1;
+        } else {
+            visibleWidth = 1;
+            visibleHeight = sourceAspect / targetAspect;
+        }
+
+        AffineMatrix crop = AffineMatrix.translate((1 - visibleWidth) / 2, 1 - visibleHeight)
+                .multiply(AffineMatrix.scale(visibleWidth, visibleHeight));
+        return transformUnitQuad(rotationMatrix(rotation).multiply(crop));
+    }
+
+    private static AffineMatrix rotationMatrix(int rotation) {
+        switch (rotation) {
+            case 0:
+                return AffineMatrix.IDENTITY;
+            case 90:
+                return AffineMatrix.rotateOrtho(3);
+            case 180:
+                return AffineMatrix.rotateOrtho(2);
+            case 270:
+                return AffineMatrix.rotateOrtho(1);
+            default:
+                throw new IllegalArgumentException("Invalid rotation: " + rotation);
+        }
+    }
+
+    private static float[] transformUnitQuad(AffineMatrix matrix) {
+        float[] points = UNIT_QUAD.clone();
+        matrix.apply(points);
+        return points;
+    }
+
+    public static boolean isValidRotation(int rotation) {
+        return rotation == 0 || rotation == 90 || rotation == 180 || rotation == 270;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        PipLayout that = (PipLayout) o;
+        return x == that.x && y == that.y && width == that.width && height == that.height && alpha == that.alpha && swap == that.swap;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(x, y, width, height, alpha, swap);
+    }
+
+    @Override
+    public String toString() {
+        return "PipLayout{" + width + "x" + height + " at " + x + ":" + y + ", alpha=" + alpha + ", swap=" + swap + "}";
+    }
+}
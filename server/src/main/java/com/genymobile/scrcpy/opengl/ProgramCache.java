@@ -0,0 +1,213 @@
+package com.genymobile.scrcpy.opengl;
+
+import com.genymobile.scrcpy.util.Ln;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cache of linked OpenGL programs, keyed by the hash of their shader sources.
+ * <p>
+ * Within the process, released programs are kept (program objects are shared by all the contexts, see {@link EglContextManager}) and reused on
+ * the next capture, so that a capture restart does not compile the shaders again. A program is acquired exclusively, since the users set their
+ * constant uniforms once.
+ * <p>
+ * Across sessions, the program binaries are stored on disk (OpenGL ES 3 only), along with the driver identification: a binary is only loaded
+ * by the same driver version, and is compiled from source again if the driver rejects it.
+ */
+public final class ProgramCache {
+
+    private static final String BINARY_DIR = "/data/local/tmp/scrcpy-programs";
+    private static final int BINARY_MAGIC = 0x73637270; // "scrp"
+
+    private static final Map<String, Deque<Integer>> FREE_PROGRAMS = new HashMap<>();
+    private static final Map<Integer, String> ACQUIRED_PROGRAMS = new HashMap<>();
+
+    private static String driverId;
+    private static boolean persistenceFailureLogged;
+
+    private ProgramCache() {
+        // not instantiable
+    }
+
+    /**
+     * Return a linked program for these shaders, from the cache if possible.
+     * <p>
+     * Must be called on a thread with a current context.
+     *
+     * @param vertexSource   the vertex shader source
+     * @param fragmentSource the fragment shader source
+     * @return the program, to be released by {@link #release(int)}, or 0 on error
+     */
+    public static synchronized int acquire(String vertexSource, String fragmentSource) {
+        String key = computeKey(vertexSource, fragmentSource);
+
+        int program = 0;
+        Deque<Integer> free = FREE_PROGRAMS.get(key);
+        if (free != null && !free.isEmpty()) {
+            program = free.pop();
+        } else {
+            boolean persistent = EglContextManager.getGlesVersion() >= 3;
+            if (persistent) {
+                program = loadBinary(key);
+            }
+            if (program == 0) {
+                program = GLUtils.createProgram(vertexSource, fragmentSource);
+                if (program != 0 && persistent) {
+                    storeBinary(key, program);
+                }
+            }
+        }
+
+        if (program != 0) {
+            ACQUIRED_PROGRAMS.put(program, key);
+        }
+        return program;
+    }
+
+    /**
+     * Give back a program acquired from the cache (it is not deleted).
+     *
+     * @param program the program (ignored if 0)
+     */
+    public static synchronized void release(int program) {
+        String key = ACQUIRED_PROGRAMS.remove(program);
+        if (key == null) {
+            return;
+        }
+
+        Deque<Integer> free = FREE_PROGRAMS.get(key);
+        if (free == null) {
+            free = new ArrayDeque<>();
+            FREE_PROGRAMS.put(key, free);
+        }
+        free.push(program);
+    }
+
+    private static String computeKey(String vertexSource, String fragmentSource) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(vertexSource.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(fragmentSource.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder();
+            for (byte b : digest.digest()) {
+                builder.append(String.format("%02x", b));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 not available", e);
+        }
+    }
+
+    private static String getDriverId() {
+        if (driverId == null) {
+            driverId = GLES20.glGetString(GLES20.GL_VENDOR) + "|" + GLES20.glGetString(GLES20.GL_RENDERER) + "|" + GLES20.glGetString(
+                    GLES20.GL_VERSION);
+        }
+        return driverId;
+    }
+
+    private static int loadBinary(String key) {
+        File file = new File(BINARY_DIR, key);
+        if (!file.exists()) {
+            return 0;
+        }
+
+        int format;
+        byte[] data;
+        try (DataInputStream dis = new DataInputStream(new FileInputStream(file))) {
+            if (dis.readInt() != BINARY_MAGIC || !getDriverId().equals(dis.readUTF())) {
+                // Written by another driver version
+                file.delete();
+                return 0;
+            }
+            format = dis.readInt();
+            data = new byte[dis.readInt()];
+            dis.readFully(data);
+        } catch (IOException e) {
+            file.delete();
+            return 0;
+        }
+
+        int program = GLES20.glCreateProgram();
+        if (program == 0) {
+            return 0;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        buffer.put(data).flip();
+        GLES30.glProgramBinary(program, format, buffer, data.length);
+
+        int[] linkStatus = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+        if (linkStatus[0] == 0) {
+            // The driver may reject a binary at any time, fall back to the sources
+            Ln.d("Program binary rejected, compiling from source");
+            GLES20.glDeleteProgram(program);
+            file.delete();
+            return 0;
+        }
+
+        return program;
+    }
+
+    private static void storeBinary(String key, int program) {
+        int[] length = new int[1];
+        GLES20.glGetProgramiv(program, GLES30.GL_PROGRAM_BINARY_LENGTH, length, 0);
+        if (length[0] <= 0) {
+            return;
+        }
+
+        int[] format = new int[1];
+        ByteBuffer buffer = ByteBuffer.allocateDirect(length[0]);
+        GLES30.glGetProgramBinary(program, length[0], length, 0, format, 0, buffer);
+        if (GLES20.glGetError() != GLES20.GL_NO_ERROR || length[0] <= 0) {
+            return;
+        }
+
+        byte[] data = new byte[length[0]];
+        buffer.get(data);
+
+        File dir = new File(BINARY_DIR);
+        File file = new File(dir, key);
+        File tmpFile = new File(dir, key + ".tmp");
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Could not create " + dir);
+            }
+            try (DataOutputStream dos = new DataOutputStream(new FileOutputStream(tmpFile))) {
+                dos.writeInt(BINARY_MAGIC);
+                dos.writeUTF(getDriverId());
+                dos.writeInt(format[0]);
+                dos.writeInt(data.length);
+                dos.write(data);
+            }
+            // Never leave a partially written binary
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("Could not rename " + tmpFile);
+            }
+        } catch (IOException e) {
+            tmpFile.delete();
+            if (!persistenceFailureLogged) {
+                Ln.w("Could not store program binary: " + e.getMessage());
+                persistenceFailureLogged = true;
+            }
+        }
+    }
+}
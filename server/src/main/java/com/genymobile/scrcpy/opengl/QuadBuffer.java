@@ -0,0 +1,103 @@
+package com.genymobile.scrcpy.opengl;
+
+import android.opengl.GLES20;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Vertex buffer object storing the 4 vertices of a quad (drawn as a triangle strip or a line loop), optionally followed by their texture
+ * coordinates.
+ * <p>
+ * The geometry is uploaded once to the GPU, so that it is not transferred from client memory on every draw call. It is only uploaded again
+ * when it changes.
+ */
+public final class QuadBuffer {
+
+    private static final int FLOAT_SIZE = 4;
+    private static final int COORDS_PER_QUAD = 8; // 4 vertices of 2 components
+
+    private final int id;
+    private final boolean hasTexCoords;
+    private final FloatBuffer data;
+
+    private QuadBuffer(int id, boolean hasTexCoords) {
+        this.id = id;
+        this.hasTexCoords = hasTexCoords;
+        data = GLUtils.createFloatBuffer(new float[hasTexCoords ? 2 * COORDS_PER_QUAD : COORDS_PER_QUAD]);
+    }
+
+    /**
+     * Create a vertex buffer object and upload the quad.
+     *
+     * @param vertices  the 4 vertices (8 floats)
+     * @param texCoords the 4 texture coordinates (8 floats), or {@code null}
+     * @return the buffer
+     */
+    public static QuadBuffer create(float[] vertices, float[] texCoords) throws OpenGLException {
+        int[] buffers = new int[1];
+        GLES20.glGenBuffers(1, buffers, 0);
+        GLUtils.checkGlError();
+        if (buffers[0] == 0) {
+            throw new OpenGLException("Cannot create vertex buffer");
+        }
+
+        QuadBuffer quad = new QuadBuffer(buffers[0], texCoords != null);
+        quad.fill(vertices, texCoords);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, quad.id);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, quad.data.capacity() * FLOAT_SIZE, quad.data, GLES20.GL_STATIC_DRAW);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        GLUtils.checkGlError();
+        return quad;
+    }
+
+    /**
+     * Upload a new quad (for example on layout change).
+     *
+     * @param vertices  the 4 vertices (8 floats)
+     * @param texCoords the 4 texture coordinates (8 floats), or {@code null} if the buffer has been created without texture coordinates
+     */
+    public void update(float[] vertices, float[] texCoords) {
+        fill(vertices, texCoords);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, id);
+        GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, data.capacity() * FLOAT_SIZE, data);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        GLUtils.checkGlError();
+    }
+
+    private void fill(float[] vertices, float[] texCoords) {
+        assert vertices.length == COORDS_PER_QUAD;
+        assert hasTexCoords == (texCoords != null);
+        data.clear();
+        data.put(vertices);
+        if (hasTexCoords) {
+            assert texCoords.length == COORDS_PER_QUAD;
+            data.put(texCoords);
+        }
+        data.position(0);
+    }
+
+    /**
+     * Bind the buffer to the vertex attributes (the attribute arrays must be enabled by the caller).
+     * <p>
+     * The caller must call {@link #unbind()} after drawing, so that other code may still use client-side arrays.
+     *
+     * @param vertexPosLoc   the location of the vertex position attribute
+     * @param texCoordsInLoc the location of the texture coordinates attribute, or -1 to ignore the texture coordinates
+     */
+    public void bind(int vertexPosLoc, int texCoordsInLoc) {
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, id);
+        GLES20.glVertexAttribPointer(vertexPosLoc, 2, GLES20.GL_FLOAT, false, 0, 0);
+        if (texCoordsInLoc != -1) {
+            assert hasTexCoords;
+            GLES20.glVertexAttribPointer(texCoordsInLoc, 2, GLES20.GL_FLOAT, false, 0, COORDS_PER_QUAD * FLOAT_SIZE);
+        }
+    }
+
+    public static void unbind() {
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    }
+
+    public void release() {
+        GLES20.glDeleteBuffers(1, new int[] {id}, 0);
+    }
+}
@@ -0,0 +1,50 @@
+package com.genymobile.scrcpy.opengl;
+
+import com.genymobile.scrcpy.device.Size;
+
+import android.opengl.GLES20;
+
+/**
+ * An offscreen RGBA texture attached to a framebuffer object, for intermediate rendering passes.
+ * <p>
+ * Instances are provided by a {@link RenderTargetPool}.
+ */
+public final class RenderTarget {
+
+    private final Size size;
+    private final int textureId;
+    private final int framebufferId;
+
+    RenderTarget(Size size, int textureId, int framebufferId) {
+        this.size = size;
+        this.textureId = textureId;
+        this.framebufferId = framebufferId;
+    }
+
+    public Size getSize() {
+        return size;
+    }
+
+    public int getTextureId() {
+        return textureId;
+    }
+
+    public int getFramebufferId() {
+        return framebufferId;
+    }
+
+    /**
+     * Render to this target (until {@link #unbind()}), and set the viewport to its size.
+     */
+    public void bind() {
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebufferId);
+        GLES20.glViewport(0, 0, size.getWidth(), size.getHeight());
+    }
+
+    /**
+     * Render to the window surface again.
+     */
+    public static void unbind() {
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+    }
+}
@@ -0,0 +1,77 @@
+package com.genymobile.scrcpy.opengl;
+
+import com.genymobile.scrcpy.device.Size;
+
+import android.opengl.GLES20;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Pool of {@link RenderTarget}s, by size.
+ * <p>
+ * Framebuffer objects are not shared between EGL contexts, so there is one pool per rendering thread (see
+ * {@link EglContextManager#getRenderTargetPool()}). Their textures come from the shared {@link TexturePool}.
+ */
+public final class RenderTargetPool {
+
+    private final List<RenderTarget> freeTargets = new ArrayList<>();
+
+    RenderTargetPool() {
+        // created by EglContextManager
+    }
+
+    /**
+     * Return a render target of the requested size.
+     *
+     * @param size the size
+     * @return the render target, to be recycled by {@link #recycle(RenderTarget)}
+     */
+    public RenderTarget acquire(Size size) throws OpenGLException {
+        Iterator<RenderTarget> it = freeTargets.iterator();
+        while (it.hasNext()) {
+            RenderTarget target = it.next();
+            if (target.getSize().equals(size)) {
+                it.remove();
+                return target;
+            }
+        }
+
+        int textureId = EglContextManager.getTexturePool().acquire(size.getWidth(), size.getHeight(), GLES20.GL_RGBA);
+
+        int[] framebuffers = new int[1];
+        GLES20.glGenFramebuffers(1, framebuffers, 0);
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffers[0]);
+        GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D, textureId, 0);
+        int status = GLES20.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        if (status != GLES20.GL_FRAMEBUFFER_COMPLETE) {
+            GLES20.glDeleteFramebuffers(1, framebuffers, 0);
+            EglContextManager.getTexturePool().recycle(textureId);
+            throw new OpenGLException("Incomplete framebuffer for " + size + ": 0x" + Integer.toHexString(status));
+        }
+
+        return new RenderTarget(size, textureId, framebuffers[0]);
+    }
+
+    /**
+     * Give back a render target acquired from this pool.
+     *
+     * @param target the render target
+     */
+    public void recycle(RenderTarget target) {
+        freeTargets.add(target);
+    }
+
+    /**
+     * Delete all the free render targets (their textures are given back to the texture pool).
+     */
+    public void release() {
+        for (RenderTarget target : freeTargets) {
+            GLES20.glDeleteFramebuffers(1, new int[] {target.getFramebufferId()}, 0);
+            EglContextManager.getTexturePool().recycle(target.getTextureId());
+        }
+        freeTargets.clear();
+    }
+}
@@ -1,20 +1,27 @@
 package com.genymobile.scrcpy.opengl;
 
-import android.opengl.GLES20;
+import com.genymobile.scrcpy.device.Size;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
 
 /**
  * OpenGL filter that composites:
  * - RGBA background (display from ImageReader)
  * - YUV420 PIP overlay (camera from ImageReader)
+ * <p>
+ * If created with {@code externalTextures}, either source may instead be an external OES texture (zero-copy import from a SurfaceTexture).
+ * <p>
+ * The placement of both sources is described by a {@link PipLayout}, which may be changed at any time. The geometry is stored in vertex
+ * buffer objects, only uploaded again when the layout (or the configuration) changes.
  */
 public class RgbaYuvPipFilter {
 
+    private final boolean externalTextures;
+
     private int rgbaProgram;
     private int yuvProgram;
+    private int oesProgram;
 
     private int rgbaVertexPosLoc;
     private int rgbaTexCoordsInLoc;
@@ -23,39 +30,51 @@ public class RgbaYuvPipFilter {
 
     private int yuvVertexPosLoc;
     private int yuvTexCoordsInLoc;
+    private int yuvGlobalAlphaLoc;
     private int texYLoc;
     private int texULoc;
     private int texVLoc;
 
-    private FloatBuffer defaultCameraVertexBuffer;
-    private FloatBuffer defaultCameraTexCoordsBuffer;
-    private FloatBuffer cameraVertexBuffer;
-    private FloatBuffer cameraTexCoordsBuffer;
-    private FloatBuffer displayVertexBuffer;
-    private FloatBuffer displayTexCoordsBuffer;
+    private int oesVertexPosLoc;
+    private int oesTexCoordsInLoc;
+    private int oesTexLoc;
+    private int oesTexMatrixLoc;
+    private int oesGlobalAlphaLoc;
+
+    private QuadBuffer cameraQuad;
+    private QuadBuffer displayQuad;
 
     private int displayTexId = -1;
     private int yTexId = -1, uTexId = -1, vTexId = -1;
     private int displayWidth, displayHeight;
     private int cameraWidth, cameraHeight;
-    private int outputWidth, outputHeight;
-
-    // Display PIP settings (display overlay on camera background)
-    private static final float DISPLAY_WIDTH_RATIO = 0.60f;  // Display takes 60% width
-    private static final float DISPLAY_HEIGHT_RATIO = 0.80f; // Display takes 80% height
-    private static final float DISPLAY_MARGIN_RATIO = 0.05f;
-    private static final float DEFAULT_DISPLAY_ALPHA = 0.6f;
-    private float displayAlpha = DEFAULT_DISPLAY_ALPHA;
+    private Size cameraSize;
+    private Size outputSize;
+    private int cameraRotation;
+
+    private boolean displayExternal;
+    private boolean cameraExternal;
+    private int cameraExternalTexId = -1;
+    private final float[] displayTexMatrix = new float[16];
+    private final float[] cameraTexMatrix = new float[16];
+
+    private PipLayout layout;
+    private boolean geometryDirty = true;
+
+    public RgbaYuvPipFilter(boolean externalTextures, PipLayout layout) {
+        this.externalTextures = externalTextures;
+        this.layout = layout;
+    }
 
-    
-    // Position: centered or top-center for AR overlay
-    private enum OverlayPosition { CENTER, TOP_CENTER, BOTTOM_CENTER }
-    private static final OverlayPosition OVERLAY_POSITION = OverlayPosition.CENTER;
+    public RgbaYuvPipFilter() {
+        this(false, PipLayout.DEFAULT);
+    }
 
     public void setDisplayTexture(int texId, int width, int height) {
         this.displayTexId = texId;
         this.displayWidth = width;
         this.displayHeight = height;
+        this.displayExternal = false;
     }
 
     public void setYuvTextures(int yTexId, int uTexId, int vTexId, int width, int height) {
@@ -64,52 +83,67 @@ public class RgbaYuvPipFilter {
         this.vTexId = vTexId;
         this.cameraWidth = width;
         this.cameraHeight = height;
+        this.cameraExternal = false;
     }
 
-    public void setDisplayAlpha(float alpha) {
-        this.displayAlpha = clamp(alpha, 0f, 1f);
+    /**
+     * Set the display as an external OES texture (requires {@code externalTextures}).
+     *
+     * @param texMatrix matrix mapping the texture coordinates so that {@code v = 0} is the first row of the image, like an uploaded texture
+     */
+    public void setExternalDisplayTexture(int texId, float[] texMatrix, int width, int height) {
+        assert externalTextures;
+        this.displayTexId = texId;
+        System.arraycopy(texMatrix, 0, displayTexMatrix, 0, 16);
+        this.displayWidth = width;
+        this.displayHeight = height;
+        this.displayExternal = true;
     }
 
-    public enum Rotation {
-        ROT_0,
-        ROT_90,
-        ROT_180,
-        ROT_270
+    /**
+     * Set the camera as an external OES texture (requires {@code externalTextures}).
+     *
+     * @param texMatrix matrix mapping the texture coordinates so that {@code v = 0} is the first row of the image, like an uploaded texture
+     */
+    public void setExternalCameraTexture(int texId, float[] texMatrix, int width, int height) {
+        assert externalTextures;
+        this.cameraExternalTexId = texId;
+        System.arraycopy(texMatrix, 0, cameraTexMatrix, 0, 16);
+        this.cameraWidth = width;
+        this.cameraHeight = height;
+        this.cameraExternal = true;
     }
 
-    public void configureCamera(int cameraWidth, int cameraHeight, int outputWidth, int outputHeight, Rotation rotation) {
-        this.cameraWidth = cameraWidth;
-        this.cameraHeight = cameraHeight;
-        this.outputWidth = outputWidth;
-        this.outputHeight = outputHeight;
-
-        boolean swap = rotation == Rotation.ROT_90 || rotation == Rotation.ROT_270;
-        float rotatedWidth = swap ? cameraHeight : cameraWidth;
-        float rotatedHeight = swap ? cameraWidth : cameraHeight;
-
-        float cameraAspect = rotatedWidth / rotatedHeight;
-        float outputAspect = (float) outputWidth / outputHeight;
+    /**
+     * Configure the camera source and the output.
+     *
+     * @param cameraSize     the camera frame size
+     * @param outputSize     the output size
+     * @param cameraRotation the rotation of the camera frames, in degrees (0, 90, 180 or 270)
+     */
+    public void configure(Size cameraSize, Size outputSize, int cameraRotation) {
+        this.cameraSize = cameraSize;
+        this.outputSize = outputSize;
+        this.cameraRotation = cameraRotation;
+        geometryDirty = true;
+    }
 
-        float visibleWidth;
-        float visibleHeight;
-        if (cameraAspect >= outputAspect) {
-            visibleHeight = 1f;
-            visibleWidth = outputAspect / cameraAspect;
-        } else {
-            visibleWidth = 1f;
-            visibleHeight = cameraAspect / outputAspect;
+    /**
+     * Change the layout (takes effect on the next {@link #draw()}).
+     *
+     * @param layout the new layout
+     */
+    public void setLayout(PipLayout layout) {
+        if (!layout.equals(this.layout)) {
+            this.layout = layout;
+            geometryDirty = true;
         }
+    }
 
-        float uCenter = 0.5f;
-        float uMin = clamp(uCenter - visibleWidth / 2f, 0f, 1f);
-        float uMax = clamp(uCenter + visibleWidth / 2f, 0f, 1f);
-
-        float vBottom = 1f;
-        float vTop = clamp(vBottom - visibleHeight, 0f, 1f);
-
-        cameraVertexBuffer = defaultCameraVertexBuffer;
-        float[] texCoords = getTexCoordsForRotation(uMin, uMax, vTop, vBottom, rotation);
-        cameraTexCoordsBuffer = createFloatBuffer(texCoords);
+    private void updateGeometry() {
+        cameraQuad.update(layout.computeCameraVertices(), layout.computeCameraTexCoords(cameraSize, outputSize, cameraRotation));
+        displayQuad.update(layout.computeDisplayVertices(), layout.computeDisplayTexCoords());
+        geometryDirty = false;
     }
 
     public void init() throws OpenGLException {
@@ -149,6 +183,7 @@ public class RgbaYuvPipFilter {
                 "uniform sampler2D texY;\n" +
                 "uniform sampler2D texU;\n" +
                 "uniform sampler2D texV;\n" +
+                "uniform float global_alpha;\n" +
                 "void main(){\n" +
                 "  float y = texture2D(texY, v_tc).r;\n" +
                 "  float u = texture2D(texU, v_tc).r - 0.5;\n" +
@@ -156,15 +191,19 @@ public class RgbaYuvPipFilter {
                 "  float r = y + 1.402 * v;\n" +
                 "  float g = y - 0.344136 * u - 0.714136 * v;\n" +
                 "  float b = y + 1.772 * u;\n" +
-                "  gl_FragColor = vec4(r, g, b, 1.0);\n" +
+                "  gl_FragColor = vec4(r, g, b, global_alpha);\n" +
                 "}";
 
-        rgbaProgram = GLUtils.createProgram(vsRgba, fsRgba);
+        rgbaProgram = ProgramCache.acquire(vsRgba, fsRgba);
         if (rgbaProgram == 0) throw new OpenGLException("Failed to create RGBA program");
         
-        yuvProgram = GLUtils.createProgram(vsYuv, fsYuv);
+        yuvProgram = ProgramCache.acquire(vsYuv, fsYuv);
         if (yuvProgram == 0) throw new OpenGLException("Failed to create YUV program");
 
+        if (externalTextures) {
+            initExternalProgram();
+        }
+
         // Get uniform/attribute locations for RGBA program
         rgbaVertexPosLoc = GLES20.glGetAttribLocation(rgbaProgram, "vertex_pos");
         GLUtils.checkGlError();
@@ -183,52 +222,63 @@ public class RgbaYuvPipFilter {
         texYLoc = GLES20.glGetUniformLocation(yuvProgram, "texY");
         texULoc = GLES20.glGetUniformLocation(yuvProgram, "texU");
         texVLoc = GLES20.glGetUniformLocation(yuvProgram, "texV");
+        yuvGlobalAlphaLoc = GLES20.glGetUniformLocation(yuvProgram, "global_alpha");
         GLUtils.checkGlError();
 
-        // Full-screen quad for camera background (default)
-        float[] fullVertices = {-1f, -1f, 1f, -1f, -1f, 1f, 1f, 1f};
-        defaultCameraVertexBuffer = createFloatBuffer(fullVertices);
-        cameraVertexBuffer = defaultCameraVertexBuffer;
-
-        float[] defaultTexCoords = {0f, 1f, 1f, 1f, 0f, 0f, 1f, 0f};
-        defaultCameraTexCoordsBuffer = createFloatBuffer(defaultTexCoords);
-        cameraTexCoordsBuffer = defaultCameraTexCoordsBuffer;
+        // Texture units never change, set them once
+        GLES20.glUseProgram(rgbaProgram);
+        GLES20.glUniform1i(rgbaTexLoc, 0);
+        GLES20.glUseProgram(yuvProgram);
+        GLES20.glUniform1i(texYLoc, 0);
+        GLES20.glUniform1i(texULoc, 1);
+        GLES20.glUniform1i(texVLoc, 2);
+        GLUtils.checkGlError();
 
-        // Display overlay quad (centered, semi-transparent for AR)
-        float displayW = DISPLAY_WIDTH_RATIO * 2f;
-        float displayH = DISPLAY_HEIGHT_RATIO * 2f;
-        float left, bottom;
-        
-        switch (OVERLAY_POSITION) {
-            case TOP_CENTER:
-                left = -DISPLAY_WIDTH_RATIO;
-                bottom = 1f - DISPLAY_MARGIN_RATIO * 2f - displayH;
-                break;
-            case BOTTOM_CENTER:
-                left = -DISPLAY_WIDTH_RATIO;
-                bottom = -1f + DISPLAY_MARGIN_RATIO * 2f;
-                break;
-            case CENTER:
-            default:
-                left = -DISPLAY_WIDTH_RATIO;
-                bottom = -DISPLAY_HEIGHT_RATIO;
-                break;
-        }
-        
-        float[] displayVertices = {left, bottom, left + displayW, bottom, left, bottom + displayH, left + displayW, bottom + displayH};
-        displayVertexBuffer = createFloatBuffer(displayVertices);
-        
-        float[] displayTexCoords = {0f, 1f, 1f, 1f, 0f, 0f, 1f, 0f}; // Flipped vertically
-        displayTexCoordsBuffer = createFloatBuffer(displayTexCoords);
+        // Quads for both sources, filled from the layout on the first draw
+        float[] empty = new float[8];
+        cameraQuad = QuadBuffer.create(empty, empty);
+        displayQuad = QuadBuffer.create(empty, empty);
+        geometryDirty = true;
     }
 
-    private static FloatBuffer createFloatBuffer(float[] array) {
-        ByteBuffer bb = ByteBuffer.allocateDirect(array.length * 4);
-        bb.order(ByteOrder.nativeOrder());
-        FloatBuffer fb = bb.asFloatBuffer();
-        fb.put(array);
-        fb.position(0);
-        return fb;
+    private void initExternalProgram() throws OpenGLException {
+        // External OES shader, for sources imported without copy (the sampler performs any YUV to RGB conversion)
+        String vsOes = "#version 100\n" +
+                "attribute vec4 vertex_pos;\n" +
+                "attribute vec4 tex_coords_in;\n" +
+                "uniform mat4 tex_matrix;\n" +
+                "varying vec2 tex_coords;\n" +
+                "void main(){\n" +
+                "  gl_Position = vertex_pos;\n" +
+                "  tex_coords = (tex_matrix * tex_coords_in).xy;\n" +
+                "}";
+
+        String fsOes = "#version 100\n" +
+                "#extension GL_OES_EGL_image_external : require\n" +
+                "precision mediump float;\n" +
+                "uniform samplerExternalOES tex;\n" +
+                "uniform float global_alpha;\n" +
+                "varying vec2 tex_coords;\n" +
+                "void main(){\n" +
+                "  vec4 color = texture2D(tex, tex_coords);\n" +
+                "  gl_FragColor = vec4(color.rgb, global_alpha);\n" +
+                "}";
+
+        oesProgram = ProgramCache.acquire(vsOes, fsOes);
+        if (oesProgram == 0) throw new OpenGLException("Failed to create external texture program");
+
+        oesVertexPosLoc = GLES20.glGetAttribLocation(oesProgram, "vertex_pos");
+        GLUtils.checkGlError();
+        oesTexCoordsInLoc = GLES20.glGetAttribLocation(oesProgram, "tex_coords_in");
+        GLUtils.checkGlError();
+        oesTexLoc = GLES20.glGetUniformLocation(oesProgram, "tex");
+        oesTexMatrixLoc = GLES20.glGetUniformLocation(oesProgram, "tex_matrix");
+        oesGlobalAlphaLoc = GLES20.glGetUniformLocation(oesProgram, "global_alpha");
+        GLUtils.checkGlError();
+
+        GLES20.glUseProgram(oesProgram);
+        GLES20.glUniform1i(oesTexLoc, 0);
+        GLUtils.checkGlError();
     }
 
     public void draw() {
@@ -241,97 +291,95 @@ public class RgbaYuvPipFilter {
         GLES20.glEnable(GLES20.GL_BLEND);
         GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
         
-        // 1. Draw camera as background (YUV)
-        if (yTexId != -1 && uTexId != -1 && vTexId != -1) {
+        if (geometryDirty && cameraSize != null) {
+            updateGeometry();
+        }
+
+        // The background is opaque, the overlay is blended with the layout alpha
+        float overlayAlpha = layout.getAlpha();
+        if (layout.isSwap()) {
+            drawDisplay(1f);
+            drawCamera(overlayAlpha);
+        } else {
+            drawCamera(1f);
+            drawDisplay(overlayAlpha);
+        }
+        QuadBuffer.unbind();
+
+        GLES20.glDisable(GLES20.GL_BLEND);
+    }
+
+    private void drawCamera(float alpha) {
+        // Camera as YUV, or external if imported without copy
+        if (cameraExternal) {
+            drawExternal(cameraExternalTexId, cameraTexMatrix, cameraQuad, alpha);
+        } else if (yTexId != -1 && uTexId != -1 && vTexId != -1) {
             GLES20.glUseProgram(yuvProgram);
             GLES20.glEnableVertexAttribArray(yuvVertexPosLoc);
-            FloatBuffer camVertices = cameraVertexBuffer != null ? cameraVertexBuffer : defaultCameraVertexBuffer;
-            GLES20.glVertexAttribPointer(yuvVertexPosLoc, 2, GLES20.GL_FLOAT, false, 0, camVertices);
             GLES20.glEnableVertexAttribArray(yuvTexCoordsInLoc);
-            FloatBuffer camTex = cameraTexCoordsBuffer != null ? cameraTexCoordsBuffer : defaultCameraTexCoordsBuffer;
-            GLES20.glVertexAttribPointer(yuvTexCoordsInLoc, 2, GLES20.GL_FLOAT, false, 0, camTex);
+            cameraQuad.bind(yuvVertexPosLoc, yuvTexCoordsInLoc);
 
             GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
             GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, yTexId);
-            GLES20.glUniform1i(texYLoc, 0);
 
             GLES20.glActiveTexture(GLES20.GL_TEXTURE1);
             GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, uTexId);
-            GLES20.glUniform1i(texULoc, 1);
 
             GLES20.glActiveTexture(GLES20.GL_TEXTURE2);
             GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, vTexId);
-            GLES20.glUniform1i(texVLoc, 2);
+            GLES20.glUniform1f(yuvGlobalAlphaLoc, alpha);
 
             GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
         }
+    }
 
-        // 2. Draw display overlay (RGBA with alpha blending for transparency)
-        if (displayTexId != -1) {
+    private void drawDisplay(float alpha) {
+        // Display as RGBA, or external if imported without copy
+        if (displayExternal) {
+            drawExternal(displayTexId, displayTexMatrix, displayQuad, alpha);
+        } else if (displayTexId != -1) {
             GLES20.glUseProgram(rgbaProgram);
             GLES20.glEnableVertexAttribArray(rgbaVertexPosLoc);
-            GLES20.glVertexAttribPointer(rgbaVertexPosLoc, 2, GLES20.GL_FLOAT, false, 0, displayVertexBuffer);
             GLES20.glEnableVertexAttribArray(rgbaTexCoordsInLoc);
-            GLES20.glVertexAttribPointer(rgbaTexCoordsInLoc, 2, GLES20.GL_FLOAT, false, 0, displayTexCoordsBuffer);
-            
+            displayQuad.bind(rgbaVertexPosLoc, rgbaTexCoordsInLoc);
+
             GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
             GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, displayTexId);
-            GLES20.glUniform1i(rgbaTexLoc, 0);
-            GLES20.glUniform1f(rgbaGlobalAlphaLoc, displayAlpha);
-            
+            GLES20.glUniform1f(rgbaGlobalAlphaLoc, alpha);
+
             GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
         }
-        
-        GLES20.glDisable(GLES20.GL_BLEND);
+    }
+
+    private void drawExternal(int texId, float[] texMatrix, QuadBuffer quad, float alpha) {
+        GLES20.glUseProgram(oesProgram);
+        GLES20.glEnableVertexAttribArray(oesVertexPosLoc);
+        GLES20.glEnableVertexAttribArray(oesTexCoordsInLoc);
+        quad.bind(oesVertexPosLoc, oesTexCoordsInLoc);
+
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, texId);
+        GLES20.glUniformMatrix4fv(oesTexMatrixLoc, 1, false, texMatrix, 0);
+        GLES20.glUniform1f(oesGlobalAlphaLoc, alpha);
+
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
     }
 
     public void release() {
+        if (cameraQuad != null) {
+            cameraQuad.release();
+        }
+        if (displayQuad != null) {
+            displayQuad.release();
+        }
         if (rgbaProgram != 0) {
-            GLES20.glDeleteProgram(rgbaProgram);
+            ProgramCache.release(rgbaProgram);
         }
         if (yuvProgram != 0) {
-            GLES20.glDeleteProgram(yuvProgram);
+            ProgramCache.release(yuvProgram);
         }
-    }
-
-    private static float[] getTexCoordsForRotation(float uMin, float uMax, float vTop, float vBottom, Rotation rotation) {
-        float[] coords = {
-                uMin, vBottom,
-                uMax, vBottom,
-                uMin, vTop,
-                uMax, vTop
-        };
-
-        for (int i = 0; i < 4; ++i) {
-            float u = coords[i * 2];
-            float v = coords[i * 2 + 1];
-            float[] rotated = rotateTexCoord(u, v, rotation);
-            coords[i * 2] = rotated[0];
-            coords[i * 2 + 1] = rotated[1];
+        if (oesProgram != 0) {
+            ProgramCache.release(oesProgram);
         }
-        return coords;
-    }
-
-    private static float[] getTexCoordsForRotation(Rotation rotation) {
-        return getTexCoordsForRotation(0f, 1f, 0f, 1f, rotation);
-    }
-
-    private static float[] rotateTexCoord(float u, float v, Rotation rotation) {
-        switch (rotation) {
-            case ROT_90:
-                return new float[]{v, 1f - u};
-            case ROT_180:
-                return new float[]{1f - u, 1f - v};
-            case ROT_270:
-                return new float[]{1f - v, u};
-            case ROT_0:
-            default:
-                return new float[]{u, v};
-        }
-    }
-
-    private static float clamp(float value, float min, float max) {
-        return Math.max(min, Math.min(max, value));
     }
 }
-
@@ -0,0 +1,113 @@
+package com.genymobile.scrcpy.opengl;
+
+import com.genymobile.scrcpy.device.Size;
+import com.genymobile.scrcpy.util.Ln;
+
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Snapshot requests of an OpenGL runner, served on the OpenGL thread.
+ * <p>
+ * A snapshot is taken by drawing the last frame again into an offscreen render target of the snapshot size, then reading it back.
+ */
+final class SnapshotQueue {
+
+    private static final class Request {
+        private final int maxSize;
+        private final OpenGLRunner.SnapshotListener listener;
+
+        private Request(int maxSize, OpenGLRunner.SnapshotListener listener) {
+            this.maxSize = maxSize;
+            this.listener = listener;
+        }
+    }
+
+    private final List<Request> pending = new ArrayList<>();
+    private ByteBuffer buffer; // reused across snapshots of the same size
+
+    /**
+     * Keep a request until the next call to {@link #serve(Size, Runnable)} (typically because no frame has been rendered yet).
+     */
+    void add(int maxSize, OpenGLRunner.SnapshotListener listener) {
+        pending.add(new Request(maxSize, listener));
+    }
+
+    /**
+     * Take the pending snapshots, if any.
+     *
+     * @param outputSize the size of the frames
+     * @param draw       draw the last frame to the current viewport
+     */
+    void serve(Size outputSize, Runnable draw) {
+        if (!pending.isEmpty()) {
+            for (Request request : pending) {
+                take(outputSize, request.maxSize, request.listener, draw);
+            }
+            pending.clear();
+        }
+    }
+
+    /**
+     * Take a snapshot immediately.
+     *
+     * @param outputSize the size of the frames
+     * @param maxSize    the maximum snapshot size (0 for the output size)
+     * @param listener   the listener
+     * @param draw       draw the last frame to the current viewport
+     */
+    void take(Size outputSize, int maxSize, OpenGLRunner.SnapshotListener listener, Runnable draw) {
+        // Size.limit() requires a multiple of 8
+        Size size = outputSize.limit(maxSize & ~7);
+        int width = size.getWidth();
+        int height = size.getHeight();
+        int frameSize = width * height * 4;
+
+        RenderTargetPool pool = EglContextManager.getRenderTargetPool();
+        RenderTarget target;
+        try {
+            target = pool.acquire(size);
+        } catch (OpenGLException e) {
+            Ln.e("Could not take snapshot", e);
+            listener.onSnapshot(null, null);
+            return;
+        }
+
+        if (buffer == null || buffer.capacity() != frameSize) {
+            buffer = ByteBuffer.allocateDirect(frameSize);
+        }
+        buffer.clear();
+
+        // The frame is drawn to the viewport of the target, which scales to the snapshot size
+        target.bind();
+        draw.run();
+        GLES20.glReadPixels(0, 0, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, buffer);
+        GLUtils.checkGlError();
+        RenderTarget.unbind();
+        pool.recycle(target);
+
+        // glReadPixels() returns the bottom row first
+        byte[] rgba = new byte[frameSize];
+        int stride = width * 4;
+        for (int y = 0; y < height; ++y) {
+            buffer.position((height - 1 - y) * stride);
+            buffer.get(rgba, y * stride, stride);
+        }
+
+        listener.onSnapshot(size, rgba);
+    }
+
+    /**
+     * Notify the pending requests that no snapshot will be taken, and release the buffer.
+     */
+    void cancel() {
+        for (Request request : pending) {
+            request.listener.onSnapshot(null, null);
+        }
+        pending.clear();
+        buffer = null;
+    }
+}
@@ -0,0 +1,119 @@
+package com.genymobile.scrcpy.opengl;
+
+import android.opengl.GLES20;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Pool of 2D textures, by size and format.
+ * <p>
+ * The textures are allocated once (with {@code glTexImage2D()}), then only updated (with {@code glTexSubImage2D()}) or rendered to. Recycled
+ * textures are kept for the next runner requesting the same size, so that a capture restart does not reallocate GPU memory.
+ * <p>
+ * Textures are shared between all the contexts of the {@link EglContextManager}. All the methods must be called with a current context.
+ */
+public final class TexturePool {
+
+    // Free textures kept per key, beyond which recycled textures are deleted
+    private static final int MAX_FREE_PER_KEY = 4;
+
+    private static final class Key {
+        private final int width;
+        private final int height;
+        private final int format;
+
+        private Key(int width, int height, int format) {
+            this.width = width;
+            this.height = height;
+            this.format = format;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return width == key.width && height == key.height && format == key.format;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(width, height, format);
+        }
+    }
+
+    private final Map<Key, Deque<Integer>> freeTextures = new HashMap<>();
+    private final Map<Integer, Key> usedTextures = new HashMap<>();
+
+    TexturePool() {
+        // created by EglContextManager
+    }
+
+    /**
+     * Return a texture of the requested size and format, with linear filtering and clamped to edges.
+     *
+     * @param width  the width
+     * @param height the height
+     * @param format the format (for example {@code GL_RGBA} or {@code GL_LUMINANCE})
+     * @return the texture id, to be recycled by {@link #recycle(int)}
+     */
+    public synchronized int acquire(int width, int height, int format) throws OpenGLException {
+        Key key = new Key(width, height, format);
+        Deque<Integer> free = freeTextures.get(key);
+        Integer textureId = free != null ? free.poll() : null;
+        if (textureId == null) {
+            textureId = create(width, height, format);
+        }
+        usedTextures.put(textureId, key);
+        return textureId;
+    }
+
+    private static int create(int width, int height, int format) throws OpenGLException {
+        int[] textures = new int[1];
+        GLES20.glGenTextures(1, textures, 0);
+        GLUtils.checkGlError();
+        if (textures[0] == 0) {
+            throw new OpenGLException("Cannot create texture");
+        }
+
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, format, width, height, 0, format, GLES20.GL_UNSIGNED_BYTE, null);
+        GLUtils.checkGlError();
+        return textures[0];
+    }
+
+    /**
+     * Give back a texture acquired from this pool.
+     *
+     * @param textureId the texture id
+     */
+    public synchronized void recycle(int textureId) {
+        Key key = usedTextures.remove(textureId);
+        if (key == null) {
+            throw new IllegalArgumentException("Texture " + textureId + " does not belong to the pool");
+        }
+
+        Deque<Integer> free = freeTextures.get(key);
+        if (free == null) {
+            free = new ArrayDeque<>();
+            freeTextures.put(key, free);
+        }
+        if (free.size() < MAX_FREE_PER_KEY) {
+            free.push(textureId);
+        } else {
+            GLES20.glDeleteTextures(1, new int[] {textureId}, 0);
+        }
+    }
+}
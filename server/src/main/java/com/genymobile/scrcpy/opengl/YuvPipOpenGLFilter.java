@@ -3,10 +3,6 @@ package com.genymobile.scrcpy.opengl;
 import android.opengl.GLES11Ext;
 import android.opengl.GLES20;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
-
 /**
  * OpenGL filter that draws a display (external OES) as background and a YUV420 pip overlay.
  */
@@ -26,10 +22,8 @@ public class YuvPipOpenGLFilter implements OpenGLFilter {
     private int texULoc;
     private int texVLoc;
 
-    private FloatBuffer bgVertexBuffer;
-    private FloatBuffer bgTexCoordsBuffer;
-    private FloatBuffer pipVertexBuffer;
-    private FloatBuffer pipTexCoordsBuffer;
+    private QuadBuffer bgQuad;
+    private QuadBuffer pipQuad;
 
     private float[] displayTexMatrix = new float[16];
 
@@ -106,9 +100,9 @@ public class YuvPipOpenGLFilter implements OpenGLFilter {
                 "  gl_FragColor = vec4(r,g,b,1.0);\n" +
                 "}";
 
-        bgProgram = GLUtils.createProgram(vs, fsBg);
+        bgProgram = ProgramCache.acquire(vs, fsBg);
         if (bgProgram == 0) throw new OpenGLException("Failed to create bg program");
-        yuvProgram = GLUtils.createProgram(vsPip, fsYuv);
+        yuvProgram = ProgramCache.acquire(vsPip, fsYuv);
         if (yuvProgram == 0) throw new OpenGLException("Failed to create yuv program");
 
         bgVertexPosLoc = GLES20.glGetAttribLocation(bgProgram, "vertex_pos");
@@ -129,10 +123,18 @@ public class YuvPipOpenGLFilter implements OpenGLFilter {
         texVLoc = GLES20.glGetUniformLocation(yuvProgram, "texV");
         GLUtils.checkGlError();
 
+        // Texture units never change, set them once
+        GLES20.glUseProgram(bgProgram);
+        GLES20.glUniform1i(bgTexLoc, 0);
+        GLES20.glUseProgram(yuvProgram);
+        GLES20.glUniform1i(texYLoc, 0);
+        GLES20.glUniform1i(texULoc, 1);
+        GLES20.glUniform1i(texVLoc, 2);
+        GLUtils.checkGlError();
+
         float[] bgVertices = { -1f,-1f, 1f,-1f, -1f,1f, 1f,1f };
-        bgVertexBuffer = create(bgVertices);
         float[] bgTex = { 0f,0f, 1f,0f, 0f,1f, 1f,1f };
-        bgTexCoordsBuffer = create(bgTex);
+        bgQuad = QuadBuffer.create(bgVertices, bgTex);
 
         // pip rect
         float pipW = pipWidthRatio*2f;
@@ -146,16 +148,8 @@ public class YuvPipOpenGLFilter implements OpenGLFilter {
             case BOTTOM_RIGHT: default: left = 1f - m - pipW; bottom = -1f + m; break;
         }
         float[] pipVertices = { left,bottom, left+pipW,bottom, left,bottom+pipH, left+pipW,bottom+pipH };
-        pipVertexBuffer = create(pipVertices);
         float[] pipTex = { 0f,0f, 1f,0f, 0f,1f, 1f,1f };
-        pipTexCoordsBuffer = create(pipTex);
-    }
-
-    private static FloatBuffer create(float[] a){
-        ByteBuffer bb = ByteBuffer.allocateDirect(a.length*4);
-        bb.order(ByteOrder.nativeOrder());
-        FloatBuffer fb = bb.asFloatBuffer();
-        fb.put(a); fb.position(0); return fb;
+        pipQuad = QuadBuffer.create(pipVertices, pipTex);
     }
 
     @Override
@@ -168,12 +162,10 @@ public class YuvPipOpenGLFilter implements OpenGLFilter {
         GLES20.glUseProgram(bgProgram);
         GLUtils.checkGlError();
         GLES20.glEnableVertexAttribArray(bgVertexPosLoc);
-        GLES20.glVertexAttribPointer(bgVertexPosLoc, 2, GLES20.GL_FLOAT, false, 0, bgVertexBuffer);
         GLES20.glEnableVertexAttribArray(bgTexCoordsInLoc);
-        GLES20.glVertexAttribPointer(bgTexCoordsInLoc, 2, GLES20.GL_FLOAT, false, 0, bgTexCoordsBuffer);
+        bgQuad.bind(bgVertexPosLoc, bgTexCoordsInLoc);
         GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
         GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, bgTextureId);
-        GLES20.glUniform1i(bgTexLoc, 0);
         GLES20.glUniformMatrix4fv(bgTexMatrixLoc, 1, false, displayTexMatrix, 0);
         GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
 
@@ -181,30 +173,30 @@ public class YuvPipOpenGLFilter implements OpenGLFilter {
         if (yTexId != -1 && uTexId != -1 && vTexId != -1) {
             GLES20.glUseProgram(yuvProgram);
             GLES20.glEnableVertexAttribArray(pipVertexPosLoc);
-            GLES20.glVertexAttribPointer(pipVertexPosLoc, 2, GLES20.GL_FLOAT, false, 0, pipVertexBuffer);
             GLES20.glEnableVertexAttribArray(pipTexCoordsInLoc);
-            GLES20.glVertexAttribPointer(pipTexCoordsInLoc, 2, GLES20.GL_FLOAT, false, 0, pipTexCoordsBuffer);
+            pipQuad.bind(pipVertexPosLoc, pipTexCoordsInLoc);
 
             GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
             GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, yTexId);
-            GLES20.glUniform1i(texYLoc, 0);
 
             GLES20.glActiveTexture(GLES20.GL_TEXTURE1);
             GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, uTexId);
-            GLES20.glUniform1i(texULoc, 1);
 
             GLES20.glActiveTexture(GLES20.GL_TEXTURE2);
             GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, vTexId);
-            GLES20.glUniform1i(texVLoc, 2);
 
             GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
         }
+
+        QuadBuffer.unbind();
     }
 
     @Override
     public void release() {
-        if (bgProgram != 0) GLES20.glDeleteProgram(bgProgram);
-        if (yuvProgram != 0) GLES20.glDeleteProgram(yuvProgram);
+        bgQuad.release();
+        pipQuad.release();
+        if (bgProgram != 0) ProgramCache.release(bgProgram);
+        if (yuvProgram != 0) ProgramCache.release(yuvProgram);
     }
 }
 
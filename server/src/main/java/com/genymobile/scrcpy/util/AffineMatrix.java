@@ -91,6 +91,20 @@ public class AffineMatrix {
         return new Point(xx, yy);
     }
 
+    /**
+     * Apply the transform in place to an array of points stored as consecutive {@code (x, y)} pairs.
+     *
+     * @param points the coordinates to transform
+     */
+    public void apply(float[] points) {
+        for (int i = 0; i + 1 < points.length; i += 2) {
+            double x = points[i];
+            double y = points[i + 1];
+            points[i] = (float) (a * x + c * y + e);
+            points[i + 1] = (float) (b * x + d * y + f);
+        }
+    }
+
     /**
      * Compute <code>this * rhs</code>.
      *
@@ -0,0 +1,66 @@
+package com.genymobile.scrcpy.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Pool of direct byte buffers of the same capacity, to avoid allocating a new buffer for every frame.
+ * <p>
+ * The buffers may be acquired on one thread and released on another.
+ */
+public final class ByteBufferPool {
+
+    private final int capacity;
+    private final int maxFree;
+    private final Deque<ByteBuffer> free = new ArrayDeque<>();
+
+    /**
+     * @param capacity the capacity of each buffer
+     * @param maxFree  the maximum number of free buffers kept (beyond, released buffers are left to the garbage collector)
+     */
+    public ByteBufferPool(int capacity, int maxFree) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid buffer capacity: " + capacity);
+        }
+        this.capacity = capacity;
+        this.maxFree = maxFree;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Return an empty buffer (position 0, limit at capacity).
+     *
+     * @return the buffer, to be released by {@link #release(ByteBuffer)}
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer;
+        synchronized (this) {
+            buffer = free.poll();
+        }
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(capacity);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Give back a buffer acquired from this pool.
+     *
+     * @param buffer the buffer
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() != capacity) {
+            throw new IllegalArgumentException("Buffer capacity " + buffer.capacity() + " does not match the pool (" + capacity + ")");
+        }
+        synchronized (this) {
+            if (free.size() < maxFree) {
+                free.push(buffer);
+            }
+        }
+    }
+}
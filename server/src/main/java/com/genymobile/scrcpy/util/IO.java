@@ -59,6 +59,43 @@ public final class IO {
         writeFully(fd, ByteBuffer.wrap(buffer, offset, len));
     }
 
+    /**
+     * Write several buffers with as few system calls as possible (a single one in practice).
+     * <p>
+     * The arrays are provided by the caller (so that they can be reused) and are modified: on return, all the counts are 0.
+     *
+     * @param fd       the file descriptor
+     * @param buffers  the buffers (byte arrays or direct byte buffers)
+     * @param offsets  the offset of the data in each buffer (for a direct byte buffer, relative to its start, not to its position)
+     * @param counts   the number of bytes to write from each buffer
+     */
+    public static void writevFully(FileDescriptor fd, Object[] buffers, int[] offsets, int[] counts) throws IOException {
+        int first = 0;
+        while (first < buffers.length) {
+            int w;
+            try {
+                w = Os.writev(fd, buffers, offsets, counts);
+            } catch (ErrnoException e) {
+                if (e.errno != OsConstants.EINTR) {
+                    throw new IOException(e);
+                }
+                continue;
+            }
+
+            // Skip the bytes written (the call may be partial)
+            while (first < buffers.length && w >= counts[first]) {
+                w -= counts[first];
+                offsets[first] += counts[first];
+                counts[first] = 0;
+                ++first;
+            }
+            if (first < buffers.length) {
+                offsets[first] += w;
+                counts[first] -= w;
+            }
+        }
+    }
+
     public static String toString(InputStream inputStream) {
         StringBuilder builder = new StringBuilder();
         Scanner scanner = new Scanner(inputStream);
@@ -0,0 +1,137 @@
+package com.genymobile.scrcpy.video;
+
+import com.genymobile.scrcpy.device.Size;
+import com.genymobile.scrcpy.util.Ln;
+
+import android.graphics.ImageFormat;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.view.Surface;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Additional low-resolution YUV output of a camera session, alongside the encoder surface (for analysis, thumbnails or motion detection).
+ * <p>
+ * The camera ISP scales the frames to the analysis size, so this costs neither a second camera session nor a GPU downscale.
+ */
+public final class CameraAnalysisOutput {
+
+    public interface Listener {
+        /**
+         * Called on the analysis thread for each frame (frames are dropped if the listener is slower than the camera).
+         *
+         * @param image the YUV_420_888 image, closed after the call
+         */
+        void onImage(Image image);
+    }
+
+    private static final int LOG_INTERVAL = 300;
+
+    private final Size size;
+    private final ImageReader imageReader;
+    private long frameCount;
+
+    /**
+     * @param size     the analysis size (one of the YUV_420_888 output sizes of the camera)
+     * @param listener the listener, or {@code null} to only drain the frames
+     * @param handler  the handler of the analysis thread
+     */
+    public CameraAnalysisOutput(Size size, Listener listener, Handler handler) {
+        this.size = size;
+        // 2 images: one being processed, one being written by the camera
+        imageReader = ImageReader.newInstance(size.getWidth(), size.getHeight(), ImageFormat.YUV_420_888, 2);
+        imageReader.setOnImageAvailableListener(reader -> {
+            Image image = reader.acquireLatestImage();
+            if (image == null) {
+                return;
+            }
+            try {
+                if (listener != null) {
+                    listener.onImage(image);
+                }
+            } finally {
+                image.close();
+            }
+            if (++frameCount % LOG_INTERVAL == 0) {
+                Ln.d("Camera analysis frames: " + frameCount);
+            }
+        }, handler);
+    }
+
+    public Size getSize() {
+        return size;
+    }
+
+    public Surface getSurface() {
+        return imageReader.getSurface();
+    }
+
+    public void release() {
+        imageReader.setOnImageAvailableListener(null, null);
+        imageReader.close();
+    }
+
+    /**
+     * Select the analysis size among the YUV_420_888 output sizes of a camera.
+     *
+     * @param characteristics the camera characteristics
+     * @param captureSize     the size of the main output
+     * @param maxSize         the maximum analysis size (width and height)
+     * @return the analysis size, or {@code null} if none is available
+     */
+    public static Size selectSize(CameraCharacteristics characteristics, Size captureSize, int maxSize) {
+        StreamConfigurationMap configs = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        android.util.Size[] sizes = configs.getOutputSizes(ImageFormat.YUV_420_888);
+        if (sizes == null) {
+            return null;
+        }
+
+        List<Size> candidates = new ArrayList<>();
+        for (android.util.Size size : sizes) {
+            candidates.add(new Size(size.getWidth(), size.getHeight()));
+        }
+        return selectSize(candidates, captureSize, maxSize);
+    }
+
+    /**
+     * Select the largest candidate not exceeding {@code maxSize}, preferring the aspect ratio of the main output.
+     *
+     * @param candidates  the supported sizes
+     * @param captureSize the size of the main output
+     * @param maxSize     the maximum analysis size (width and height)
+     * @return the analysis size, or {@code null} if no candidate fits
+     */
+    static Size selectSize(List<Size> candidates, Size captureSize, int maxSize) {
+        float targetRatio = (float) captureSize.getWidth() / captureSize.getHeight();
+
+        Size best = null;
+        float bestRatioDiff = 0;
+        for (Size candidate : candidates) {
+            if (candidate.getMax() > maxSize) {
+                continue;
+            }
+
+            float ratioDiff = Math.abs((float) candidate.getWidth() / candidate.getHeight() - targetRatio);
+            // Same aspect ratio (within rounding) first, then the largest area
+            boolean better;
+            if (best == null) {
+                better = true;
+            } else if (Math.abs(ratioDiff - bestRatioDiff) > 0.01f) {
+                better = ratioDiff < bestRatioDiff;
+            } else {
+                better = candidate.getWidth() * candidate.getHeight() > best.getWidth() * best.getHeight();
+            }
+
+            if (better) {
+                best = candidate;
+                bestRatioDiff = ratioDiff;
+            }
+        }
+        return best;
+    }
+}
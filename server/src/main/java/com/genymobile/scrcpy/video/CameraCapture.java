@@ -35,14 +35,13 @@ import android.util.Range;
 import android.view.Surface;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.stream.Stream;
 
 public class CameraCapture extends SurfaceCapture {
 
@@ -69,7 +68,17 @@ public class CameraCapture extends SurfaceCapture {
     private Size videoSize; // after OpenGL transforms
 
     private AffineMatrix transform;
-    private OpenGLRunner glRunner;
+    private final boolean snapshots;
+    private final boolean overlay;
+    private final int frameSkipThreshold;
+    private volatile OpenGLRunner glRunner;
+
+    private final int analysisMaxSize;
+    private Size analysisSize;
+    private HandlerThread analysisThread;
+    private Handler analysisHandler;
+    private CameraAnalysisOutput analysisOutput;
+    private volatile CameraAnalysisOutput.Listener analysisListener;
 
     private HandlerThread cameraThread;
     private Handler cameraHandler;
@@ -90,6 +99,19 @@ public class CameraCapture extends SurfaceCapture {
         this.captureOrientation = options.getCaptureOrientation();
         assert captureOrientation != null;
         this.angle = options.getAngle();
+        this.snapshots = options.getSnapshots();
+        this.overlay = options.getOverlay();
+        this.frameSkipThreshold = options.getFrameSkipThreshold();
+        this.analysisMaxSize = options.getCameraAnalysisSize();
+    }
+
+    /**
+     * Set the listener of the analysis output (enabled by the {@code camera_analysis_size} option).
+     *
+     * @param listener the listener, called on the analysis thread
+     */
+    public void setAnalysisListener(CameraAnalysisOutput.Listener listener) {
+        this.analysisListener = listener;
     }
 
     @Override
@@ -99,6 +121,17 @@ public class CameraCapture extends SurfaceCapture {
         cameraHandler = new Handler(cameraThread.getLooper());
         cameraExecutor = new HandlerExecutor(cameraHandler);
 
+        if (analysisMaxSize > 0) {
+            if (highSpeed) {
+                // A constrained high speed session only accepts preview and video surfaces
+                Ln.w("Camera analysis output is not supported with high speed capture");
+            } else {
+                analysisThread = new HandlerThread("camera-analysis");
+                analysisThread.start();
+                analysisHandler = new Handler(analysisThread.getLooper());
+            }
+        }
+
         try {
             cameraId = selectCamera(explicitCameraId, cameraFacing);
             if (cameraId == null) {
@@ -115,10 +148,20 @@ public class CameraCapture extends SurfaceCapture {
     @Override
     public void prepare() throws IOException {
         try {
-            captureSize = selectSize(cameraId, explicitSize, maxSize, aspectRatio, highSpeed);
+            captureSize = selectSize(cameraId, explicitSize, maxSize, aspectRatio, fps, highSpeed);
             if (captureSize == null) {
                 throw new IOException("Could not select camera size");
             }
+
+            if (analysisHandler != null) {
+                CameraCharacteristics characteristics = ServiceManager.getCameraManager().getCameraCharacteristics(cameraId);
+                analysisSize = CameraAnalysisOutput.selectSize(characteristics, captureSize, analysisMaxSize);
+                if (analysisSize == null) {
+                    Ln.w("No camera analysis size under " + analysisMaxSize);
+                } else {
+                    Ln.i("Camera analysis size: " + analysisSize);
+                }
+            }
         } catch (CameraAccessException e) {
             throw new IOException(e);
         }
@@ -170,7 +213,7 @@ public class CameraCapture extends SurfaceCapture {
     }
 
     @TargetApi(AndroidVersions.API_24_ANDROID_7_0)
-    private static Size selectSize(String cameraId, Size explicitSize, int maxSize, CameraAspectRatio aspectRatio, boolean highSpeed)
+    private static Size selectSize(String cameraId, Size explicitSize, int maxSize, CameraAspectRatio aspectRatio, int fps, boolean highSpeed)
             throws CameraAccessException {
         if (explicitSize != null) {
             return explicitSize;
@@ -179,65 +222,50 @@ public class CameraCapture extends SurfaceCapture {
         CameraManager cameraManager = ServiceManager.getCameraManager();
         CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(cameraId);
 
-        StreamConfigurationMap configs = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-        android.util.Size[] sizes = highSpeed ? configs.getHighSpeedVideoSizes() : configs.getOutputSizes(MediaCodec.class);
-        if (sizes == null) {
+        List<CameraSizeSelector.Candidate> candidates = listSizeCandidates(characteristics, highSpeed);
+        if (candidates == null) {
             return null;
         }
 
-        Stream<android.util.Size> stream = Arrays.stream(sizes);
-        if (maxSize > 0) {
-            stream = stream.filter(it -> it.getWidth() <= maxSize && it.getHeight() <= maxSize);
-        }
-
         Float targetAspectRatio = resolveAspectRatio(aspectRatio, characteristics);
-        if (targetAspectRatio != null) {
-            stream = stream.filter(it -> {
-                float ar = ((float) it.getWidth() / it.getHeight());
-                float arRatio = ar / targetAspectRatio;
-                // Accept if the aspect ratio is the target aspect ratio + or - 10%
-                return arRatio >= 0.9f && arRatio <= 1.1f;
-            });
-        }
-
-        Optional<android.util.Size> selected = stream.max((s1, s2) -> {
-            // Greater width is better
-            int cmp = Integer.compare(s1.getWidth(), s2.getWidth());
-            if (cmp != 0) {
-                return cmp;
-            }
-
-            if (targetAspectRatio != null) {
-                // Closer to the target aspect ratio is better
-                float ar1 = ((float) s1.getWidth() / s1.getHeight());
-                float arRatio1 = ar1 / targetAspectRatio;
-                float distance1 = Math.abs(1 - arRatio1);
+        CameraSizeSelector selector = new CameraSizeSelector(maxSize, targetAspectRatio != null ? targetAspectRatio : 0, fps);
+        return selector.select(candidates);
+    }
 
-                float ar2 = ((float) s2.getWidth() / s2.getHeight());
-                float arRatio2 = ar2 / targetAspectRatio;
-                float distance2 = Math.abs(1 - arRatio2);
+    /**
+     * List the output sizes of a camera with their minimum frame durations.
+     *
+     * @param characteristics the camera characteristics
+     * @param highSpeed       whether to list the high speed video sizes
+     * @return the candidates, or {@code null} if the camera does not provide any size
+     */
+    @TargetApi(AndroidVersions.API_23_ANDROID_6_0)
+    static List<CameraSizeSelector.Candidate> listSizeCandidates(CameraCharacteristics characteristics, boolean highSpeed) {
+        StreamConfigurationMap configs = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        android.util.Size[] sizes = highSpeed ? configs.getHighSpeedVideoSizes() : configs.getOutputSizes(MediaCodec.class);
+        if (sizes == null) {
+            return null;
+        }
 
-                // Reverse the order because lower distance is better
-                cmp = Float.compare(distance2, distance1);
-                if (cmp != 0) {
-                    return cmp;
+        List<CameraSizeSelector.Candidate> candidates = new ArrayList<>(sizes.length);
+        for (android.util.Size size : sizes) {
+            long minFrameDuration;
+            if (highSpeed) {
+                // High speed sizes have no minimum frame duration, but a list of supported fps ranges
+                int maxFps = 0;
+                for (Range<Integer> range : configs.getHighSpeedVideoFpsRangesFor(size)) {
+                    maxFps = Math.max(maxFps, range.getUpper());
                 }
+                minFrameDuration = maxFps > 0 ? 1_000_000_000L / maxFps : 0;
+            } else {
+                minFrameDuration = configs.getOutputMinFrameDuration(MediaCodec.class, size);
             }
-
-            // Greater height is better
-            return Integer.compare(s1.getHeight(), s2.getHeight());
-        });
-
-        if (selected.isPresent()) {
-            android.util.Size size = selected.get();
-            return new Size(size.getWidth(), size.getHeight());
+            candidates.add(new CameraSizeSelector.Candidate(new Size(size.getWidth(), size.getHeight()), minFrameDuration));
         }
-
-        // Not found
-        return null;
+        return candidates;
     }
 
-    private static Float resolveAspectRatio(CameraAspectRatio ratio, CameraCharacteristics characteristics) {
+    static Float resolveAspectRatio(CameraAspectRatio ratio, CameraCharacteristics characteristics) {
         if (ratio == null) {
             return null;
         }
@@ -252,18 +280,28 @@ public class CameraCapture extends SurfaceCapture {
 
     @Override
     public void start(Surface surface) throws IOException {
-        if (transform != null) {
+        if (transform != null || snapshots || frameSkipThreshold >= 0 || overlay) {
+            // Snapshots, frame skipping and the overlay rely on the OpenGL pipeline, so it is used even without transform
             assert glRunner == null;
-            OpenGLFilter glFilter = new AffineOpenGLFilter(transform);
+            OpenGLFilter glFilter = new AffineOpenGLFilter(transform != null ? transform : AffineMatrix.IDENTITY);
             // The transform matrix returned by SurfaceTexture is incorrect for camera capture (it often contains an additional unexpected 90°
             // rotation). Use a vertical flip transform matrix instead.
             glRunner = new OpenGLRunner(glFilter, VFLIP_MATRIX);
+            glRunner.setFrameSkipThreshold(frameSkipThreshold);
+            glRunner.setAsyncSnapshots(snapshots);
             surface = glRunner.start(captureSize, videoSize, surface);
         }
 
+        List<Surface> surfaces = new ArrayList<>();
+        surfaces.add(surface);
+        if (analysisSize != null) {
+            analysisOutput = new CameraAnalysisOutput(analysisSize, analysisListener, analysisHandler);
+            surfaces.add(analysisOutput.getSurface());
+        }
+
         try {
-            CameraCaptureSession session = createCaptureSession(cameraDevice, surface);
-            CaptureRequest request = createCaptureRequest(surface);
+            CameraCaptureSession session = createCaptureSession(cameraDevice, surfaces);
+            CaptureRequest request = createCaptureRequest(surfaces);
             setRepeatingRequest(session, request);
         } catch (CameraAccessException | InterruptedException e) {
             stop();
@@ -277,6 +315,10 @@ public class CameraCapture extends SurfaceCapture {
             glRunner.stopAndRelease();
             glRunner = null;
         }
+        if (analysisOutput != null) {
+            analysisOutput.release();
+            analysisOutput = null;
+        }
     }
 
     @Override
@@ -287,6 +329,9 @@ public class CameraCapture extends SurfaceCapture {
         if (cameraThread != null) {
             cameraThread.quitSafely();
         }
+        if (analysisThread != null) {
+            analysisThread.quitSafely();
+        }
     }
 
     @Override
@@ -353,10 +398,13 @@ public class CameraCapture extends SurfaceCapture {
     }
 
     @TargetApi(AndroidVersions.API_31_ANDROID_12)
-    private CameraCaptureSession createCaptureSession(CameraDevice camera, Surface surface) throws CameraAccessException, InterruptedException {
+    private CameraCaptureSession createCaptureSession(CameraDevice camera, List<Surface> surfaces) throws CameraAccessException,
+            InterruptedException {
         CompletableFuture<CameraCaptureSession> future = new CompletableFuture<>();
-        OutputConfiguration outputConfig = new OutputConfiguration(surface);
-        List<OutputConfiguration> outputs = Arrays.asList(outputConfig);
+        List<OutputConfiguration> outputs = new ArrayList<>();
+        for (Surface surface : surfaces) {
+            outputs.add(new OutputConfiguration(surface));
+        }
 
         int sessionType = highSpeed ? SessionConfiguration.SESSION_HIGH_SPEED : SessionConfiguration.SESSION_REGULAR;
         SessionConfiguration sessionConfig = new SessionConfiguration(sessionType, outputs, cameraExecutor, new CameraCaptureSession.StateCallback() {
@@ -380,9 +428,11 @@ public class CameraCapture extends SurfaceCapture {
         }
     }
 
-    private CaptureRequest createCaptureRequest(Surface surface) throws CameraAccessException {
+    private CaptureRequest createCaptureRequest(List<Surface> surfaces) throws CameraAccessException {
         CaptureRequest.Builder requestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_RECORD);
-        requestBuilder.addTarget(surface);
+        for (Surface surface : surfaces) {
+            requestBuilder.addTarget(surface);
+        }
 
         if (fps > 0) {
             requestBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, new Range<>(fps, fps));
@@ -423,4 +473,15 @@ public class CameraCapture extends SurfaceCapture {
     public void requestInvalidate() {
         // do nothing (the user could not request a reset anyway for now, since there is no controller for camera mirroring)
     }
+
+    @Override
+    public boolean requestSnapshot(int maxSize, OpenGLRunner.SnapshotListener listener) {
+        OpenGLRunner runner = glRunner;
+        if (runner == null) {
+            // Without filter, the frames are not rendered by OpenGL
+            return false;
+        }
+        runner.requestSnapshot(maxSize, listener);
+        return true;
+    }
 }
@@ -0,0 +1,100 @@
+package com.genymobile.scrcpy.video;
+
+import android.media.Image;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Detect motion on the camera analysis output, by comparing the luma of consecutive frames on a sparse grid.
+ * <p>
+ * The listener is only notified when the motion state changes. The thresholds have a hysteresis, so that the state does not flicker around a
+ * single threshold.
+ */
+public final class CameraMotionDetector implements CameraAnalysisOutput.Listener {
+
+    public interface Listener {
+        /**
+         * Called on the analysis thread when the motion state changes.
+         *
+         * @param ptsUs  the timestamp of the analysis frame (in the time base of the camera frames)
+         * @param moving {@code true} if motion started, {@code false} if it stopped
+         * @param level  the mean absolute luma difference with the previous frame (between 0 and 255)
+         */
+        void onMotion(long ptsUs, boolean moving, int level);
+    }
+
+    // Compare 1 pixel out of GRID_STEP in both directions
+    static final int GRID_STEP = 4;
+    static final int START_THRESHOLD = 8;
+    static final int STOP_THRESHOLD = 4;
+
+    private final Listener listener;
+
+    private byte[] previous;
+    private byte[] current;
+    private boolean moving;
+
+    public CameraMotionDetector(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void onImage(Image image) {
+        Image.Plane plane = image.getPlanes()[0];
+        onLuma(plane.getBuffer(), image.getWidth(), image.getHeight(), plane.getRowStride(), plane.getPixelStride(), image.getTimestamp() / 1000);
+    }
+
+    /**
+     * Process the luma plane of a frame.
+     *
+     * @param luma        the luma plane (its position is not used)
+     * @param width       the frame width
+     * @param height      the frame height
+     * @param rowStride   the distance between rows, in bytes
+     * @param pixelStride the distance between pixels, in bytes
+     * @param ptsUs       the timestamp of the frame
+     */
+    void onLuma(ByteBuffer luma, int width, int height, int rowStride, int pixelStride, long ptsUs) {
+        int columns = (width + GRID_STEP - 1) / GRID_STEP;
+        int rows = (height + GRID_STEP - 1) / GRID_STEP;
+        int count = columns * rows;
+        if (current == null || current.length != count) {
+            // First frame, or the analysis size changed
+            current = new byte[count];
+            previous = null;
+        }
+
+        int i = 0;
+        for (int y = 0; y < height; y += GRID_STEP) {
+            int rowOffset = y * rowStride;
+            for (int x = 0; x < width; x += GRID_STEP) {
+                current[i++] = luma.get(rowOffset + x * pixelStride);
+            }
+        }
+
+        if (previous != null) {
+            int level = computeDifference(previous, current);
+            boolean nowMoving = moving ? level >= STOP_THRESHOLD : level >= START_THRESHOLD;
+            if (nowMoving != moving) {
+                moving = nowMoving;
+                listener.onMotion(ptsUs, moving, level);
+            }
+        } else {
+            previous = new byte[count];
+        }
+
+        // Swap, previous now contains the current frame
+        byte[] tmp = previous;
+        previous = current;
+        current = tmp;
+    }
+
+    private static int computeDifference(byte[] a, byte[] b) {
+        long sum = 0;
+        for (int i = 0; i < a.length; ++i) {
+            int diff = (a[i] & 0xff) - (b[i] & 0xff);
+            sum += diff < 0 ? -diff : diff;
+        }
+        return (int) (sum / a.length);
+    }
+}
@@ -0,0 +1,205 @@
+package com.genymobile.scrcpy.video;
+
+import com.genymobile.scrcpy.device.Size;
+
+import java.util.List;
+
+/**
+ * Select a camera output size from the stream configurations of a camera.
+ * <p>
+ * The candidates are ranked by, in order of priority:
+ * <ol>
+ *     <li>the requested frame rate (a size the sensor cannot deliver at the requested fps loses against any size which can);</li>
+ *     <li>the pixel rate limit, if any (width × height × fps);</li>
+ *     <li>the distance to the target aspect ratio, if any;</li>
+ *     <li>the size: the smallest size covering the target size if any (to avoid downscaling large frames), the largest size otherwise.</li>
+ * </ol>
+ * This class does not depend on the Android camera API, so that it can be tested against recorded stream configuration tables.
+ */
+public final class CameraSizeSelector {
+
+    /**
+     * Frame rate assumed to compute the pixel rate when no frame rate is requested.
+     */
+    private static final int DEFAULT_FPS = 30;
+
+    // Aspect ratios closer than this are considered equal (rounding of the sizes to even values)
+    private static final float ASPECT_RATIO_TOLERANCE = 0.01f;
+
+    public static final class Candidate {
+        private final Size size;
+        private final long minFrameDurationNs;
+
+        /**
+         * @param size               the output size
+         * @param minFrameDurationNs the minimum frame duration for this size, in nanoseconds, or 0 if unknown
+         */
+        public Candidate(Size size, long minFrameDurationNs) {
+            this.size = size;
+            this.minFrameDurationNs = minFrameDurationNs;
+        }
+
+        public Size getSize() {
+            return size;
+        }
+
+        public long getMinFrameDurationNs() {
+            return minFrameDurationNs;
+        }
+
+        /**
+         * Return the maximum frame rate for this size.
+         *
+         * @return the frame rate, or {@code Float.POSITIVE_INFINITY} if unknown
+         */
+        public float getMaxFps() {
+            return minFrameDurationNs > 0 ? 1_000_000_000f / minFrameDurationNs : Float.POSITIVE_INFINITY;
+        }
+    }
+
+    private final int maxSize;
+    private final float targetAspectRatio;
+    private final int fps;
+    private int targetSize;
+    private long maxPixelRate;
+
+    /**
+     * @param maxSize           the maximum width and height, or 0 for no limit
+     * @param targetAspectRatio the target aspect ratio (width / height), or 0 for none
+     * @param fps               the requested frame rate, or 0 for none
+     */
+    public CameraSizeSelector(int maxSize, float targetAspectRatio, int fps) {
+        this.maxSize = maxSize;
+        this.targetAspectRatio = targetAspectRatio;
+        this.fps = fps;
+    }
+
+    /**
+     * Set the size the frames will be scaled to (for example the picture-in-picture size of a composite capture).
+     *
+     * @param targetSize the maximum dimension of the scaled frames, or 0 for none
+     */
+    public void setTargetSize(int targetSize) {
+        this.targetSize = targetSize;
+    }
+
+    /**
+     * Set the maximum pixel rate the consumer of the frames can sustain.
+     *
+     * @param maxPixelRate the maximum number of pixels per second, or 0 for no limit
+     */
+    public void setMaxPixelRate(long maxPixelRate) {
+        this.maxPixelRate = maxPixelRate;
+    }
+
+    /**
+     * Select the best candidate.
+     *
+     * @param candidates the supported sizes with their minimum frame durations
+     * @return the selected size, or {@code null} if no candidate matches the maximum size and the aspect ratio
+     */
+    public Size select(List<Candidate> candidates) {
+        Candidate best = null;
+        for (Candidate candidate : candidates) {
+            if (accept(candidate) && (best == null || compare(candidate, best) > 0)) {
+                best = candidate;
+            }
+        }
+        return best != null ? best.getSize() : null;
+    }
+
+    private boolean accept(Candidate candidate) {
+        Size size = candidate.getSize();
+        if (maxSize > 0 && size.getMax() > maxSize) {
+            return false;
+        }
+
+        if (targetAspectRatio > 0) {
+            float arRatio = getAspectRatio(size) / targetAspectRatio;
+            // Accept if the aspect ratio is the target aspect ratio + or - 10%
+            return arRatio >= 0.9f && arRatio <= 1.1f;
+        }
+
+        return true;
+    }
+
+    /**
+     * Compare two accepted candidates.
+     *
+     * @return a positive value if {@code c1} is better than {@code c2}, a negative value if it is worse, 0 if they are equivalent
+     */
+    int compare(Candidate c1, Candidate c2) {
+        if (fps > 0) {
+            boolean fpsOk1 = reachesFps(c1);
+            boolean fpsOk2 = reachesFps(c2);
+            if (fpsOk1 != fpsOk2) {
+                return fpsOk1 ? 1 : -1;
+            }
+            if (!fpsOk1) {
+                // None reaches the requested frame rate, the faster is better
+                int cmp = Float.compare(c1.getMaxFps(), c2.getMaxFps());
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+        }
+
+        if (maxPixelRate > 0) {
+            boolean rateOk1 = getPixelRate(c1) <= maxPixelRate;
+            boolean rateOk2 = getPixelRate(c2) <= maxPixelRate;
+            if (rateOk1 != rateOk2) {
+                return rateOk1 ? 1 : -1;
+            }
+        }
+
+        Size s1 = c1.getSize();
+        Size s2 = c2.getSize();
+
+        if (targetAspectRatio > 0) {
+            float distance1 = Math.abs(getAspectRatio(s1) / targetAspectRatio - 1);
+            float distance2 = Math.abs(getAspectRatio(s2) / targetAspectRatio - 1);
+            if (Math.abs(distance1 - distance2) > ASPECT_RATIO_TOLERANCE) {
+                // Reverse the order because lower distance is better
+                return Float.compare(distance2, distance1);
+            }
+        }
+
+        if (targetSize > 0) {
+            boolean covers1 = s1.getMax() >= targetSize;
+            boolean covers2 = s2.getMax() >= targetSize;
+            if (covers1 != covers2) {
+                return covers1 ? 1 : -1;
+            }
+            if (covers1) {
+                // Both cover the target size, the smaller is better (less to transfer and downscale)
+                return -compareSizes(s1, s2);
+            }
+        }
+
+        return compareSizes(s1, s2);
+    }
+
+    private boolean reachesFps(Candidate candidate) {
+        // Tolerate the rounding of the frame durations (e.g. 33333333ns for 30 fps)
+        return candidate.getMaxFps() >= fps - 0.1f;
+    }
+
+    private long getPixelRate(Candidate candidate) {
+        float frameRate = Math.min(fps > 0 ? fps : DEFAULT_FPS, candidate.getMaxFps());
+        Size size = candidate.getSize();
+        return (long) ((long) size.getWidth() * size.getHeight() * frameRate);
+    }
+
+    private static float getAspectRatio(Size size) {
+        return (float) size.getWidth() / size.getHeight();
+    }
+
+    private static int compareSizes(Size s1, Size s2) {
+        // Greater width is better, then greater height
+        int cmp = Integer.compare(s1.getWidth(), s2.getWidth());
+        if (cmp != 0) {
+            return cmp;
+        }
+        return Integer.compare(s1.getHeight(), s2.getHeight());
+    }
+}
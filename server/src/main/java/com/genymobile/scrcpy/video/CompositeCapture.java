@@ -8,7 +8,10 @@ import com.genymobile.scrcpy.device.DisplayInfo;
 import com.genymobile.scrcpy.device.Orientation;
 import com.genymobile.scrcpy.device.Size;
 import com.genymobile.scrcpy.opengl.DualImageReaderGLRunner;
+import com.genymobile.scrcpy.opengl.EglContextManager;
 import com.genymobile.scrcpy.opengl.OpenGLException;
+import com.genymobile.scrcpy.opengl.OpenGLRunner;
+import com.genymobile.scrcpy.opengl.PipLayout;
 import com.genymobile.scrcpy.util.HandlerExecutor;
 import com.genymobile.scrcpy.util.Ln;
 import com.genymobile.scrcpy.util.LogUtils;
@@ -27,9 +30,7 @@ import android.hardware.camera2.CaptureFailure;
 import android.hardware.camera2.CaptureRequest;
 import android.hardware.camera2.params.OutputConfiguration;
 import android.hardware.camera2.params.SessionConfiguration;
-import android.hardware.camera2.params.StreamConfigurationMap;
 import android.hardware.display.VirtualDisplay;
-import android.media.MediaCodec;
 import android.os.Build;
 import android.app.ActivityOptions;
 import android.content.Intent;
@@ -43,14 +44,13 @@ import android.graphics.Rect;
 import com.genymobile.scrcpy.FakeContext; // not directly used, but keep parity
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.stream.Stream;
 
 /**
  * Composite capture that simultaneously captures display and camera,
@@ -59,6 +59,9 @@ import java.util.stream.Stream;
 @TargetApi(AndroidVersions.API_31_ANDROID_12)
 public class CompositeCapture extends SurfaceCapture {
 
+    // 1080p at 30 fps
+    private static final long MAX_CAMERA_PIXEL_RATE = 1920L * 1080 * 30;
+
     private final Options options;
     private final int displayId;
     private final int maxSize;
@@ -68,6 +71,10 @@ public class CompositeCapture extends SurfaceCapture {
     private final CameraAspectRatio cameraAspectRatio;
     private final int cameraFps;
     private final boolean cameraHighSpeed;
+    private final int pipCameraRotation;
+    private final CompositeClock compositeClock;
+    private boolean cameraTimestampRealtime;
+    private volatile PipLayout pipLayout;
 
     private DisplayInfo displayInfo;
     private Size videoSize;
@@ -76,7 +83,7 @@ public class CompositeCapture extends SurfaceCapture {
 
     private VirtualDisplay virtualDisplay;
     private IBinder display;
-    private DualImageReaderGLRunner glRunner;
+    private volatile DualImageReaderGLRunner glRunner;
     private ScreenCapture mirrorCapture;
 
     // Camera resources
@@ -87,6 +94,14 @@ public class CompositeCapture extends SurfaceCapture {
     private String cameraId;
     private final AtomicBoolean disconnected = new AtomicBoolean();
 
+    // Camera analysis output
+    private final int analysisMaxSize;
+    private Size analysisSize;
+    private HandlerThread analysisThread;
+    private Handler analysisHandler;
+    private CameraAnalysisOutput analysisOutput;
+    private volatile CameraAnalysisOutput.Listener analysisListener;
+
     private HandlerThread glThread;
     private Handler glHandler;
 
@@ -103,6 +118,24 @@ public class CompositeCapture extends SurfaceCapture {
         this.cameraAspectRatio = options.getCameraAspectRatio();
         this.cameraFps = options.getCameraFps();
         this.cameraHighSpeed = options.getCameraHighSpeed();
+        this.pipCameraRotation = options.getPipCameraRotation();
+        this.compositeClock = options.getCompositeClock();
+        this.pipLayout = options.getPipLayout();
+        this.analysisMaxSize = options.getCameraAnalysisSize();
+
+        if (options.getFrameSkipThreshold() >= 0) {
+            // The nested display capture must not drop input frames, the composited frames depend on both sources
+            Ln.w("Frame skipping is not supported for composite capture, ignored");
+        }
+    }
+
+    /**
+     * Set the listener of the camera analysis output (enabled by the {@code camera_analysis_size} option).
+     *
+     * @param listener the listener, called on the analysis thread
+     */
+    public void setAnalysisListener(CameraAnalysisOutput.Listener listener) {
+        this.analysisListener = listener;
     }
 
     @Override
@@ -113,6 +146,17 @@ public class CompositeCapture extends SurfaceCapture {
         cameraHandler = new Handler(cameraThread.getLooper());
         cameraExecutor = new HandlerExecutor(cameraHandler);
 
+        if (analysisMaxSize > 0) {
+            if (cameraHighSpeed) {
+                // A constrained high speed session only accepts preview and video surfaces
+                Ln.w("Camera analysis output is not supported with high speed capture");
+            } else {
+                analysisThread = new HandlerThread("camera-analysis");
+                analysisThread.start();
+                analysisHandler = new Handler(analysisThread.getLooper());
+            }
+        }
+
         // Initialize GL thread
         glThread = new HandlerThread("OpenGLComposite");
         glThread.start();
@@ -125,13 +169,16 @@ public class CompositeCapture extends SurfaceCapture {
             }
 
             Ln.i("Using camera '" + cameraId + "' for composite capture");
+            CameraCharacteristics characteristics = ServiceManager.getCameraManager().getCameraCharacteristics(cameraId);
+            Integer timestampSource = characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+            cameraTimestampRealtime = timestampSource != null && timestampSource == CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME;
             cameraDevice = openCamera(cameraId);
         } catch (CameraAccessException | InterruptedException e) {
             throw new IOException(e);
         }
 
         // Prepare a ScreenCapture helper to mirror the main display into our provided surface
-        mirrorCapture = new ScreenCapture(null, options);
+        mirrorCapture = new ScreenCapture(null, options.forCompositeDisplay());
         mirrorCapture.init();
     }
 
@@ -159,14 +206,26 @@ public class CompositeCapture extends SurfaceCapture {
         
         // Select camera size
         try {
-            Size selectedCameraSize = selectCameraSize(cameraId, explicitCameraSize, maxSize, cameraAspectRatio, cameraHighSpeed);
-            if (selectedCameraSize == null) {
-                throw new IOException("Could not select camera size");
-            }
             // Limit camera size to reasonable pip dimensions (e.g., 25% of display size)
             int maxCameraWidth = displaySize.getWidth() / 2;
             int maxCameraHeight = displaySize.getHeight() / 2;
-            cameraSize = selectedCameraSize.limit(Math.min(maxCameraWidth, maxCameraHeight)).round8();
+            int pipSize = Math.min(maxCameraWidth, maxCameraHeight);
+            Size selectedCameraSize = selectCameraSize(cameraId, explicitCameraSize, maxSize, cameraAspectRatio, cameraFps, cameraHighSpeed,
+                    pipSize);
+            if (selectedCameraSize == null) {
+                throw new IOException("Could not select camera size");
+            }
+            cameraSize = selectedCameraSize.limit(pipSize).round8();
+
+            if (analysisHandler != null) {
+                CameraCharacteristics characteristics = ServiceManager.getCameraManager().getCameraCharacteristics(cameraId);
+                analysisSize = CameraAnalysisOutput.selectSize(characteristics, cameraSize, analysisMaxSize);
+                if (analysisSize == null) {
+                    Ln.w("No camera analysis size under " + analysisMaxSize);
+                } else {
+                    Ln.i("Camera analysis size: " + analysisSize);
+                }
+            }
         } catch (CameraAccessException e) {
             throw new IOException(e);
         }
@@ -189,7 +248,8 @@ public class CompositeCapture extends SurfaceCapture {
     public void start(Surface surface) throws IOException {
         try {
             // Create dual ImageReader OpenGL runner (bypasses SurfaceTexture OES limitations)
-            glRunner = new DualImageReaderGLRunner(glHandler);
+            boolean cameraMasterClock = compositeClock == CompositeClock.CAMERA;
+            glRunner = new DualImageReaderGLRunner(glHandler, pipLayout, pipCameraRotation, cameraMasterClock, cameraTimestampRealtime);
             Ln.i("Composite: starting ImageReader GL runner");
             DualImageReaderGLRunner.InputSurfaces inputSurfaces = glRunner.start(displaySize, cameraSize, videoSize, surface);
             Ln.i("Composite: ImageReader GL runner started");
@@ -203,9 +263,15 @@ public class CompositeCapture extends SurfaceCapture {
                 throw new IOException(e2);
             }
 
-            // Start camera capture into YUV ImageReader surface
-            CameraCaptureSession session = createCaptureSession(cameraDevice, inputSurfaces.cameraSurface);
-            CaptureRequest request = createCaptureRequest(inputSurfaces.cameraSurface);
+            // Start camera capture into YUV ImageReader surface (and the analysis output, if any)
+            List<Surface> cameraSurfaces = new ArrayList<>();
+            cameraSurfaces.add(inputSurfaces.cameraSurface);
+            if (analysisSize != null) {
+                analysisOutput = new CameraAnalysisOutput(analysisSize, analysisListener, analysisHandler);
+                cameraSurfaces.add(analysisOutput.getSurface());
+            }
+            CameraCaptureSession session = createCaptureSession(cameraDevice, cameraSurfaces);
+            CaptureRequest request = createCaptureRequest(cameraSurfaces);
             setRepeatingRequest(session, request);
             Ln.d("Composite: Camera capture started to YUV ImageReader");
 
@@ -224,6 +290,10 @@ public class CompositeCapture extends SurfaceCapture {
         if (mirrorCapture != null) {
             mirrorCapture.stop();
         }
+        if (analysisOutput != null) {
+            analysisOutput.release();
+            analysisOutput = null;
+        }
     }
 
     @Override
@@ -250,7 +320,14 @@ public class CompositeCapture extends SurfaceCapture {
             cameraThread = null;
         }
 
+        if (analysisThread != null) {
+            analysisThread.quitSafely();
+            analysisThread = null;
+        }
+
         if (glThread != null) {
+            // Destroy the EGL context of the thread (executed before quitting)
+            glHandler.post(EglContextManager::releaseCurrentThread);
             glThread.quitSafely();
             glThread = null;
         }
@@ -267,6 +344,19 @@ public class CompositeCapture extends SurfaceCapture {
         return false;
     }
 
+    /**
+     * Change the PiP layout at runtime (kept across capture restarts).
+     *
+     * @param layout the new layout
+     */
+    public void setPipLayout(PipLayout layout) {
+        pipLayout = layout;
+        DualImageReaderGLRunner runner = glRunner;
+        if (runner != null) {
+            runner.setLayout(layout);
+        }
+    }
+
     @Override
     public boolean isClosed() {
         return disconnected.get();
@@ -277,6 +367,17 @@ public class CompositeCapture extends SurfaceCapture {
         // Not supported for composite capture
     }
 
+    @Override
+    public boolean requestSnapshot(int maxSize, OpenGLRunner.SnapshotListener listener) {
+        DualImageReaderGLRunner runner = glRunner;
+        if (runner == null) {
+            return false;
+        }
+        // Taken by drawing the composited frame again: the nested display capture never reads back its frames
+        runner.requestSnapshot(maxSize, listener);
+        return true;
+    }
+
     // Camera helper methods
 
     private static String selectCamera(String explicitCameraId, CameraFacing cameraFacing) 
@@ -309,9 +410,8 @@ public class CompositeCapture extends SurfaceCapture {
     }
 
     @TargetApi(AndroidVersions.API_24_ANDROID_7_0)
-    private static Size selectCameraSize(String cameraId, Size explicitSize, int maxSize, 
-                                       CameraAspectRatio aspectRatio, boolean highSpeed)
-            throws CameraAccessException {
+    private static Size selectCameraSize(String cameraId, Size explicitSize, int maxSize, CameraAspectRatio aspectRatio, int fps,
+            boolean highSpeed, int pipSize) throws CameraAccessException {
         if (explicitSize != null) {
             return explicitSize;
         }
@@ -319,31 +419,18 @@ public class CompositeCapture extends SurfaceCapture {
         CameraManager cameraManager = ServiceManager.getCameraManager();
         CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(cameraId);
 
-        StreamConfigurationMap configs = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-        android.util.Size[] sizes = highSpeed ? configs.getHighSpeedVideoSizes() : configs.getOutputSizes(MediaCodec.class);
-        if (sizes == null) {
+        List<CameraSizeSelector.Candidate> candidates = CameraCapture.listSizeCandidates(characteristics, highSpeed);
+        if (candidates == null) {
             return null;
         }
 
-        Stream<android.util.Size> stream = Arrays.stream(sizes);
-        if (maxSize > 0) {
-            stream = stream.filter(it -> it.getWidth() <= maxSize && it.getHeight() <= maxSize);
-        }
-
-        Optional<android.util.Size> selected = stream.max((s1, s2) -> {
-            int cmp = Integer.compare(s1.getWidth(), s2.getWidth());
-            if (cmp != 0) {
-                return cmp;
-            }
-            return Integer.compare(s1.getHeight(), s2.getHeight());
-        });
-
-        if (selected.isPresent()) {
-            android.util.Size size = selected.get();
-            return new Size(size.getWidth(), size.getHeight());
-        }
-
-        return null;
+        Float targetAspectRatio = CameraCapture.resolveAspectRatio(aspectRatio, characteristics);
+        CameraSizeSelector selector = new CameraSizeSelector(maxSize, targetAspectRatio != null ? targetAspectRatio : 0, fps);
+        // The camera frames are downscaled to the picture-in-picture size, larger frames would only cost transfer and upload time
+        selector.setTargetSize(pipSize);
+        // Each camera frame is copied through an ImageReader and uploaded to a texture
+        selector.setMaxPixelRate(MAX_CAMERA_PIXEL_RATE);
+        return selector.select(candidates);
     }
 
     @SuppressLint("MissingPermission")
@@ -393,11 +480,13 @@ public class CompositeCapture extends SurfaceCapture {
         }
     }
 
-    private CameraCaptureSession createCaptureSession(CameraDevice camera, Surface surface) 
+    private CameraCaptureSession createCaptureSession(CameraDevice camera, List<Surface> surfaces) 
             throws CameraAccessException, InterruptedException {
         CompletableFuture<CameraCaptureSession> future = new CompletableFuture<>();
-        OutputConfiguration outputConfig = new OutputConfiguration(surface);
-        List<OutputConfiguration> outputs = Arrays.asList(outputConfig);
+        List<OutputConfiguration> outputs = new ArrayList<>();
+        for (Surface surface : surfaces) {
+            outputs.add(new OutputConfiguration(surface));
+        }
 
         int sessionType = cameraHighSpeed ? SessionConfiguration.SESSION_HIGH_SPEED : SessionConfiguration.SESSION_REGULAR;
         SessionConfiguration sessionConfig = new SessionConfiguration(sessionType, outputs, cameraExecutor, 
@@ -422,9 +511,11 @@ public class CompositeCapture extends SurfaceCapture {
         }
     }
 
-    private CaptureRequest createCaptureRequest(Surface surface) throws CameraAccessException {
+    private CaptureRequest createCaptureRequest(List<Surface> surfaces) throws CameraAccessException {
         CaptureRequest.Builder requestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_RECORD);
-        requestBuilder.addTarget(surface);
+        for (Surface surface : surfaces) {
+            requestBuilder.addTarget(surface);
+        }
 
         if (cameraFps > 0) {
             requestBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, new Range<>(cameraFps, cameraFps));
@@ -0,0 +1,25 @@
+package com.genymobile.scrcpy.video;
+
+/**
+ * Source whose capture timestamps drive the presentation timestamps of the composite video.
+ */
+public enum CompositeClock {
+    DISPLAY("display"),
+    CAMERA("camera");
+
+    private final String name;
+
+    CompositeClock(String name) {
+        this.name = name;
+    }
+
+    public static CompositeClock findByName(String name) {
+        for (CompositeClock clock : CompositeClock.values()) {
+            if (name.equals(clock.name)) {
+                return clock;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,63 @@
+package com.genymobile.scrcpy.video;
+
+import com.genymobile.scrcpy.device.Device;
+import com.genymobile.scrcpy.device.NewDisplay;
+import com.genymobile.scrcpy.opengl.CompositorLayer;
+
+/**
+ * A source of the multi-source capture, and its placement in the output.
+ * <p>
+ * Exactly one of the display id, the camera (by id or facing) and the new display is set.
+ */
+public final class LayerSpec {
+
+    private final int displayId;
+    private final String cameraId;
+    private final CameraFacing cameraFacing;
+    private final NewDisplay newDisplay;
+    private final CompositorLayer layer;
+
+    private LayerSpec(int displayId, String cameraId, CameraFacing cameraFacing, NewDisplay newDisplay, CompositorLayer layer) {
+        this.displayId = displayId;
+        this.cameraId = cameraId;
+        this.cameraFacing = cameraFacing;
+        this.newDisplay = newDisplay;
+        this.layer = layer;
+    }
+
+    public static LayerSpec display(int displayId, CompositorLayer layer) {
+        return new LayerSpec(displayId, null, null, null, layer);
+    }
+
+    public static LayerSpec camera(String cameraId, CameraFacing cameraFacing, CompositorLayer layer) {
+        return new LayerSpec(Device.DISPLAY_ID_NONE, cameraId, cameraFacing, null, layer);
+    }
+
+    public static LayerSpec newDisplay(NewDisplay newDisplay, CompositorLayer layer) {
+        return new LayerSpec(Device.DISPLAY_ID_NONE, null, null, newDisplay, layer);
+    }
+
+    public boolean isCamera() {
+        return displayId == Device.DISPLAY_ID_NONE && newDisplay == null;
+    }
+
+    public int getDisplayId() {
+        return displayId;
+    }
+
+    public String getCameraId() {
+        return cameraId;
+    }
+
+    public CameraFacing getCameraFacing() {
+        return cameraFacing;
+    }
+
+    public NewDisplay getNewDisplay() {
+        return newDisplay;
+    }
+
+    public CompositorLayer getLayer() {
+        return layer;
+    }
+}
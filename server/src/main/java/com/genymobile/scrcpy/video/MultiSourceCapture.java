@@ -0,0 +1,156 @@
+package com.genymobile.scrcpy.video;
+
+import com.genymobile.scrcpy.Options;
+import com.genymobile.scrcpy.device.ConfigurationException;
+import com.genymobile.scrcpy.device.Size;
+import com.genymobile.scrcpy.opengl.EglContextManager;
+import com.genymobile.scrcpy.opengl.MultiSourceOpenGLRunner;
+import com.genymobile.scrcpy.opengl.OpenGLRunner;
+import com.genymobile.scrcpy.util.Ln;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.view.Surface;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Capture compositing several sources (displays, cameras, new virtual displays) into a single video.
+ * <p>
+ * Each source is an independent {@link SurfaceCapture} rendering into its own input surface of a {@link MultiSourceOpenGLRunner}, which draws
+ * all of them in a single pass according to their layer. The output has the size of the first source.
+ */
+public class MultiSourceCapture extends SurfaceCapture {
+
+    private final List<LayerSpec> layers;
+    private final List<SurfaceCapture> sources = new ArrayList<>();
+
+    private HandlerThread glThread;
+    private volatile MultiSourceOpenGLRunner glRunner;
+
+    public MultiSourceCapture(Options options) {
+        this.layers = options.getLayers();
+        for (LayerSpec layer : layers) {
+            Options layerOptions = options.forLayer(layer);
+            if (layer.isCamera()) {
+                sources.add(new CameraCapture(layerOptions));
+            } else if (layer.getNewDisplay() != null) {
+                sources.add(new NewDisplayCapture(null, layerOptions));
+            } else {
+                sources.add(new ScreenCapture(null, layerOptions));
+            }
+        }
+    }
+
+    @Override
+    protected void init() throws ConfigurationException, IOException {
+        for (SurfaceCapture source : sources) {
+            // Any source invalidation (e.g. a rotation) requires to restart the whole capture
+            source.init(this::invalidate);
+        }
+
+        glThread = new HandlerThread("OpenGLMultiSource");
+        glThread.start();
+    }
+
+    @Override
+    public void prepare() throws ConfigurationException, IOException {
+        for (SurfaceCapture source : sources) {
+            source.prepare();
+        }
+    }
+
+    @Override
+    public void start(Surface surface) throws IOException {
+        List<MultiSourceOpenGLRunner.Input> inputs = new ArrayList<>();
+        for (int i = 0; i < sources.size(); ++i) {
+            LayerSpec layer = layers.get(i);
+            // The transform matrix returned by SurfaceTexture is incorrect for camera capture (see CameraCapture)
+            float[] overrideTransformMatrix = layer.isCamera() ? CameraCapture.VFLIP_MATRIX : null;
+            inputs.add(new MultiSourceOpenGLRunner.Input(sources.get(i).getSize(), layer.getLayer(), overrideTransformMatrix));
+        }
+
+        Size outputSize = getSize();
+        Ln.i("Multi-source capture: " + sources.size() + " sources, output=" + outputSize);
+
+        glRunner = new MultiSourceOpenGLRunner(new Handler(glThread.getLooper()));
+        try {
+            List<Surface> inputSurfaces = glRunner.start(inputs, outputSize, surface);
+            for (int i = 0; i < sources.size(); ++i) {
+                sources.get(i).start(inputSurfaces.get(i));
+            }
+        } catch (IOException e) {
+            // Also catches OpenGLException
+            stop();
+            throw e;
+        }
+    }
+
+    @Override
+    public void stop() {
+        // Stop the producers before releasing their input surfaces
+        for (SurfaceCapture source : sources) {
+            source.stop();
+        }
+        if (glRunner != null) {
+            glRunner.stopAndRelease();
+            glRunner = null;
+        }
+    }
+
+    @Override
+    public void release() {
+        for (SurfaceCapture source : sources) {
+            source.release();
+        }
+        if (glThread != null) {
+            // Destroy the EGL context of the thread (executed before quitting)
+            new Handler(glThread.getLooper()).post(EglContextManager::releaseCurrentThread);
+            glThread.quitSafely();
+            glThread = null;
+        }
+    }
+
+    @Override
+    public Size getSize() {
+        return sources.get(0).getSize();
+    }
+
+    @Override
+    public boolean setMaxSize(int maxSize) {
+        boolean accepted = true;
+        for (SurfaceCapture source : sources) {
+            accepted &= source.setMaxSize(maxSize);
+        }
+        return accepted;
+    }
+
+    @Override
+    public boolean isClosed() {
+        for (SurfaceCapture source : sources) {
+            if (source.isClosed()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void requestInvalidate() {
+        for (SurfaceCapture source : sources) {
+            source.requestInvalidate();
+        }
+    }
+
+    @Override
+    public boolean requestSnapshot(int maxSize, OpenGLRunner.SnapshotListener listener) {
+        MultiSourceOpenGLRunner runner = glRunner;
+        if (runner == null) {
+            return false;
+        }
+        runner.requestSnapshot(maxSize, listener);
+        return true;
+    }
+}
@@ -45,7 +45,10 @@ public class NewDisplayCapture extends SurfaceCapture {
 
     private AffineMatrix displayTransform;
     private AffineMatrix eventTransform;
-    private OpenGLRunner glRunner;
+    private final boolean snapshots;
+    private final boolean overlay;
+    private final int frameSkipThreshold;
+    private volatile OpenGLRunner glRunner;
 
     private Size mainDisplaySize;
     private int mainDisplayDpi;
@@ -79,6 +82,9 @@ public class NewDisplayCapture extends SurfaceCapture {
         this.angle = options.getAngle();
         this.vdDestroyContent = options.getVDDestroyContent();
         this.vdSystemDecorations = options.getVDSystemDecorations();
+        this.snapshots = options.getSnapshots();
+        this.overlay = options.getOverlay();
+        this.frameSkipThreshold = options.getFrameSkipThreshold();
     }
 
     @Override
@@ -208,10 +214,13 @@ public class NewDisplayCapture extends SurfaceCapture {
 
     @Override
     public void start(Surface surface) throws IOException {
-        if (displayTransform != null) {
+        if (displayTransform != null || snapshots || frameSkipThreshold >= 0 || overlay) {
+            // Snapshots, frame skipping and the overlay rely on the OpenGL pipeline, so it is used even without transform
             assert glRunner == null;
-            OpenGLFilter glFilter = new AffineOpenGLFilter(displayTransform);
+            OpenGLFilter glFilter = new AffineOpenGLFilter(displayTransform != null ? displayTransform : AffineMatrix.IDENTITY);
             glRunner = new OpenGLRunner(glFilter);
+            glRunner.setFrameSkipThreshold(frameSkipThreshold);
+            glRunner.setAsyncSnapshots(snapshots);
             surface = glRunner.start(physicalSize, videoSize, surface);
         }
 
@@ -266,4 +275,15 @@ public class NewDisplayCapture extends SurfaceCapture {
     public void requestInvalidate() {
         invalidate();
     }
+
+    @Override
+    public boolean requestSnapshot(int maxSize, OpenGLRunner.SnapshotListener listener) {
+        OpenGLRunner runner = glRunner;
+        if (runner == null) {
+            // Without filter, the frames are not rendered by OpenGL
+            return false;
+        }
+        runner.requestSnapshot(maxSize, listener);
+        return true;
+    }
 }
@@ -43,8 +43,12 @@ public class ScreenCapture extends SurfaceCapture {
     private IBinder display;
     private VirtualDisplay virtualDisplay;
 
+    private final boolean snapshots;
+    private final int frameSkipThreshold;
+    private final boolean overlay;
+
     private AffineMatrix transform;
-    private OpenGLRunner glRunner;
+    private volatile OpenGLRunner glRunner;
 
     public ScreenCapture(VirtualDisplayListener vdListener, Options options) {
         this.vdListener = vdListener;
@@ -57,6 +61,9 @@ public class ScreenCapture extends SurfaceCapture {
         assert captureOrientationLock != null;
         assert captureOrientation != null;
         this.angle = options.getAngle();
+        this.snapshots = options.getSnapshots();
+        this.frameSkipThreshold = options.getFrameSkipThreshold();
+        this.overlay = options.getOverlay();
     }
 
     @Override
@@ -112,12 +119,15 @@ public class ScreenCapture extends SurfaceCapture {
         }
 
         Size inputSize;
-        if (transform != null) {
-            // If there is a filter, it must receive the full display content
+        if (transform != null || snapshots || frameSkipThreshold >= 0 || overlay) {
+            // If there is a filter, it must receive the full display content (snapshots, frame skipping and the overlay rely on the OpenGL
+            // pipeline, so it is used even without transform)
             inputSize = displayInfo.getSize();
             assert glRunner == null;
-            OpenGLFilter glFilter = new AffineOpenGLFilter(transform);
+            OpenGLFilter glFilter = new AffineOpenGLFilter(transform != null ? transform : AffineMatrix.IDENTITY);
             glRunner = new OpenGLRunner(glFilter);
+            glRunner.setFrameSkipThreshold(frameSkipThreshold);
+            glRunner.setAsyncSnapshots(snapshots);
             surface = glRunner.start(inputSize, videoSize, surface);
         } else {
             // If there is no filter, the display must be rendered at target video size directly
@@ -216,4 +226,15 @@ public class ScreenCapture extends SurfaceCapture {
     public void requestInvalidate() {
         invalidate();
     }
+
+    @Override
+    public boolean requestSnapshot(int maxSize, OpenGLRunner.SnapshotListener listener) {
+        OpenGLRunner runner = glRunner;
+        if (runner == null) {
+            // Without filter, the frames are not rendered by OpenGL
+            return false;
+        }
+        runner.requestSnapshot(maxSize, listener);
+        return true;
+    }
 }
@@ -2,6 +2,7 @@ package com.genymobile.scrcpy.video;
 
 import com.genymobile.scrcpy.device.ConfigurationException;
 import com.genymobile.scrcpy.device.Size;
+import com.genymobile.scrcpy.opengl.OpenGLRunner;
 
 import android.view.Surface;
 
@@ -93,4 +94,15 @@ public abstract class SurfaceCapture {
      * The capture implementation is free to ignore the request and do nothing.
      */
     public abstract void requestInvalidate();
+
+    /**
+     * Request a snapshot of the current frame from the capture pipeline.
+     *
+     * @param maxSize  the maximum snapshot size (0 for the video size)
+     * @param listener the listener, called once if the request is accepted
+     * @return {@code true} if the request is accepted, {@code false} if the capture does not support snapshots
+     */
+    public boolean requestSnapshot(int maxSize, OpenGLRunner.SnapshotListener listener) {
+        return false;
+    }
 }
@@ -9,7 +9,9 @@ public enum VideoCodec implements Codec {
     H264(0x68_32_36_34, "h264", MediaFormat.MIMETYPE_VIDEO_AVC),
     H265(0x68_32_36_35, "h265", MediaFormat.MIMETYPE_VIDEO_HEVC),
     @SuppressLint("InlinedApi") // introduced in API 29
-    AV1(0x00_61_76_31, "av1", MediaFormat.MIMETYPE_VIDEO_AV1);
+    AV1(0x00_61_76_31, "av1", MediaFormat.MIMETYPE_VIDEO_AV1),
+    // Not encoded: NV12 frames converted by OpenGL
+    RAW(0x00_72_61_77, "raw", MediaFormat.MIMETYPE_VIDEO_RAW);
 
     private final int id; // 4-byte ASCII representation of the name
     private final String name;
@@ -0,0 +1,197 @@
+package com.genymobile.scrcpy.video;
+
+import com.genymobile.scrcpy.AsyncProcessor;
+import com.genymobile.scrcpy.device.ConfigurationException;
+import com.genymobile.scrcpy.device.Size;
+import com.genymobile.scrcpy.device.Streamer;
+import com.genymobile.scrcpy.opengl.AffineOpenGLFilter;
+import com.genymobile.scrcpy.opengl.Nv12Converter;
+import com.genymobile.scrcpy.opengl.OpenGLRunner;
+import com.genymobile.scrcpy.util.AffineMatrix;
+import com.genymobile.scrcpy.util.ByteBufferPool;
+import com.genymobile.scrcpy.util.IO;
+import com.genymobile.scrcpy.util.Ln;
+
+import android.view.Surface;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stream the capture as raw NV12 frames, converted by OpenGL, without any encoder.
+ * <p>
+ * Each capture session starts with a config packet containing the frame size (width and height, as 32-bit big-endian integers), since it may
+ * change on rotation. Every other packet contains exactly one NV12 frame of that size.
+ */
+public final class VideoRawRecorder implements AsyncProcessor {
+
+    // Frames converted but not written yet; beyond, new frames are dropped rather than blocking the OpenGL thread
+    private static final int MAX_PENDING_FRAMES = 2;
+
+    private static final class Frame {
+        private final ByteBuffer buffer; // null to interrupt the writer
+        private final long ptsUs;
+        private final ByteBufferPool pool;
+
+        private Frame(ByteBuffer buffer, long ptsUs, ByteBufferPool pool) {
+            this.buffer = buffer;
+            this.ptsUs = ptsUs;
+            this.pool = pool;
+        }
+    }
+
+    private static final Frame INTERRUPT = new Frame(null, 0, null);
+
+    private final SurfaceCapture capture;
+    private final Streamer streamer;
+
+    private final BlockingQueue<Frame> queue = new LinkedBlockingQueue<>();
+    private final AtomicBoolean resetRequested = new AtomicBoolean();
+    private int droppedCount;
+
+    private Thread thread;
+    private final AtomicBoolean stopped = new AtomicBoolean();
+
+    public VideoRawRecorder(SurfaceCapture capture, Streamer streamer) {
+        this.capture = capture;
+        this.streamer = streamer;
+    }
+
+    private void streamCapture() throws IOException, ConfigurationException {
+        capture.init(this::reset);
+
+        try {
+            boolean alive;
+            boolean headerWritten = false;
+
+            do {
+                resetRequested.set(false); // If a capture reset was requested, it is implicitly fulfilled
+                capture.prepare();
+                Size size = capture.getSize();
+                if (!headerWritten) {
+                    streamer.writeVideoHeader(size);
+                    headerWritten = true;
+                }
+                writeSizePacket(size);
+
+                ByteBufferPool pool = new ByteBufferPool(Nv12Converter.getFrameSize(size), MAX_PENDING_FRAMES + 1);
+                OpenGLRunner runner = new OpenGLRunner(new AffineOpenGLFilter(AffineMatrix.IDENTITY));
+                boolean captureStarted = false;
+                try {
+                    Surface surface = runner.startNv12(size, size, pool, (frame, ptsUs) -> onFrame(frame, ptsUs, pool));
+                    capture.start(surface);
+                    captureStarted = true;
+
+                    if (!stopped.get() && !resetRequested.get()) {
+                        // Returns on reset or stop
+                        writeFrames();
+                    }
+                    // The capture might have been closed internally (for example if the camera is disconnected)
+                    alive = !stopped.get() && !capture.isClosed();
+                } finally {
+                    if (captureStarted) {
+                        capture.stop();
+                    }
+                    runner.stopAndRelease();
+                    discardPendingFrames();
+                }
+            } while (alive);
+        } finally {
+            capture.release();
+            if (droppedCount > 0) {
+                Ln.d("Raw video: " + droppedCount + " frames dropped");
+            }
+        }
+    }
+
+    private void writeSizePacket(Size size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        buffer.putInt(size.getWidth());
+        buffer.putInt(size.getHeight());
+        buffer.flip();
+        streamer.writePacket(buffer, 0, true, false);
+    }
+
+    private void onFrame(ByteBuffer frame, long ptsUs, ByteBufferPool pool) {
+        // Called on the OpenGL thread, the only producer
+        if (queue.size() >= MAX_PENDING_FRAMES) {
+            pool.release(frame);
+            ++droppedCount;
+            return;
+        }
+        queue.offer(new Frame(frame, ptsUs, pool));
+    }
+
+    private void writeFrames() throws IOException {
+        while (true) {
+            Frame frame;
+            try {
+                frame = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (frame == INTERRUPT) {
+                return;
+            }
+            try {
+                // Every raw frame is independent
+                streamer.writePacket(frame.buffer, frame.ptsUs, false, true);
+            } finally {
+                frame.pool.release(frame.buffer);
+            }
+        }
+    }
+
+    private void discardPendingFrames() {
+        Frame frame;
+        while ((frame = queue.poll()) != null) {
+            if (frame != INTERRUPT) {
+                frame.pool.release(frame.buffer);
+            }
+        }
+    }
+
+    private void reset() {
+        resetRequested.set(true);
+        queue.offer(INTERRUPT);
+    }
+
+    @Override
+    public void start(TerminationListener listener) {
+        thread = new Thread(() -> {
+            try {
+                streamCapture();
+            } catch (ConfigurationException e) {
+                // Do not print stack trace, a user-friendly error-message has already been logged
+            } catch (IOException e) {
+                // Broken pipe is expected on close, because the socket is closed by the client
+                if (!IO.isBrokenPipe(e)) {
+                    Ln.e("Raw video error", e);
+                }
+            } finally {
+                Ln.d("Screen streaming stopped");
+                listener.onTerminated(true);
+            }
+        }, "video");
+        thread.start();
+    }
+
+    @Override
+    public void stop() {
+        if (thread != null) {
+            stopped.set(true);
+            reset();
+        }
+    }
+
+    @Override
+    public void join() throws InterruptedException {
+        if (thread != null) {
+            thread.join();
+        }
+    }
+}
@@ -3,7 +3,8 @@ package com.genymobile.scrcpy.video;
 public enum VideoSource {
     DISPLAY("display"),
     CAMERA("camera"),
-    COMPOSITE("composite");
+    COMPOSITE("composite"),
+    MULTI("multi");
 
     private final String name;
 
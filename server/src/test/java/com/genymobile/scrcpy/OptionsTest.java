@@ -0,0 +1,29 @@
+package com.genymobile.scrcpy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OptionsTest {
+
+    @Test
+    public void testCompositeDisplayWithoutSnapshots() {
+        Options options = Options.parse(BuildConfig.VERSION_NAME, "max_size=1024", "snapshots=true");
+        Assert.assertTrue(options.getSnapshots());
+
+        // Snapshots are taken by the composite runner, the nested display capture must not read back its frames
+        Options displayOptions = options.forCompositeDisplay();
+        Assert.assertFalse(displayOptions.getSnapshots());
+        Assert.assertEquals(1024, displayOptions.getMaxSize());
+    }
+
+    @Test
+    public void testCompositeDisplayWithoutFrameSkipping() {
+        Options options = Options.parse(BuildConfig.VERSION_NAME, "frame_skip_threshold=4", "overlay=true");
+        Assert.assertEquals(4, options.getFrameSkipThreshold());
+
+        // The nested display capture must not drop the frames of the display, nor draw the overlay
+        Options displayOptions = options.forCompositeDisplay();
+        Assert.assertEquals(-1, displayOptions.getFrameSkipThreshold());
+        Assert.assertFalse(displayOptions.getOverlay());
+    }
+}
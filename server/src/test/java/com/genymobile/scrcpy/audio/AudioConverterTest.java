@@ -0,0 +1,112 @@
+package com.genymobile.scrcpy.audio;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class AudioConverterTest {
+
+    private static short[] stereoSine(int frames, double frequency, int amplitude) {
+        short[] samples = new short[frames * 2];
+        for (int i = 0; i < frames; ++i) {
+            short value = (short) (amplitude * Math.sin(2 * Math.PI * frequency * i / AudioConfig.SAMPLE_RATE));
+            samples[2 * i] = value;
+            samples[2 * i + 1] = value;
+        }
+        return samples;
+    }
+
+    private static int peak(short[] samples, int from, int to) {
+        int peak = 0;
+        for (int i = from; i < to; ++i) {
+            peak = Math.max(peak, Math.abs(samples[i]));
+        }
+        return peak;
+    }
+
+    @Test
+    public void testIdentity() {
+        AudioConverter converter = new AudioConverter(2, 48000);
+        Assert.assertTrue(converter.isIdentity());
+
+        short[] samples = {1, 2, 3, 4};
+        Assert.assertEquals(4, converter.convert(samples, 2));
+        Assert.assertArrayEquals(new short[] {1, 2, 3, 4}, samples);
+    }
+
+    @Test
+    public void testDownmix() {
+        AudioConverter converter = new AudioConverter(1, 48000);
+        Assert.assertFalse(converter.isIdentity());
+
+        short[] samples = {100, 200, -1000, 1000, 32767, 32767};
+        Assert.assertEquals(3, converter.convert(samples, 3));
+        Assert.assertEquals(150, samples[0]);
+        Assert.assertEquals(0, samples[1]);
+        Assert.assertEquals(32767, samples[2]);
+    }
+
+    @Test
+    public void testDecimationAcrossBuffers() {
+        AudioConverter converter = new AudioConverter(2, 16000);
+
+        // 4 frames: one output frame, 1 frame pending
+        short[] samples = {3, 30, 6, 60, 9, 90, 12, 120};
+        Assert.assertEquals(2, converter.convert(samples, 4));
+        Assert.assertEquals(6, samples[0]);
+        Assert.assertEquals(60, samples[1]);
+        Assert.assertEquals(1, converter.getPendingFrames());
+
+        // The pending frame completes with the 2 first frames of the next buffer
+        samples = new short[] {15, 150, 18, 180};
+        Assert.assertEquals(2, converter.convert(samples, 2));
+        Assert.assertEquals(15, samples[0]);
+        Assert.assertEquals(150, samples[1]);
+        Assert.assertEquals(0, converter.getPendingFrames());
+    }
+
+    @Test
+    public void testResampleToMono() {
+        AudioConverter converter = new AudioConverter(1, 24000);
+        short[] samples = stereoSine(960, 440, 10000);
+        int outSamples = converter.convert(samples, 960);
+        Assert.assertEquals(480, outSamples);
+
+        // A low frequency keeps its amplitude
+        Assert.assertTrue(peak(samples, 0, outSamples) > 9900);
+    }
+
+    @Test
+    public void testHighFrequencyAttenuated() {
+        AudioConverter converter = new AudioConverter(1, 16000);
+        // 12 kHz is above the output Nyquist frequency (8 kHz), it must not alias at full amplitude
+        short[] samples = stereoSine(960, 12000, 10000);
+        int outSamples = converter.convert(samples, 960);
+        Assert.assertEquals(320, outSamples);
+        Assert.assertTrue(peak(samples, 0, outSamples) < 5000);
+    }
+
+    @Test
+    public void testByteBuffer() {
+        AudioConverter converter = new AudioConverter(1, 48000);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(16);
+        ByteOrder order = buffer.order();
+
+        ByteBuffer pcm = buffer.duplicate().order(ByteOrder.nativeOrder());
+        pcm.putShort(4, (short) 1000).putShort(6, (short) 3000).putShort(8, (short) -200).putShort(10, (short) -400);
+
+        int size = converter.convert(buffer, 4, 8);
+        Assert.assertEquals(4, size);
+        Assert.assertEquals(2000, pcm.getShort(4));
+        Assert.assertEquals(-300, pcm.getShort(6));
+        // The byte order of the buffer is restored
+        Assert.assertEquals(order, buffer.order());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedSampleRate() {
+        new AudioConverter(2, 44100);
+    }
+}
@@ -0,0 +1,59 @@
+package com.genymobile.scrcpy.audio;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class AudioHighPassFilterTest {
+
+    private static final int FRAMES = 480;
+
+    private static ByteBuffer createSine(int frequency, int amplitude, int dcOffset, int startFrame) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(FRAMES * 4).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < FRAMES; ++i) {
+            double t = (double) (startFrame + i) / AudioConfig.SAMPLE_RATE;
+            short sample = (short) Math.round(dcOffset + amplitude * Math.sin(2 * Math.PI * frequency * t));
+            buffer.putShort(4 * i, sample);
+            buffer.putShort(4 * i + 2, sample);
+        }
+        return buffer;
+    }
+
+    private static int peak(ByteBuffer buffer) {
+        int peak = 0;
+        for (int i = 0; i < FRAMES * 2; ++i) {
+            peak = Math.max(peak, Math.abs(buffer.getShort(2 * i)));
+        }
+        return peak;
+    }
+
+    @Test
+    public void testRemoveDcOffset() {
+        AudioHighPassFilter filter = new AudioHighPassFilter(20);
+
+        ByteBuffer buffer = null;
+        // 1 second, the state is kept across buffers
+        for (int i = 0; i < 100; ++i) {
+            buffer = createSine(1000, 0, 10000, i * FRAMES);
+            filter.process(buffer, 0, FRAMES * 4, 0);
+        }
+
+        Assert.assertTrue(peak(buffer) < 10);
+    }
+
+    @Test
+    public void testKeepHighFrequencies() {
+        AudioHighPassFilter filter = new AudioHighPassFilter(20);
+
+        ByteBuffer buffer = null;
+        for (int i = 0; i < 100; ++i) {
+            buffer = createSine(1000, 10000, 5000, i * FRAMES);
+            filter.process(buffer, 0, FRAMES * 4, 0);
+        }
+
+        int peak = peak(buffer);
+        Assert.assertTrue(peak > 9900 && peak < 10100);
+    }
+}
@@ -0,0 +1,92 @@
+package com.genymobile.scrcpy.audio;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+public class AudioLevelMeterTest {
+
+    // 480 frames (10 ms)
+    private static final int FRAMES = 480;
+    private static final int SIZE = AudioConfig.getReadSize(FRAMES);
+
+    private static ByteBuffer createBuffer(int... pattern) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(SIZE).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < SIZE / 2; ++i) {
+            buffer.putShort(2 * i, (short) pattern[i % pattern.length]);
+        }
+        return buffer;
+    }
+
+    private static final class Level {
+        private final long ptsUs;
+        private final int peak;
+        private final int rms;
+
+        Level(long ptsUs, int peak, int rms) {
+            this.ptsUs = ptsUs;
+            this.peak = peak;
+            this.rms = rms;
+        }
+    }
+
+    @Test
+    public void testLevels() {
+        List<Level> levels = new ArrayList<>();
+        AudioLevelMeter meter = new AudioLevelMeter(100, (ptsUs, peak, rms) -> levels.add(new Level(ptsUs, peak, rms)));
+
+        ByteBuffer buffer = createBuffer(1000, -3000);
+        for (int i = 0; i < 10; ++i) {
+            meter.process(buffer, 0, SIZE, 1_000_000 + i * 10_000, i * 10);
+        }
+
+        Assert.assertEquals(1, levels.size());
+        Level level = levels.get(0);
+        Assert.assertEquals(1_000_000, level.ptsUs);
+        Assert.assertEquals(3000, level.peak);
+        // sqrt((1000^2 + 3000^2) / 2)
+        Assert.assertEquals(2236, level.rms);
+    }
+
+    @Test
+    public void testFullScale() {
+        List<Level> levels = new ArrayList<>();
+        AudioLevelMeter meter = new AudioLevelMeter(100, (ptsUs, peak, rms) -> levels.add(new Level(ptsUs, peak, rms)));
+
+        ByteBuffer buffer = createBuffer(Short.MIN_VALUE);
+        for (int i = 0; i < 10; ++i) {
+            meter.process(buffer, 0, SIZE, i * 10_000, i * 10);
+        }
+
+        Assert.assertEquals(1, levels.size());
+        Assert.assertEquals(32768, levels.get(0).peak);
+        Assert.assertEquals(32768, levels.get(0).rms);
+    }
+
+    @Test
+    public void testRateLimited() {
+        List<Level> levels = new ArrayList<>();
+        AudioLevelMeter meter = new AudioLevelMeter(100, (ptsUs, peak, rms) -> levels.add(new Level(ptsUs, peak, rms)));
+
+        ByteBuffer silence = createBuffer(0);
+        ByteBuffer loud = createBuffer(20000);
+
+        // A burst of 300 ms of audio, processed at once
+        for (int i = 0; i < 30; ++i) {
+            meter.process(i < 20 ? silence : loud, 0, SIZE, i * 10_000, 1000);
+        }
+
+        // The first window is reported, the following ones are merged until the interval has elapsed
+        Assert.assertEquals(1, levels.size());
+        Assert.assertEquals(0, levels.get(0).peak);
+
+        meter.process(silence, 0, SIZE, 300_000, 1100);
+        Assert.assertEquals(2, levels.size());
+        Assert.assertEquals(100_000, levels.get(1).ptsUs);
+        Assert.assertEquals(20000, levels.get(1).peak);
+    }
+}
@@ -0,0 +1,65 @@
+package com.genymobile.scrcpy.audio;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class AudioLimiterTest {
+
+    private static final int FRAMES = 480;
+
+    private static ByteBuffer createBuffer(int value) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(FRAMES * 4).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < FRAMES * 2; ++i) {
+            // Alternate the sign
+            buffer.putShort(2 * i, (short) (i % 4 < 2 ? value : -value));
+        }
+        return buffer;
+    }
+
+    @Test
+    public void testNeverExceedThreshold() {
+        AudioLimiter limiter = new AudioLimiter(-6);
+        int threshold = (int) (Math.pow(10, -6 / 20.0) * Short.MAX_VALUE);
+
+        ByteBuffer buffer = createBuffer(Short.MAX_VALUE);
+        limiter.process(buffer, 0, FRAMES * 4, 0);
+
+        for (int i = 0; i < FRAMES * 2; ++i) {
+            Assert.assertTrue(Math.abs(buffer.getShort(2 * i)) <= threshold);
+        }
+    }
+
+    @Test
+    public void testBelowThresholdUnchanged() {
+        AudioLimiter limiter = new AudioLimiter(-6);
+
+        ByteBuffer buffer = createBuffer(10000);
+        limiter.process(buffer, 0, FRAMES * 4, 0);
+
+        Assert.assertEquals(1, limiter.getGain(), 0);
+        Assert.assertEquals(10000, buffer.getShort(0));
+        Assert.assertEquals(-10000, buffer.getShort(4));
+    }
+
+    @Test
+    public void testRelease() {
+        AudioLimiter limiter = new AudioLimiter(-6);
+
+        limiter.process(createBuffer(Short.MAX_VALUE), 0, FRAMES * 4, 0);
+        Assert.assertTrue(limiter.getGain() < 0.51f);
+
+        // 10 ms below the threshold: the gain recovers progressively
+        limiter.process(createBuffer(1000), 0, FRAMES * 4, 0);
+        float gain = limiter.getGain();
+        Assert.assertTrue(gain > 0.51f && gain < 1);
+
+        // 500 ms (10 times the release time)
+        for (int i = 0; i < 50; ++i) {
+            limiter.process(createBuffer(1000), 0, FRAMES * 4, 0);
+        }
+        Assert.assertEquals(1, limiter.getGain(), 0.001f);
+    }
+}
@@ -0,0 +1,105 @@
+package com.genymobile.scrcpy.audio;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AudioMixBufferTest {
+
+    // 10 ms at 48 kHz
+    private static final int FRAMES = 480;
+    private static final long DURATION_US = 10000;
+
+    private static short[] constant(int frames, int value) {
+        short[] samples = new short[frames * 2];
+        for (int i = 0; i < samples.length; ++i) {
+            samples[i] = (short) value;
+        }
+        return samples;
+    }
+
+    @Test
+    public void testMixAligned() {
+        AudioMixBuffer buffer = new AudioMixBuffer(4800);
+        buffer.write(constant(FRAMES, 100), FRAMES, 1_000_000);
+
+        short[] chunk = constant(FRAMES, 1000);
+        Assert.assertEquals(FRAMES, buffer.mixInto(chunk, FRAMES, 1_000_000, 0.5f));
+        Assert.assertEquals(1050, chunk[0]);
+        Assert.assertEquals(1050, chunk[chunk.length - 1]);
+        Assert.assertEquals(0, buffer.getCount());
+    }
+
+    @Test
+    public void testDropOlderFrames() {
+        AudioMixBuffer buffer = new AudioMixBuffer(4800);
+        buffer.write(constant(FRAMES, 100), FRAMES, 1_000_000);
+        buffer.write(constant(FRAMES, 200), FRAMES, 1_000_000 + DURATION_US);
+
+        // The chunk starts with the second playback packet
+        short[] chunk = constant(FRAMES, 0);
+        Assert.assertEquals(FRAMES, buffer.mixInto(chunk, FRAMES, 1_000_000 + DURATION_US, 1));
+        Assert.assertEquals(200, chunk[0]);
+        Assert.assertEquals(200, chunk[chunk.length - 1]);
+    }
+
+    @Test
+    public void testPlaybackStartsDuringChunk() {
+        AudioMixBuffer buffer = new AudioMixBuffer(4800);
+        // Starts 6 ms later than the chunk (above the tolerance)
+        buffer.write(constant(FRAMES, 100), FRAMES, 1_000_000 + 6000);
+
+        short[] chunk = constant(FRAMES, 0);
+        int offset = 288; // 6 ms
+        Assert.assertEquals(FRAMES - offset, buffer.mixInto(chunk, FRAMES, 1_000_000, 1));
+        Assert.assertEquals(0, chunk[2 * offset - 1]);
+        Assert.assertEquals(100, chunk[2 * offset]);
+        // The remaining frames are mixed into the next chunk
+        Assert.assertEquals(offset, buffer.getCount());
+    }
+
+    @Test
+    public void testGapFilledWithSilence() {
+        AudioMixBuffer buffer = new AudioMixBuffer(4800);
+        buffer.write(constant(FRAMES, 100), FRAMES, 1_000_000);
+        // 20 ms gap (no playback packet during a silence)
+        buffer.write(constant(FRAMES, 300), FRAMES, 1_000_000 + 3 * DURATION_US);
+        Assert.assertEquals(4 * FRAMES, buffer.getCount());
+
+        short[] chunk = constant(FRAMES, 0);
+        buffer.mixInto(chunk, FRAMES, 1_000_000 + DURATION_US, 1);
+        Assert.assertEquals(0, chunk[0]);
+
+        chunk = constant(FRAMES, 0);
+        buffer.mixInto(chunk, FRAMES, 1_000_000 + 3 * DURATION_US, 1);
+        Assert.assertEquals(300, chunk[0]);
+    }
+
+    @Test
+    public void testOverflowDropsOldest() {
+        AudioMixBuffer buffer = new AudioMixBuffer(2 * FRAMES);
+        buffer.write(constant(FRAMES, 100), FRAMES, 1_000_000);
+        buffer.write(constant(FRAMES, 200), FRAMES, 1_000_000 + DURATION_US);
+        buffer.write(constant(FRAMES, 300), FRAMES, 1_000_000 + 2 * DURATION_US);
+
+        Assert.assertEquals(2 * FRAMES, buffer.getCount());
+        Assert.assertEquals(FRAMES, buffer.getDroppedFrames());
+
+        short[] chunk = constant(FRAMES, 0);
+        Assert.assertEquals(FRAMES, buffer.mixInto(chunk, FRAMES, 1_000_000 + DURATION_US, 1));
+        Assert.assertEquals(200, chunk[0]);
+    }
+
+    @Test
+    public void testClipping() {
+        AudioMixBuffer buffer = new AudioMixBuffer(4800);
+        buffer.write(constant(FRAMES, 30000), FRAMES, 0);
+
+        short[] chunk = constant(FRAMES, 30000);
+        buffer.mixInto(chunk, FRAMES, 0, 1);
+        Assert.assertEquals(Short.MAX_VALUE, chunk[0]);
+
+        short[] samples = {-20000, 20000, 100};
+        AudioMixBuffer.applyGain(samples, 3, 2);
+        Assert.assertArrayEquals(new short[] {Short.MIN_VALUE, Short.MAX_VALUE, 200}, samples);
+    }
+}
@@ -0,0 +1,91 @@
+package com.genymobile.scrcpy.audio;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+public class AudioProcessorChainTest {
+
+    private static ByteBuffer createBuffer(short... samples) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(samples.length * 2).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < samples.length; ++i) {
+            buffer.putShort(2 * i, samples[i]);
+        }
+        return buffer;
+    }
+
+    private static short[] getSamples(ByteBuffer buffer, int count) {
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.nativeOrder());
+        short[] samples = new short[count];
+        for (int i = 0; i < count; ++i) {
+            samples[i] = buffer.getShort(2 * i);
+        }
+        buffer.order(order);
+        return samples;
+    }
+
+    @Test
+    public void testGain() {
+        ByteBuffer buffer = createBuffer((short) 100, (short) -100, (short) 20000, (short) -20000);
+        new AudioGainProcessor(2).process(buffer, 0, 8, 0);
+        Assert.assertArrayEquals(new short[] {200, -200, Short.MAX_VALUE, Short.MIN_VALUE}, getSamples(buffer, 4));
+    }
+
+    @Test
+    public void testMute() {
+        ByteBuffer buffer = createBuffer((short) 100, (short) -100);
+        AudioMuteProcessor mute = new AudioMuteProcessor(false);
+
+        mute.process(buffer, 0, 4, 0);
+        Assert.assertArrayEquals(new short[] {100, -100}, getSamples(buffer, 2));
+
+        mute.setMuted(true);
+        mute.process(buffer, 0, 4, 0);
+        Assert.assertArrayEquals(new short[] {0, 0}, getSamples(buffer, 2));
+    }
+
+    @Test
+    public void testOffset() {
+        ByteBuffer buffer = createBuffer((short) 100, (short) 100, (short) 100, (short) 100);
+        // Only the second frame
+        new AudioGainProcessor(0.5f).process(buffer, 4, 4, 0);
+        Assert.assertArrayEquals(new short[] {100, 100, 50, 50}, getSamples(buffer, 4));
+    }
+
+    @Test
+    public void testChainOrder() {
+        // Limit to -6 dBFS after a gain of 4
+        AudioProcessorChain chain = new AudioProcessorChain(Arrays.asList(new AudioGainProcessor(4), new AudioLimiter(-6)));
+
+        // The chain operates on buffers of any byte order
+        ByteBuffer buffer = createBuffer((short) 8000, (short) -8000);
+        ByteOrder order = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        buffer.order(order);
+
+        chain.process(buffer, 0, 4, 0);
+
+        Assert.assertEquals(order, buffer.order());
+        short[] samples = getSamples(buffer, 2);
+        int threshold = (int) (Math.pow(10, -6 / 20.0) * Short.MAX_VALUE);
+        Assert.assertTrue(samples[0] > 0 && samples[0] <= threshold);
+        Assert.assertEquals(-samples[0], samples[1]);
+    }
+
+    @Test
+    public void testProcessedInOrder() {
+        short[] seen = new short[1];
+        AudioProcessor probe = (buffer, offset, size, ptsUs) -> seen[0] = buffer.getShort(offset);
+        AudioProcessorChain chain = new AudioProcessorChain(Arrays.asList(new AudioGainProcessor(2), probe, new AudioMuteProcessor(true)));
+
+        ByteBuffer buffer = createBuffer((short) 1000, (short) 1000);
+        chain.process(buffer, 0, 4, 0);
+
+        // The probe sees the output of the previous processor
+        Assert.assertEquals(2000, seen[0]);
+        Assert.assertArrayEquals(new short[] {0, 0}, getSamples(buffer, 2));
+    }
+}
@@ -0,0 +1,67 @@
+package com.genymobile.scrcpy.audio;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class AudioSilenceFillerTest {
+
+    // 480 frames (10 ms)
+    private static final int READ_SIZE = AudioConfig.getReadSize(480);
+
+    @Test
+    public void testContinueTimeline() {
+        AudioSilenceFiller filler = new AudioSilenceFiller(READ_SIZE);
+        Assert.assertEquals(1_000_000, filler.onPacket(1_000_000, READ_SIZE));
+
+        filler.startFilling(1_015_000);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(READ_SIZE);
+        for (int i = 0; i < READ_SIZE; ++i) {
+            buffer.put(i, (byte) 42);
+        }
+        Assert.assertEquals(1_010_000, filler.fill(buffer));
+        Assert.assertEquals(READ_SIZE, filler.getReadSize());
+        Assert.assertEquals(0, buffer.get(0));
+        Assert.assertEquals(0, buffer.get(READ_SIZE - 1));
+
+        Assert.assertEquals(1_020_000, filler.fill(buffer));
+        Assert.assertEquals(2, filler.getFilledCount());
+    }
+
+    @Test
+    public void testRealTimePacing() {
+        AudioSilenceFiller filler = new AudioSilenceFiller(READ_SIZE);
+        filler.onPacket(1_000_000, READ_SIZE);
+        filler.startFilling(1_012_000);
+
+        // The silent buffer [1010 ms, 1020 ms) is available at 1020 ms
+        Assert.assertEquals(8000, filler.getDelayUs(1_012_000));
+        Assert.assertEquals(0, filler.getDelayUs(1_025_000));
+    }
+
+    @Test
+    public void testStartWithoutPacket() {
+        AudioSilenceFiller filler = new AudioSilenceFiller(READ_SIZE);
+        filler.startFilling(5_000_000);
+
+        Assert.assertEquals(5_000_000, filler.fill(ByteBuffer.allocateDirect(READ_SIZE)));
+    }
+
+    @Test
+    public void testResumeKeepsMonotonicPts() {
+        AudioSilenceFiller filler = new AudioSilenceFiller(READ_SIZE);
+        filler.onPacket(1_000_000, READ_SIZE);
+        filler.startFilling(1_010_000);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(READ_SIZE);
+        filler.fill(buffer);
+        filler.fill(buffer);
+
+        // The restarted capture timestamps its first buffer before the end of the inserted silence
+        Assert.assertEquals(1_030_000, filler.onPacket(1_025_000, READ_SIZE));
+        // Then its timestamps are kept
+        Assert.assertEquals(1_035_000, filler.onPacket(1_035_000, READ_SIZE));
+    }
+}
@@ -0,0 +1,69 @@
+package com.genymobile.scrcpy.audio;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AudioTimingMonitorTest {
+
+    private static final long PACKET_US = 21333; // 1024 samples at 48 kHz
+
+    @Test
+    public void testSourcesAndClamping() {
+        AudioTimingMonitor monitor = new AudioTimingMonitor();
+        monitor.onPacket(1000, PACKET_US, false, false, 2000);
+        monitor.onPacket(1000 + PACKET_US, PACKET_US, true, false, 2000 + PACKET_US);
+        monitor.onPacket(1000 + 2 * PACKET_US, PACKET_US, false, true, 2000 + 2 * PACKET_US);
+
+        Assert.assertEquals(3, monitor.getPacketCount());
+        Assert.assertEquals(1, monitor.getEstimatedCount());
+        Assert.assertEquals(1, monitor.getClampedCount());
+    }
+
+    @Test
+    public void testJitter() {
+        AudioTimingMonitor monitor = new AudioTimingMonitor();
+        monitor.onPacket(0, PACKET_US, false, false, 0);
+        // 500 us late
+        monitor.onPacket(PACKET_US + 500, PACKET_US, false, false, PACKET_US);
+        // 200 us early relative to the previous packet
+        monitor.onPacket(2 * PACKET_US + 300, PACKET_US, false, false, 2 * PACKET_US);
+
+        Assert.assertEquals(500, monitor.getMaxJitterUs());
+        String stats = monitor.buildIntervalStats(2 * PACKET_US);
+        Assert.assertTrue(stats, stats.contains("jitter avg/max: 350/500 us"));
+    }
+
+    @Test
+    public void testDrift() {
+        AudioTimingMonitor monitor = new AudioTimingMonitor();
+        monitor.onPacket(5_000_000, PACKET_US, false, false, 1_000_000);
+        // After 1 second of system time, the audio clock advanced by 1.0001 seconds
+        monitor.onPacket(6_000_100, PACKET_US, false, false, 2_000_000);
+
+        Assert.assertEquals(100, monitor.getDriftUs());
+        String stats = monitor.buildIntervalStats(2_000_000);
+        Assert.assertTrue(stats, stats.contains("drift: 100 us (100 ppm)"));
+    }
+
+    @Test
+    public void testRewrittenPts() {
+        AudioTimingMonitor monitor = new AudioTimingMonitor();
+        monitor.onPacket(0, PACKET_US, false, false, 0);
+        monitor.onPtsRewritten(1000, 1400);
+        monitor.onPtsRewritten(2000, 2200);
+
+        String stats = monitor.buildIntervalStats(0);
+        Assert.assertTrue(stats, stats.contains("rewritten PTS: 2 (avg correction 300 us)"));
+    }
+
+    @Test
+    public void testLabel() {
+        AudioTimingMonitor monitor = new AudioTimingMonitor();
+        monitor.onPacket(0, PACKET_US, false, false, 0);
+        Assert.assertTrue(monitor.buildIntervalStats(0).startsWith("Audio timing: "));
+
+        AudioTimingMonitor playbackMonitor = new AudioTimingMonitor("playback");
+        playbackMonitor.onPacket(0, PACKET_US, false, false, 0);
+        Assert.assertTrue(playbackMonitor.buildIntervalStats(0).startsWith("Audio timing (playback): "));
+    }
+}
@@ -0,0 +1,119 @@
+package com.genymobile.scrcpy.audio;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class CodecBufferQueueTest {
+
+    @Test
+    public void testOrderAndBufferInfo() throws InterruptedException {
+        CodecBufferQueue queue = new CodecBufferQueue(4);
+        queue.put(3, 0, 100, 1000, 0);
+        queue.put(1, 8, 200, 2000, 4);
+        queue.put(2);
+
+        Assert.assertEquals(3, queue.take());
+        Assert.assertEquals(0, queue.getOffset());
+        Assert.assertEquals(100, queue.getSize());
+        Assert.assertEquals(1000, queue.getPtsUs());
+        Assert.assertEquals(0, queue.getFlags());
+
+        Assert.assertEquals(1, queue.take());
+        Assert.assertEquals(8, queue.getOffset());
+        Assert.assertEquals(200, queue.getSize());
+        Assert.assertEquals(2000, queue.getPtsUs());
+        Assert.assertEquals(4, queue.getFlags());
+
+        Assert.assertEquals(2, queue.take());
+        Assert.assertEquals(0, queue.getSize());
+        Assert.assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testWrapAround() throws InterruptedException {
+        CodecBufferQueue queue = new CodecBufferQueue(3);
+        for (int i = 0; i < 10; ++i) {
+            queue.put(i, 0, i, i * 1000L, 0);
+            queue.put(i + 100);
+            Assert.assertEquals(i, queue.take());
+            Assert.assertEquals(i * 1000L, queue.getPtsUs());
+            Assert.assertEquals(i + 100, queue.take());
+        }
+        Assert.assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testPutBlocksWhenFull() throws InterruptedException {
+        CodecBufferQueue queue = new CodecBufferQueue(2);
+        queue.put(0);
+        queue.put(1);
+
+        CountDownLatch done = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            try {
+                queue.put(2);
+                done.countDown();
+            } catch (InterruptedException e) {
+                // end the thread
+            }
+        });
+        producer.start();
+
+        // The queue is full, the producer must wait
+        Assert.assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(2, queue.size());
+
+        Assert.assertEquals(0, queue.take());
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        producer.join();
+
+        Assert.assertEquals(1, queue.take());
+        Assert.assertEquals(2, queue.take());
+    }
+
+    @Test
+    public void testTakeBlocksWhenEmpty() throws InterruptedException {
+        CodecBufferQueue queue = new CodecBufferQueue(2);
+
+        int[] taken = new int[1];
+        CountDownLatch done = new CountDownLatch(1);
+        Thread consumer = new Thread(() -> {
+            try {
+                taken[0] = queue.take();
+                done.countDown();
+            } catch (InterruptedException e) {
+                // end the thread
+            }
+        });
+        consumer.start();
+
+        Assert.assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+
+        queue.put(42);
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        consumer.join();
+        Assert.assertEquals(42, taken[0]);
+    }
+
+    @Test
+    public void testInterruptBlockedTake() throws InterruptedException {
+        CodecBufferQueue queue = new CodecBufferQueue(2);
+
+        boolean[] interrupted = new boolean[1];
+        Thread consumer = new Thread(() -> {
+            try {
+                queue.take();
+            } catch (InterruptedException e) {
+                interrupted[0] = true;
+            }
+        });
+        consumer.start();
+        consumer.interrupt();
+        consumer.join();
+
+        Assert.assertTrue(interrupted[0]);
+    }
+}
@@ -0,0 +1,83 @@
+package com.genymobile.scrcpy.audio;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class SilenceDetectorTest {
+
+    private static final int FRAMES = 1024;
+    private static final long DURATION_US = AudioConfig.getDurationUs(FRAMES);
+
+    private static ByteBuffer createPcm(int amplitude) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(FRAMES * AudioConfig.CHANNELS * AudioConfig.BYTES_PER_SAMPLE).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < FRAMES; ++i) {
+            // Square wave: the RMS level is the amplitude
+            short value = (short) (i % 2 == 0 ? amplitude : -amplitude);
+            buffer.putShort(value).putShort(value);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static boolean process(SilenceDetector detector, ByteBuffer buffer) {
+        return detector.process(buffer, 0, buffer.remaining(), DURATION_US);
+    }
+
+    @Test
+    public void testSoundIsNeverSuppressed() {
+        SilenceDetector detector = new SilenceDetector(-60);
+        // -20 dBFS
+        ByteBuffer sound = createPcm(3277);
+        for (int i = 0; i < 100; ++i) {
+            Assert.assertFalse(process(detector, sound));
+        }
+        Assert.assertEquals(0, detector.getSuppressedCount());
+    }
+
+    @Test
+    public void testSilenceSuppressedAfterHangover() {
+        SilenceDetector detector = new SilenceDetector(-60);
+        // -80 dBFS
+        ByteBuffer silence = createPcm(3);
+
+        // The first 500 ms of silence are transmitted (23 buffers of 21.33 ms)
+        for (int i = 0; i < 23; ++i) {
+            Assert.assertFalse(process(detector, silence));
+        }
+        Assert.assertTrue(process(detector, silence));
+        Assert.assertTrue(detector.isSuppressing());
+        Assert.assertEquals(1, detector.getSuppressedCount());
+    }
+
+    @Test
+    public void testSoundResetsHangover() {
+        SilenceDetector detector = new SilenceDetector(-60);
+        ByteBuffer silence = createPcm(0);
+        ByteBuffer sound = createPcm(3277);
+
+        for (int i = 0; i < 30; ++i) {
+            process(detector, silence);
+        }
+        Assert.assertTrue(detector.isSuppressing());
+
+        Assert.assertFalse(process(detector, sound));
+        Assert.assertFalse(detector.isSuppressing());
+
+        // The hangover starts again
+        Assert.assertFalse(process(detector, silence));
+    }
+
+    @Test
+    public void testThreshold() {
+        SilenceDetector detector = new SilenceDetector(-40);
+        // -40 dBFS is 328: just below is silent, just above is not
+        for (int i = 0; i < 30; ++i) {
+            process(detector, createPcm(320));
+        }
+        Assert.assertTrue(detector.isSuppressing());
+        Assert.assertFalse(process(detector, createPcm(340)));
+    }
+}
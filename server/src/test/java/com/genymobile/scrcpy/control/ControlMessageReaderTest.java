@@ -422,6 +422,100 @@ public class ControlMessageReaderTest {
         Assert.assertEquals(-1, bis.read()); // EOS
     }
 
+    @Test
+    public void testParseSetPipLayout() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(ControlMessage.TYPE_SET_PIP_LAYOUT);
+        dos.writeShort(0x4000); // x = 0.25
+        dos.writeShort(0x2000); // y = 0.125
+        dos.writeShort(0x8000); // width = 0.5
+        dos.writeShort(0x6000); // height = 0.375
+        dos.writeShort(0xffff); // alpha = 1
+        dos.writeBoolean(true); // swap
+        byte[] packet = bos.toByteArray();
+
+        ByteArrayInputStream bis = new ByteArrayInputStream(packet);
+        ControlMessageReader reader = new ControlMessageReader(bis);
+
+        ControlMessage event = reader.read();
+        Assert.assertEquals(ControlMessage.TYPE_SET_PIP_LAYOUT, event.getType());
+        Assert.assertEquals(0.25f, event.getPipLayout().getX(), 0f);
+        Assert.assertEquals(0.125f, event.getPipLayout().getY(), 0f);
+        Assert.assertEquals(0.5f, event.getPipLayout().getWidth(), 0f);
+        Assert.assertEquals(0.375f, event.getPipLayout().getHeight(), 0f);
+        Assert.assertEquals(1f, event.getPipLayout().getAlpha(), 0f);
+        Assert.assertTrue(event.getPipLayout().isSwap());
+
+        Assert.assertEquals(-1, bis.read()); // EOS
+    }
+
+    @Test
+    public void testParseInvalidPipLayout() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(ControlMessage.TYPE_SET_PIP_LAYOUT);
+        dos.writeShort(0x8000); // x = 0.5
+        dos.writeShort(0);
+        dos.writeShort(0xc000); // width = 0.75, out of bounds
+        dos.writeShort(0x8000);
+        dos.writeShort(0x8000);
+        dos.writeBoolean(false);
+        byte[] packet = bos.toByteArray();
+
+        ByteArrayInputStream bis = new ByteArrayInputStream(packet);
+        ControlMessageReader reader = new ControlMessageReader(bis);
+
+        try {
+            reader.read();
+            Assert.fail("Invalid PiP layout must be rejected");
+        } catch (ControlProtocolException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testParseRequestSnapshot() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(ControlMessage.TYPE_REQUEST_SNAPSHOT);
+        dos.writeLong(0x0102030405060708L); // sequence
+        dos.writeByte(ControlMessage.SNAPSHOT_FORMAT_JPEG);
+        dos.writeShort(1024); // max size
+        dos.writeByte(85); // quality
+        byte[] packet = bos.toByteArray();
+
+        ByteArrayInputStream bis = new ByteArrayInputStream(packet);
+        ControlMessageReader reader = new ControlMessageReader(bis);
+
+        ControlMessage event = reader.read();
+        Assert.assertEquals(ControlMessage.TYPE_REQUEST_SNAPSHOT, event.getType());
+        Assert.assertEquals(0x0102030405060708L, event.getSequence());
+        Assert.assertEquals(ControlMessage.SNAPSHOT_FORMAT_JPEG, event.getSnapshotFormat());
+        Assert.assertEquals(1024, event.getMaxSize());
+        Assert.assertEquals(85, event.getQuality());
+
+        Assert.assertEquals(-1, bis.read()); // EOS
+    }
+
+    @Test
+    public void testParseSetOverlay() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(ControlMessage.TYPE_SET_OVERLAY);
+        dos.writeBoolean(true);
+        byte[] packet = bos.toByteArray();
+
+        ByteArrayInputStream bis = new ByteArrayInputStream(packet);
+        ControlMessageReader reader = new ControlMessageReader(bis);
+
+        ControlMessage event = reader.read();
+        Assert.assertEquals(ControlMessage.TYPE_SET_OVERLAY, event.getType());
+        Assert.assertTrue(event.getOn());
+
+        Assert.assertEquals(-1, bis.read()); // EOS
+    }
+
     @Test
     public void testMultiEvents() throws IOException {
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
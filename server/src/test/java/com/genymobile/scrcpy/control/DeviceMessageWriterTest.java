@@ -72,4 +72,97 @@ public class DeviceMessageWriterTest {
 
         Assert.assertArrayEquals(expected, actual);
     }
+
+    @Test
+    public void testSerializeSnapshot() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(DeviceMessage.TYPE_SNAPSHOT);
+        dos.writeLong(0x0102030405060708L); // sequence
+        dos.writeByte(ControlMessage.SNAPSHOT_FORMAT_RGBA);
+        dos.writeShort(2); // width
+        dos.writeShort(1); // height
+        byte[] data = {1, 2, 3, 4, 5, 6, 7, 8};
+        dos.writeInt(data.length);
+        dos.write(data);
+        byte[] expected = bos.toByteArray();
+
+        bos = new ByteArrayOutputStream();
+        DeviceMessageWriter writer = new DeviceMessageWriter(bos);
+
+        DeviceMessage msg = DeviceMessage.createSnapshot(0x0102030405060708L, ControlMessage.SNAPSHOT_FORMAT_RGBA, 2, 1, data);
+        writer.write(msg);
+
+        byte[] actual = bos.toByteArray();
+
+        Assert.assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void testSerializeSnapshotTooLarge() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(DeviceMessage.TYPE_SNAPSHOT);
+        dos.writeLong(0x0102030405060708L); // sequence
+        dos.writeByte(ControlMessage.SNAPSHOT_FORMAT_RGBA);
+        dos.writeShort(0); // width
+        dos.writeShort(0); // height
+        dos.writeInt(0); // empty data
+        byte[] expected = bos.toByteArray();
+
+        bos = new ByteArrayOutputStream();
+        DeviceMessageWriter writer = new DeviceMessageWriter(bos);
+
+        // 256x257 RGBA does not fit in a device message
+        byte[] data = new byte[256 * 257 * 4];
+        Assert.assertTrue(data.length > DeviceMessageWriter.SNAPSHOT_DATA_MAX_LENGTH);
+        DeviceMessage msg = DeviceMessage.createSnapshot(0x0102030405060708L, ControlMessage.SNAPSHOT_FORMAT_RGBA, 256, 257, data);
+        writer.write(msg);
+
+        byte[] actual = bos.toByteArray();
+
+        Assert.assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void testSerializeAudioLevel() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(DeviceMessage.TYPE_AUDIO_LEVEL);
+        dos.writeLong(0x0102030405060708L); // pts
+        dos.writeShort(32768); // peak
+        dos.writeShort(1234); // rms
+        byte[] expected = bos.toByteArray();
+
+        bos = new ByteArrayOutputStream();
+        DeviceMessageWriter writer = new DeviceMessageWriter(bos);
+
+        DeviceMessage msg = DeviceMessage.createAudioLevel(0x0102030405060708L, 32768, 1234);
+        writer.write(msg);
+
+        byte[] actual = bos.toByteArray();
+
+        Assert.assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void testSerializeCameraMotion() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(DeviceMessage.TYPE_CAMERA_MOTION);
+        dos.writeLong(0x0102030405060708L); // pts
+        dos.writeBoolean(true); // moving
+        dos.writeByte(42); // level
+        byte[] expected = bos.toByteArray();
+
+        bos = new ByteArrayOutputStream();
+        DeviceMessageWriter writer = new DeviceMessageWriter(bos);
+
+        DeviceMessage msg = DeviceMessage.createCameraMotion(0x0102030405060708L, true, 42);
+        writer.write(msg);
+
+        byte[] actual = bos.toByteArray();
+
+        Assert.assertArrayEquals(expected, actual);
+    }
 }
@@ -0,0 +1,37 @@
+package com.genymobile.scrcpy.opengl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class AsyncReadbackTest {
+
+    @Test
+    public void testCopyFlipped() {
+        // 3 rows of 2 bytes, bottom row first
+        ByteBuffer src = ByteBuffer.wrap(new byte[] {5, 6, 3, 4, 1, 2});
+        ByteBuffer dst = ByteBuffer.allocate(6);
+
+        AsyncReadback.copyFlipped(src, dst, 2, 3);
+
+        byte[] result = new byte[6];
+        dst.get(result);
+        Assert.assertArrayEquals(new byte[] {1, 2, 3, 4, 5, 6}, result);
+        Assert.assertEquals(0, src.position());
+    }
+
+    @Test
+    public void testCopyFlippedFromOffset() {
+        ByteBuffer src = ByteBuffer.wrap(new byte[] {9, 3, 4, 1, 2});
+        src.position(1);
+        ByteBuffer dst = ByteBuffer.allocate(8);
+
+        AsyncReadback.copyFlipped(src, dst, 2, 2);
+
+        Assert.assertEquals(4, dst.remaining());
+        byte[] result = new byte[4];
+        dst.get(result);
+        Assert.assertArrayEquals(new byte[] {1, 2, 3, 4}, result);
+    }
+}
@@ -0,0 +1,88 @@
+package com.genymobile.scrcpy.opengl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompositeTimestampsTest {
+
+    private static final long MS = 1_000_000;
+    private static final long BASE = 10_000 * MS;
+
+    private static final int DISPLAY = 0;
+    private static final int CAMERA = 1;
+
+    @Test
+    public void testDisplayMasterClock() {
+        CompositeTimestamps timestamps = new CompositeTimestamps(2, DISPLAY);
+
+        // Display frame captured at BASE, received 5ms later, rendered 2ms after reception
+        Assert.assertTrue(timestamps.onFrame(DISPLAY, BASE, BASE + 5 * MS));
+        Assert.assertEquals(BASE + 2 * MS, timestamps.computePts(BASE + 7 * MS));
+        Assert.assertEquals(7 * MS, timestamps.getLatencyNs(DISPLAY));
+        Assert.assertEquals(-1, timestamps.getLatencyNs(CAMERA));
+
+        // A camera frame triggers a render: the display timestamp is extrapolated
+        Assert.assertTrue(timestamps.onFrame(CAMERA, BASE + 8 * MS, BASE + 10 * MS));
+        Assert.assertEquals(BASE + 6 * MS, timestamps.computePts(BASE + 11 * MS));
+        Assert.assertEquals(3 * MS, timestamps.getLatencyNs(CAMERA));
+        // The display frame has not changed, its latency is kept
+        Assert.assertEquals(7 * MS, timestamps.getLatencyNs(DISPLAY));
+    }
+
+    @Test
+    public void testCameraMasterClock() {
+        CompositeTimestamps timestamps = new CompositeTimestamps(2, CAMERA);
+
+        timestamps.onFrame(DISPLAY, BASE, BASE + 1 * MS);
+        // No camera frame yet, fallback to the display
+        Assert.assertEquals(BASE + 1 * MS, timestamps.computePts(BASE + 2 * MS));
+
+        timestamps.onFrame(CAMERA, BASE + 20 * MS, BASE + 30 * MS);
+        Assert.assertEquals(BASE + 20 * MS, timestamps.computePts(BASE + 30 * MS));
+    }
+
+    @Test
+    public void testStrictlyIncreasing() {
+        CompositeTimestamps timestamps = new CompositeTimestamps(2, DISPLAY);
+
+        timestamps.onFrame(DISPLAY, BASE, BASE);
+        long pts1 = timestamps.computePts(BASE);
+        // Late frame with an older timestamp
+        timestamps.onFrame(DISPLAY, BASE - 10 * MS, BASE);
+        long pts2 = timestamps.computePts(BASE);
+        Assert.assertEquals(pts1 + 1000, pts2);
+    }
+
+    @Test
+    public void testTimestampOnAnotherClock() {
+        CompositeTimestamps timestamps = new CompositeTimestamps(2, DISPLAY);
+
+        // Timestamp far from the current time: use the reception time
+        Assert.assertFalse(timestamps.onFrame(DISPLAY, BASE + 3600_000 * MS, BASE));
+        Assert.assertEquals(BASE + 1 * MS, timestamps.computePts(BASE + 1 * MS));
+
+        Assert.assertFalse(timestamps.onFrame(DISPLAY, 0, BASE + 2 * MS));
+    }
+
+    @Test
+    public void testFallbackToFirstSourceWithFrame() {
+        CompositeTimestamps timestamps = new CompositeTimestamps(3, 0);
+
+        timestamps.onFrame(2, BASE, BASE);
+        timestamps.onFrame(1, BASE + 5 * MS, BASE + 5 * MS);
+        Assert.assertEquals(BASE + 6 * MS, timestamps.computePts(BASE + 6 * MS));
+        Assert.assertEquals(6 * MS, timestamps.getLatencyNs(2));
+        Assert.assertEquals(-1, timestamps.getLatencyNs(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaster() {
+        new CompositeTimestamps(2, 2);
+    }
+
+    @Test
+    public void testNoFrame() {
+        CompositeTimestamps timestamps = new CompositeTimestamps(2, DISPLAY);
+        Assert.assertEquals(BASE, timestamps.computePts(BASE));
+    }
+}
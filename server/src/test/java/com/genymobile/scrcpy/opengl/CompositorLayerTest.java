@@ -0,0 +1,49 @@
+package com.genymobile.scrcpy.opengl;
+
+import com.genymobile.scrcpy.util.AffineMatrix;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class CompositorLayerTest {
+
+    private static final float DELTA = 1e-5f;
+
+    @Test
+    public void testFullLayerVertices() {
+        CompositorLayer layer = new CompositorLayer(AffineMatrix.IDENTITY, 0, 1f);
+        Assert.assertArrayEquals(new float[] {-1f, -1f, 1f, -1f, -1f, 1f, 1f, 1f}, layer.computeVertices(), DELTA);
+    }
+
+    @Test
+    public void testRectLayerVertices() {
+        // Top-right quarter
+        CompositorLayer layer = CompositorLayer.fromRect(0.5f, 0f, 0.5f, 0.5f, 0, 1f);
+        Assert.assertArrayEquals(new float[] {0f, 0f, 1f, 0f, 0f, 1f, 1f, 1f}, layer.computeVertices(), DELTA);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidAlpha() {
+        CompositorLayer.fromRect(0f, 0f, 1f, 1f, 0, 1.5f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSize() {
+        CompositorLayer.fromRect(0f, 0f, 0f, 1f, 0, 1f);
+    }
+
+    @Test
+    public void testDrawOrder() {
+        List<CompositorLayer> layers = Arrays.asList(
+                CompositorLayer.fromRect(0f, 0f, 1f, 1f, 2, 1f),
+                CompositorLayer.fromRect(0f, 0f, 1f, 1f, 0, 1f),
+                CompositorLayer.fromRect(0f, 0f, 1f, 1f, 2, 1f),
+                CompositorLayer.fromRect(0f, 0f, 1f, 1f, 1, 1f));
+
+        // By z-order, then by index for equal z-orders
+        Assert.assertArrayEquals(new int[] {1, 3, 0, 2}, CompositorFilter.computeDrawOrder(layers));
+    }
+}
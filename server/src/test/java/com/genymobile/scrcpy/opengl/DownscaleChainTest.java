@@ -0,0 +1,41 @@
+package com.genymobile.scrcpy.opengl;
+
+import com.genymobile.scrcpy.device.Size;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class DownscaleChainTest {
+
+    @Test
+    public void testNoDownscaleUpTo2x() {
+        Assert.assertEquals(Collections.emptyList(), DownscaleChain.computeSizes(new Size(1920, 1080), new Size(1920, 1080)));
+        Assert.assertEquals(Collections.emptyList(), DownscaleChain.computeSizes(new Size(1920, 1080), new Size(960, 540)));
+        Assert.assertEquals(Collections.emptyList(), DownscaleChain.computeSizes(new Size(960, 540), new Size(1920, 1080)));
+    }
+
+    @Test
+    public void testOneIntermediatePass() {
+        // Factor 3: the filter scales by 1.5, then a single halving pass
+        List<Size> sizes = DownscaleChain.computeSizes(new Size(2560, 1440), new Size(848, 480));
+        Assert.assertEquals(Collections.singletonList(new Size(1696, 960)), sizes);
+    }
+
+    @Test
+    public void testSeveralIntermediatePasses() {
+        // Factor 6: the filter scales by 1.5, then two halving passes
+        List<Size> sizes = DownscaleChain.computeSizes(new Size(2880, 1440), new Size(480, 240));
+        Assert.assertEquals(Arrays.asList(new Size(1920, 960), new Size(960, 480)), sizes);
+    }
+
+    @Test
+    public void testRotated() {
+        // The factor does not depend on the orientation of the output
+        List<Size> sizes = DownscaleChain.computeSizes(new Size(2560, 1440), new Size(480, 848));
+        Assert.assertEquals(Collections.singletonList(new Size(960, 1696)), sizes);
+    }
+}
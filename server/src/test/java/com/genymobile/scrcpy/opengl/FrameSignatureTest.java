@@ -0,0 +1,30 @@
+package com.genymobile.scrcpy.opengl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FrameSignatureTest {
+
+    @Test
+    public void testIdenticalSignatures() {
+        byte[] a = {0, 10, (byte) 200, (byte) 255};
+        byte[] b = {0, 10, (byte) 200, (byte) 255};
+        Assert.assertEquals(0, FrameSignature.computeDifference(a, b));
+    }
+
+    @Test
+    public void testMaxCellDifference() {
+        byte[] a = {0, 10, 20, 30};
+        byte[] b = {1, 13, 20, 28};
+        Assert.assertEquals(3, FrameSignature.computeDifference(a, b));
+    }
+
+    @Test
+    public void testUnsignedValues() {
+        // Luminance values are unsigned bytes
+        byte[] a = {(byte) 250, 5};
+        byte[] b = {(byte) 10, 5};
+        Assert.assertEquals(240, FrameSignature.computeDifference(a, b));
+        Assert.assertEquals(240, FrameSignature.computeDifference(b, a));
+    }
+}
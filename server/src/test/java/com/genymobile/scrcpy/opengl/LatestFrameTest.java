@@ -0,0 +1,71 @@
+package com.genymobile.scrcpy.opengl;
+
+import com.genymobile.scrcpy.device.Size;
+import com.genymobile.scrcpy.util.ByteBufferPool;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class LatestFrameTest {
+
+    private static ByteBuffer createFrame(ByteBufferPool pool, int value) {
+        ByteBuffer buffer = pool.acquire();
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) value);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    public void testNoFrame() {
+        LatestFrame latestFrame = new LatestFrame(new ByteBufferPool(4, 2));
+        Assert.assertNull(latestFrame.copy());
+        Assert.assertNull(latestFrame.getSize());
+    }
+
+    @Test
+    public void testCopyKeepsFrame() {
+        ByteBufferPool pool = new ByteBufferPool(4, 2);
+        LatestFrame latestFrame = new LatestFrame(pool);
+        latestFrame.onFrame(createFrame(pool, 7), new Size(1, 1), 0);
+
+        Assert.assertArrayEquals(new byte[] {7, 7, 7, 7}, latestFrame.copy());
+        // The frame is still available for the next snapshot
+        Assert.assertArrayEquals(new byte[] {7, 7, 7, 7}, latestFrame.copy());
+        Assert.assertEquals(new Size(1, 1), latestFrame.getSize());
+    }
+
+    @Test
+    public void testNewFrameReleasesPrevious() {
+        ByteBufferPool pool = new ByteBufferPool(4, 2);
+        LatestFrame latestFrame = new LatestFrame(pool);
+        ByteBuffer first = createFrame(pool, 1);
+        latestFrame.onFrame(first, new Size(1, 1), 0);
+        latestFrame.onFrame(createFrame(pool, 2), new Size(1, 1), 1);
+
+        Assert.assertArrayEquals(new byte[] {2, 2, 2, 2}, latestFrame.copy());
+        // The previous frame has been given back to the pool
+        Assert.assertSame(first, pool.acquire());
+    }
+
+    @Test
+    public void testRelease() {
+        ByteBufferPool pool = new ByteBufferPool(4, 2);
+        LatestFrame latestFrame = new LatestFrame(pool);
+        ByteBuffer frame = createFrame(pool, 1);
+        latestFrame.onFrame(frame, new Size(1, 1), 0);
+        latestFrame.release();
+
+        Assert.assertNull(latestFrame.copy());
+        Assert.assertSame(frame, pool.acquire());
+
+        // Frames received after release are given back immediately
+        ByteBuffer late = createFrame(pool, 2);
+        latestFrame.onFrame(late, new Size(1, 1), 1);
+        Assert.assertNull(latestFrame.copy());
+        Assert.assertSame(late, pool.acquire());
+    }
+}
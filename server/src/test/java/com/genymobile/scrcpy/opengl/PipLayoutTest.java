@@ -0,0 +1,83 @@
+package com.genymobile.scrcpy.opengl;
+
+import com.genymobile.scrcpy.device.Size;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PipLayoutTest {
+
+    private static final float DELTA = 1e-5f;
+
+    @Test
+    public void testDefaultOverlayVertices() {
+        // Centered, 60% of the width and 80% of the height
+        float[] vertices = PipLayout.DEFAULT.computeOverlayVertices();
+        Assert.assertArrayEquals(new float[] {-0.6f, -0.8f, 0.6f, -0.8f, -0.6f, 0.8f, 0.6f, 0.8f}, vertices, DELTA);
+    }
+
+    @Test
+    public void testOverlayVerticesFromTopLeft() {
+        PipLayout layout = new PipLayout(0f, 0f, 0.25f, 0.5f, 1f, false);
+        float[] vertices = layout.computeOverlayVertices();
+        Assert.assertArrayEquals(new float[] {-1f, 0f, -0.5f, 0f, -1f, 1f, -0.5f, 1f}, vertices, DELTA);
+    }
+
+    @Test
+    public void testSwap() {
+        PipLayout layout = PipLayout.DEFAULT;
+        Assert.assertArrayEquals(PipLayout.computeFullVertices(), layout.computeCameraVertices(), 0f);
+        Assert.assertArrayEquals(layout.computeOverlayVertices(), layout.computeDisplayVertices(), 0f);
+
+        PipLayout swapped = layout.withSwap(true);
+        Assert.assertArrayEquals(layout.computeOverlayVertices(), swapped.computeCameraVertices(), 0f);
+        Assert.assertArrayEquals(PipLayout.computeFullVertices(), swapped.computeDisplayVertices(), 0f);
+    }
+
+    @Test
+    public void testCameraTexCoordsRotated() {
+        // 640x480 rotated by 270° is 480x640, cropped to 16:9 (aligned to the bottom of the rotated frame)
+        float[] texCoords = PipLayout.DEFAULT.computeCameraTexCoords(new Size(640, 480), new Size(1920, 1080), 270);
+        float visible = 0.421875f; // (480 / 640) / (1920 / 1080)
+        Assert.assertArrayEquals(new float[] {0f, 0f, 0f, 1f, visible, 0f, visible, 1f}, texCoords, DELTA);
+    }
+
+    @Test
+    public void testCameraTexCoordsCenteredCrop() {
+        // 1920x1080 into a square: keep the centered 9/16 of the width
+        float[] texCoords = PipLayout.computeCoverTexCoords(new Size(1920, 1080), 1f, 0);
+        float uMin = (1 - 0.5625f) / 2;
+        float uMax = 1 - uMin;
+        Assert.assertArrayEquals(new float[] {uMin, 1f, uMax, 1f, uMin, 0f, uMax, 0f}, texCoords, DELTA);
+    }
+
+    @Test
+    public void testSwappedCameraTexCoordsUseOverlayAspectRatio() {
+        // The overlay is 960x540 in a 1920x1080 output, so a 16:9 camera is not cropped
+        PipLayout layout = new PipLayout(0.5f, 0.5f, 0.5f, 0.5f, 1f, true);
+        float[] texCoords = layout.computeCameraTexCoords(new Size(1280, 720), new Size(1920, 1080), 0);
+        Assert.assertArrayEquals(new float[] {0f, 1f, 1f, 1f, 0f, 0f, 1f, 0f}, texCoords, DELTA);
+    }
+
+    @Test
+    public void testEquals() {
+        Assert.assertEquals(PipLayout.DEFAULT, PipLayout.DEFAULT.withAlpha(0.6f));
+        Assert.assertNotEquals(PipLayout.DEFAULT, PipLayout.DEFAULT.withAlpha(0.5f));
+        Assert.assertNotEquals(PipLayout.DEFAULT, PipLayout.DEFAULT.withSwap(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOutOfBounds() {
+        new PipLayout(0.5f, 0f, 0.6f, 0.5f, 1f, false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidAlpha() {
+        PipLayout.DEFAULT.withAlpha(1.5f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRotation() {
+        PipLayout.DEFAULT.computeCameraTexCoords(new Size(640, 480), new Size(1920, 1080), 45);
+    }
+}
@@ -0,0 +1,51 @@
+package com.genymobile.scrcpy.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class ByteBufferPoolTest {
+
+    @Test
+    public void testAcquireNewBuffer() {
+        ByteBufferPool pool = new ByteBufferPool(16, 2);
+        ByteBuffer buffer = pool.acquire();
+        Assert.assertTrue(buffer.isDirect());
+        Assert.assertEquals(16, buffer.capacity());
+        Assert.assertEquals(0, buffer.position());
+        Assert.assertEquals(16, buffer.limit());
+    }
+
+    @Test
+    public void testReuseClearedBuffer() {
+        ByteBufferPool pool = new ByteBufferPool(16, 2);
+        ByteBuffer buffer = pool.acquire();
+        buffer.putInt(42);
+        buffer.limit(8);
+        pool.release(buffer);
+
+        ByteBuffer reused = pool.acquire();
+        Assert.assertSame(buffer, reused);
+        Assert.assertEquals(0, reused.position());
+        Assert.assertEquals(16, reused.limit());
+    }
+
+    @Test
+    public void testMaxFree() {
+        ByteBufferPool pool = new ByteBufferPool(16, 1);
+        ByteBuffer b1 = pool.acquire();
+        ByteBuffer b2 = pool.acquire();
+        pool.release(b1);
+        pool.release(b2); // dropped
+
+        Assert.assertSame(b1, pool.acquire());
+        Assert.assertNotSame(b2, pool.acquire());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReleaseForeignBuffer() {
+        ByteBufferPool pool = new ByteBufferPool(16, 1);
+        pool.release(ByteBuffer.allocateDirect(8));
+    }
+}
@@ -0,0 +1,39 @@
+package com.genymobile.scrcpy.video;
+
+import com.genymobile.scrcpy.device.Size;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class CameraAnalysisOutputTest {
+
+    private static final List<Size> SIZES = Arrays.asList(new Size(1920, 1080), new Size(1280, 720), new Size(640, 480), new Size(640, 360),
+            new Size(320, 240), new Size(176, 144));
+
+    @Test
+    public void testSameAspectRatioPreferred() {
+        Size size = CameraAnalysisOutput.selectSize(SIZES, new Size(1920, 1080), 640);
+        Assert.assertEquals(new Size(640, 360), size);
+    }
+
+    @Test
+    public void testLargestWithinBounds() {
+        Size size = CameraAnalysisOutput.selectSize(SIZES, new Size(1600, 1200), 800);
+        Assert.assertEquals(new Size(640, 480), size);
+    }
+
+    @Test
+    public void testClosestAspectRatioFallback() {
+        Size size = CameraAnalysisOutput.selectSize(SIZES, new Size(1920, 1080), 320);
+        // No 16:9 size fits, 4:3 is the closest
+        Assert.assertEquals(new Size(320, 240), size);
+    }
+
+    @Test
+    public void testNoSizeFits() {
+        Assert.assertNull(CameraAnalysisOutput.selectSize(SIZES, new Size(1920, 1080), 100));
+    }
+}
@@ -0,0 +1,90 @@
+package com.genymobile.scrcpy.video;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CameraMotionDetectorTest {
+
+    private static final int WIDTH = 16;
+    private static final int HEIGHT = 8;
+
+    private static ByteBuffer createLuma(int value) {
+        ByteBuffer buffer = ByteBuffer.allocate(WIDTH * HEIGHT);
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) value);
+        }
+        return buffer;
+    }
+
+    @Test
+    public void testStillFramesNotReported() {
+        List<Boolean> events = new ArrayList<>();
+        CameraMotionDetector detector = new CameraMotionDetector((ptsUs, moving, level) -> events.add(moving));
+
+        for (int i = 0; i < 5; ++i) {
+            detector.onLuma(createLuma(100), WIDTH, HEIGHT, WIDTH, 1, i);
+        }
+
+        Assert.assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void testMotionStartAndStop() {
+        List<Long> pts = new ArrayList<>();
+        List<Boolean> events = new ArrayList<>();
+        List<Integer> levels = new ArrayList<>();
+        CameraMotionDetector detector = new CameraMotionDetector((ptsUs, moving, level) -> {
+            pts.add(ptsUs);
+            events.add(moving);
+            levels.add(level);
+        });
+
+        detector.onLuma(createLuma(100), WIDTH, HEIGHT, WIDTH, 1, 0);
+        detector.onLuma(createLuma(120), WIDTH, HEIGHT, WIDTH, 1, 1); // start
+        detector.onLuma(createLuma(125), WIDTH, HEIGHT, WIDTH, 1, 2); // still moving (above the stop threshold)
+        detector.onLuma(createLuma(127), WIDTH, HEIGHT, WIDTH, 1, 3); // stop
+
+        Assert.assertEquals(2, events.size());
+        Assert.assertEquals(Long.valueOf(1), pts.get(0));
+        Assert.assertTrue(events.get(0));
+        Assert.assertEquals(Integer.valueOf(20), levels.get(0));
+        Assert.assertEquals(Long.valueOf(3), pts.get(1));
+        Assert.assertFalse(events.get(1));
+        Assert.assertEquals(Integer.valueOf(2), levels.get(1));
+    }
+
+    @Test
+    public void testHysteresis() {
+        List<Boolean> events = new ArrayList<>();
+        CameraMotionDetector detector = new CameraMotionDetector((ptsUs, moving, level) -> events.add(moving));
+
+        // Between the stop and start thresholds: no motion starts
+        detector.onLuma(createLuma(100), WIDTH, HEIGHT, WIDTH, 1, 0);
+        detector.onLuma(createLuma(106), WIDTH, HEIGHT, WIDTH, 1, 1);
+        Assert.assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void testPixelStride() {
+        List<Integer> levels = new ArrayList<>();
+        CameraMotionDetector detector = new CameraMotionDetector((ptsUs, moving, level) -> levels.add(level));
+
+        // Only the sampled pixels (every GRID_STEP pixels, with a pixel stride of 2) change
+        ByteBuffer first = ByteBuffer.allocate(WIDTH * 2 * HEIGHT);
+        ByteBuffer second = ByteBuffer.allocate(WIDTH * 2 * HEIGHT);
+        for (int y = 0; y < HEIGHT; y += CameraMotionDetector.GRID_STEP) {
+            for (int x = 0; x < WIDTH; x += CameraMotionDetector.GRID_STEP) {
+                second.put(y * WIDTH * 2 + x * 2, (byte) 200);
+            }
+        }
+
+        detector.onLuma(first, WIDTH, HEIGHT, WIDTH * 2, 2, 0);
+        detector.onLuma(second, WIDTH, HEIGHT, WIDTH * 2, 2, 1);
+        Assert.assertEquals(1, levels.size());
+        Assert.assertEquals(Integer.valueOf(200), levels.get(0));
+    }
+}
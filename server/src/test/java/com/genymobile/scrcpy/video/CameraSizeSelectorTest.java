@@ -0,0 +1,117 @@
+package com.genymobile.scrcpy.video;
+
+import com.genymobile.scrcpy.device.Size;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class CameraSizeSelectorTest {
+
+    private static final long NS_15_FPS = 66_666_666;
+    private static final long NS_30_FPS = 33_333_333;
+    private static final long NS_60_FPS = 16_666_666;
+
+    // Typical MediaCodec output sizes of a back camera: the full sensor size is limited to 15 fps, 4K to 30 fps
+    private static final List<CameraSizeSelector.Candidate> BACK_CAMERA = Arrays.asList(
+            candidate(4000, 3000, NS_15_FPS),
+            candidate(3840, 2160, NS_30_FPS),
+            candidate(1920, 1440, NS_30_FPS),
+            candidate(1920, 1080, NS_60_FPS),
+            candidate(1280, 720, NS_60_FPS),
+            candidate(640, 480, NS_60_FPS),
+            candidate(320, 240, NS_60_FPS));
+
+    // Typical high speed video sizes (durations derived from the fps ranges)
+    private static final List<CameraSizeSelector.Candidate> HIGH_SPEED = Arrays.asList(
+            candidate(1920, 1080, 1_000_000_000L / 120),
+            candidate(1280, 720, 1_000_000_000L / 240));
+
+    private static CameraSizeSelector.Candidate candidate(int width, int height, long minFrameDurationNs) {
+        return new CameraSizeSelector.Candidate(new Size(width, height), minFrameDurationNs);
+    }
+
+    @Test
+    public void testLargestWithoutConstraints() {
+        CameraSizeSelector selector = new CameraSizeSelector(0, 0, 0);
+        Assert.assertEquals(new Size(4000, 3000), selector.select(BACK_CAMERA));
+    }
+
+    @Test
+    public void testMaxSize() {
+        CameraSizeSelector selector = new CameraSizeSelector(1920, 0, 0);
+        Assert.assertEquals(new Size(1920, 1440), selector.select(BACK_CAMERA));
+    }
+
+    @Test
+    public void testFpsExcludesSlowSizes() {
+        CameraSizeSelector selector = new CameraSizeSelector(0, 0, 30);
+        // The sensor size only reaches 15 fps
+        Assert.assertEquals(new Size(3840, 2160), selector.select(BACK_CAMERA));
+
+        selector = new CameraSizeSelector(0, 0, 60);
+        Assert.assertEquals(new Size(1920, 1080), selector.select(BACK_CAMERA));
+    }
+
+    @Test
+    public void testUnreachableFpsSelectsFastest() {
+        CameraSizeSelector selector = new CameraSizeSelector(0, 0, 120);
+        Assert.assertEquals(new Size(1920, 1080), selector.select(BACK_CAMERA));
+
+        selector = new CameraSizeSelector(0, 0, 240);
+        Assert.assertEquals(new Size(1280, 720), selector.select(HIGH_SPEED));
+    }
+
+    @Test
+    public void testUnknownFrameDuration() {
+        List<CameraSizeSelector.Candidate> candidates = Arrays.asList(candidate(1920, 1080, 0), candidate(1280, 720, NS_60_FPS));
+        CameraSizeSelector selector = new CameraSizeSelector(0, 0, 60);
+        Assert.assertEquals(new Size(1920, 1080), selector.select(candidates));
+    }
+
+    @Test
+    public void testAspectRatioWithFps() {
+        CameraSizeSelector selector = new CameraSizeSelector(0, 4f / 3, 30);
+        Assert.assertEquals(new Size(1920, 1440), selector.select(BACK_CAMERA));
+
+        selector = new CameraSizeSelector(0, 4f / 3, 60);
+        Assert.assertEquals(new Size(640, 480), selector.select(BACK_CAMERA));
+    }
+
+    @Test
+    public void testAspectRatioPreferredOverWidth() {
+        List<CameraSizeSelector.Candidate> candidates = Arrays.asList(candidate(2000, 1080, NS_30_FPS), candidate(1920, 1080, NS_30_FPS));
+        CameraSizeSelector selector = new CameraSizeSelector(0, 16f / 9, 0);
+        Assert.assertEquals(new Size(1920, 1080), selector.select(candidates));
+    }
+
+    @Test
+    public void testTargetSize() {
+        CameraSizeSelector selector = new CameraSizeSelector(0, 0, 0);
+        selector.setTargetSize(480);
+        // The smallest size covering the target
+        Assert.assertEquals(new Size(640, 480), selector.select(BACK_CAMERA));
+
+        selector.setTargetSize(5000);
+        // No size covers the target, the largest
+        Assert.assertEquals(new Size(4000, 3000), selector.select(BACK_CAMERA));
+    }
+
+    @Test
+    public void testMaxPixelRate() {
+        CameraSizeSelector selector = new CameraSizeSelector(0, 0, 0);
+        selector.setMaxPixelRate(1920L * 1080 * 30);
+        Assert.assertEquals(new Size(1920, 1080), selector.select(BACK_CAMERA));
+    }
+
+    @Test
+    public void testNoMatch() {
+        CameraSizeSelector selector = new CameraSizeSelector(200, 0, 0);
+        Assert.assertNull(selector.select(BACK_CAMERA));
+
+        selector = new CameraSizeSelector(0, 21f / 9, 0);
+        Assert.assertNull(selector.select(BACK_CAMERA));
+    }
+}